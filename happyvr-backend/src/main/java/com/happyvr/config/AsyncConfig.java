@@ -1,11 +1,15 @@
 package com.happyvr.config;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
 import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
 import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
 
 /**
  * 异步处理配置
@@ -16,30 +20,73 @@ public class AsyncConfig {
     
     /**
      * VR处理任务执行器
+     * 每个任务一个虚拟线程，读取文件头、等待预算、写出结果和数据库操作都在任务线程上执行，
+     * 阻塞I/O不占用平台线程；拼接、映射、编码等像素计算交给vrComputePool。
+     * 同时执行的任务数由VRJobDispatcher控制
      */
     @Bean(name = "vrProcessingExecutor")
     public Executor vrProcessingExecutor() {
-        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
-        
-        // 核心线程数
-        executor.setCorePoolSize(2);
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("VRProcessing-");
+        executor.setVirtualThreads(true);
         
-        // 最大线程数
-        executor.setMaxPoolSize(5);
-        
-        // 队列容量
-        executor.setQueueCapacity(100);
+        // 关闭时等待执行中的任务结束
+        executor.setTaskTerminationTimeout(60000);
+        return executor;
+    }
+    
+    /**
+     * VR像素计算线程池
+     * 线程数默认与CPU核数一致，行分块内核和并行流在池内嵌套执行，不占用公共ForkJoinPool
+     */
+    @Bean(name = "vrComputePool", destroyMethod = "shutdown")
+    public ForkJoinPool vrComputePool(@Value("${file.upload.vr.stages.compute-parallelism:0}") int parallelism) {
+        ForkJoinPool.ForkJoinWorkerThreadFactory factory = pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("VRCompute-" + thread.getPoolIndex());
+            return thread;
+        };
+        return new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors(),
+            factory, null, false);
+    }
+    
+    /**
+     * 图片解码执行器
+     * 线程数与CPU核数一致，VR任务的输入图片在此并行解码
+     */
+    @Bean(name = "imageDecodeExecutor")
+    public Executor imageDecodeExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
         
-        // 线程名前缀
-        executor.setThreadNamePrefix("VRProcessing-");
+        int processors = Runtime.getRuntime().availableProcessors();
+        executor.setCorePoolSize(processors);
+        executor.setMaxPoolSize(processors);
+        executor.setQueueCapacity(200);
+        executor.setThreadNamePrefix("ImageDecode-");
         
-        // 拒绝策略：由调用线程执行
+        // 队列满时由VR任务线程自行解码
         executor.setRejectedExecutionHandler(new java.util.concurrent.ThreadPoolExecutor.CallerRunsPolicy());
-        
-        // 等待所有任务完成后再关闭线程池
         executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(60);
+        
+        executor.initialize();
+        return executor;
+    }
+    
+    /**
+     * 上传派生图执行器
+     * 线程数和队列都较小，缩略图生成不与VR任务争抢CPU；
+     * 队列满时拒绝，不占用上传线程，由ImageDerivativeService记录后稍后重新提交
+     */
+    @Bean(name = "derivativeExecutor")
+    public Executor derivativeExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
         
-        // 等待时间
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(2);
+        executor.setQueueCapacity(50);
+        executor.setThreadNamePrefix("ImageDerivative-");
+        executor.setRejectedExecutionHandler(new java.util.concurrent.ThreadPoolExecutor.AbortPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
         executor.setAwaitTerminationSeconds(60);
         
         executor.initialize();
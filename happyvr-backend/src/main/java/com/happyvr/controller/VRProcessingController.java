@@ -1,6 +1,8 @@
 package com.happyvr.controller;
 
 import com.happyvr.dto.common.ApiResponse;
+import com.happyvr.dto.vr.VRBatchProcessingRequest;
+import com.happyvr.dto.vr.VRBatchProcessingResponse;
 import com.happyvr.dto.vr.VRProcessingRequest;
 import com.happyvr.dto.vr.VRProcessingResponse;
 import com.happyvr.security.UserPrincipal;
@@ -35,6 +37,31 @@ public class VRProcessingController {
         return ResponseEntity.ok(ApiResponse.success("VR处理任务已启动", response));
     }
     
+    /**
+     * 批量提交VR处理（如修改输出分辨率后重新生成大量项目）
+     */
+    @PostMapping("/batch")
+    public ResponseEntity<ApiResponse<VRBatchProcessingResponse>> startBatchProcessing(
+            @Valid @RequestBody VRBatchProcessingRequest request,
+            @AuthenticationPrincipal UserPrincipal userPrincipal) {
+        
+        VRBatchProcessingResponse response = vrProcessingService.startBatchProcessing(
+            request, userPrincipal.getId(), userPrincipal.hasRole("ADMIN"));
+        return ResponseEntity.ok(ApiResponse.success("VR批量处理任务已提交", response));
+    }
+    
+    /**
+     * 获取批量处理的汇总进度和各任务结果
+     */
+    @GetMapping("/batch/{batchId}")
+    public ResponseEntity<ApiResponse<VRBatchProcessingResponse>> getBatchProgress(
+            @PathVariable String batchId,
+            @AuthenticationPrincipal UserPrincipal userPrincipal) {
+        
+        VRBatchProcessingResponse response = vrProcessingService.getBatchProgress(batchId, userPrincipal.getId());
+        return ResponseEntity.ok(ApiResponse.success(response));
+    }
+    
     /**
      * 获取处理进度
      */
@@ -10,6 +10,10 @@ public class FileUploadResponse {
     private Long fileSize;
     private String contentType;
     private String uploadId;
+    private String thumbnailUrl;
+    private String previewUrl;
+    private Integer width; // 按EXIF方向旋转后的显示尺寸，无法读取文件头时为空
+    private Integer height;
     
     // 构造函数
     public FileUploadResponse() {}
@@ -72,4 +76,36 @@ public class FileUploadResponse {
     public void setUploadId(String uploadId) {
         this.uploadId = uploadId;
     }
-}
\ No newline at end of file
+    
+    public String getThumbnailUrl() {
+        return thumbnailUrl;
+    }
+    
+    public void setThumbnailUrl(String thumbnailUrl) {
+        this.thumbnailUrl = thumbnailUrl;
+    }
+    
+    public String getPreviewUrl() {
+        return previewUrl;
+    }
+    
+    public void setPreviewUrl(String previewUrl) {
+        this.previewUrl = previewUrl;
+    }
+    
+    public Integer getWidth() {
+        return width;
+    }
+    
+    public void setWidth(Integer width) {
+        this.width = width;
+    }
+    
+    public Integer getHeight() {
+        return height;
+    }
+    
+    public void setHeight(Integer height) {
+        this.height = height;
+    }
+}
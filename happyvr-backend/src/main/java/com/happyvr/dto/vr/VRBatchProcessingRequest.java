@@ -0,0 +1,44 @@
+package com.happyvr.dto.vr;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+
+import java.util.List;
+
+/**
+ * VR批量处理请求DTO
+ * 每一项为一个项目及其处理选项，整批使用同一优先级
+ * 普通用户提交的批次固定为BULK，priority只对管理员生效
+ */
+public class VRBatchProcessingRequest {
+    
+    @NotEmpty(message = "批量任务不能为空")
+    @Valid
+    private List<VRProcessingRequest> items;
+    
+    private String priority = "BULK"; // 整批任务的优先级，覆盖各项的priority，仅管理员可指定
+    
+    // 构造函数
+    public VRBatchProcessingRequest() {}
+    
+    public VRBatchProcessingRequest(List<VRProcessingRequest> items) {
+        this.items = items;
+    }
+    
+    // Getters and Setters
+    public List<VRProcessingRequest> getItems() {
+        return items;
+    }
+    
+    public void setItems(List<VRProcessingRequest> items) {
+        this.items = items;
+    }
+    
+    public String getPriority() {
+        return priority;
+    }
+    
+    public void setPriority(String priority) {
+        this.priority = priority;
+    }
+}
@@ -0,0 +1,118 @@
+package com.happyvr.dto.vr;
+
+import java.util.List;
+
+/**
+ * VR批量处理响应DTO
+ * 汇总批次中各任务的状态；内容相同的项共用一个任务，只计一次
+ */
+public class VRBatchProcessingResponse {
+    
+    private String batchId;
+    private String status; // PENDING, PROCESSING, COMPLETED, COMPLETED_WITH_ERRORS, FAILED
+    private Integer progress; // 0-100，已结束的任务按100计
+    private Integer totalTasks;
+    private Integer pendingTasks;
+    private Integer processingTasks;
+    private Integer completedTasks;
+    private Integer failedTasks;
+    private Integer cancelledTasks;
+    private Integer rejectedItems; // 提交时因项目不存在等原因未创建任务的项
+    private List<VRProcessingResponse> items; // 提交时与请求各项一一对应，查询时为批次中的任务
+    
+    // 构造函数
+    public VRBatchProcessingResponse() {}
+    
+    public VRBatchProcessingResponse(String batchId) {
+        this.batchId = batchId;
+    }
+    
+    // Getters and Setters
+    public String getBatchId() {
+        return batchId;
+    }
+    
+    public void setBatchId(String batchId) {
+        this.batchId = batchId;
+    }
+    
+    public String getStatus() {
+        return status;
+    }
+    
+    public void setStatus(String status) {
+        this.status = status;
+    }
+    
+    public Integer getProgress() {
+        return progress;
+    }
+    
+    public void setProgress(Integer progress) {
+        this.progress = progress;
+    }
+    
+    public Integer getTotalTasks() {
+        return totalTasks;
+    }
+    
+    public void setTotalTasks(Integer totalTasks) {
+        this.totalTasks = totalTasks;
+    }
+    
+    public Integer getPendingTasks() {
+        return pendingTasks;
+    }
+    
+    public void setPendingTasks(Integer pendingTasks) {
+        this.pendingTasks = pendingTasks;
+    }
+    
+    public Integer getProcessingTasks() {
+        return processingTasks;
+    }
+    
+    public void setProcessingTasks(Integer processingTasks) {
+        this.processingTasks = processingTasks;
+    }
+    
+    public Integer getCompletedTasks() {
+        return completedTasks;
+    }
+    
+    public void setCompletedTasks(Integer completedTasks) {
+        this.completedTasks = completedTasks;
+    }
+    
+    public Integer getFailedTasks() {
+        return failedTasks;
+    }
+    
+    public void setFailedTasks(Integer failedTasks) {
+        this.failedTasks = failedTasks;
+    }
+    
+    public Integer getCancelledTasks() {
+        return cancelledTasks;
+    }
+    
+    public void setCancelledTasks(Integer cancelledTasks) {
+        this.cancelledTasks = cancelledTasks;
+    }
+    
+    public Integer getRejectedItems() {
+        return rejectedItems;
+    }
+    
+    public void setRejectedItems(Integer rejectedItems) {
+        this.rejectedItems = rejectedItems;
+    }
+    
+    public List<VRProcessingResponse> getItems() {
+        return items;
+    }
+    
+    public void setItems(List<VRProcessingResponse> items) {
+        this.items = items;
+    }
+}
@@ -1,5 +1,8 @@
 package com.happyvr.dto.vr;
 
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotEmpty;
 import jakarta.validation.constraints.NotNull;
 
@@ -18,6 +21,9 @@ public class VRProcessingRequest {
     
     private String processingType = "PANORAMA"; // PANORAMA, CUBE_MAP, SPHERE_MAP
     
+    private String priority = "INTERACTIVE"; // INTERACTIVE: 交互提交，BULK: 批量重新生成
+    
+    @Valid
     private VRProcessingOptions options;
     
     // 构造函数
@@ -53,6 +59,14 @@ public class VRProcessingRequest {
         this.processingType = processingType;
     }
     
+    public String getPriority() {
+        return priority;
+    }
+    
+    public void setPriority(String priority) {
+        this.priority = priority;
+    }
+    
     public VRProcessingOptions getOptions() {
         return options;
     }
@@ -65,10 +79,26 @@ public class VRProcessingRequest {
      * VR处理选项
      */
     public static class VRProcessingOptions {
+        @NotNull(message = "输出宽度不能为空")
+        @Min(value = 1, message = "输出宽度必须大于0")
+        @Max(value = 16384, message = "输出宽度不能大于16384")
         private Integer outputWidth = 4096;
+        
+        @NotNull(message = "输出高度不能为空")
+        @Min(value = 1, message = "输出高度必须大于0")
+        @Max(value = 8192, message = "输出高度不能大于8192")
         private Integer outputHeight = 2048;
+        
+        @NotNull(message = "图片质量不能为空")
         private Integer quality = 90;
+        private Boolean progressive = false; // 是否输出渐进式JPEG
         private Boolean enableOptimization = true;
+        private Boolean enableTiles = false; // 是否输出多分辨率瓦片金字塔
+        
+        @NotNull(message = "瓦片尺寸不能为空")
+        @Min(value = 64, message = "瓦片尺寸不能小于64")
+        @Max(value = 2048, message = "瓦片尺寸不能大于2048")
+        private Integer tileSize = 512;
         
         // Getters and Setters
         public Integer getOutputWidth() {
@@ -95,6 +125,14 @@ public class VRProcessingRequest {
             this.quality = quality;
         }
         
+        public Boolean getProgressive() {
+            return progressive;
+        }
+        
+        public void setProgressive(Boolean progressive) {
+            this.progressive = progressive;
+        }
+        
         public Boolean getEnableOptimization() {
             return enableOptimization;
         }
@@ -102,5 +140,21 @@ public class VRProcessingRequest {
         public void setEnableOptimization(Boolean enableOptimization) {
             this.enableOptimization = enableOptimization;
         }
+        
+        public Boolean getEnableTiles() {
+            return enableTiles;
+        }
+        
+        public void setEnableTiles(Boolean enableTiles) {
+            this.enableTiles = enableTiles;
+        }
+        
+        public Integer getTileSize() {
+            return tileSize;
+        }
+        
+        public void setTileSize(Integer tileSize) {
+            this.tileSize = tileSize;
+        }
     }
 }
\ No newline at end of file
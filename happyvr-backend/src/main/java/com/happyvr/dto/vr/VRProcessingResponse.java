@@ -13,10 +13,13 @@ public class VRProcessingResponse {
     private Integer progress; // 0-100
     private String message;
     private String resultUrl;
+    private String previewUrl; // 低分辨率预览图，早于完整结果发布
     private String errorMessage;
     private LocalDateTime startTime;
     private LocalDateTime endTime;
     private Long processingDuration; // 处理时长（毫秒）
+    private Integer queuePosition; // 等待执行时按调度顺序的位置，从1开始
+    private Boolean queuePositionExceeded; // 为true时实际位置大于queuePosition
     
     // 构造函数
     public VRProcessingResponse() {}
@@ -77,6 +80,14 @@ public class VRProcessingResponse {
         this.resultUrl = resultUrl;
     }
     
+    public String getPreviewUrl() {
+        return previewUrl;
+    }
+    
+    public void setPreviewUrl(String previewUrl) {
+        this.previewUrl = previewUrl;
+    }
+    
     public String getErrorMessage() {
         return errorMessage;
     }
@@ -108,4 +119,20 @@ public class VRProcessingResponse {
     public void setProcessingDuration(Long processingDuration) {
         this.processingDuration = processingDuration;
     }
+    
+    public Integer getQueuePosition() {
+        return queuePosition;
+    }
+    
+    public void setQueuePosition(Integer queuePosition) {
+        this.queuePosition = queuePosition;
+    }
+    
+    public Boolean getQueuePositionExceeded() {
+        return queuePositionExceeded;
+    }
+    
+    public void setQueuePositionExceeded(Boolean queuePositionExceeded) {
+        this.queuePositionExceeded = queuePositionExceeded;
+    }
 }
\ No newline at end of file
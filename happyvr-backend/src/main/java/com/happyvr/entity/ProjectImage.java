@@ -10,8 +10,9 @@ import jakarta.validation.constraints.NotBlank;
 @Table(name = "project_images")
 public class ProjectImage extends BaseEntity {
     
+    // 上传时尚未关联项目的图片为空
     @ManyToOne(fetch = FetchType.LAZY)
-    @JoinColumn(name = "project_id", nullable = false)
+    @JoinColumn(name = "project_id")
     private VrProject project;
     
     @NotBlank(message = "原始图片URL不能为空")
@@ -30,6 +31,18 @@ public class ProjectImage extends BaseEntity {
     @Column(name = "height")
     private Integer height;
     
+    @Column(name = "format", length = 16)
+    private String format;
+    
+    @Column(name = "color_model", length = 16)
+    private String colorModel;
+    
+    @Column(name = "has_alpha")
+    private Boolean hasAlpha;
+    
+    @Column(name = "orientation")
+    private Integer orientation; // EXIF方向，1-8
+    
     @Column(name = "sort_order", nullable = false)
     private Integer sortOrder = 0;
     
@@ -90,6 +103,38 @@ public class ProjectImage extends BaseEntity {
         this.height = height;
     }
     
+    public String getFormat() {
+        return format;
+    }
+    
+    public void setFormat(String format) {
+        this.format = format;
+    }
+    
+    public String getColorModel() {
+        return colorModel;
+    }
+    
+    public void setColorModel(String colorModel) {
+        this.colorModel = colorModel;
+    }
+    
+    public Boolean getHasAlpha() {
+        return hasAlpha;
+    }
+    
+    public void setHasAlpha(Boolean hasAlpha) {
+        this.hasAlpha = hasAlpha;
+    }
+    
+    public Integer getOrientation() {
+        return orientation;
+    }
+    
+    public void setOrientation(Integer orientation) {
+        this.orientation = orientation;
+    }
+    
     public Integer getSortOrder() {
         return sortOrder;
     }
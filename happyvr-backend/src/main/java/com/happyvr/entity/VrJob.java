@@ -0,0 +1,210 @@
+package com.happyvr.entity;
+
+import com.happyvr.dto.vr.VRProcessingRequest;
+import jakarta.persistence.*;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+
+import java.time.LocalDateTime;
+
+/**
+ * VR处理任务实体类
+ * 提交的任务先持久化为PENDING，由调度器认领后在工作线程池中执行；
+ * 执行中的任务定期刷新心跳，实例宕机后心跳超时的任务重新排队
+ */
+@Entity
+@Table(name = "vr_jobs")
+public class VrJob extends BaseEntity {
+    
+    public static final String STATUS_PENDING = "PENDING";
+    public static final String STATUS_RUNNING = "RUNNING";
+    public static final String STATUS_COMPLETED = "COMPLETED";
+    public static final String STATUS_FAILED = "FAILED";
+    public static final String STATUS_CANCELLED = "CANCELLED";
+    
+    public static final String PRIORITY_INTERACTIVE = "INTERACTIVE";
+    public static final String PRIORITY_BULK = "BULK";
+    
+    @Column(name = "task_id", nullable = false, unique = true, length = 36)
+    private String taskId;
+    
+    @Column(name = "project_id", nullable = false)
+    private Long projectId;
+    
+    @Column(name = "user_id")
+    private Long userId;
+    
+    // 批量提交时的批次ID
+    @Column(name = "batch_id", length = 36)
+    private String batchId;
+    
+    @Column(name = "status", nullable = false, length = 20)
+    private String status = STATUS_PENDING;
+    
+    @Column(name = "priority", nullable = false, length = 20)
+    private String priority = PRIORITY_INTERACTIVE;
+    
+    @JdbcTypeCode(SqlTypes.JSON)
+    @Column(name = "request", columnDefinition = "json")
+    private VRProcessingRequest request;
+    
+    @Column(name = "input_pixels")
+    private Long inputPixels;
+    
+    @Column(name = "attempts", nullable = false)
+    private Integer attempts = 0;
+    
+    @Column(name = "worker_id", length = 100)
+    private String workerId;
+    
+    @Column(name = "heartbeat_at")
+    private LocalDateTime heartbeatAt;
+    
+    @Column(name = "started_at")
+    private LocalDateTime startedAt;
+    
+    @Column(name = "finished_at")
+    private LocalDateTime finishedAt;
+    
+    @Column(name = "result_url")
+    private String resultUrl;
+    
+    @Column(name = "error_message", length = 1000)
+    private String errorMessage;
+    
+    // 构造函数
+    public VrJob() {}
+    
+    public VrJob(String taskId, Long projectId, Long userId, VRProcessingRequest request) {
+        this.taskId = taskId;
+        this.projectId = projectId;
+        this.userId = userId;
+        this.request = request;
+    }
+    
+    // Getters and Setters
+    public String getTaskId() {
+        return taskId;
+    }
+    
+    public void setTaskId(String taskId) {
+        this.taskId = taskId;
+    }
+    
+    public Long getProjectId() {
+        return projectId;
+    }
+    
+    public void setProjectId(Long projectId) {
+        this.projectId = projectId;
+    }
+    
+    public Long getUserId() {
+        return userId;
+    }
+    
+    public void setUserId(Long userId) {
+        this.userId = userId;
+    }
+    
+    public String getBatchId() {
+        return batchId;
+    }
+    
+    public void setBatchId(String batchId) {
+        this.batchId = batchId;
+    }
+    
+    public String getStatus() {
+        return status;
+    }
+    
+    public void setStatus(String status) {
+        this.status = status;
+    }
+    
+    public String getPriority() {
+        return priority;
+    }
+    
+    public void setPriority(String priority) {
+        this.priority = priority;
+    }
+    
+    public VRProcessingRequest getRequest() {
+        return request;
+    }
+    
+    public void setRequest(VRProcessingRequest request) {
+        this.request = request;
+    }
+    
+    public Long getInputPixels() {
+        return inputPixels;
+    }
+    
+    public void setInputPixels(Long inputPixels) {
+        this.inputPixels = inputPixels;
+    }
+    
+    public Integer getAttempts() {
+        return attempts;
+    }
+    
+    public void setAttempts(Integer attempts) {
+        this.attempts = attempts;
+    }
+    
+    public String getWorkerId() {
+        return workerId;
+    }
+    
+    public void setWorkerId(String workerId) {
+        this.workerId = workerId;
+    }
+    
+    public LocalDateTime getHeartbeatAt() {
+        return heartbeatAt;
+    }
+    
+    public void setHeartbeatAt(LocalDateTime heartbeatAt) {
+        this.heartbeatAt = heartbeatAt;
+    }
+    
+    public LocalDateTime getStartedAt() {
+        return startedAt;
+    }
+    
+    public void setStartedAt(LocalDateTime startedAt) {
+        this.startedAt = startedAt;
+    }
+    
+    public LocalDateTime getFinishedAt() {
+        return finishedAt;
+    }
+    
+    public void setFinishedAt(LocalDateTime finishedAt) {
+        this.finishedAt = finishedAt;
+    }
+    
+    public String getResultUrl() {
+        return resultUrl;
+    }
+    
+    public void setResultUrl(String resultUrl) {
+        this.resultUrl = resultUrl;
+    }
+    
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+    
+    public void setErrorMessage(String errorMessage) {
+        this.errorMessage = errorMessage;
+    }
+    
+    // 工具方法
+    public boolean isFinished() {
+        return STATUS_COMPLETED.equals(status) || STATUS_FAILED.equals(status) || STATUS_CANCELLED.equals(status);
+    }
+}
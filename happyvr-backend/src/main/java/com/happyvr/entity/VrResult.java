@@ -0,0 +1,73 @@
+package com.happyvr.entity;
+
+import jakarta.persistence.*;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * VR生成结果实体类
+ * 按输入图片内容和处理选项的哈希索引，多个项目可共享同一结果，引用计数归零时删除输出文件
+ */
+@Entity
+@Table(name = "vr_results")
+public class VrResult extends BaseEntity {
+    
+    @Column(name = "content_hash", nullable = false, unique = true, length = 64)
+    private String contentHash;
+    
+    @JdbcTypeCode(SqlTypes.JSON)
+    @Column(name = "scene_data", columnDefinition = "json")
+    private Map<String, Object> sceneData;
+    
+    @JdbcTypeCode(SqlTypes.JSON)
+    @Column(name = "output_paths", columnDefinition = "json")
+    private List<String> outputPaths;
+    
+    @Column(name = "reference_count", nullable = false)
+    private Integer referenceCount = 0;
+    
+    // 构造函数
+    public VrResult() {}
+    
+    public VrResult(String contentHash, Map<String, Object> sceneData, List<String> outputPaths) {
+        this.contentHash = contentHash;
+        this.sceneData = sceneData;
+        this.outputPaths = outputPaths;
+    }
+    
+    // Getters and Setters
+    public String getContentHash() {
+        return contentHash;
+    }
+    
+    public void setContentHash(String contentHash) {
+        this.contentHash = contentHash;
+    }
+    
+    public Map<String, Object> getSceneData() {
+        return sceneData;
+    }
+    
+    public void setSceneData(Map<String, Object> sceneData) {
+        this.sceneData = sceneData;
+    }
+    
+    public List<String> getOutputPaths() {
+        return outputPaths;
+    }
+    
+    public void setOutputPaths(List<String> outputPaths) {
+        this.outputPaths = outputPaths;
+    }
+    
+    public Integer getReferenceCount() {
+        return referenceCount;
+    }
+    
+    public void setReferenceCount(Integer referenceCount) {
+        this.referenceCount = referenceCount;
+    }
+}
@@ -2,11 +2,14 @@ package com.happyvr.repository;
 
 import com.happyvr.entity.ProjectImage;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
+import java.util.Optional;
 
 /**
  * 项目图片数据访问接口
@@ -14,6 +17,19 @@ import java.util.List;
 @Repository
 public interface ProjectImageRepository extends JpaRepository<ProjectImage, Long> {
     
+    /**
+     * 根据原始图片URL查找图片
+     */
+    Optional<ProjectImage> findFirstByOriginalUrl(String originalUrl);
+    
+    /**
+     * 根据原始图片URL删除图片记录
+     */
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM ProjectImage pi WHERE pi.originalUrl = :originalUrl")
+    int deleteByOriginalUrl(@Param("originalUrl") String originalUrl);
+    
     /**
      * 根据项目ID查找图片
      */
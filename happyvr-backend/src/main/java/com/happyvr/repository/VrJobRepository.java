@@ -0,0 +1,88 @@
+package com.happyvr.repository;
+
+import com.happyvr.entity.VrJob;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * VR处理任务数据访问接口
+ */
+@Repository
+public interface VrJobRepository extends JpaRepository<VrJob, Long> {
+    
+    /**
+     * 根据任务ID查找任务
+     */
+    Optional<VrJob> findByTaskId(String taskId);
+    
+    /**
+     * 按提交顺序查找待执行的任务并加行锁，跳过其他实例已锁定的行
+     * 锁超时-2即SKIP LOCKED，MySQL 8生成FOR UPDATE SKIP LOCKED；不支持的数据库（如H2）退化为FOR UPDATE
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("SELECT j FROM VrJob j WHERE j.status = 'PENDING' ORDER BY j.id")
+    List<VrJob> findPendingForUpdate(Pageable pageable);
+    
+    /**
+     * 查找心跳超时的执行中任务并加行锁
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("SELECT j FROM VrJob j WHERE j.status = 'RUNNING' AND j.heartbeatAt < :before")
+    List<VrJob> findStaleForUpdate(@Param("before") LocalDateTime before);
+    
+    /**
+     * 按提交顺序查找指定状态的最早若干任务，不加锁，用于计算排队位置
+     */
+    List<VrJob> findByStatusOrderById(String status, Pageable pageable);
+    
+    /**
+     * 按提交顺序查找批次中的任务
+     */
+    List<VrJob> findByBatchIdOrderById(String batchId);
+    
+    /**
+     * 按用户统计执行中的任务数，结果为[userId, count]
+     */
+    @Query("SELECT j.userId, COUNT(j) FROM VrJob j WHERE j.status = 'RUNNING' GROUP BY j.userId")
+    List<Object[]> countRunningByUser();
+    
+    /**
+     * 在给定任务中查找指定状态的任务ID
+     */
+    @Query("SELECT j.taskId FROM VrJob j WHERE j.taskId IN :taskIds AND j.status = :status")
+    List<String> findTaskIdsByStatus(@Param("taskIds") Collection<String> taskIds, @Param("status") String status);
+    
+    /**
+     * 刷新执行中任务的心跳，只在任务仍处于指定的认领次数时更新
+     */
+    @Modifying
+    @Query("UPDATE VrJob j SET j.heartbeatAt = :now "
+        + "WHERE j.taskId = :taskId AND j.attempts = :attempt AND j.status = 'RUNNING'")
+    int touchHeartbeat(@Param("taskId") String taskId, @Param("attempt") Integer attempt,
+                       @Param("now") LocalDateTime now);
+    
+    /**
+     * 记录执行中任务的结束状态，只在任务仍处于指定的认领次数时更新
+     */
+    @Modifying
+    @Query("UPDATE VrJob j SET j.status = :status, j.resultUrl = :resultUrl, j.errorMessage = :errorMessage, "
+        + "j.finishedAt = :now WHERE j.taskId = :taskId AND j.attempts = :attempt AND j.status = 'RUNNING'")
+    int finishClaimed(@Param("taskId") String taskId, @Param("attempt") Integer attempt,
+                      @Param("status") String status, @Param("resultUrl") String resultUrl,
+                      @Param("errorMessage") String errorMessage, @Param("now") LocalDateTime now);
+}
@@ -1,9 +1,11 @@
 package com.happyvr.repository;
 
 import com.happyvr.entity.VrProject;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
@@ -18,6 +20,13 @@ import java.util.Optional;
 @Repository
 public interface VrProjectRepository extends JpaRepository<VrProject, Long> {
     
+    /**
+     * 根据ID查找项目并加行锁，用于修改项目引用的生成结果
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT p FROM VrProject p WHERE p.id = :id")
+    Optional<VrProject> findByIdForUpdate(@Param("id") Long id);
+    
     /**
      * 根据用户ID查找项目
      */
@@ -0,0 +1,30 @@
+package com.happyvr.repository;
+
+import com.happyvr.entity.VrResult;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+/**
+ * VR生成结果数据访问接口
+ */
+@Repository
+public interface VrResultRepository extends JpaRepository<VrResult, Long> {
+    
+    /**
+     * 根据内容哈希查找结果
+     */
+    Optional<VrResult> findByContentHash(String contentHash);
+    
+    /**
+     * 根据内容哈希查找结果并加行锁，用于修改引用计数
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT r FROM VrResult r WHERE r.contentHash = :contentHash")
+    Optional<VrResult> findByContentHashForUpdate(@Param("contentHash") String contentHash);
+}
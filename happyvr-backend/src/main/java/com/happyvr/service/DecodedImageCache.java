@@ -0,0 +1,275 @@
+package com.happyvr.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 已解码图片缓存
+ * 按(规范路径, 修改时间, 下采样倍数)缓存解码结果，强引用部分按像素字节数做LRU淘汰；
+ * 被淘汰的图片转入软引用，内存紧张时由GC回收，未回收前仍可命中。
+ * 缓存的图片在多个任务间共享，调用方只能读取，不能修改像素
+ */
+@Service
+public class DecodedImageCache implements MeterBinder {
+    
+    private static final Logger logger = LoggerFactory.getLogger(DecodedImageCache.class);
+    
+    @Value("${file.upload.vr.decode-cache.max-bytes:268435456}")
+    private long maxBytes = 256L * 1024 * 1024; // 256MB
+    
+    // 按访问顺序排列，最久未使用的在前
+    private final LinkedHashMap<DecodeKey, BufferedImage> images = new LinkedHashMap<>(16, 0.75f, true);
+    private long currentBytes;
+    
+    // 从强引用部分淘汰的图片
+    private final Map<DecodeKey, SoftImage> softImages = new HashMap<>();
+    private final ReferenceQueue<BufferedImage> collected = new ReferenceQueue<>();
+    
+    // 正在解码的图片，避免相同文件被并发重复解码
+    private final ConcurrentHashMap<DecodeKey, CompletableFuture<BufferedImage>> decoding = new ConcurrentHashMap<>();
+    
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong softHitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+    
+    /**
+     * 解码函数
+     */
+    @FunctionalInterface
+    public interface Decoder {
+        BufferedImage decode() throws IOException;
+    }
+    
+    /**
+     * 获取解码后的图片，缓存中不存在时调用解码函数；解码函数返回null时不缓存
+     */
+    public BufferedImage getOrDecode(File file, int subsampling, Decoder decoder) throws IOException {
+        DecodeKey key = new DecodeKey(file.getCanonicalPath(), file.lastModified(), subsampling);
+        BufferedImage image = getIfPresent(key);
+        if (image != null) {
+            return image;
+        }
+        missCount.incrementAndGet();
+        
+        CompletableFuture<BufferedImage> future = new CompletableFuture<>();
+        CompletableFuture<BufferedImage> existing = decoding.putIfAbsent(key, future);
+        if (existing != null) {
+            return await(existing);
+        }
+        
+        try {
+            image = decoder.decode();
+            if (image != null) {
+                put(key, image);
+            }
+            future.complete(image);
+            return image;
+        } catch (IOException | RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            decoding.remove(key, future);
+        }
+    }
+    
+    /**
+     * 查询缓存中的图片，软引用命中时重新放回强引用部分
+     */
+    synchronized BufferedImage getIfPresent(DecodeKey key) {
+        drainCollected();
+        BufferedImage image = images.get(key);
+        if (image != null) {
+            hitCount.incrementAndGet();
+            return image;
+        }
+        
+        SoftImage soft = softImages.remove(key);
+        image = soft != null ? soft.get() : null;
+        if (image != null) {
+            softHitCount.incrementAndGet();
+            put(key, image);
+        }
+        return image;
+    }
+    
+    /**
+     * 清空缓存
+     */
+    public synchronized void clear() {
+        images.clear();
+        softImages.clear();
+        currentBytes = 0;
+    }
+    
+    public synchronized long getCurrentBytes() { return currentBytes; }
+    public synchronized int getSize() { return images.size(); }
+    public synchronized int getSoftSize() {
+        drainCollected();
+        return softImages.size();
+    }
+    public long getMaxBytes() { return maxBytes; }
+    public long getHitCount() { return hitCount.get(); }
+    public long getSoftHitCount() { return softHitCount.get(); }
+    public long getMissCount() { return missCount.get(); }
+    public long getEvictionCount() { return evictionCount.get(); }
+    
+    /**
+     * 注册到actuator的metrics端点
+     */
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("happyvr.decode.cache.requests", hitCount, AtomicLong::get)
+            .tag("result", "hit")
+            .description("已解码图片缓存查询次数")
+            .register(registry);
+        FunctionCounter.builder("happyvr.decode.cache.requests", softHitCount, AtomicLong::get)
+            .tag("result", "soft_hit")
+            .description("已解码图片缓存查询次数")
+            .register(registry);
+        FunctionCounter.builder("happyvr.decode.cache.requests", missCount, AtomicLong::get)
+            .tag("result", "miss")
+            .description("已解码图片缓存查询次数")
+            .register(registry);
+        FunctionCounter.builder("happyvr.decode.cache.evictions", evictionCount, AtomicLong::get)
+            .description("从强引用部分转为软引用的图片数")
+            .register(registry);
+        Gauge.builder("happyvr.decode.cache.size", this, DecodedImageCache::getSize)
+            .description("强引用缓存的图片数")
+            .register(registry);
+        Gauge.builder("happyvr.decode.cache.bytes", this, DecodedImageCache::getCurrentBytes)
+            .baseUnit("bytes")
+            .description("强引用缓存图片占用的字节数")
+            .register(registry);
+    }
+     
+    /**
+     * 图片像素数据占用的字节数
+     */
+    static long sizeInBytes(BufferedImage image) {
+        DataBuffer buffer = image.getRaster().getDataBuffer();
+        return (long) buffer.getSize() * buffer.getNumBanks() * DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+    }
+    
+    private synchronized void put(DecodeKey key, BufferedImage image) {
+        softImages.remove(key);
+        long size = sizeInBytes(image);
+        if (size > maxBytes) {
+            // 超过上限的图片只保留软引用
+            softImages.put(key, new SoftImage(key, image, collected));
+            return;
+        }
+        BufferedImage previous = images.put(key, image);
+        if (previous != null) {
+            currentBytes -= sizeInBytes(previous);
+        }
+        currentBytes += size;
+        
+        Iterator<Map.Entry<DecodeKey, BufferedImage>> iterator = images.entrySet().iterator();
+        while (currentBytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<DecodeKey, BufferedImage> eldest = iterator.next();
+            if (eldest.getKey().equals(key)) {
+                continue;
+            }
+            currentBytes -= sizeInBytes(eldest.getValue());
+            softImages.put(eldest.getKey(), new SoftImage(eldest.getKey(), eldest.getValue(), collected));
+            iterator.remove();
+            evictionCount.incrementAndGet();
+            logger.debug("已解码图片转为软引用: {}", eldest.getKey());
+        }
+    }
+    
+    /**
+     * 移除已被GC回收的软引用
+     */
+    private void drainCollected() {
+        Reference<? extends BufferedImage> reference;
+        while ((reference = collected.poll()) != null) {
+            SoftImage soft = (SoftImage) reference;
+            softImages.remove(soft.key, soft);
+        }
+    }
+    
+    private static BufferedImage await(CompletableFuture<BufferedImage> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+    
+    private static final class SoftImage extends SoftReference<BufferedImage> {
+        private final DecodeKey key;
+        
+        SoftImage(DecodeKey key, BufferedImage image, ReferenceQueue<BufferedImage> queue) {
+            super(image, queue);
+            this.key = key;
+        }
+    }
+    
+    /**
+     * 已解码图片缓存键，文件被覆盖后修改时间变化，旧的解码结果不再命中
+     */
+    static final class DecodeKey {
+        private final String path;
+        private final long lastModified;
+        private final int subsampling;
+        
+        DecodeKey(String path, long lastModified, int subsampling) {
+            this.path = Objects.requireNonNull(path);
+            this.lastModified = lastModified;
+            this.subsampling = subsampling;
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof DecodeKey)) {
+                return false;
+            }
+            DecodeKey other = (DecodeKey) o;
+            return lastModified == other.lastModified && subsampling == other.subsampling && path.equals(other.path);
+        }
+        
+        @Override
+        public int hashCode() {
+            return Objects.hash(path, lastModified, subsampling);
+        }
+        
+        @Override
+        public String toString() {
+            return path + "@" + lastModified + " 1/" + subsampling;
+        }
+    }
+}
@@ -3,7 +3,10 @@ package com.happyvr.service;
 import com.happyvr.config.FileUploadConfig;
 import com.happyvr.dto.upload.FileUploadResponse;
 import com.happyvr.dto.upload.UploadProgressResponse;
+import com.happyvr.entity.ProjectImage;
 import com.happyvr.exception.ValidationException;
+import com.happyvr.repository.ProjectImageRepository;
+import com.happyvr.util.ImageHeaderProbe;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -28,6 +31,12 @@ public class FileUploadService {
     @Autowired
     private FileUploadConfig fileUploadConfig;
     
+    @Autowired
+    private ImageDerivativeService imageDerivativeService;
+    
+    @Autowired
+    private ProjectImageRepository projectImageRepository;
+    
     // 存储上传进度信息
     private final Map<String, UploadProgressResponse> uploadProgressMap = new ConcurrentHashMap<>();
     
@@ -97,9 +106,16 @@ public class FileUploadService {
             // 生成访问URL
             String fileUrl = generateFileUrl(userId, fileName);
             
+            // 只读取文件头记录尺寸等元数据，供调度、内存预算和前端布局使用
+            ImageHeaderProbe.ImageHeader header = probeHeader(filePath);
+            saveImageRecord(fileUrl, file.getSize(), header);
+            
+            // 异步生成缩略图和预览图，生成完成前对应URL不可访问
+            imageDerivativeService.generateAsync(filePath);
+            
             logger.info("文件上传成功: {}", fileName);
             
-            return new FileUploadResponse(
+            FileUploadResponse response = new FileUploadResponse(
                 fileName,
                 file.getOriginalFilename(),
                 fileUrl,
@@ -107,6 +123,13 @@ public class FileUploadService {
                 file.getContentType(),
                 uploadId
             );
+            response.setThumbnailUrl(generateFileUrl(userId, ImageDerivativeService.thumbnailName(fileName)));
+            response.setPreviewUrl(generateFileUrl(userId, ImageDerivativeService.previewName(fileName)));
+            if (header != null) {
+                response.setWidth(header.getDisplayWidth());
+                response.setHeight(header.getDisplayHeight());
+            }
+            return response;
             
         } catch (IOException e) {
             logger.error("文件保存失败", e);
@@ -114,6 +137,35 @@ public class FileUploadService {
         }
     }
     
+    /**
+     * 探测图片文件头，无法识别时返回null，不影响上传
+     */
+    private ImageHeaderProbe.ImageHeader probeHeader(Path filePath) {
+        try {
+            return ImageHeaderProbe.probe(filePath.toFile());
+        } catch (IOException | ValidationException e) {
+            logger.warn("读取图片文件头失败: {} - {}", filePath.getFileName(), e.getMessage());
+            return null;
+        }
+    }
+    
+    /**
+     * 保存图片记录，关联项目前project为空
+     */
+    private void saveImageRecord(String fileUrl, long fileSize, ImageHeaderProbe.ImageHeader header) {
+        ProjectImage image = new ProjectImage(fileUrl, null);
+        image.setFileSize(fileSize);
+        if (header != null) {
+            image.setWidth(header.getWidth());
+            image.setHeight(header.getHeight());
+            image.setFormat(header.getFormat());
+            image.setColorModel(header.getColorModel());
+            image.setHasAlpha(header.hasAlpha());
+            image.setOrientation(header.getOrientation());
+        }
+        projectImageRepository.save(image);
+    }
+    
     /**
      * 获取上传进度
      */
@@ -228,12 +280,18 @@ public class FileUploadService {
     }
     
     /**
-     * 删除文件
+     * 删除文件，同时删除它的缩略图、预览图和上传时记录的图片元数据
      */
     public boolean deleteFile(String filePath) {
         try {
             Path path = Paths.get(fileUploadConfig.getBasePath(), filePath);
-            return Files.deleteIfExists(path);
+            boolean deleted = Files.deleteIfExists(path);
+            String fileName = path.getFileName().toString();
+            Files.deleteIfExists(path.resolveSibling(ImageDerivativeService.thumbnailName(fileName)));
+            Files.deleteIfExists(path.resolveSibling(ImageDerivativeService.previewName(fileName)));
+            projectImageRepository.deleteByOriginalUrl(
+                fileUploadConfig.getBaseUrl() + "/" + filePath.replace('\\', '/'));
+            return deleted;
         } catch (IOException e) {
             logger.error("删除文件失败: {}", filePath, e);
             return false;
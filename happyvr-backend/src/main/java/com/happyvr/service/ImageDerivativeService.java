@@ -0,0 +1,203 @@
+package com.happyvr.service;
+
+import com.happyvr.util.ImageDecodePlanner;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 上传图片派生图服务
+ * 上传完成后在独立的线程池中生成缩略图和预览图，两者共用一次（按预览尺寸下采样的）解码结果，
+ * 与原图保存在同一目录下。派生图生成前对应URL不可访问（前端改用原图显示）；
+ * 执行器队列已满时记录待生成的原图，稍后重新提交；原图无法解码时不生成派生图
+ */
+@Service
+public class ImageDerivativeService {
+    
+    private static final Logger logger = LoggerFactory.getLogger(ImageDerivativeService.class);
+    
+    static final String THUMBNAIL_SUFFIX = "_thumb";
+    static final String PREVIEW_SUFFIX = "_preview";
+    private static final String DERIVATIVE_EXTENSION = ".jpg";
+    
+    @Autowired
+    private ImageProcessingService imageProcessingService;
+    
+    @Autowired
+    @Qualifier("derivativeExecutor")
+    private Executor derivativeExecutor;
+    
+    @Value("${file.upload.derivatives.thumbnail-size:320}")
+    private int thumbnailSize = 320;
+    
+    @Value("${file.upload.derivatives.preview-size:1280}")
+    private int previewSize = 1280;
+    
+    @Value("${file.upload.derivatives.quality:85}")
+    private int quality = 85;
+    
+    // 等待重新提交的原图数上限，超过后不再记录，对应派生图不生成
+    @Value("${file.upload.derivatives.max-pending:10000}")
+    private int maxPending = 10000;
+    
+    // 因执行器队列已满而等待重新提交的原图
+    private final Set<Path> pending = ConcurrentHashMap.newKeySet();
+    
+    /**
+     * 缩略图文件名
+     */
+    public static String thumbnailName(String fileName) {
+        return derivativeName(fileName, THUMBNAIL_SUFFIX);
+    }
+    
+    /**
+     * 预览图文件名
+     */
+    public static String previewName(String fileName) {
+        return derivativeName(fileName, PREVIEW_SUFFIX);
+    }
+    
+    /**
+     * 异步生成缩略图和预览图，失败时记录日志，不影响上传
+     * 队列已满时不在上传线程上解码，记录原图稍后由retryPending重新提交
+     */
+    public CompletableFuture<Void> generateAsync(Path original) {
+        try {
+            return submit(original);
+        } catch (RejectedExecutionException e) {
+            if (pending.size() < maxPending) {
+                pending.add(original);
+                logger.warn("派生图队列已满，稍后重新生成: {}", original);
+            } else {
+                logger.warn("派生图队列已满且待生成过多，不生成派生图: {}", original);
+            }
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+    
+    /**
+     * 重新提交因队列已满而未生成的派生图，队列再次已满时留待下次
+     */
+    @Scheduled(fixedDelayString = "${file.upload.derivatives.retry-interval-ms:30000}")
+    public void retryPending() {
+        for (Path original : new ArrayList<>(pending)) {
+            if (!Files.exists(original)) {
+                pending.remove(original);
+                continue;
+            }
+            try {
+                submit(original);
+                pending.remove(original);
+            } catch (RejectedExecutionException e) {
+                return;
+            }
+        }
+    }
+    
+    /**
+     * 等待重新提交的原图数
+     */
+    public int getPendingCount() {
+        return pending.size();
+    }
+    
+    private CompletableFuture<Void> submit(Path original) {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                generate(original);
+            } catch (Exception e) {
+                logger.warn("生成派生图失败: {} - {}", original, e.getMessage());
+            }
+        }, derivativeExecutor);
+    }
+    
+    /**
+     * 生成缩略图和预览图
+     * 原图只解码一次：按预览图尺寸下采样解码，缩放得到预览图，再由预览图缩放得到缩略图
+     */
+    void generate(Path original) throws IOException {
+        long start = System.currentTimeMillis();
+        
+        ImageDecodePlanner.DecodePlan header = ImageDecodePlanner.plan(original.toFile(), 0, 0);
+        int[] previewDimensions = fitWithin(header.getWidth(), header.getHeight(), previewSize);
+        ImageDecodePlanner.DecodePlan plan = new ImageDecodePlanner.DecodePlan(original.toFile(),
+            header.getWidth(), header.getHeight(),
+            ImageDecodePlanner.computeSubsampling(header.getWidth(), header.getHeight(),
+                previewDimensions[0], previewDimensions[1]),
+            header.isTiled());
+        BufferedImage decoded = ImageDecodePlanner.decode(plan);
+        if (decoded == null) {
+            throw new IOException("无法读取图片");
+        }
+        
+        String fileName = original.getFileName().toString();
+        BufferedImage preview = imageProcessingService.resizeImage(decoded,
+            previewDimensions[0], previewDimensions[1]);
+        try {
+            write(preview, original.resolveSibling(previewName(fileName)));
+            
+            int[] thumbnailDimensions = fitWithin(header.getWidth(), header.getHeight(), thumbnailSize);
+            BufferedImage thumbnail = imageProcessingService.resizeImage(preview,
+                thumbnailDimensions[0], thumbnailDimensions[1]);
+            try {
+                write(thumbnail, original.resolveSibling(thumbnailName(fileName)));
+            } finally {
+                imageProcessingService.releaseImage(thumbnail);
+            }
+        } finally {
+            imageProcessingService.releaseImage(preview);
+        }
+        
+        logger.debug("派生图生成完成: {} ({}ms)", fileName, System.currentTimeMillis() - start);
+    }
+    
+    /**
+     * 按最长边限制等比缩放后的尺寸，不放大
+     */
+    static int[] fitWithin(int width, int height, int maxEdge) {
+        int longest = Math.max(width, height);
+        if (longest <= maxEdge) {
+            return new int[] {width, height};
+        }
+        double scale = (double) maxEdge / longest;
+        return new int[] {
+            Math.max(1, (int) Math.round(width * scale)),
+            Math.max(1, (int) Math.round(height * scale))
+        };
+    }
+    
+    /**
+     * 先写临时文件再原子替换，避免客户端读到写了一半的文件
+     */
+    private void write(BufferedImage image, Path target) throws IOException {
+        Path tempPath = target.resolveSibling(target.getFileName() + ".tmp");
+        try {
+            imageProcessingService.saveJpeg(image, tempPath.toString(), quality, false);
+            Files.move(tempPath, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempPath);
+        }
+    }
+    
+    private static String derivativeName(String fileName, String suffix) {
+        int lastDotIndex = fileName.lastIndexOf('.');
+        String baseName = lastDotIndex > 0 ? fileName.substring(0, lastDotIndex) : fileName;
+        return baseName + suffix + DERIVATIVE_EXTENSION;
+    }
+}
@@ -1,18 +1,40 @@
 package com.happyvr.service;
 
 import com.happyvr.exception.ValidationException;
+import com.happyvr.util.CancellationToken;
+import com.happyvr.util.ImageHeaderProbe;
+import com.happyvr.util.ImageResampler;
+import com.happyvr.util.JpegEncoder;
+import com.happyvr.util.PanoramaStitcher;
+import com.happyvr.util.PixelBuffer;
+import com.happyvr.util.PixelKernels;
+import com.happyvr.util.RasterKernels;
+import com.happyvr.util.RemapTable;
+import com.happyvr.util.StripPipeline;
+import jakarta.annotation.PostConstruct;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import javax.imageio.ImageIO;
-import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
 
 /**
  * 图片处理服务
@@ -22,29 +44,73 @@ public class ImageProcessingService {
     
     private static final Logger logger = LoggerFactory.getLogger(ImageProcessingService.class);
     
+    /**
+     * 等距柱状投影到球面映射的查找表标识
+     */
+    static final String PROJECTION_SPHERICAL = "equirect-sphere";
+    
+    /**
+     * 等距柱状投影到立方体面的查找表标识前缀
+     */
+    static final String PROJECTION_CUBE_PREFIX = "cube-";
+    
+    @Autowired
+    private RemapTableCache remapTableCache;
+    
+    @Autowired
+    private RasterPool rasterPool;
+    
+    // 流式生成时渲染条带的线程池，与VR处理的像素计算阶段共用
+    @Autowired
+    @Qualifier("vrComputePool")
+    private ForkJoinPool vrComputePool;
+    
+    // 全景拼接时相邻图片的重叠比例，0表示硬拼接
+    @Value("${file.upload.vr.stitch.overlap-ratio:0.1}")
+    private double stitchOverlapRatio = 0.1;
+    
+    // 调整图片大小的默认卷积核：BOX、BILINEAR、LANCZOS3
+    @Value("${file.upload.vr.resample-kernel:BILINEAR}")
+    private ImageResampler.Kernel resampleKernel = ImageResampler.Kernel.BILINEAR;
+    
+    // 未指定压缩质量时JPEG的默认编码参数
+    @Value("${file.upload.vr.jpeg.quality:90}")
+    private int defaultJpegQuality = 90;
+    
+    @Value("${file.upload.vr.jpeg.progressive:false}")
+    private boolean defaultJpegProgressive = false;
+    
+    // 本地缓存目录，不能位于通过静态资源对外提供的上传目录下
+    @Value("${file.upload.cache-dir:${java.io.tmpdir}/happyvr}")
+    private String cacheDir = Paths.get(System.getProperty("java.io.tmpdir"), "happyvr").toString();
+    
+    // 堆外像素缓冲区达到该字节数时使用内存映射的临时文件，否则使用直接内存
+    @Value("${file.upload.vr.off-heap.mapped-min-bytes:268435456}")
+    private long offHeapMappedMinBytes = 256L * 1024 * 1024; // 256MB
+    
     /**
      * 调整图片大小
+     * 使用配置的默认卷积核
      */
     public BufferedImage resizeImage(BufferedImage originalImage, int targetWidth, int targetHeight) {
-        logger.debug("调整图片大小: {}x{} -> {}x{}", 
-            originalImage.getWidth(), originalImage.getHeight(), targetWidth, targetHeight);
-        
-        BufferedImage resizedImage = new BufferedImage(targetWidth, targetHeight, BufferedImage.TYPE_INT_RGB);
-        Graphics2D g2d = resizedImage.createGraphics();
-        
-        // 设置高质量渲染
-        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
-        g2d.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
-        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-        
-        g2d.drawImage(originalImage, 0, 0, targetWidth, targetHeight, null);
-        g2d.dispose();
+        return resizeImage(originalImage, targetWidth, targetHeight, resampleKernel);
+    }
+    
+    /**
+     * 使用指定卷积核调整图片大小
+     */
+    public BufferedImage resizeImage(BufferedImage originalImage, int targetWidth, int targetHeight,
+                                     ImageResampler.Kernel kernel) {
+        logger.debug("调整图片大小: {}x{} -> {}x{} ({})", 
+            originalImage.getWidth(), originalImage.getHeight(), targetWidth, targetHeight, kernel);
         
-        return resizedImage;
+        BufferedImage target = acquireRgbImage(targetWidth, targetHeight);
+        return ImageResampler.resample(originalImage, target, kernel);
     }
     
     /**
      * 优化图片质量
+     * 将图片规整为不含alpha通道的TYPE_INT_RGB，供JPEG编码器直接读取；压缩质量在saveJpeg编码时生效
      */
     public BufferedImage optimizeImage(BufferedImage image, int quality) {
         logger.debug("优化图片质量: quality={}", quality);
@@ -54,14 +120,22 @@ public class ImageProcessingService {
             return image;
         }
         
-        // 创建优化后的图片
-        BufferedImage optimizedImage = new BufferedImage(
-            image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        // 创建优化后的图片，去掉alpha通道按行分块复制
+        int width = image.getWidth();
+        int height = image.getHeight();
+        BufferedImage optimizedImage = acquireRgbImage(width, height);
+        int[] target = RasterKernels.rgbData(optimizedImage);
         
-        Graphics2D g2d = optimizedImage.createGraphics();
-        g2d.setComposite(AlphaComposite.Src);
-        g2d.drawImage(image, 0, 0, null);
-        g2d.dispose();
+        if (RasterKernels.isPackedRgb(image)) {
+            int[] source = RasterKernels.rgbData(image);
+            RasterKernels.forEachRowBand(width, height, (rowStart, rowEnd) ->
+                PixelKernels.copyRgb(source, rowStart * width, target, rowStart * width, (rowEnd - rowStart) * width));
+        } else {
+            RasterKernels.forEachRowBand(width, height, (rowStart, rowEnd) -> {
+                int[] rows = image.getRGB(0, rowStart, width, rowEnd - rowStart, null, 0, width);
+                PixelKernels.copyRgb(rows, 0, target, rowStart * width, rows.length);
+            });
+        }
         
         return optimizedImage;
     }
@@ -72,6 +146,7 @@ public class ImageProcessingService {
     public void convertImageFormat(String inputPath, String outputPath, String format) throws IOException {
         logger.debug("转换图片格式: {} -> {} ({})", inputPath, outputPath, format);
         
+        BufferedImage flattened = null;
         try {
             BufferedImage image = ImageIO.read(new File(inputPath));
             if (image == null) {
@@ -80,14 +155,8 @@ public class ImageProcessingService {
         
         // 如果是JPEG格式，需要移除透明度
         if ("jpg".equalsIgnoreCase(format) || "jpeg".equalsIgnoreCase(format)) {
-            BufferedImage jpegImage = new BufferedImage(
-                image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
-            Graphics2D g2d = jpegImage.createGraphics();
-            g2d.setColor(Color.WHITE);
-            g2d.fillRect(0, 0, image.getWidth(), image.getHeight());
-            g2d.drawImage(image, 0, 0, null);
-            g2d.dispose();
-            image = jpegImage;
+            flattened = flattenToRgb(image);
+            image = flattened;
         }
         
             boolean success = ImageIO.write(image, format, new File(outputPath));
@@ -99,11 +168,14 @@ public class ImageProcessingService {
         } catch (IOException e) {
             logger.error("转换图片格式失败: " + inputPath, e);
             throw new ValidationException("转换图片格式失败: " + e.getMessage());
+        } finally {
+            releaseImage(flattened);
         }
     }
     
     /**
      * 创建全景图片拼接
+     * 多张图片按顺序环绕排列，接缝（包括首尾接缝）处按配置的重叠比例羽化混合
      */
     public BufferedImage createPanorama(List<BufferedImage> images, int outputWidth, int outputHeight) {
         logger.debug("创建全景图片拼接: {} 张图片 -> {}x{}", images.size(), outputWidth, outputHeight);
@@ -117,32 +189,41 @@ public class ImageProcessingService {
             return resizeImage(images.get(0), outputWidth, outputHeight);
         }
         
-        // 创建全景图片
-        BufferedImage panorama = new BufferedImage(outputWidth, outputHeight, BufferedImage.TYPE_INT_RGB);
-        Graphics2D g2d = panorama.createGraphics();
+        // 相邻图片在接缝处重叠并羽化混合，各图片直接采样到同一输出图片
+        BufferedImage panorama = acquireRgbImage(outputWidth, outputHeight);
+        PanoramaStitcher.stitch(images, panorama, stitchOverlapRatio);
         
-        // 设置高质量渲染
-        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
-        g2d.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
-        
-        // 简单的水平拼接算法
-        int imageWidth = outputWidth / images.size();
-        int x = 0;
+        logger.info("全景图片拼接完成");
+        return panorama;
+    }
+    
+    /**
+     * 创建全景图片拼接，结果写入堆外像素缓冲区
+     * 单张图片同样经过拼接器双线性采样，不生成堆上的缩放图片
+     */
+    public PixelBuffer createPanoramaOffHeap(List<BufferedImage> images, int outputWidth, int outputHeight)
+            throws IOException {
+        logger.debug("创建全景图片拼接（堆外）: {} 张图片 -> {}x{}", images.size(), outputWidth, outputHeight);
         
-        for (BufferedImage image : images) {
-            BufferedImage resizedImage = resizeImage(image, imageWidth, outputHeight);
-            g2d.drawImage(resizedImage, x, 0, null);
-            x += imageWidth;
+        if (images.isEmpty()) {
+            throw new ValidationException("图片列表不能为空");
         }
         
-        g2d.dispose();
+        PixelBuffer panorama = allocatePixelBuffer(outputWidth, outputHeight);
+        try {
+            PanoramaStitcher.stitch(images, panorama, stitchOverlapRatio);
+        } catch (RuntimeException e) {
+            panorama.close();
+            throw e;
+        }
         
-        logger.info("全景图片拼接完成");
+        logger.info("全景图片拼接完成（{}）", panorama.isMapped() ? "内存映射文件" : "直接内存");
         return panorama;
     }
     
     /**
      * 创建球面映射
+     * 坐标映射通过缓存的查找表完成，每次处理只需按表收集像素
      */
     public BufferedImage createSphericalMapping(BufferedImage panorama) {
         logger.debug("创建球面映射: {}x{}", panorama.getWidth(), panorama.getHeight());
@@ -150,50 +231,268 @@ public class ImageProcessingService {
         int width = panorama.getWidth();
         int height = panorama.getHeight();
         
-        BufferedImage sphericalImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        RemapTable table = remapTableCache.getOrBuild(
+            new RemapTableCache.RemapKey(PROJECTION_SPHERICAL, width, height, width, height),
+            () -> buildSphericalRemapTable(width, height));
         
-        // 球面映射算法
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                // 将像素坐标转换为球面坐标
-                double theta = (double) x / width * 2 * Math.PI; // 经度
-                double phi = (double) y / height * Math.PI; // 纬度
-                
-                // 球面坐标转换为笛卡尔坐标
-                double cartX = Math.sin(phi) * Math.cos(theta);
-                double cartY = Math.cos(phi);
-                double cartZ = Math.sin(phi) * Math.sin(theta);
-                
-                // 将笛卡尔坐标映射回图片坐标
-                int sourceX = (int) ((Math.atan2(cartZ, cartX) + Math.PI) / (2 * Math.PI) * width);
-                int sourceY = (int) (Math.acos(cartY) / Math.PI * height);
-                
-                // 边界检查
-                sourceX = Math.max(0, Math.min(width - 1, sourceX));
-                sourceY = Math.max(0, Math.min(height - 1, sourceY));
-                
-                // 复制像素
-                int rgb = panorama.getRGB(sourceX, sourceY);
-                sphericalImage.setRGB(x, y, rgb);
-            }
+        BufferedImage sphericalImage = acquireRgbImage(width, height);
+        table.gather(RasterKernels.rgbPixels(panorama), RasterKernels.rgbData(sphericalImage));
+        
+        logger.info("球面映射完成");
+        return sphericalImage;
+    }
+    
+    /**
+     * 创建球面映射，源和结果都位于堆外像素缓冲区
+     */
+    public PixelBuffer createSphericalMapping(PixelBuffer panorama) throws IOException {
+        logger.debug("创建球面映射（堆外）: {}x{}", panorama.getWidth(), panorama.getHeight());
+        
+        int width = panorama.getWidth();
+        int height = panorama.getHeight();
+        
+        RemapTable table = remapTableCache.getOrBuild(
+            new RemapTableCache.RemapKey(PROJECTION_SPHERICAL, width, height, width, height),
+            () -> buildSphericalRemapTable(width, height));
+        
+        PixelBuffer sphericalImage = allocatePixelBuffer(width, height);
+        try {
+            table.gather(panorama, sphericalImage);
+        } catch (RuntimeException e) {
+            sphericalImage.close();
+            throw e;
         }
         
         logger.info("球面映射完成");
         return sphericalImage;
     }
     
+    /**
+     * 条带流式生成球面映射后的全景图并保存为JPEG
+     * 球面映射的每个目标行只取自全景图的一行，因此按需逐行拼接对应的全景行、按表收集，
+     * 再经有界条带队列交给JPEG编码器逐行读取；全景图和映射结果都不会完整生成
+     */
+    public void saveSphericalJpegStreaming(List<BufferedImage> images, int outputWidth, int outputHeight,
+                                           String outputPath, int quality, boolean progressive,
+                                           int stripHeight, int queueStrips) throws IOException {
+        logger.debug("流式生成全景图: {} 张图片 -> {}x{}, 条带 {} 行", images.size(), outputWidth, outputHeight, stripHeight);
+        
+        if (images.isEmpty()) {
+            throw new ValidationException("图片列表不能为空");
+        }
+        
+        RemapTable table = remapTableCache.getOrBuild(
+            new RemapTableCache.RemapKey(PROJECTION_SPHERICAL, outputWidth, outputHeight, outputWidth, outputHeight),
+            () -> buildSphericalRemapTable(outputWidth, outputHeight));
+        PanoramaStitcher.Sampler sampler = PanoramaStitcher.sampler(images, outputWidth, outputHeight,
+            stitchOverlapRatio);
+        
+        ensureParentDirectory(outputPath);
+        Path path = Paths.get(outputPath);
+        try (StripPipeline pipeline = StripPipeline.start(outputWidth, outputHeight, stripHeight, queueStrips,
+                vrComputePool, (rowStart, rowEnd, target) -> renderSphericalStrip(table, sampler, outputWidth, rowStart, rowEnd, target))) {
+            JpegEncoder.write(pipeline.asImage(), path, quality, progressive);
+        }
+        
+        logger.info("图片保存成功: {} ({} bytes)", outputPath, Files.size(path));
+    }
+    
+    /**
+     * 渲染一个条带：条带内按行分块并行，相邻目标行取自同一全景行时只拼接一次
+     */
+    private static void renderSphericalStrip(RemapTable table, PanoramaStitcher.Sampler sampler, int width,
+                                             int rowStart, int rowEnd, int[] target) {
+        RasterKernels.forEachRowBand(width, rowEnd - rowStart, (bandStart, bandEnd) -> {
+            int[] panoramaRow = new int[width];
+            int renderedRow = -1;
+            for (int i = bandStart; i < bandEnd; i++) {
+                int y = rowStart + i;
+                int sourceRow = table.sourceRowOf(y);
+                if (sourceRow != renderedRow) {
+                    sampler.renderRow(sourceRow, panoramaRow, 0);
+                    renderedRow = sourceRow;
+                }
+                table.gatherRow(y, panoramaRow, target, i * width);
+            }
+        });
+    }
+    
+    /**
+     * 归还resizeImage、createPanorama、createSphericalMapping、optimizeImage返回的中间图片，
+     * 供后续相同尺寸的处理阶段复用；归还后不能再访问该图片。其他来源的图片直接忽略
+     */
+    public void releaseImage(BufferedImage image) {
+        rasterPool.release(image);
+    }
+    
+    private BufferedImage acquireRgbImage(int width, int height) {
+        return rasterPool.acquire(width, height, BufferedImage.TYPE_INT_RGB);
+    }
+    
+    /**
+     * 分配堆外像素缓冲区，临时文件位于缓存目录下（不对外提供访问），缓冲区关闭时删除
+     */
+    public PixelBuffer allocatePixelBuffer(int width, int height) throws IOException {
+        return PixelBuffer.allocate(width, height, scratchDirectory(), offHeapMappedMinBytes);
+    }
+    
+    private Path scratchDirectory() {
+        return Paths.get(cacheDir, "scratch");
+    }
+    
+    /**
+     * 启动时删除上次运行异常退出时遗留的临时文件
+     */
+    @PostConstruct
+    void cleanupScratch() {
+        Path directory = scratchDirectory();
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "pixels_*.raw")) {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            logger.warn("清理像素缓冲区临时文件失败: {} - {}", directory, e.getMessage());
+        }
+    }
+    
+    /**
+     * 构建球面映射查找表
+     * 三角函数按行、按列预先计算，源行号只依赖目标行，因此使用行列布局
+     */
+    RemapTable buildSphericalRemapTable(int width, int height) {
+        // 按列预计算经度的三角函数
+        double[] cosTheta = new double[width];
+        double[] sinTheta = new double[width];
+        for (int x = 0; x < width; x++) {
+            double theta = (double) x / width * 2 * Math.PI; // 经度
+            cosTheta[x] = Math.cos(theta);
+            sinTheta[x] = Math.sin(theta);
+        }
+        
+        // 按行预计算纬度的三角函数及源行偏移
+        double[] sinPhi = new double[height];
+        int[] rowOffsets = new int[height];
+        for (int y = 0; y < height; y++) {
+            double phi = (double) y / height * Math.PI; // 纬度
+            sinPhi[y] = Math.sin(phi);
+            int sourceY = (int) (Math.acos(Math.cos(phi)) / Math.PI * height);
+            rowOffsets[y] = Math.max(0, Math.min(height - 1, sourceY)) * width;
+        }
+        
+        char[] columns = new char[width * height];
+        RasterKernels.forEachRowBand(width, height, (rowStart, rowEnd) -> {
+            for (int y = rowStart; y < rowEnd; y++) {
+                double rowSin = sinPhi[y];
+                int offset = y * width;
+                for (int x = 0; x < width; x++) {
+                    // 球面坐标转换为笛卡尔坐标
+                    double cartX = rowSin * cosTheta[x];
+                    double cartZ = rowSin * sinTheta[x];
+                    
+                    // 将笛卡尔坐标映射回图片坐标
+                    int sourceX = (int) ((Math.atan2(cartZ, cartX) + Math.PI) / (2 * Math.PI) * width);
+                    columns[offset + x] = (char) Math.max(0, Math.min(width - 1, sourceX));
+                }
+            }
+        });
+        
+        return RemapTable.rowColumn(width, height, width, height, rowOffsets, CharBuffer.wrap(columns));
+    }
+    
+    /**
+     * 从等距柱状全景图生成立方体贴图的六个面
+     * 六个面并行渲染，每个面通过缓存的查找表收集像素
+     *
+     * @return 按px、nx、py、ny、pz、nz顺序排列的面图片
+     */
+    public Map<String, BufferedImage> createCubeFaces(BufferedImage panorama, int faceSize) {
+        logger.debug("生成立方体贴图: {}x{} -> {}x{}", panorama.getWidth(), panorama.getHeight(), faceSize, faceSize);
+        
+        if (faceSize <= 0) {
+            throw new ValidationException("立方体面尺寸必须大于0");
+        }
+        
+        int width = panorama.getWidth();
+        int height = panorama.getHeight();
+        int[] source = RasterKernels.rgbPixels(panorama);
+        
+        List<CubeFace> faces = Arrays.asList(CubeFace.values());
+        CancellationToken token = CancellationToken.current();
+        List<BufferedImage> rendered = faces.parallelStream()
+            .map(face -> {
+                try (CancellationToken.Scope scope = token.bind()) {
+                    RemapTable table = remapTableCache.getOrBuild(
+                        new RemapTableCache.RemapKey(PROJECTION_CUBE_PREFIX + face.getKey(), width, height, faceSize, faceSize),
+                        () -> buildCubeFaceRemapTable(face, width, height, faceSize));
+                    BufferedImage faceImage = RasterKernels.newRgbImage(faceSize, faceSize);
+                    table.gather(source, RasterKernels.rgbData(faceImage));
+                    return faceImage;
+                }
+            })
+            .collect(Collectors.toList());
+        
+        Map<String, BufferedImage> result = new LinkedHashMap<>();
+        for (int i = 0; i < faces.size(); i++) {
+            result.put(faces.get(i).getKey(), rendered.get(i));
+        }
+        
+        logger.info("立方体贴图生成完成");
+        return result;
+    }
+    
+    /**
+     * 构建立方体面查找表
+     * 面上每个像素中心对应一个视线方向，换算为经纬度后取等距柱状图上最近的像素
+     */
+    RemapTable buildCubeFaceRemapTable(CubeFace face, int sourceWidth, int sourceHeight, int faceSize) {
+        int[] indices = new int[faceSize * faceSize];
+        
+        RasterKernels.forEachRowBand(faceSize, faceSize, (rowStart, rowEnd) -> {
+            double[] direction = new double[3];
+            for (int j = rowStart; j < rowEnd; j++) {
+                double b = 2.0 * (j + 0.5) / faceSize - 1.0;
+                for (int i = 0; i < faceSize; i++) {
+                    double a = 2.0 * (i + 0.5) / faceSize - 1.0;
+                    face.direction(a, b, direction);
+                    
+                    double dx = direction[0];
+                    double dy = direction[1];
+                    double dz = direction[2];
+                    double length = Math.sqrt(dx * dx + dy * dy + dz * dz);
+                    
+                    double longitude = Math.atan2(dx, dz); // 经度，正前方为0
+                    double latitude = Math.asin(dy / length); // 纬度，向上为正
+                    
+                    int sourceX = (int) ((longitude / (2 * Math.PI) + 0.5) * sourceWidth);
+                    int sourceY = (int) ((0.5 - latitude / Math.PI) * sourceHeight);
+                    sourceX = Math.max(0, Math.min(sourceWidth - 1, sourceX));
+                    sourceY = Math.max(0, Math.min(sourceHeight - 1, sourceY));
+                    
+                    indices[j * faceSize + i] = sourceY * sourceWidth + sourceX;
+                }
+            }
+        });
+        
+        return RemapTable.full(sourceWidth, sourceHeight, faceSize, faceSize, IntBuffer.wrap(indices));
+    }
+    
     /**
      * 保存图片到文件
+     * JPEG格式使用配置的默认压缩质量
      */
     public void saveImage(BufferedImage image, String outputPath, String format) throws IOException {
+        if ("jpg".equalsIgnoreCase(format) || "jpeg".equalsIgnoreCase(format)) {
+            saveJpeg(image, outputPath, defaultJpegQuality, defaultJpegProgressive);
+            return;
+        }
+        
         logger.debug("保存图片: {} ({})", outputPath, format);
         
         // 确保输出目录存在
-        Path path = Paths.get(outputPath);
-        File parentDir = path.getParent().toFile();
-        if (!parentDir.exists()) {
-            parentDir.mkdirs();
-        }
+        ensureParentDirectory(outputPath);
         
         boolean success = ImageIO.write(image, format, new File(outputPath));
         if (!success) {
@@ -203,24 +502,107 @@ public class ImageProcessingService {
         logger.info("图片保存成功: {}", outputPath);
     }
     
+    /**
+     * 按指定压缩质量保存JPEG图片
+     * 含alpha通道的图片先合成到白色背景上
+     *
+     * @param quality     压缩质量，1-100
+     * @param progressive 是否使用渐进式扫描
+     */
+    public void saveJpeg(BufferedImage image, String outputPath, int quality, boolean progressive) throws IOException {
+        logger.debug("保存JPEG图片: {} (quality={}, progressive={})", outputPath, quality, progressive);
+        
+        ensureParentDirectory(outputPath);
+        
+        BufferedImage flattened = image.getColorModel().hasAlpha() ? flattenToRgb(image) : null;
+        Path path = Paths.get(outputPath);
+        try {
+            JpegEncoder.write(flattened != null ? flattened : image, path, quality, progressive);
+        } finally {
+            releaseImage(flattened);
+        }
+        
+        logger.info("图片保存成功: {} ({} bytes)", outputPath, Files.size(path));
+    }
+    
+    private static void ensureParentDirectory(String outputPath) {
+        Path parent = Paths.get(outputPath).toAbsolutePath().getParent();
+        if (parent != null) {
+            File parentDir = parent.toFile();
+            if (!parentDir.exists()) {
+                parentDir.mkdirs();
+            }
+        }
+    }
+    
+    /**
+     * 按alpha将图片合成到白色背景上，结果为TYPE_INT_RGB
+     */
+    private BufferedImage flattenToRgb(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        BufferedImage rgbImage = acquireRgbImage(width, height);
+        int[] target = RasterKernels.rgbData(rgbImage);
+        RasterKernels.forEachRowBand(width, height, (rowStart, rowEnd) -> {
+            int[] rows = image.getRGB(0, rowStart, width, rowEnd - rowStart, null, 0, width);
+            PixelKernels.flattenAlpha(rows, 0, target, rowStart * width, rows.length, 0xFFFFFF);
+        });
+        return rgbImage;
+    }
+    
     /**
      * 获取图片信息
+     * 只读取文件头，不解码像素
      */
     public ImageInfo getImageInfo(String imagePath) throws IOException {
         try {
-            BufferedImage image = ImageIO.read(new File(imagePath));
-            if (image == null) {
-                throw new ValidationException("无法读取图片文件: " + imagePath);
-            }
-            
-            return new ImageInfo(image.getWidth(), image.getHeight(), 
-                image.getColorModel().hasAlpha(), new File(imagePath).length());
+            File file = new File(imagePath);
+            ImageHeaderProbe.ImageHeader header = ImageHeaderProbe.probe(file);
+            return new ImageInfo(header.getWidth(), header.getHeight(), header.hasAlpha(), file.length());
         } catch (IOException e) {
             logger.error("获取图片信息失败: " + imagePath, e);
             throw new ValidationException("获取图片信息失败: " + e.getMessage());
         }
     }
     
+    /**
+     * 立方体贴图的面
+     * 坐标系：+X向右，+Y向上，+Z为全景图中心的正前方；面内坐标a向右、b向下，取值[-1, 1]
+     */
+    public enum CubeFace {
+        PX("px"),
+        NX("nx"),
+        PY("py"),
+        NY("ny"),
+        PZ("pz"),
+        NZ("nz");
+        
+        private final String key;
+        
+        CubeFace(String key) {
+            this.key = key;
+        }
+        
+        public String getKey() {
+            return key;
+        }
+        
+        /**
+         * 计算面内坐标(a, b)对应的视线方向
+         */
+        void direction(double a, double b, double[] out) {
+            switch (this) {
+                case PX -> { out[0] = 1; out[1] = -b; out[2] = -a; }
+                case NX -> { out[0] = -1; out[1] = -b; out[2] = a; }
+                case PY -> { out[0] = a; out[1] = 1; out[2] = b; }
+                case NY -> { out[0] = a; out[1] = -1; out[2] = -b; }
+                case PZ -> { out[0] = a; out[1] = -b; out[2] = 1; }
+                case NZ -> { out[0] = -a; out[1] = -b; out[2] = -1; }
+                default -> throw new IllegalStateException("Unknown cube face: " + this);
+            }
+        }
+    }
+    
     /**
      * 图片信息类
      */
@@ -0,0 +1,206 @@
+package com.happyvr.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 中间图片栅格池
+ * 按(宽, 高, 类型)复用各处理阶段的整帧中间图片，阶段结束时归还，下一个相同尺寸的任务直接租用，
+ * 减少多任务并发时大数组分配带来的GC压力。空闲图片按字节数上限做LRU淘汰。
+ * 租出的图片保留上一次使用时的像素，调用方必须覆盖全部像素；未归还的图片不被池持有，可正常被GC回收
+ */
+@Service
+public class RasterPool implements MeterBinder {
+    
+    private static final Logger logger = LoggerFactory.getLogger(RasterPool.class);
+    
+    @Value("${file.upload.vr.raster-pool.max-retained-bytes:268435456}")
+    private long maxRetainedBytes = 256L * 1024 * 1024; // 256MB
+    
+    // 按尺寸和类型分组的空闲图片，每组内最近归还的在后
+    private final Map<PoolKey, ArrayDeque<BufferedImage>> idle = new HashMap<>();
+    
+    // 全部空闲图片按归还顺序排列，最久未使用的在前
+    private final LinkedHashMap<BufferedImage, PoolKey> idleOrder = new LinkedHashMap<>();
+    private long retainedBytes;
+    
+    // 已租出的图片，BufferedImage按对象标识比较，弱引用避免未归还的图片无法回收
+    private final Set<BufferedImage> leased = Collections.newSetFromMap(new WeakHashMap<>());
+    
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+    
+    /**
+     * 租用指定尺寸和类型的图片，池中没有时新建
+     */
+    public BufferedImage acquire(int width, int height, int imageType) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("图片尺寸必须大于0");
+        }
+        PoolKey key = new PoolKey(width, height, imageType);
+        synchronized (this) {
+            ArrayDeque<BufferedImage> images = idle.get(key);
+            BufferedImage image = images != null ? images.pollLast() : null;
+            if (image != null) {
+                if (images.isEmpty()) {
+                    idle.remove(key);
+                }
+                idleOrder.remove(image);
+                retainedBytes -= DecodedImageCache.sizeInBytes(image);
+                leased.add(image);
+                hitCount.incrementAndGet();
+                return image;
+            }
+        }
+        
+        missCount.incrementAndGet();
+        BufferedImage image = new BufferedImage(width, height, imageType);
+        synchronized (this) {
+            leased.add(image);
+        }
+        return image;
+    }
+    
+    /**
+     * 归还租用的图片，归还后调用方不能再访问该图片。
+     * 不是从池中租出的图片（如解码缓存中的共享图片）和重复归还直接忽略
+     */
+    public synchronized void release(BufferedImage image) {
+        if (image == null || !leased.remove(image)) {
+            return;
+        }
+        long size = DecodedImageCache.sizeInBytes(image);
+        if (size > maxRetainedBytes) {
+            return;
+        }
+        
+        PoolKey key = new PoolKey(image.getWidth(), image.getHeight(), image.getType());
+        idle.computeIfAbsent(key, k -> new ArrayDeque<>()).addLast(image);
+        idleOrder.put(image, key);
+        retainedBytes += size;
+        
+        Iterator<Map.Entry<BufferedImage, PoolKey>> iterator = idleOrder.entrySet().iterator();
+        while (retainedBytes > maxRetainedBytes && iterator.hasNext()) {
+            Map.Entry<BufferedImage, PoolKey> eldest = iterator.next();
+            ArrayDeque<BufferedImage> images = idle.get(eldest.getValue());
+            images.remove(eldest.getKey());
+            if (images.isEmpty()) {
+                idle.remove(eldest.getValue());
+            }
+            retainedBytes -= DecodedImageCache.sizeInBytes(eldest.getKey());
+            iterator.remove();
+            evictionCount.incrementAndGet();
+            logger.debug("淘汰空闲图片: {}", eldest.getValue());
+        }
+    }
+    
+    /**
+     * 清空空闲图片
+     */
+    public synchronized void clear() {
+        idle.clear();
+        idleOrder.clear();
+        retainedBytes = 0;
+    }
+    
+    public synchronized long getRetainedBytes() { return retainedBytes; }
+    public synchronized int getIdleCount() { return idleOrder.size(); }
+    public synchronized int getLeasedCount() { return leased.size(); }
+    public long getMaxRetainedBytes() { return maxRetainedBytes; }
+    public long getHitCount() { return hitCount.get(); }
+    public long getMissCount() { return missCount.get(); }
+    public long getEvictionCount() { return evictionCount.get(); }
+    
+    /**
+     * 租用命中率，没有租用记录时为0
+     */
+    public double getHitRate() {
+        long hits = hitCount.get();
+        long total = hits + missCount.get();
+        return total == 0 ? 0.0 : (double) hits / total;
+    }
+    
+    /**
+     * 注册到actuator的metrics端点
+     */
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("happyvr.raster.pool.requests", hitCount, AtomicLong::get)
+            .tag("result", "hit")
+            .description("栅格池租用次数")
+            .register(registry);
+        FunctionCounter.builder("happyvr.raster.pool.requests", missCount, AtomicLong::get)
+            .tag("result", "miss")
+            .description("栅格池租用次数")
+            .register(registry);
+        FunctionCounter.builder("happyvr.raster.pool.evictions", evictionCount, AtomicLong::get)
+            .description("栅格池淘汰的空闲图片数")
+            .register(registry);
+        Gauge.builder("happyvr.raster.pool.hit.ratio", this, RasterPool::getHitRate)
+            .description("栅格池租用命中率")
+            .register(registry);
+        Gauge.builder("happyvr.raster.pool.retained", this, RasterPool::getRetainedBytes)
+            .baseUnit("bytes")
+            .description("栅格池空闲图片占用的字节数")
+            .register(registry);
+        Gauge.builder("happyvr.raster.pool.leased", this, RasterPool::getLeasedCount)
+            .description("已租出未归还的图片数")
+            .register(registry);
+    }
+    
+    /**
+     * 栅格池分组键
+     */
+    private static final class PoolKey {
+        private final int width;
+        private final int height;
+        private final int imageType;
+        
+        PoolKey(int width, int height, int imageType) {
+            this.width = width;
+            this.height = height;
+            this.imageType = imageType;
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof PoolKey)) {
+                return false;
+            }
+            PoolKey other = (PoolKey) o;
+            return width == other.width && height == other.height && imageType == other.imageType;
+        }
+        
+        @Override
+        public int hashCode() {
+            return Objects.hash(width, height, imageType);
+        }
+        
+        @Override
+        public String toString() {
+            return width + "x" + height + " type=" + imageType;
+        }
+    }
+}
@@ -0,0 +1,375 @@
+package com.happyvr.service;
+
+import com.happyvr.util.CancellationToken;
+import com.happyvr.util.RemapTable;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 重映射查找表缓存
+ * 按(投影, 源尺寸, 目标尺寸)缓存查找表，按字节数做LRU淘汰，可选写入缓存目录下的磁盘文件并通过内存映射加载
+ */
+@Service
+public class RemapTableCache implements MeterBinder {
+    
+    private static final Logger logger = LoggerFactory.getLogger(RemapTableCache.class);
+    
+    private static final int FILE_MAGIC = 0x52454D50; // "REMP"
+    private static final int FILE_VERSION = 1;
+    private static final int HEADER_INTS = 8;
+    private static final long HEADER_BYTES = HEADER_INTS * Integer.BYTES;
+    
+    // 本地缓存目录，与像素缓冲区临时文件共用，不位于对外提供访问的上传目录下
+    @Value("${file.upload.cache-dir:${java.io.tmpdir}/happyvr}")
+    private String cacheDir = Paths.get(System.getProperty("java.io.tmpdir"), "happyvr").toString();
+    
+    @Value("${file.upload.vr.remap-cache.max-bytes:268435456}")
+    private long maxBytes = 256L * 1024 * 1024; // 256MB
+    
+    @Value("${file.upload.vr.remap-cache.disk-spill:false}")
+    private boolean diskSpillEnabled = false;
+    
+    // 按访问顺序排列，最久未使用的在前
+    private final LinkedHashMap<RemapKey, RemapTable> tables = new LinkedHashMap<>(16, 0.75f, true);
+    private long currentBytes;
+    
+    // 正在构建的查找表，避免相同的表被并发重复构建
+    private final ConcurrentHashMap<RemapKey, CompletableFuture<RemapTable>> building = new ConcurrentHashMap<>();
+    
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong diskLoadCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+    
+    /**
+     * 获取查找表，不存在时依次尝试磁盘文件和构建函数
+     */
+    public RemapTable getOrBuild(RemapKey key, Supplier<RemapTable> builder) {
+        RemapTable table = getIfPresent(key);
+        if (table != null) {
+            hitCount.incrementAndGet();
+            return table;
+        }
+        missCount.incrementAndGet();
+        
+        CompletableFuture<RemapTable> future = new CompletableFuture<>();
+        CompletableFuture<RemapTable> existing = building.putIfAbsent(key, future);
+        if (existing != null) {
+            try {
+                return await(existing);
+            } catch (CancellationException e) {
+                // 构建查找表的任务被取消，当前任务未取消时自己重新构建
+                CancellationToken.checkCurrent();
+                return getOrBuild(key, builder);
+            }
+        }
+        
+        try {
+            table = loadFromDisk(key);
+            if (table == null) {
+                long start = System.currentTimeMillis();
+                table = builder.get();
+                validate(key, table);
+                logger.debug("构建查找表: {}, {}ms, {} bytes", key, System.currentTimeMillis() - start, table.sizeInBytes());
+                writeToDisk(key, table);
+            }
+            put(key, table);
+            future.complete(table);
+            return table;
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            building.remove(key, future);
+        }
+    }
+    
+    /**
+     * 查询内存中的查找表
+     */
+    public synchronized RemapTable getIfPresent(RemapKey key) {
+        return tables.get(key);
+    }
+    
+    /**
+     * 清空内存中的查找表
+     */
+    public synchronized void clear() {
+        tables.clear();
+        currentBytes = 0;
+    }
+    
+    public synchronized long getCurrentBytes() { return currentBytes; }
+    public synchronized int getSize() { return tables.size(); }
+    public long getMaxBytes() { return maxBytes; }
+    public long getHitCount() { return hitCount.get(); }
+    public long getMissCount() { return missCount.get(); }
+    public long getDiskLoadCount() { return diskLoadCount.get(); }
+    public long getEvictionCount() { return evictionCount.get(); }
+    
+    /**
+     * 注册到actuator的metrics端点
+     */
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("happyvr.remap.cache.requests", hitCount, AtomicLong::get)
+            .tag("result", "hit")
+            .description("查找表缓存查询次数")
+            .register(registry);
+        FunctionCounter.builder("happyvr.remap.cache.requests", missCount, AtomicLong::get)
+            .tag("result", "miss")
+            .description("查找表缓存查询次数")
+            .register(registry);
+        FunctionCounter.builder("happyvr.remap.cache.disk.loads", diskLoadCount, AtomicLong::get)
+            .description("从磁盘文件加载的查找表数")
+            .register(registry);
+        FunctionCounter.builder("happyvr.remap.cache.evictions", evictionCount, AtomicLong::get)
+            .description("从内存中淘汰的查找表数")
+            .register(registry);
+        Gauge.builder("happyvr.remap.cache.size", this, RemapTableCache::getSize)
+            .description("内存中的查找表数")
+            .register(registry);
+        Gauge.builder("happyvr.remap.cache.bytes", this, RemapTableCache::getCurrentBytes)
+            .baseUnit("bytes")
+            .description("内存中查找表占用的字节数")
+            .register(registry);
+    }
+        
+    private synchronized void put(RemapKey key, RemapTable table) {
+        long size = table.sizeInBytes();
+        if (size > maxBytes) {
+            logger.debug("查找表超过缓存上限，不保留在内存中: {}", key);
+            return;
+        }
+        RemapTable previous = tables.put(key, table);
+        if (previous != null) {
+            currentBytes -= previous.sizeInBytes();
+        }
+        currentBytes += size;
+        
+        Iterator<Map.Entry<RemapKey, RemapTable>> iterator = tables.entrySet().iterator();
+        while (currentBytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<RemapKey, RemapTable> eldest = iterator.next();
+            if (eldest.getKey().equals(key)) {
+                continue;
+            }
+            currentBytes -= eldest.getValue().sizeInBytes();
+            iterator.remove();
+            evictionCount.incrementAndGet();
+            logger.debug("淘汰查找表: {}", eldest.getKey());
+        }
+    }
+    
+    private static RemapTable await(CompletableFuture<RemapTable> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+    
+    private static void validate(RemapKey key, RemapTable table) {
+        if (table.getSourceWidth() != key.getSourceWidth() || table.getSourceHeight() != key.getSourceHeight()
+                || table.getWidth() != key.getWidth() || table.getHeight() != key.getHeight()) {
+            throw new IllegalStateException("查找表尺寸与缓存键不一致: " + key);
+        }
+    }
+    
+    /**
+     * 查找表在磁盘上的存储路径
+     */
+    Path resolveSpillPath(RemapKey key) {
+        return Paths.get(cacheDir, "remap", key.toFileName());
+    }
+    
+    /**
+     * 从磁盘加载查找表，表体通过内存映射访问
+     */
+    private RemapTable loadFromDisk(RemapKey key) {
+        if (!diskSpillEnabled) {
+            return null;
+        }
+        Path path = resolveSpillPath(key);
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+        
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            IntBuffer header = buffer.slice(0, (int) HEADER_BYTES).asIntBuffer();
+            if (header.get(0) != FILE_MAGIC || header.get(1) != FILE_VERSION
+                    || header.get(3) != key.getSourceWidth() || header.get(4) != key.getSourceHeight()
+                    || header.get(5) != key.getWidth() || header.get(6) != key.getHeight()) {
+                throw new IOException("查找表文件头不匹配");
+            }
+            
+            RemapTable.Layout layout = RemapTable.Layout.fromCode(header.get(2));
+            int pixels = key.getWidth() * key.getHeight();
+            RemapTable table;
+            if (layout == RemapTable.Layout.ROW_COLUMN) {
+                long rowBytes = (long) key.getHeight() * Integer.BYTES;
+                checkLength(channel, HEADER_BYTES + rowBytes + (long) pixels * Character.BYTES);
+                int[] rowOffsets = new int[key.getHeight()];
+                buffer.slice((int) HEADER_BYTES, (int) rowBytes).asIntBuffer().get(rowOffsets);
+                CharBuffer columns = buffer.slice((int) (HEADER_BYTES + rowBytes), pixels * Character.BYTES)
+                    .asCharBuffer();
+                table = RemapTable.rowColumn(key.getSourceWidth(), key.getSourceHeight(),
+                    key.getWidth(), key.getHeight(), rowOffsets, columns);
+            } else {
+                checkLength(channel, HEADER_BYTES + (long) pixels * Integer.BYTES);
+                IntBuffer indices = buffer.slice((int) HEADER_BYTES, pixels * Integer.BYTES).asIntBuffer();
+                table = RemapTable.full(key.getSourceWidth(), key.getSourceHeight(),
+                    key.getWidth(), key.getHeight(), indices);
+            }
+            
+            diskLoadCount.incrementAndGet();
+            logger.debug("从磁盘加载查找表: {}", path);
+            return table;
+        } catch (IOException | RuntimeException e) {
+            logger.warn("查找表文件无效，将重新构建: {} - {}", path, e.getMessage());
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException ignored) {
+                // 删除失败时下次写入会覆盖
+            }
+            return null;
+        }
+    }
+    
+    private static void checkLength(FileChannel channel, long expected) throws IOException {
+        if (channel.size() != expected) {
+            throw new IOException("查找表文件长度不匹配");
+        }
+    }
+    
+    /**
+     * 将查找表写入磁盘，先写临时文件再原子替换
+     */
+    private void writeToDisk(RemapKey key, RemapTable table) {
+        if (!diskSpillEnabled) {
+            return;
+        }
+        Path path = resolveSpillPath(key);
+        Path tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+        
+        try {
+            Files.createDirectories(path.getParent());
+            long bodyBytes = table.getLayout() == RemapTable.Layout.ROW_COLUMN
+                ? (long) table.getHeight() * Integer.BYTES + (long) table.getWidth() * table.getHeight() * Character.BYTES
+                : (long) table.getWidth() * table.getHeight() * Integer.BYTES;
+            
+            try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + bodyBytes);
+                buffer.putInt(FILE_MAGIC)
+                    .putInt(FILE_VERSION)
+                    .putInt(table.getLayout().getCode())
+                    .putInt(table.getSourceWidth())
+                    .putInt(table.getSourceHeight())
+                    .putInt(table.getWidth())
+                    .putInt(table.getHeight())
+                    .putInt(0);
+                if (table.getLayout() == RemapTable.Layout.ROW_COLUMN) {
+                    buffer.asIntBuffer().put(table.getRowOffsets());
+                    buffer.position(buffer.position() + table.getHeight() * Integer.BYTES);
+                    buffer.asCharBuffer().put(table.getColumns());
+                } else {
+                    buffer.asIntBuffer().put(table.getIndices());
+                }
+                buffer.force();
+            }
+            Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            logger.debug("查找表已写入磁盘: {}", path);
+        } catch (IOException | RuntimeException e) {
+            logger.warn("写入查找表文件失败: {} - {}", path, e.getMessage());
+            try {
+                Files.deleteIfExists(tempPath);
+            } catch (IOException ignored) {
+                // 忽略清理失败
+            }
+        }
+    }
+    
+    /**
+     * 查找表缓存键
+     */
+    public static final class RemapKey {
+        private final String projection;
+        private final int sourceWidth;
+        private final int sourceHeight;
+        private final int width;
+        private final int height;
+        
+        public RemapKey(String projection, int sourceWidth, int sourceHeight, int width, int height) {
+            this.projection = Objects.requireNonNull(projection);
+            this.sourceWidth = sourceWidth;
+            this.sourceHeight = sourceHeight;
+            this.width = width;
+            this.height = height;
+        }
+        
+        public String getProjection() { return projection; }
+        public int getSourceWidth() { return sourceWidth; }
+        public int getSourceHeight() { return sourceHeight; }
+        public int getWidth() { return width; }
+        public int getHeight() { return height; }
+        
+        String toFileName() {
+            return projection.replaceAll("[^A-Za-z0-9_-]", "_")
+                + "_" + sourceWidth + "x" + sourceHeight + "_" + width + "x" + height + ".remap";
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof RemapKey)) {
+                return false;
+            }
+            RemapKey other = (RemapKey) o;
+            return sourceWidth == other.sourceWidth && sourceHeight == other.sourceHeight
+                && width == other.width && height == other.height && projection.equals(other.projection);
+        }
+        
+        @Override
+        public int hashCode() {
+            return Objects.hash(projection, sourceWidth, sourceHeight, width, height);
+        }
+        
+        @Override
+        public String toString() {
+            return projection + "[" + sourceWidth + "x" + sourceHeight + " -> " + width + "x" + height + "]";
+        }
+    }
+}
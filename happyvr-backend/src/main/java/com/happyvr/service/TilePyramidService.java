@@ -0,0 +1,183 @@
+package com.happyvr.service;
+
+import com.happyvr.exception.ValidationException;
+import com.happyvr.util.CancellationToken;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 多分辨率瓦片金字塔服务
+ * 将全景图（或立方体贴图的每个面）切分为多级固定尺寸的瓦片，客户端可按视野和分辨率按需加载
+ */
+@Service
+public class TilePyramidService {
+    
+    private static final Logger logger = LoggerFactory.getLogger(TilePyramidService.class);
+    
+    /**
+     * 瓦片URL模板中的占位符
+     */
+    public static final String URL_TEMPLATE_SUFFIX = "/{face}/{level}/{y}_{x}.jpg";
+    
+    /**
+     * 瓦片尺寸范围，过小的瓦片会使瓦片文件数按平方增长
+     */
+    public static final int MIN_TILE_SIZE = 64;
+    public static final int MAX_TILE_SIZE = 2048;
+    
+    @Autowired
+    private ImageProcessingService imageProcessingService;
+    
+    /**
+     * 生成瓦片金字塔
+     * 第0级为最低分辨率（宽高均不超过瓦片尺寸），逐级放大一倍，最高一级为原图分辨率
+     *
+     * @param sources   面标识到源图片的映射，所有源图片尺寸必须一致
+     * @param outputDir 瓦片输出目录
+     * @param baseUrl   瓦片访问URL前缀
+     * @param tileSize  瓦片尺寸
+     * @param quality   瓦片JPEG压缩质量，1-100
+     * @return 瓦片清单，写入场景数据供客户端使用
+     */
+    public Map<String, Object> createPyramid(Map<String, BufferedImage> sources, String outputDir,
+                                             String baseUrl, int tileSize, int quality) {
+        if (sources == null || sources.isEmpty()) {
+            throw new ValidationException("瓦片源图片不能为空");
+        }
+        if (tileSize < MIN_TILE_SIZE || tileSize > MAX_TILE_SIZE) {
+            throw new ValidationException("瓦片尺寸必须在" + MIN_TILE_SIZE + "到" + MAX_TILE_SIZE + "之间");
+        }
+        
+        BufferedImage first = sources.values().iterator().next();
+        int width = first.getWidth();
+        int height = first.getHeight();
+        for (BufferedImage source : sources.values()) {
+            if (source.getWidth() != width || source.getHeight() != height) {
+                throw new ValidationException("瓦片源图片尺寸不一致");
+            }
+        }
+        
+        List<int[]> levelSizes = computeLevelSizes(width, height, tileSize);
+        logger.debug("生成瓦片金字塔: {} 个面, {} 级, 瓦片尺寸 {}", sources.size(), levelSizes.size(), tileSize);
+        
+        // 先逐级缩小生成每个面的各级图片，再统一并行编码全部瓦片
+        List<Tile> tiles = new ArrayList<>();
+        List<BufferedImage> levelImages = new ArrayList<>();
+        try {
+            for (Map.Entry<String, BufferedImage> entry : sources.entrySet()) {
+                BufferedImage levelImage = entry.getValue();
+                for (int level = levelSizes.size() - 1; level >= 0; level--) {
+                    int[] size = levelSizes.get(level);
+                    if (levelImage.getWidth() != size[0] || levelImage.getHeight() != size[1]) {
+                        levelImage = imageProcessingService.resizeImage(levelImage, size[0], size[1]);
+                        levelImages.add(levelImage);
+                    }
+                    addTiles(tiles, entry.getKey(), level, levelImage, tileSize);
+                }
+            }
+            
+            // 瓦片在公共线程池上编码，逐个检查提交线程的取消令牌
+            CancellationToken token = CancellationToken.current();
+            tiles.parallelStream().forEach(tile -> {
+                token.throwIfCancelled();
+                String tilePath = outputDir + File.separator + tile.face + File.separator + tile.level
+                    + File.separator + tile.row + "_" + tile.column + ".jpg";
+                try {
+                    // 瓦片尺寸小，渐进式扫描没有意义
+                    imageProcessingService.saveJpeg(tile.image, tilePath, quality, false);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } finally {
+            // 瓦片是各级图片的子图，全部编码完成后才能归还
+            levelImages.forEach(imageProcessingService::releaseImage);
+        }
+        
+        logger.info("瓦片金字塔生成完成: {} 个瓦片", tiles.size());
+        return createManifest(sources, levelSizes, baseUrl, tileSize);
+    }
+    
+    /**
+     * 计算各级尺寸，第0级最小
+     */
+    static List<int[]> computeLevelSizes(int width, int height, int tileSize) {
+        List<int[]> sizes = new ArrayList<>();
+        int levelWidth = width;
+        int levelHeight = height;
+        sizes.add(0, new int[]{levelWidth, levelHeight});
+        while (levelWidth > tileSize || levelHeight > tileSize) {
+            levelWidth = Math.max(1, (levelWidth + 1) / 2);
+            levelHeight = Math.max(1, (levelHeight + 1) / 2);
+            sizes.add(0, new int[]{levelWidth, levelHeight});
+        }
+        return sizes;
+    }
+    
+    private static void addTiles(List<Tile> tiles, String face, int level, BufferedImage image, int tileSize) {
+        int columns = (image.getWidth() + tileSize - 1) / tileSize;
+        int rows = (image.getHeight() + tileSize - 1) / tileSize;
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                int x = column * tileSize;
+                int y = row * tileSize;
+                int tileWidth = Math.min(tileSize, image.getWidth() - x);
+                int tileHeight = Math.min(tileSize, image.getHeight() - y);
+                tiles.add(new Tile(face, level, row, column, image.getSubimage(x, y, tileWidth, tileHeight)));
+            }
+        }
+    }
+    
+    private static Map<String, Object> createManifest(Map<String, BufferedImage> sources, List<int[]> levelSizes,
+                                                      String baseUrl, int tileSize) {
+        List<Map<String, Object>> levels = new ArrayList<>();
+        for (int level = 0; level < levelSizes.size(); level++) {
+            int[] size = levelSizes.get(level);
+            Map<String, Object> levelInfo = new LinkedHashMap<>();
+            levelInfo.put("level", level);
+            levelInfo.put("width", size[0]);
+            levelInfo.put("height", size[1]);
+            levelInfo.put("columns", (size[0] + tileSize - 1) / tileSize);
+            levelInfo.put("rows", (size[1] + tileSize - 1) / tileSize);
+            levels.add(levelInfo);
+        }
+        
+        Map<String, Object> manifest = new LinkedHashMap<>();
+        manifest.put("tileSize", tileSize);
+        manifest.put("format", "jpg");
+        manifest.put("faces", new ArrayList<>(sources.keySet()));
+        manifest.put("levels", levels);
+        manifest.put("urlTemplate", baseUrl + URL_TEMPLATE_SUFFIX);
+        return manifest;
+    }
+    
+    /**
+     * 待编码的瓦片
+     */
+    private static class Tile {
+        private final String face;
+        private final int level;
+        private final int row;
+        private final int column;
+        private final BufferedImage image;
+        
+        Tile(String face, int level, int row, int column, BufferedImage image) {
+            this.face = face;
+            this.level = level;
+            this.row = row;
+            this.column = column;
+            this.image = image;
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package com.happyvr.service;
+
+import com.happyvr.dto.vr.VRProcessingRequest;
+import com.happyvr.entity.VrJob;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * VR处理任务公平调度器
+ * 决定待执行任务的认领顺序：优先级之间按权重轮询（交互提交优先，批量任务不会饿死），
+ * 同一优先级内每个用户一个子队列，按赤字轮询（DRR）分配，任务成本为输出像素的百万像素数，
+ * 用户每轮获得固定额度，使各用户得到的处理量大致相同，与提交的任务数无关；
+ * 执行中任务数达到单用户并发上限的用户本次跳过。
+ * 赤字和轮询位置保存在本实例内存中，多实例部署时各实例分别近似公平
+ */
+@Service
+public class VRJobScheduler {
+    
+    /**
+     * 支持的优先级
+     */
+    static final List<String> PRIORITIES = Arrays.asList(VrJob.PRIORITY_INTERACTIVE, VrJob.PRIORITY_BULK);
+    
+    private static final Long ANONYMOUS_USER = 0L;
+    
+    @Value("${file.upload.vr.jobs.interactive-weight:4}")
+    private int interactiveWeight = 4;
+    
+    @Value("${file.upload.vr.jobs.bulk-weight:1}")
+    private int bulkWeight = 1;
+    
+    // 每个用户每轮获得的额度（百万像素），默认约两张4096x2048输出
+    @Value("${file.upload.vr.jobs.quantum-megapixels:16}")
+    private double quantumMegapixels = 16;
+    
+    // 单个用户同时执行的任务数上限（全部实例合计），0表示不限制
+    @Value("${file.upload.vr.jobs.per-user-concurrency:2}")
+    private int perUserConcurrency = 2;
+    
+    private final State state = new State();
+    
+    /**
+     * 从待执行任务中按调度顺序选出最多limit个任务，并更新赤字和轮询位置
+     *
+     * @param pending        按提交顺序排列的待执行任务
+     * @param runningByUser  各用户执行中的任务数
+     */
+    public synchronized List<VrJob> select(List<VrJob> pending, Map<Long, Long> runningByUser, int limit) {
+        return schedule(state, pending, runningByUser, limit);
+    }
+    
+    /**
+     * 不考虑并发上限时全部待执行任务的预计调度顺序，不改变调度状态
+     * 只在复制调度状态时持有锁，排序不阻塞认领
+     */
+    public List<VrJob> order(List<VrJob> pending) {
+        State snapshot;
+        synchronized (this) {
+            snapshot = state.copy();
+        }
+        return schedule(snapshot, pending, null, pending.size());
+    }
+    
+    private List<VrJob> schedule(State state, List<VrJob> pending, Map<Long, Long> runningByUser, int limit) {
+        if (limit <= 0 || pending.isEmpty()) {
+            return Collections.emptyList();
+        }
+        
+        // 按优先级和用户分组，用户按ID排列构成轮询环
+        Map<String, TreeMap<Long, ArrayDeque<VrJob>>> queues = new HashMap<>();
+        for (VrJob job : pending) {
+            queues.computeIfAbsent(priorityOf(job), p -> new TreeMap<>())
+                .computeIfAbsent(userOf(job), u -> new ArrayDeque<>())
+                .addLast(job);
+        }
+        Map<Long, Long> active = new HashMap<>();
+        if (runningByUser != null) {
+            runningByUser.forEach((user, count) -> active.put(user == null ? ANONYMOUS_USER : user, count));
+        }
+        
+        List<VrJob> selected = new ArrayList<>();
+        List<String> schedule = weightedSchedule();
+        int idleSlots = 0;
+        // 连续一整轮权重表都没有选出任务时结束
+        while (selected.size() < limit && idleSlots < schedule.size()) {
+            String priority = schedule.get(state.scheduleCursor % schedule.size());
+            state.scheduleCursor = (state.scheduleCursor + 1) % schedule.size();
+            VrJob job = pickOne(state, priority, queues.get(priority), active, runningByUser != null);
+            if (job == null) {
+                idleSlots++;
+                continue;
+            }
+            idleSlots = 0;
+            selected.add(job);
+            active.merge(userOf(job), 1L, Long::sum);
+        }
+        return selected;
+    }
+    
+    /**
+     * 在一个优先级内按赤字轮询选出一个任务，没有可选任务时返回null
+     */
+    private VrJob pickOne(State state, String priority, TreeMap<Long, ArrayDeque<VrJob>> users,
+                          Map<Long, Long> active, boolean capped) {
+        if (users == null) {
+            return null;
+        }
+        List<Long> ring = new ArrayList<>();
+        for (Map.Entry<Long, ArrayDeque<VrJob>> entry : users.entrySet()) {
+            if (!entry.getValue().isEmpty() && (!capped || !atCap(active, entry.getKey()))) {
+                ring.add(entry.getKey());
+            }
+        }
+        if (ring.isEmpty()) {
+            return null;
+        }
+        
+        Map<Long, Double> deficits = state.deficits.computeIfAbsent(priority, p -> new HashMap<>());
+        // 已没有待执行任务的用户不保留赤字
+        deficits.keySet().retainAll(users.keySet());
+        Cursor cursor = state.cursors.computeIfAbsent(priority, p -> new Cursor());
+        int index;
+        if (cursor.visiting && ring.contains(cursor.user)) {
+            // 继续访问上次的用户，直到赤字不足
+            index = ring.indexOf(cursor.user);
+        } else {
+            index = nextIndex(ring, cursor.user);
+            cursor.visiting = false;
+        }
+        double quantum = Math.max(0.01, quantumMegapixels);
+        
+        while (true) {
+            Long user = ring.get(index);
+            if (!cursor.visiting) {
+                cursor.user = user;
+                cursor.visiting = true;
+                deficits.merge(user, quantum, Double::sum);
+            }
+            ArrayDeque<VrJob> queue = users.get(user);
+            double cost = costOf(queue.peekFirst());
+            if (deficits.getOrDefault(user, 0.0) >= cost) {
+                VrJob job = queue.pollFirst();
+                deficits.merge(user, -cost, Double::sum);
+                if (queue.isEmpty()) {
+                    // 队列清空的用户不保留赤字
+                    deficits.remove(user);
+                    cursor.visiting = false;
+                }
+                return job;
+            }
+            cursor.visiting = false;
+            index = (index + 1) % ring.size();
+        }
+    }
+    
+    /**
+     * 轮询环中上次访问的用户之后的第一个用户
+     */
+    private static int nextIndex(List<Long> ring, Long previous) {
+        if (previous != null) {
+            for (int i = 0; i < ring.size(); i++) {
+                if (ring.get(i) > previous) {
+                    return i;
+                }
+            }
+        }
+        return 0;
+    }
+    
+    private boolean atCap(Map<Long, Long> active, Long user) {
+        return perUserConcurrency > 0 && active.getOrDefault(user, 0L) >= perUserConcurrency;
+    }
+    
+    /**
+     * 优先级权重表，如权重4:1时为[I, I, I, I, B]
+     */
+    private List<String> weightedSchedule() {
+        List<String> schedule = new ArrayList<>();
+        for (int i = 0; i < Math.max(1, interactiveWeight); i++) {
+            schedule.add(VrJob.PRIORITY_INTERACTIVE);
+        }
+        for (int i = 0; i < Math.max(1, bulkWeight); i++) {
+            schedule.add(VrJob.PRIORITY_BULK);
+        }
+        return schedule;
+    }
+    
+    private static String priorityOf(VrJob job) {
+        return VrJob.PRIORITY_BULK.equals(job.getPriority()) ? VrJob.PRIORITY_BULK : VrJob.PRIORITY_INTERACTIVE;
+    }
+    
+    private static Long userOf(VrJob job) {
+        return job.getUserId() != null ? job.getUserId() : ANONYMOUS_USER;
+    }
+    
+    /**
+     * 任务成本：输入和输出的百万像素数之和，至少为0.01避免零成本任务
+     * 输入像素数按上传时记录的图片尺寸计算，未知时只计输出
+     */
+    static double costOf(VrJob job) {
+        VRProcessingRequest.VRProcessingOptions options = job.getRequest() != null
+            ? job.getRequest().getOptions() : null;
+        if (options == null) {
+            options = new VRProcessingRequest.VRProcessingOptions();
+        }
+        long pixels = (long) options.getOutputWidth() * options.getOutputHeight();
+        if (job.getInputPixels() != null) {
+            pixels += job.getInputPixels();
+        }
+        return Math.max(0.01, (double) pixels / 1_000_000);
+    }
+    
+    /**
+     * 调度状态：各优先级内的用户赤字和轮询位置，以及优先级权重表的位置
+     */
+    private static final class State {
+        private final Map<String, Map<Long, Double>> deficits = new HashMap<>();
+        private final Map<String, Cursor> cursors = new HashMap<>();
+        private int scheduleCursor;
+        
+        State copy() {
+            State copy = new State();
+            deficits.forEach((priority, values) -> copy.deficits.put(priority, new HashMap<>(values)));
+            cursors.forEach((priority, cursor) -> copy.cursors.put(priority, cursor.copy()));
+            copy.scheduleCursor = scheduleCursor;
+            return copy;
+        }
+    }
+    
+    /**
+     * 轮询位置：当前访问的用户，以及本次访问是否已发放额度
+     */
+    private static final class Cursor {
+        private Long user;
+        private boolean visiting;
+        
+        Cursor copy() {
+            Cursor copy = new Cursor();
+            copy.user = user;
+            copy.visiting = visiting;
+            return copy;
+        }
+    }
+}
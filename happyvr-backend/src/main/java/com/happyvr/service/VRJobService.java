@@ -0,0 +1,342 @@
+package com.happyvr.service;
+
+import com.happyvr.dto.vr.VRProcessingRequest;
+import com.happyvr.entity.ProjectImage;
+import com.happyvr.entity.VrJob;
+import com.happyvr.entity.VrProject;
+import com.happyvr.repository.ProjectImageRepository;
+import com.happyvr.repository.VrJobRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.net.InetAddress;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * VR处理任务持久化服务
+ * 负责任务的提交、认领、心跳、超时重排和结束状态的记录，执行由VRJobDispatcher调度
+ */
+@Service
+public class VRJobService {
+    
+    private static final Logger logger = LoggerFactory.getLogger(VRJobService.class);
+    
+    private static final int MAX_ERROR_MESSAGE_LENGTH = 1000;
+    
+    @Autowired
+    private VrJobRepository jobRepository;
+    
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+    
+    @Autowired
+    private VRJobScheduler scheduler;
+    
+    @Autowired
+    private ProjectImageRepository projectImageRepository;
+    
+    // 执行实例心跳超过该时间未刷新时，任务重新排队
+    @Value("${file.upload.vr.jobs.lease-timeout-seconds:60}")
+    private long leaseTimeoutSeconds = 60;
+    
+    // 同一任务最多被认领的次数，超过后标记为失败
+    @Value("${file.upload.vr.jobs.max-attempts:3}")
+    private int maxAttempts = 3;
+    
+    // 每次认领时交给调度器排序的待执行任务数上限，按提交顺序取最早的任务
+    @Value("${file.upload.vr.jobs.scan-limit:500}")
+    private int scanLimit = 500;
+    
+    // 当前实例标识，记录在认领的任务上
+    private final String workerId = resolveHostName() + ":" + UUID.randomUUID().toString().substring(0, 8);
+    
+    /**
+     * 任务已提交事件，事务提交后发布，调度器收到后立即尝试认领
+     */
+    public static class JobSubmittedEvent {
+        private final String taskId;
+        
+        public JobSubmittedEvent(String taskId) {
+            this.taskId = taskId;
+        }
+        
+        public String getTaskId() {
+            return taskId;
+        }
+    }
+    
+    /**
+     * 持久化待执行的任务，任务计入项目所有者
+     */
+    @Transactional
+    public VrJob submit(String taskId, VRProcessingRequest request, VrProject project) {
+        Long userId = project.getUser() != null ? project.getUser().getId() : null;
+        VrJob job = jobRepository.save(newJob(taskId, request, project, userId));
+        eventPublisher.publishEvent(new JobSubmittedEvent(taskId));
+        return job;
+    }
+    
+    /**
+     * 在同一事务中持久化一个批次的任务，只唤醒一次调度器
+     * 任务按列表顺序写入，同一用户、同一优先级的任务按该顺序认领
+     */
+    @Transactional
+    public List<VrJob> submitBatch(String batchId, List<VrJob> jobs) {
+        if (jobs.isEmpty()) {
+            return Collections.emptyList();
+        }
+        for (VrJob job : jobs) {
+            job.setBatchId(batchId);
+        }
+        List<VrJob> saved = jobRepository.saveAll(jobs);
+        eventPublisher.publishEvent(new JobSubmittedEvent(jobs.get(0).getTaskId()));
+        return saved;
+    }
+    
+    /**
+     * 创建待执行任务，尚未持久化
+     *
+     * @param userId 提交任务的用户，公平调度按该用户分配处理量
+     */
+    public VrJob newJob(String taskId, VRProcessingRequest request, VrProject project, Long userId) {
+        VrJob job = new VrJob(taskId, project.getId(), userId, request);
+        if (request.getPriority() != null) {
+            job.setPriority(request.getPriority());
+        }
+        job.setInputPixels(storedInputPixels(request.getImageUrls()));
+        return job;
+    }
+    
+    /**
+     * 按上传时记录的图片尺寸计算输入总像素数，有图片没有记录尺寸时返回null
+     */
+    private Long storedInputPixels(List<String> imageUrls) {
+        if (imageUrls == null || imageUrls.isEmpty()) {
+            return null;
+        }
+        long pixels = 0;
+        for (String imageUrl : imageUrls) {
+            Optional<ProjectImage> image = projectImageRepository.findFirstByOriginalUrl(imageUrl)
+                .filter(stored -> stored.getWidth() != null && stored.getHeight() != null);
+            if (image.isEmpty()) {
+                return null;
+            }
+            pixels += (long) image.get().getWidth() * image.get().getHeight();
+        }
+        return pixels;
+    }
+    
+    /**
+     * 按公平调度顺序认领最多limit个待执行任务，标记为执行中
+     * 多个实例并发认领时各自跳过其他实例已锁定的行，同一任务只会被一个实例认领
+     */
+    @Transactional
+    public List<VrJob> claim(int limit) {
+        if (limit <= 0) {
+            return Collections.emptyList();
+        }
+        List<VrJob> pending = jobRepository.findPendingForUpdate(PageRequest.of(0, scanLimit));
+        if (pending.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<VrJob> jobs = scheduler.select(pending, countRunningByUser(), limit);
+        LocalDateTime now = LocalDateTime.now();
+        for (VrJob job : jobs) {
+            job.setStatus(VrJob.STATUS_RUNNING);
+            job.setAttempts(job.getAttempts() + 1);
+            job.setWorkerId(workerId);
+            job.setHeartbeatAt(now);
+            if (job.getStartedAt() == null) {
+                job.setStartedAt(now);
+            }
+        }
+        return jobs;
+    }
+    
+    /**
+     * 待执行任务的排队位置
+     */
+    public static class QueuePosition {
+        private final int position;
+        private final boolean exceeded;
+        
+        public QueuePosition(int position, boolean exceeded) {
+            this.position = position;
+            this.exceeded = exceeded;
+        }
+        
+        /**
+         * 预计调度顺序中的位置，从1开始；exceeded为true时为参与排序的任务数
+         */
+        public int getPosition() {
+            return position;
+        }
+        
+        /**
+         * 任务不在参与排序的最早任务中，实际位置大于position
+         */
+        public boolean isExceeded() {
+            return exceeded;
+        }
+    }
+    
+    /**
+     * 待执行任务在预计调度顺序中的位置，与认领相同只对最早的scanLimit个待执行任务排序；
+     * 任务不在其中时返回位置大于scanLimit，任务不是待执行状态时为空
+     */
+    @Transactional(readOnly = true)
+    public Optional<QueuePosition> queuePosition(String taskId) {
+        List<VrJob> pending = jobRepository.findByStatusOrderById(VrJob.STATUS_PENDING, PageRequest.of(0, scanLimit));
+        List<VrJob> order = scheduler.order(pending);
+        for (int i = 0; i < order.size(); i++) {
+            if (order.get(i).getTaskId().equals(taskId)) {
+                return Optional.of(new QueuePosition(i + 1, false));
+            }
+        }
+        if (pending.size() >= scanLimit) {
+            return Optional.of(new QueuePosition(pending.size(), true));
+        }
+        return Optional.empty();
+    }
+    
+    /**
+     * 各用户执行中的任务数（全部实例合计）
+     */
+    private Map<Long, Long> countRunningByUser() {
+        Map<Long, Long> running = new HashMap<>();
+        for (Object[] row : jobRepository.countRunningByUser()) {
+            running.put((Long) row[0], ((Number) row[1]).longValue());
+        }
+        return running;
+    }
+    
+    /**
+     * 刷新本实例执行中任务的心跳
+     * 任务已被重新排队或由其他执行认领时认领次数不同，不再刷新，避免掩盖新执行的心跳超时
+     *
+     * @param claims 任务ID到本实例认领时的认领次数
+     */
+    @Transactional
+    public void heartbeat(Map<String, Integer> claims) {
+        LocalDateTime now = LocalDateTime.now();
+        claims.forEach((taskId, attempt) -> {
+            if (jobRepository.touchHeartbeat(taskId, attempt, now) == 0) {
+                logger.warn("VR任务已不属于本次执行，跳过心跳: taskId={}, attempt={}", taskId, attempt);
+            }
+        });
+    }
+    
+    /**
+     * 心跳超时的执行中任务重新排队，认领次数达到上限的标记为失败
+     *
+     * @return 处理的任务数
+     */
+    @Transactional
+    public int requeueStale() {
+        List<VrJob> staleJobs = jobRepository.findStaleForUpdate(
+            LocalDateTime.now().minusSeconds(leaseTimeoutSeconds));
+        for (VrJob job : staleJobs) {
+            if (job.getAttempts() >= maxAttempts) {
+                job.setStatus(VrJob.STATUS_FAILED);
+                job.setErrorMessage("执行实例失去响应，已达到最大重试次数");
+                job.setFinishedAt(LocalDateTime.now());
+                logger.warn("VR任务失败: taskId={}, worker={}, attempts={}",
+                    job.getTaskId(), job.getWorkerId(), job.getAttempts());
+            } else {
+                job.setStatus(VrJob.STATUS_PENDING);
+                logger.warn("VR任务重新排队: taskId={}, worker={}", job.getTaskId(), job.getWorkerId());
+            }
+            job.setWorkerId(null);
+        }
+        return staleJobs.size();
+    }
+    
+    /**
+     * 记录任务结束状态，只在任务仍由本次认领执行时生效
+     * 心跳延迟导致任务已被重新排队或由其他执行认领、或任务已结束（如已取消）时不修改
+     *
+     * @param attempt 认领时的认领次数
+     * @return 是否更新了任务
+     */
+    @Transactional
+    public boolean finish(String taskId, Integer attempt, String status, String resultUrl, String errorMessage) {
+        int updated = jobRepository.finishClaimed(taskId, attempt, status, resultUrl,
+            errorMessage != null && errorMessage.length() > MAX_ERROR_MESSAGE_LENGTH
+                ? errorMessage.substring(0, MAX_ERROR_MESSAGE_LENGTH) : errorMessage,
+            LocalDateTime.now());
+        if (updated == 0) {
+            logger.warn("VR任务已不属于本次执行，忽略结束状态: taskId={}, attempt={}, status={}",
+                taskId, attempt, status);
+            return false;
+        }
+        return true;
+    }
+    
+    /**
+     * 标记任务已取消，已结束的任务不变
+     *
+     * @return 是否标记成功
+     */
+    @Transactional
+    public boolean cancel(String taskId) {
+        Optional<VrJob> job = jobRepository.findByTaskId(taskId);
+        if (job.isEmpty() || job.get().isFinished()) {
+            return false;
+        }
+        job.get().setStatus(VrJob.STATUS_CANCELLED);
+        job.get().setFinishedAt(LocalDateTime.now());
+        return true;
+    }
+    
+    /**
+     * 在给定任务中查找已被取消的任务，用于停止其他实例上取消的执行中任务
+     */
+    @Transactional(readOnly = true)
+    public List<String> findCancelled(Collection<String> taskIds) {
+        if (taskIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return jobRepository.findTaskIdsByStatus(taskIds, VrJob.STATUS_CANCELLED);
+    }
+    
+    /**
+     * 根据任务ID查找任务
+     */
+    @Transactional(readOnly = true)
+    public Optional<VrJob> findByTaskId(String taskId) {
+        return jobRepository.findByTaskId(taskId);
+    }
+    
+    /**
+     * 按提交顺序查找批次中的任务
+     */
+    @Transactional(readOnly = true)
+    public List<VrJob> findByBatchId(String batchId) {
+        return jobRepository.findByBatchIdOrderById(batchId);
+    }
+        
+    public String getWorkerId() {
+        return workerId;
+    }
+    
+    private static String resolveHostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            return "unknown";
+        }
+    }
+}
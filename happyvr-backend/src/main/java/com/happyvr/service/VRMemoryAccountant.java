@@ -0,0 +1,241 @@
+package com.happyvr.service;
+
+import com.happyvr.dto.vr.VRProcessingRequest;
+import com.happyvr.util.CancellationToken;
+import com.happyvr.util.ImageDecodePlanner;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * VR处理内存核算服务
+ * 按输入图片文件头和处理选项估算每个任务的峰值像素内存，只有全部在途任务的预估总和不超过预算时才放行新任务
+ */
+@Service
+public class VRMemoryAccountant {
+    
+    private static final Logger logger = LoggerFactory.getLogger(VRMemoryAccountant.class);
+    
+    /**
+     * 每像素字节数（TYPE_INT_RGB）
+     */
+    private static final long BYTES_PER_PIXEL = 4L;
+    
+    @Value("${file.upload.vr.memory-budget:1073741824}")
+    private long budgetBytes = 1024L * 1024 * 1024; // 1GB
+    
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    
+    // 等待预算的任务，按到达顺序放行，避免大任务被小任务持续插队
+    private final Deque<Reservation> waiting = new ArrayDeque<>();
+    private long reservedBytes;
+    
+    /**
+     * 估算任务的峰值内存
+     * 包括全部解码后的输入图片、全景图、球面映射结果、优化副本，以及立方体贴图和瓦片金字塔的中间图片
+     */
+    public long estimateJobBytes(List<ImageDecodePlanner.DecodePlan> plans,
+                                 VRProcessingRequest.VRProcessingOptions options, String processingType) {
+        long inputBytes = 0;
+        for (ImageDecodePlanner.DecodePlan plan : plans) {
+            inputBytes += plan.getDecodedPixels() * BYTES_PER_PIXEL;
+        }
+        
+        long frameBytes = (long) options.getOutputWidth() * options.getOutputHeight() * BYTES_PER_PIXEL;
+        // 全景图 + 球面映射结果
+        long pipelineBytes = frameBytes * 2;
+        if (Boolean.TRUE.equals(options.getEnableOptimization())) {
+            pipelineBytes += frameBytes;
+        }
+        
+        long outputBytes = 0;
+        boolean cubeMap = VRProcessingService.PROCESSING_TYPE_CUBE_MAP.equalsIgnoreCase(processingType);
+        if (cubeMap) {
+            long faceSize = Math.max(1, options.getOutputWidth() / 4);
+            outputBytes += 6 * faceSize * faceSize * BYTES_PER_PIXEL;
+        }
+        if (Boolean.TRUE.equals(options.getEnableTiles())) {
+            // 各级缩小图总和约为最高一级的1/3
+            long tiledBytes = cubeMap ? outputBytes : frameBytes;
+            outputBytes += tiledBytes / 3;
+        }
+        
+        return inputBytes + pipelineBytes + outputBytes;
+    }
+    
+    /**
+     * 估算条带流式处理任务的峰值内存：解码后的输入图片加上条带缓冲区
+     */
+    public long estimateStreamingJobBytes(List<ImageDecodePlanner.DecodePlan> plans, long stripBufferBytes) {
+        long inputBytes = 0;
+        for (ImageDecodePlanner.DecodePlan plan : plans) {
+            inputBytes += plan.getDecodedPixels() * BYTES_PER_PIXEL;
+        }
+        return inputBytes + stripBufferBytes;
+    }
+    
+    /**
+     * 申请内存预算，预算不足时阻塞等待
+     * 单个任务的预估超过总预算时按总预算计，使其可以在没有其他任务时独占执行
+     *
+     * @param onQueued 需要等待时回调，用于将任务状态标记为排队中
+     */
+    public Reservation reserve(String taskId, long bytes, Runnable onQueued) throws InterruptedException {
+        return reserve(taskId, bytes, onQueued, CancellationToken.NONE);
+    }
+    
+    /**
+     * 申请内存预算，排队期间令牌被取消时退出队列并抛出CancellationException
+     * onQueued在锁外执行，回调抛出异常时同样退出队列，不会阻塞后续任务
+     */
+    public Reservation reserve(String taskId, long bytes, Runnable onQueued, CancellationToken token)
+            throws InterruptedException {
+        token.throwIfCancelled();
+        long amount = Math.min(Math.max(0, bytes), budgetBytes);
+        Reservation reservation = new Reservation(taskId, amount);
+        
+        lock.lock();
+        try {
+            if (waiting.isEmpty() && reservedBytes + amount <= budgetBytes) {
+                reservedBytes += amount;
+                return reservation;
+            }
+            
+            waiting.addLast(reservation);
+            logger.info("内存预算不足，任务排队: taskId={}, 需要 {} bytes, 已占用 {}/{} bytes",
+                taskId, amount, reservedBytes, budgetBytes);
+        } finally {
+            lock.unlock();
+        }
+        
+        boolean admitted = false;
+        try {
+            if (onQueued != null) {
+                onQueued.run();
+            }
+            admitted = awaitTurn(reservation, token);
+            return reservation;
+        } finally {
+            if (!admitted) {
+                leaveQueue(reservation);
+            }
+        }
+    }
+    
+    /**
+     * 等待排到队首且剩余预算足够，成功时占用预算并返回true
+     */
+    private boolean awaitTurn(Reservation reservation, CancellationToken token) throws InterruptedException {
+        lock.lock();
+        try {
+            Runnable unregister = token.onCancel(this::signalChanged);
+            try {
+                while (waiting.peekFirst() != reservation || reservedBytes + reservation.bytes > budgetBytes) {
+                    token.throwIfCancelled();
+                    changed.await();
+                }
+                token.throwIfCancelled();
+            } finally {
+                unregister.run();
+            }
+            
+            waiting.removeFirst();
+            reservedBytes += reservation.bytes;
+            // 唤醒下一个排队任务检查剩余预算
+            changed.signalAll();
+            logger.debug("任务获得内存预算: taskId={}, {} bytes", reservation.taskId, reservation.bytes);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    private void leaveQueue(Reservation reservation) {
+        lock.lock();
+        try {
+            waiting.remove(reservation);
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    private void signalChanged() {
+        lock.lock();
+        try {
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    private void release(Reservation reservation) {
+        lock.lock();
+        try {
+            reservedBytes -= reservation.bytes;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    public long getBudgetBytes() {
+        return budgetBytes;
+    }
+    
+    public long getReservedBytes() {
+        lock.lock();
+        try {
+            return reservedBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    public int getQueuedCount() {
+        lock.lock();
+        try {
+            return waiting.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * 已申请的内存预算，关闭时归还
+     */
+    public class Reservation implements AutoCloseable {
+        private final String taskId;
+        private final long bytes;
+        private final AtomicBoolean released = new AtomicBoolean(false);
+        
+        Reservation(String taskId, long bytes) {
+            this.taskId = taskId;
+            this.bytes = bytes;
+        }
+        
+        public String getTaskId() {
+            return taskId;
+        }
+        
+        public long getBytes() {
+            return bytes;
+        }
+        
+        @Override
+        public void close() {
+            if (released.compareAndSet(false, true)) {
+                release(this);
+            }
+        }
+    }
+}
@@ -1,25 +1,51 @@
 package com.happyvr.service;
 
+import com.happyvr.dto.vr.VRBatchProcessingRequest;
+import com.happyvr.dto.vr.VRBatchProcessingResponse;
 import com.happyvr.dto.vr.VRProcessingRequest;
 import com.happyvr.dto.vr.VRProcessingResponse;
+import com.happyvr.entity.ProjectImage;
+import com.happyvr.entity.VrJob;
 import com.happyvr.entity.VrProject;
 import com.happyvr.exception.ResourceNotFoundException;
 import com.happyvr.exception.ValidationException;
+import com.happyvr.repository.ProjectImageRepository;
 import com.happyvr.repository.VrProjectRepository;
+import com.happyvr.util.CancellationToken;
+import com.happyvr.util.HandoffStage;
+import com.happyvr.util.ImageDecodePlanner;
+import com.happyvr.util.ImageHeaderProbe;
+import com.happyvr.util.PixelBuffer;
+import com.happyvr.util.StripPipeline;
+import jakarta.annotation.PostConstruct;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.scheduling.annotation.Async;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
 
-import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
 import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * VR处理服务
@@ -29,21 +55,131 @@ public class VRProcessingService {
     
     private static final Logger logger = LoggerFactory.getLogger(VRProcessingService.class);
     
+    /**
+     * 立方体贴图处理类型
+     */
+    static final String PROCESSING_TYPE_CUBE_MAP = "CUBE_MAP";
+    
+    /**
+     * 预览图文件名后缀
+     */
+    static final String PREVIEW_SUFFIX = "preview";
+    
+    /**
+     * 可以取消的任务状态
+     */
+    private static final Set<String> CANCELLABLE_STATUSES = Set.of("PENDING", "QUEUED", "PROCESSING");
+    
     @Autowired
     private ImageProcessingService imageProcessingService;
     
+    @Autowired
+    private VRJobService jobService;
+    
     @Autowired
     private VrProjectRepository vrProjectRepository;
     
+    @Autowired
+    private ProjectImageRepository projectImageRepository;
+    
+    @Autowired
+    private TilePyramidService tilePyramidService;
+    
+    @Autowired
+    private VRMemoryAccountant memoryAccountant;
+    
+    @Autowired
+    private VRResultCache resultCache;
+    
+    @Autowired
+    private DecodedImageCache decodedImageCache;
+    
     @Value("${file.upload.base-path:uploads}")
     private String uploadBasePath;
     
     @Value("${file.upload.base-url:/files}")
     private String baseUrl;
     
+    @Autowired
+    @Qualifier("imageDecodeExecutor")
+    private Executor imageDecodeExecutor;
+    
+    // 像素计算阶段的线程池，线程数与CPU核数一致
+    @Autowired
+    @Qualifier("vrComputePool")
+    private ForkJoinPool vrComputePool;
+    
+    // 同时处于计算阶段的任务数，以及已占位（加载中或已加载）等待计算的任务数上限
+    @Value("${file.upload.vr.stages.compute-concurrency:2}")
+    private int computeConcurrency = 2;
+    
+    @Value("${file.upload.vr.stages.compute-queue:2}")
+    private int computeQueue = 2;
+    
+    // 加载阶段与计算阶段之间的有界交接
+    private HandoffStage computeStage;
+    
+    // 单个任务同时解码的图片字节数上限
+    @Value("${file.upload.vr.decode-memory-budget:268435456}")
+    private long decodeMemoryBudget;
+    
+    // 输出像素数达到该值时，全景图和球面映射结果放在堆外缓冲区
+    @Value("${file.upload.vr.off-heap.min-pixels:33554432}")
+    private long offHeapMinPixels = 32L * 1024 * 1024; // 8192x4096
+    
+    // 条带流式处理：输出像素数阈值、条带行数和已渲染条带的队列容量
+    @Value("${file.upload.vr.streaming.enabled:true}")
+    private boolean streamingEnabled = true;
+    
+    @Value("${file.upload.vr.streaming.min-pixels:33554432}")
+    private long streamingMinPixels = 32L * 1024 * 1024; // 8192x4096
+    
+    @Value("${file.upload.vr.streaming.strip-height:128}")
+    private int streamingStripHeight = 128;
+    
+    @Value("${file.upload.vr.streaming.queue-strips:4}")
+    private int streamingQueueStrips = 4;
+    
+    // 低分辨率预览图：在完整分辨率处理前生成并发布，宽度不超过preview.width，高度按输出宽高比计算
+    @Value("${file.upload.vr.preview.enabled:true}")
+    private boolean previewEnabled = true;
+    
+    @Value("${file.upload.vr.preview.width:1024}")
+    private int previewWidth = 1024;
+    
+    @Value("${file.upload.vr.preview.quality:80}")
+    private int previewQuality = 80;
+    
+    // 单张输入已是尺寸与输出相符的2:1等距柱状全景图时，直接链接或复制原文件，不解码也不重新编码
+    @Value("${file.upload.vr.pass-through.enabled:true}")
+    private boolean passThroughEnabled = true;
+    
+    // 输入宽高与输出宽高的最大相对偏差
+    @Value("${file.upload.vr.pass-through.tolerance:0.02}")
+    private double passThroughTolerance = 0.02;
+    
+    // 单个批量请求最多包含的项数
+    @Value("${file.upload.vr.batch.max-items:1000}")
+    private int batchMaxItems = 1000;
+    
     // 存储处理任务的进度信息
     private final ConcurrentHashMap<String, VRProcessingResponse> processingTasks = new ConcurrentHashMap<>();
     
+    // 本实例执行中任务的取消令牌
+    private final ConcurrentHashMap<String, CancellationToken> cancellationTokens = new ConcurrentHashMap<>();
+    
+    // 任务状态的检查和修改（包括取消）互斥，临界区内只修改内存中的状态，不访问数据库和文件；
+    // 使用ReentrantLock而不是对象监视器，任务的虚拟线程等待时不占用载体线程
+    private final ReentrantLock taskStateLock = new ReentrantLock();
+    
+    // 正在登记结果、更新项目的任务，登记期间取消请求被拒绝
+    private final Set<String> committingTasks = ConcurrentHashMap.newKeySet();
+    
+    @PostConstruct
+    void initStages() {
+        computeStage = new HandoffStage("compute", vrComputePool, computeConcurrency, computeQueue);
+    }
+    
     /**
      * 开始VR处理任务
      */
@@ -55,21 +191,266 @@ public class VRProcessingService {
         VrProject project = vrProjectRepository.findById(request.getProjectId())
             .orElseThrow(() -> new ResourceNotFoundException("VR项目不存在"));
         
+        validatePriority(request.getPriority());
+        
         // 生成任务ID
         String taskId = UUID.randomUUID().toString();
         
-        // 创建处理响应
-        VRProcessingResponse response = new VRProcessingResponse(taskId, request.getProjectId(), "PENDING");
+        // 创建处理响应并存储任务信息
+        VRProcessingResponse response = createPendingTask(taskId, request.getProjectId());
+        
+        // 持久化任务，由VRJobDispatcher按公平调度顺序认领后在工作线程池中执行
+        jobService.submit(taskId, request, project);
+        updateQueuePosition(response);
+        
+        return response;
+    }
+    
+    /**
+     * 批量提交VR处理任务
+     * 内容相同的项（同一项目、输入和选项）只创建一个任务；共用输入图片的项相邻提交，
+     * 同一用户的任务按提交顺序认领，后面的任务从已解码图片缓存取得输入，每个文件只解码一次。
+     * 项目不存在、不属于提交用户，或同一项目已有处理参数不同的项时标记为REJECTED，不影响其他项；
+     * 任务计入提交用户。批量任务一律使用BULK优先级，只有管理员可以指定更高的优先级
+     */
+    public VRBatchProcessingResponse startBatchProcessing(VRBatchProcessingRequest batch, Long userId, boolean admin) {
+        List<VRProcessingRequest> items = batch.getItems();
+        if (items.size() > batchMaxItems) {
+            throw new ValidationException("批量任务最多包含" + batchMaxItems + "项");
+        }
+        String priority = admin && batch.getPriority() != null ? batch.getPriority() : VrJob.PRIORITY_BULK;
+        validatePriority(priority);
+        
+        String batchId = UUID.randomUUID().toString();
+        logger.info("开始VR批量处理: batchId={}, itemCount={}", batchId, items.size());
+        
+        VRProcessingResponse[] results = new VRProcessingResponse[items.size()];
+        Map<Long, Optional<VrProject>> projects = new HashMap<>();
+        Map<Long, Integer> firstByProject = new HashMap<>();
+        Map<Integer, Integer> duplicates = new HashMap<>();
+        List<Integer> accepted = new ArrayList<>();
+        for (int i = 0; i < items.size(); i++) {
+            VRProcessingRequest item = items.get(i);
+            Optional<VrProject> project = projects.computeIfAbsent(item.getProjectId(), vrProjectRepository::findById);
+            if (project.isEmpty()) {
+                results[i] = rejectedItem(item, "VR项目不存在");
+                continue;
+            }
+            // 检查权限
+            if (project.get().getUser() == null || !project.get().getUser().getId().equals(userId)) {
+                results[i] = rejectedItem(item, "无权限处理此项目");
+                continue;
+            }
+            // 同一项目只保留第一项：内容相同的项共用任务，处理参数不同的项拒绝，避免结果互相覆盖
+            Integer first = firstByProject.putIfAbsent(item.getProjectId(), i);
+            if (first != null) {
+                if (signatureOf(item).equals(signatureOf(items.get(first)))) {
+                    duplicates.put(i, first);
+                } else {
+                    results[i] = rejectedItem(item, "同一项目在批次中的处理参数不一致");
+                }
+                continue;
+            }
+            item.setPriority(priority);
+            accepted.add(i);
+        }
+        if (accepted.isEmpty()) {
+            throw new ValidationException("批量任务中没有可处理的项目");
+        }
+        
+        List<VrJob> jobs = new ArrayList<>();
+        for (int i : groupBySharedInputs(accepted, items)) {
+            VRProcessingRequest item = items.get(i);
+            String taskId = UUID.randomUUID().toString();
+            results[i] = createPendingTask(taskId, item.getProjectId());
+            jobs.add(jobService.newJob(taskId, item, projects.get(item.getProjectId()).get(), userId));
+        }
+        duplicates.forEach((index, first) -> results[index] = results[first]);
+        
+        // 整批在一个事务中持久化
+        jobService.submitBatch(batchId, jobs);
+        
+        return summarize(batchId, Arrays.asList(results));
+    }
+    
+    private static VRProcessingResponse rejectedItem(VRProcessingRequest item, String errorMessage) {
+        VRProcessingResponse rejected = new VRProcessingResponse(null, item.getProjectId(), "REJECTED");
+        rejected.setErrorMessage(errorMessage);
+        return rejected;
+    }
+    
+    /**
+     * 获取批量任务的汇总进度
+     * 只有提交批次的用户可以查询，其他用户与批次不存在时的结果相同，不暴露批次是否存在
+     */
+    public VRBatchProcessingResponse getBatchProgress(String batchId, Long userId) {
+        List<VrJob> jobs = jobService.findByBatchId(batchId);
+        if (jobs.isEmpty() || userId == null
+                || !jobs.stream().allMatch(job -> userId.equals(job.getUserId()))) {
+            throw new ResourceNotFoundException("批量任务不存在");
+        }
+        List<VRProcessingResponse> items = new ArrayList<>(jobs.size());
+        for (VrJob job : jobs) {
+            // 与单个任务的进度查询一致：本实例有记录时使用内存中的进度，否则读取任务表
+            VRProcessingResponse response = processingTasks.get(job.getTaskId());
+            items.add(response != null ? response : toResponse(job));
+        }
+        return summarize(batchId, items);
+    }
+    
+    /**
+     * 汇总批次状态，共用同一任务的项只计一次，已结束的任务进度按100计
+     */
+    private VRBatchProcessingResponse summarize(String batchId, List<VRProcessingResponse> items) {
+        Map<String, VRProcessingResponse> tasks = new LinkedHashMap<>();
+        int rejected = 0;
+        for (VRProcessingResponse item : items) {
+            if (item.getTaskId() == null) {
+                rejected++;
+            } else {
+                tasks.putIfAbsent(item.getTaskId(), item);
+            }
+        }
+        
+        int pending = 0;
+        int processing = 0;
+        int completed = 0;
+        int failed = 0;
+        int cancelled = 0;
+        long progressSum = 0;
+        for (VRProcessingResponse task : tasks.values()) {
+            String status = task.getStatus();
+            if ("COMPLETED".equals(status)) {
+                completed++;
+            } else if ("FAILED".equals(status)) {
+                failed++;
+            } else if ("CANCELLED".equals(status)) {
+                cancelled++;
+            } else if ("PENDING".equals(status)) {
+                pending++;
+            } else {
+                processing++;
+            }
+            boolean finished = "COMPLETED".equals(status) || "FAILED".equals(status) || "CANCELLED".equals(status);
+            progressSum += finished ? 100 : (task.getProgress() != null ? task.getProgress() : 0);
+        }
+        
+        VRBatchProcessingResponse response = new VRBatchProcessingResponse(batchId);
+        response.setTotalTasks(tasks.size());
+        response.setPendingTasks(pending);
+        response.setProcessingTasks(processing);
+        response.setCompletedTasks(completed);
+        response.setFailedTasks(failed);
+        response.setCancelledTasks(cancelled);
+        response.setRejectedItems(rejected);
+        response.setProgress(tasks.isEmpty() ? 0 : (int) (progressSum / tasks.size()));
+        response.setItems(items);
+        
+        int finished = completed + failed + cancelled;
+        if (processing > 0 || (pending > 0 && finished > 0)) {
+            response.setStatus("PROCESSING");
+        } else if (pending > 0) {
+            response.setStatus("PENDING");
+        } else if (completed == tasks.size() && rejected == 0) {
+            response.setStatus("COMPLETED");
+        } else if (completed == 0) {
+            response.setStatus("FAILED");
+        } else {
+            response.setStatus("COMPLETED_WITH_ERRORS");
+        }
+        return response;
+    }
+    
+    /**
+     * 批量任务中判断两项内容相同的标识：项目、输入图片顺序和规范化的处理选项
+     */
+    private static String signatureOf(VRProcessingRequest request) {
+        VRProcessingRequest.VRProcessingOptions options = request.getOptions() != null
+            ? request.getOptions() : new VRProcessingRequest.VRProcessingOptions();
+        return request.getProjectId() + "|" + request.getImageUrls() + "|"
+            + VRResultCache.normalizeOptions(request.getProcessingType(), options);
+    }
+    
+    /**
+     * 把共用输入图片的项排在一起（直接或间接共用同一图片的项为一组），
+     * 组按首项在请求中的位置排列，组内保持请求顺序
+     */
+    static List<Integer> groupBySharedInputs(List<Integer> indexes, List<VRProcessingRequest> items) {
+        int[] parent = new int[indexes.size()];
+        for (int k = 0; k < parent.length; k++) {
+            parent[k] = k;
+        }
+        Map<String, Integer> firstByUrl = new HashMap<>();
+        for (int k = 0; k < indexes.size(); k++) {
+            for (String url : items.get(indexes.get(k)).getImageUrls()) {
+                Integer other = firstByUrl.putIfAbsent(url, k);
+                if (other != null) {
+                    // 合并到较早的一组
+                    int a = findGroup(parent, other);
+                    int b = findGroup(parent, k);
+                    parent[Math.max(a, b)] = Math.min(a, b);
+                }
+            }
+        }
+        Map<Integer, List<Integer>> groups = new LinkedHashMap<>();
+        for (int k = 0; k < indexes.size(); k++) {
+            groups.computeIfAbsent(findGroup(parent, k), g -> new ArrayList<>()).add(indexes.get(k));
+        }
+        List<Integer> ordered = new ArrayList<>(indexes.size());
+        groups.values().forEach(ordered::addAll);
+        return ordered;
+    }
+    
+    private static int findGroup(int[] parent, int k) {
+        while (parent[k] != k) {
+            parent[k] = parent[parent[k]];
+            k = parent[k];
+        }
+        return k;
+    }
+    
+    private static void validatePriority(String priority) {
+        if (priority != null && !VRJobScheduler.PRIORITIES.contains(priority)) {
+            throw new ValidationException("不支持的任务优先级: " + priority);
+        }
+    }
+    
+    /**
+     * 创建等待执行的任务响应并登记到本实例
+     */
+    private VRProcessingResponse createPendingTask(String taskId, Long projectId) {
+        VRProcessingResponse response = new VRProcessingResponse(taskId, projectId, "PENDING");
         response.setProgress(0);
         response.setMessage("任务已创建，等待处理");
-        
-        // 存储任务信息
         processingTasks.put(taskId, response);
+        return response;
+    }
+    
+    /**
+     * 执行已认领的持久化任务，由VRJobDispatcher在vrProcessingExecutor中调用
+     * 执行结束后把最终状态写回任务表
+     */
+    public void runJob(VrJob job) {
+        String taskId = job.getTaskId();
+        VRProcessingResponse response = processingTasks.computeIfAbsent(taskId,
+            id -> new VRProcessingResponse(id, job.getProjectId(), "PENDING"));
         
-        // 异步处理VR生成
-        processVRAsync(taskId, request, project);
+        // 令牌在整个执行期间绑定到工作线程，各处理阶段和像素内核通过它响应取消
+        CancellationToken token = new CancellationToken();
+        cancellationTokens.put(taskId, token);
+        try (CancellationToken.Scope scope = token.bind()) {
+            Optional<VrProject> project = vrProjectRepository.findById(job.getProjectId());
+            if (project.isPresent()) {
+                processVR(taskId, job.getRequest(), project.get(), token);
+            } else {
+                failTask(response, "VR项目不存在");
+            }
+        } finally {
+            cancellationTokens.remove(taskId);
+        }
         
-        return response;
+        jobService.finish(taskId, job.getAttempts(), response.getStatus(), response.getResultUrl(),
+            response.getErrorMessage());
     }
     
     /**
@@ -77,135 +458,664 @@ public class VRProcessingService {
      */
     public VRProcessingResponse getProcessingProgress(String taskId) {
         VRProcessingResponse response = processingTasks.get(taskId);
+        if (response == null) {
+            // 其他实例执行或本实例重启前提交的任务，从任务表读取状态
+            response = jobService.findByTaskId(taskId).map(this::toResponse).orElse(null);
+        }
         if (response == null) {
             response = new VRProcessingResponse();
             response.setTaskId(taskId);
             response.setStatus("NOT_FOUND");
             response.setMessage("任务不存在");
+            return response;
         }
+        updateQueuePosition(response);
         return response;
     }
     
     /**
-     * 异步处理VR生成
+     * 等待执行的任务附带排队位置，其他状态清除
      */
-    @Async
-    public CompletableFuture<Void> processVRAsync(String taskId, VRProcessingRequest request, VrProject project) {
+    private void updateQueuePosition(VRProcessingResponse response) {
+        Optional<VRJobService.QueuePosition> position = "PENDING".equals(response.getStatus())
+            ? jobService.queuePosition(response.getTaskId()) : Optional.empty();
+        response.setQueuePosition(position.map(VRJobService.QueuePosition::getPosition).orElse(null));
+        response.setQueuePositionExceeded(position.map(VRJobService.QueuePosition::isExceeded).orElse(null));
+    }
+    
+    /**
+     * 把任务表中的记录转换为处理响应，只包含持久化的状态字段
+     */
+    private VRProcessingResponse toResponse(VrJob job) {
+        String status = VrJob.STATUS_RUNNING.equals(job.getStatus()) ? "PROCESSING" : job.getStatus();
+        VRProcessingResponse response = new VRProcessingResponse(job.getTaskId(), job.getProjectId(), status);
+        if (VrJob.STATUS_COMPLETED.equals(job.getStatus())) {
+            response.setProgress(100);
+        }
+        response.setResultUrl(job.getResultUrl());
+        response.setErrorMessage(job.getErrorMessage());
+        response.setStartTime(job.getCreatedAt());
+        response.setEndTime(job.getFinishedAt());
+        return response;
+    }
+    
+    /**
+     * 执行VR生成
+     * 在任务线程（虚拟线程）上读取文件头、等待预算、加载图片并写回结果，
+     * 像素处理交给计算阶段，在vrComputePool上执行
+     */
+    void processVR(String taskId, VRProcessingRequest request, VrProject project, CancellationToken token) {
         VRProcessingResponse response = processingTasks.get(taskId);
+        VRMemoryAccountant.Reservation reservation = null;
+        // 本次任务写出的文件，取消时删除
+        List<String> outputPaths = new ArrayList<>();
         
         try {
+            checkNotCancelled(response, token);
             logger.info("开始异步VR处理: taskId={}", taskId);
             
-            // 更新状态为处理中
-            response.setStatus("PROCESSING");
-            response.setProgress(10);
-            response.setMessage("正在加载图片");
-            
-            // 加载图片
-            List<BufferedImage> images = loadImages(request.getImageUrls());
-            response.setProgress(30);
-            response.setMessage("图片加载完成，开始处理");
-            
             // 获取处理选项
             VRProcessingRequest.VRProcessingOptions options = request.getOptions();
             if (options == null) {
                 options = new VRProcessingRequest.VRProcessingOptions();
             }
             
-            // 创建全景图片
-            response.setProgress(50);
-            response.setMessage("正在生成全景图片");
+            // 读取图片文件头
+            List<ImageDecodePlanner.DecodePlan> plans = planImages(request.getImageUrls(), options);
             
-            BufferedImage panorama = imageProcessingService.createPanorama(
-                images, options.getOutputWidth(), options.getOutputHeight());
+            // 相同输入内容和选项已生成过时直接复用已有结果；先确认未取消，取消后不再改动项目引用的结果
+            String contentHash = resultCache.computeKey(inputFiles(plans), request.getProcessingType(), options);
+            beginCommit(response, token);
+            Optional<Map<String, Object>> cachedSceneData = resultCache.reuse(contentHash, project.getId());
+            if (cachedSceneData.isPresent()) {
+                response.setPreviewUrl((String) cachedSceneData.get().get("previewUrl"));
+                finishCommit(response, (String) cachedSceneData.get().get("url"), "VR生成完成（复用已有结果）");
+                logger.info("VR处理命中已有结果: taskId={}, contentHash={}", taskId, contentHash);
+                return;
+            }
+            committingTasks.remove(taskId);
             
-            // 应用球面映射
-            response.setProgress(70);
-            response.setMessage("正在应用球面映射");
+            // 输入本身就是目标全景图时直接使用原文件
+            boolean cubeMap = PROCESSING_TYPE_CUBE_MAP.equalsIgnoreCase(request.getProcessingType());
+            File passThroughSource = passThroughSource(request.getImageUrls(), plans, options, cubeMap);
+            if (passThroughSource != null) {
+                String outputPath = generateOutputPath(project.getId(), taskId);
+                outputPaths.add(outputPath);
+                linkOrCopy(passThroughSource.toPath(), Paths.get(outputPath));
+                beginCommit(response, token);
+                Map<String, Object> sceneData = storeResult(contentHash,
+                    createSceneData("panorama", generateOutputUrl(project.getId(), taskId)),
+                    outputPaths, project.getId());
+                finishCommit(response, (String) sceneData.get("url"), "VR生成完成（直接使用输入全景图）");
+                logger.info("VR处理直接使用输入全景图: taskId={}, source={}", taskId, passThroughSource.getName());
+                return;
+            }
             
-            BufferedImage vrImage = imageProcessingService.createSphericalMapping(panorama);
+            // 估算任务峰值内存并申请预算，预算不足时排队等待；流式处理只计入输入图片和条带缓冲区
+            boolean streaming = useStreaming(options, cubeMap);
+            long estimatedBytes = streaming
+                ? memoryAccountant.estimateStreamingJobBytes(plans,
+                    StripPipeline.bufferBytes(options.getOutputWidth(), streamingStripHeight, streamingQueueStrips))
+                : memoryAccountant.estimateJobBytes(plans, options, request.getProcessingType());
+            reservation = memoryAccountant.reserve(taskId, estimatedBytes,
+                () -> advance(response, token, "QUEUED", -1, "等待内存资源"), token);
             
-            // 优化图片
-            if (options.getEnableOptimization()) {
-                response.setProgress(80);
-                response.setMessage("正在优化图片质量");
-                vrImage = imageProcessingService.optimizeImage(vrImage, options.getQuality());
+            // 先占用计算阶段的交接位置再加载图片，已解码、等待计算的任务数不超过交接队列容量
+            Map<String, Object> sceneData;
+            try (HandoffStage.Ticket computeTicket = computeStage.enter(token)) {
+                // 更新状态为处理中
+                advance(response, token, "PROCESSING", 10, "正在加载图片");
+                
+                // 加载图片
+                List<BufferedImage> images = loadImages(request.getImageUrls(), plans, token);
+                advance(response, token, null, 30, "图片加载完成，开始处理");
+                
+                // 像素处理在计算线程池上执行，本线程等待期间其他任务可以继续加载图片和写回结果
+                VRProcessingRequest.VRProcessingOptions renderOptions = options;
+                sceneData = computeTicket.run(() -> render(response, project, images, renderOptions, cubeMap,
+                    streaming, outputPaths, token));
             }
             
-            // 保存结果
-            response.setProgress(90);
-            response.setMessage("正在保存结果");
+            // 取消先生效时不保存任何结果；开始登记后不再接受取消
+            beginCommit(response, token);
+            
+            // 登记结果供相同提交复用，并在同一事务中更新项目
+            sceneData = storeResult(contentHash, sceneData, outputPaths, project.getId());
             
+            // 完成处理
+            finishCommit(response, (String) sceneData.get("url"), "VR生成完成");
+            
+            logger.info("VR处理完成: taskId={}, duration={}ms", taskId, response.getProcessingDuration());
+            
+        } catch (Exception e) {
+            if (isCancelled(response, token)) {
+                // 取消后各阶段抛出的异常（包括被中止的编码和流水线）都按取消处理，删除已写出的文件
+                logger.info("VR处理已取消: taskId={}", taskId);
+                resultCache.deleteOutputs(outputPaths);
+            } else {
+                logger.error("VR处理失败: taskId=" + taskId, e);
+                failTask(response, e.getMessage());
+            }
+        } finally {
+            committingTasks.remove(taskId);
+            if (reservation != null) {
+                reservation.close();
+            }
+        }
+    }
+    
+    /**
+     * 计算阶段：生成全景图、预览图、立方体贴图和瓦片并写出文件，在计算线程池上执行
+     *
+     * @return 场景数据，尚未登记和写入项目
+     */
+    private Map<String, Object> render(VRProcessingResponse response, VrProject project, List<BufferedImage> images,
+                                       VRProcessingRequest.VRProcessingOptions options, boolean cubeMap,
+                                       boolean streaming, List<String> outputPaths, CancellationToken token)
+            throws IOException {
+        String taskId = response.getTaskId();
+        PixelBuffer offHeapImage = null;
+        BufferedImage vrImage = null;
+        // 立方体贴图的源图片：拼接后的全景图，不经过球面映射和优化，避免二次重采样
+        BufferedImage cubeSource = null;
+        try {
             String outputPath = generateOutputPath(project.getId(), taskId);
             String outputUrl = generateOutputUrl(project.getId(), taskId);
+            int quality = options.getQuality();
+            boolean progressive = Boolean.TRUE.equals(options.getProgressive());
+            outputPaths.add(outputPath);
             
-            imageProcessingService.saveImage(vrImage, outputPath, "jpg");
+            // 先发布低分辨率预览图，完整分辨率结果生成期间客户端即可显示
+            String previewUrl = publishPreview(project.getId(), taskId, images, options, outputPaths, token);
+            if (previewUrl != null) {
+                response.setPreviewUrl(previewUrl);
+                advance(response, token, null, 40, "预览图已生成，开始生成完整分辨率图片");
+            }
             
-            // 更新项目信息
-            updateProjectWithResult(project, outputUrl);
+            if (streaming) {
+                // 条带流式处理：拼接、球面映射和JPEG编码按水平条带流水执行，不生成整帧图片
+                advance(response, token, null, 50, "正在流式生成全景图片");
+                imageProcessingService.saveSphericalJpegStreaming(images, options.getOutputWidth(),
+                    options.getOutputHeight(), outputPath, quality, progressive, streamingStripHeight,
+                    streamingQueueStrips);
+            } else {
+                // 创建全景图片
+                advance(response, token, null, 50, "正在生成全景图片");
+                
+                if (useOffHeap(options)) {
+                    // 超大输出：全景图和球面映射结果放在堆外缓冲区，编码时直接读取；
+                    // 拼接结果已是不透明RGB，无需优化副本
+                    try (PixelBuffer panorama = imageProcessingService.createPanoramaOffHeap(
+                            images, options.getOutputWidth(), options.getOutputHeight())) {
+                        if (cubeMap) {
+                            cubeSource = panorama.toHeapImage();
+                        }
+                        advance(response, token, null, 70, "正在应用球面映射");
+                        offHeapImage = imageProcessingService.createSphericalMapping(panorama);
+                    }
+                    vrImage = offHeapImage.asImage();
+                } else {
+                    BufferedImage panorama = imageProcessingService.createPanorama(
+                        images, options.getOutputWidth(), options.getOutputHeight());
+                    
+                    // 应用球面映射
+                    advance(response, token, null, 70, "正在应用球面映射");
+                    
+                    vrImage = imageProcessingService.createSphericalMapping(panorama);
+                    if (cubeMap) {
+                        cubeSource = panorama;
+                    } else {
+                        imageProcessingService.releaseImage(panorama);
+                    }
+                    
+                    // 优化图片
+                    if (options.getEnableOptimization()) {
+                        advance(response, token, null, 80, "正在优化图片质量");
+                        BufferedImage mapped = vrImage;
+                        vrImage = imageProcessingService.optimizeImage(mapped, options.getQuality());
+                        if (vrImage != mapped) {
+                            imageProcessingService.releaseImage(mapped);
+                        }
+                    }
+                }
+                
+                // 保存结果
+                advance(response, token, null, 90, "正在保存结果");
+                imageProcessingService.saveJpeg(vrImage, outputPath, quality, progressive);
+            }
             
-            // 完成处理
-            response.setStatus("COMPLETED");
-            response.setProgress(100);
-            response.setMessage("VR生成完成");
-            response.setResultUrl(outputUrl);
-            response.setEndTime(LocalDateTime.now());
+            // 全景图瓦片按整数组访问像素，堆外结果需复制到堆上；立方体贴图时瓦片按面切分
+            if (offHeapImage != null && !cubeMap && Boolean.TRUE.equals(options.getEnableTiles())) {
+                vrImage = offHeapImage.toHeapImage();
+                closeQuietly(offHeapImage);
+                offHeapImage = null;
+            }
             
-            // 计算处理时长
-            if (response.getStartTime() != null) {
-                long duration = java.time.Duration.between(response.getStartTime(), response.getEndTime()).toMillis();
-                response.setProcessingDuration(duration);
+            Map<String, Object> sceneData = createSceneData("panorama", outputUrl);
+            if (previewUrl != null) {
+                sceneData.put("previewUrl", previewUrl);
             }
+            Map<String, BufferedImage> faces = null;
             
-            logger.info("VR处理完成: taskId={}, duration={}ms", taskId, response.getProcessingDuration());
+            // 立方体贴图：从拼接后的全景图并行渲染六个面，每个面像素只从源图采样一次
+            if (cubeMap) {
+                advance(response, token, null, 93, "正在生成立方体贴图");
+                
+                int faceSize = Math.max(1, options.getOutputWidth() / 4);
+                faces = imageProcessingService.createCubeFaces(cubeSource, faceSize);
+                imageProcessingService.releaseImage(cubeSource);
+                cubeSource = null;
+                for (String face : faces.keySet()) {
+                    outputPaths.add(generateOutputPath(project.getId(), taskId, face));
+                }
+                sceneData.put("type", "cubemap");
+                sceneData.put("faceSize", faceSize);
+                sceneData.put("faces", saveCubeFaces(project.getId(), taskId, faces, quality, progressive));
+            }
             
+            // 瓦片金字塔：立方体贴图按面切分，否则按全景图切分
+            if (Boolean.TRUE.equals(options.getEnableTiles())) {
+                advance(response, token, null, 96, "正在生成瓦片金字塔");
+                
+                Map<String, BufferedImage> tileSources = faces != null && !faces.isEmpty()
+                    ? faces : Collections.singletonMap("equirect", vrImage);
+                String tilesDir = generateOutputDir(project.getId()) + File.separator + "tiles_" + taskId;
+                outputPaths.add(tilesDir);
+                Map<String, Object> manifest = tilePyramidService.createPyramid(tileSources, tilesDir,
+                    generateOutputBaseUrl(project.getId()) + "/tiles_" + taskId,
+                    options.getTileSize(), quality);
+                sceneData.put("tiles", manifest);
+            }
+            return sceneData;
+        } finally {
+            // 整帧结果归还栅格池，供后续任务复用
+            imageProcessingService.releaseImage(vrImage);
+            imageProcessingService.releaseImage(cubeSource);
+            if (offHeapImage != null) {
+                closeQuietly(offHeapImage);
+            }
+        }
+    }
+    
+    /**
+     * 生成低分辨率预览图，返回访问URL；输出不大于预览尺寸或生成失败时返回null，不影响完整结果
+     * 预览图按条带流式渲染，不生成整帧的中间图片
+     */
+    private String publishPreview(Long projectId, String taskId, List<BufferedImage> images,
+                                  VRProcessingRequest.VRProcessingOptions options, List<String> outputPaths,
+                                  CancellationToken token) {
+        int outputWidth = options.getOutputWidth();
+        int outputHeight = options.getOutputHeight();
+        if (!previewEnabled || outputWidth <= previewWidth) {
+            return null;
+        }
+        int height = Math.max(1, (int) Math.round((double) previewWidth * outputHeight / outputWidth));
+        String previewPath = generateOutputPath(projectId, taskId, PREVIEW_SUFFIX);
+        try {
+            long start = System.currentTimeMillis();
+            imageProcessingService.saveSphericalJpegStreaming(images, previewWidth, height, previewPath,
+                previewQuality, false, streamingStripHeight, streamingQueueStrips);
+            outputPaths.add(previewPath);
+            logger.debug("预览图生成完成: taskId={}, {}x{} ({}ms)", taskId, previewWidth, height,
+                System.currentTimeMillis() - start);
+            return generateOutputUrl(projectId, taskId, PREVIEW_SUFFIX);
         } catch (Exception e) {
-            logger.error("VR处理失败: taskId=" + taskId, e);
-            
+            resultCache.deleteOutputs(Collections.singletonList(previewPath));
+            // 取消导致的失败不能被忽略，继续向上抛出
+            token.throwIfCancelled();
+            logger.warn("生成预览图失败: taskId={} - {}", taskId, e.getMessage());
+            return null;
+        }
+    }
+    
+    /**
+     * 判断能否直接使用输入文件作为结果，可以时返回输入文件，否则返回null
+     * 要求：单张JPEG输入、不生成立方体贴图和瓦片、宽高比为2:1、尺寸在容差内与输出一致、
+     * 没有EXIF旋转且不是CMYK等需要转换的颜色模型
+     */
+    private File passThroughSource(List<String> imageUrls, List<ImageDecodePlanner.DecodePlan> plans,
+                                   VRProcessingRequest.VRProcessingOptions options, boolean cubeMap) {
+        if (!passThroughEnabled || plans.size() != 1 || cubeMap || Boolean.TRUE.equals(options.getEnableTiles())) {
+            return null;
+        }
+        ImageDecodePlanner.DecodePlan plan = plans.get(0);
+        int width = plan.getWidth();
+        int height = plan.getHeight();
+        if (Math.abs(width - 2 * height) > passThroughTolerance * width
+                || Math.abs(width - options.getOutputWidth()) > passThroughTolerance * options.getOutputWidth()
+                || Math.abs(height - options.getOutputHeight()) > passThroughTolerance * options.getOutputHeight()) {
+            return null;
+        }
+        try {
+            ImageHeaderProbe.ImageHeader header = imageHeader(imageUrls.get(0), plan.getFile());
+            boolean plain = "jpeg".equals(header.getFormat())
+                && header.getOrientation() == ImageHeaderProbe.ORIENTATION_NORMAL
+                && ("RGB".equals(header.getColorModel()) || "YCbCr".equals(header.getColorModel()));
+            return plain ? plan.getFile() : null;
+        } catch (IOException | ValidationException e) {
+            logger.debug("读取文件头失败，不直接使用输入: {} - {}", plan.getFile(), e.getMessage());
+            return null;
+        }
+    }
+    
+    /**
+     * 读取图片文件头信息，优先使用上传时记录的图片元数据，没有记录时读取文件头
+     */
+    private ImageHeaderProbe.ImageHeader imageHeader(String imageUrl, File file) throws IOException {
+        Optional<ProjectImage> stored = projectImageRepository.findFirstByOriginalUrl(imageUrl)
+            .filter(image -> image.getFormat() != null && image.getWidth() != null && image.getHeight() != null);
+        if (stored.isPresent()) {
+            ProjectImage image = stored.get();
+            return new ImageHeaderProbe.ImageHeader(image.getFormat(), image.getWidth(), image.getHeight(),
+                image.getColorModel(), Boolean.TRUE.equals(image.getHasAlpha()),
+                image.getOrientation() == null ? ImageHeaderProbe.ORIENTATION_NORMAL : image.getOrientation());
+        }
+        return ImageHeaderProbe.probe(file);
+    }
+    
+    /**
+     * 硬链接输入文件到输出位置，文件系统不支持或跨设备时复制
+     */
+    private static void linkOrCopy(Path source, Path target) throws IOException {
+        Files.deleteIfExists(target);
+        try {
+            Files.createLink(target, source);
+        } catch (IOException | UnsupportedOperationException e) {
+            logger.debug("无法创建硬链接，改为复制: {} - {}", target, e.getMessage());
+            Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+    
+    /**
+     * 单张全景图输出（无立方体贴图和瓦片）且像素数达到阈值时使用条带流式处理
+     */
+    private boolean useStreaming(VRProcessingRequest.VRProcessingOptions options, boolean cubeMap) {
+        return streamingEnabled && !cubeMap && !Boolean.TRUE.equals(options.getEnableTiles())
+            && (long) options.getOutputWidth() * options.getOutputHeight() >= streamingMinPixels;
+    }
+    
+    /**
+     * 输出像素数达到阈值时使用堆外缓冲区
+     */
+    private boolean useOffHeap(VRProcessingRequest.VRProcessingOptions options) {
+        return (long) options.getOutputWidth() * options.getOutputHeight() >= offHeapMinPixels;
+    }
+    
+    private static void closeQuietly(PixelBuffer buffer) {
+        try {
+            buffer.close();
+        } catch (IOException e) {
+            logger.warn("释放堆外像素缓冲区失败", e);
+        }
+    }
+    
+    /**
+     * 在任务未取消时更新状态和进度，已取消时抛出CancellationException
+     * 与cancelProcessingTask互斥，取消后的状态不会被覆盖
+     *
+     * @param status   新状态，null表示不变
+     * @param progress 新进度，负数表示不变
+     */
+    private void advance(VRProcessingResponse response, CancellationToken token, String status, int progress,
+                         String message) {
+        taskStateLock.lock();
+        try {
+            checkNotCancelled(response, token);
+            if (status != null) {
+                response.setStatus(status);
+            }
+            if (progress >= 0) {
+                response.setProgress(progress);
+            }
+            response.setMessage(message);
+        } finally {
+            taskStateLock.unlock();
+        }
+    }
+    
+    /**
+     * 开始登记结果：确认任务未取消并标记为登记中，之后的取消请求被拒绝，
+     * 直到finishCommit完成任务或任务失败；登记本身在锁外执行
+     */
+    private void beginCommit(VRProcessingResponse response, CancellationToken token) {
+        taskStateLock.lock();
+        try {
+            checkNotCancelled(response, token);
+            committingTasks.add(response.getTaskId());
+        } finally {
+            taskStateLock.unlock();
+        }
+    }
+    
+    /**
+     * 结果已登记，标记任务完成
+     */
+    private void finishCommit(VRProcessingResponse response, String resultUrl, String message) {
+        taskStateLock.lock();
+        try {
+            completeTask(response, resultUrl, message);
+            committingTasks.remove(response.getTaskId());
+        } finally {
+            taskStateLock.unlock();
+        }
+    }
+    
+    private static void checkNotCancelled(VRProcessingResponse response, CancellationToken token) {
+        if (isCancelled(response, token)) {
+            throw new CancellationException("任务已取消");
+        }
+    }
+    
+    /**
+     * 任务在执行前（令牌创建前）取消时只有状态被标记
+     */
+    private static boolean isCancelled(VRProcessingResponse response, CancellationToken token) {
+        return token.isCancelled() || "CANCELLED".equals(response.getStatus());
+    }
+    
+    /**
+     * 标记任务失败，已取消的任务保持取消状态
+     */
+    private void failTask(VRProcessingResponse response, String errorMessage) {
+        taskStateLock.lock();
+        try {
+            if ("CANCELLED".equals(response.getStatus())) {
+                return;
+            }
             response.setStatus("FAILED");
-            response.setErrorMessage(e.getMessage());
-            response.setMessage("处理失败: " + e.getMessage());
+            response.setErrorMessage(errorMessage);
+            response.setMessage("处理失败: " + errorMessage);
             response.setEndTime(LocalDateTime.now());
+        } finally {
+            taskStateLock.unlock();
         }
+    }
+    
+    /**
+     * 标记任务完成并计算处理时长
+     */
+    private void completeTask(VRProcessingResponse response, String resultUrl, String message) {
+        response.setStatus("COMPLETED");
+        response.setProgress(100);
+        response.setMessage(message);
+        response.setResultUrl(resultUrl);
+        response.setEndTime(LocalDateTime.now());
         
-        return CompletableFuture.completedFuture(null);
+        // 计算处理时长
+        if (response.getStartTime() != null) {
+            long duration = java.time.Duration.between(response.getStartTime(), response.getEndTime()).toMillis();
+            response.setProcessingDuration(duration);
+        }
     }
     
     /**
-     * 加载图片列表
+     * 登记生成结果并更新项目，并发任务已登记相同结果时改为复用已有结果并删除本次输出
+     */
+    private Map<String, Object> storeResult(String contentHash, Map<String, Object> sceneData,
+                                            List<String> outputPaths, Long projectId) {
+        try {
+            return resultCache.store(contentHash, sceneData, outputPaths, projectId);
+        } catch (DataIntegrityViolationException e) {
+            Optional<Map<String, Object>> existing = resultCache.reuse(contentHash, projectId);
+            if (existing.isEmpty()) {
+                throw e;
+            }
+            resultCache.deleteOutputs(outputPaths);
+            return existing.get();
+        }
+    }
+    
+    private static List<File> inputFiles(List<ImageDecodePlanner.DecodePlan> plans) {
+        List<File> files = new ArrayList<>(plans.size());
+        for (ImageDecodePlanner.DecodePlan plan : plans) {
+            files.add(plan.getFile());
+        }
+        return files;
+    }
+    
+    /**
+     * 读取全部图片的文件头，生成解码计划
      */
-    private List<BufferedImage> loadImages(List<String> imageUrls) throws Exception {
-        List<BufferedImage> images = new ArrayList<>();
+    private List<ImageDecodePlanner.DecodePlan> planImages(List<String> imageUrls,
+                                                           VRProcessingRequest.VRProcessingOptions options) {
+        // 拼接时每张图片被缩放到 outputWidth / 图片数量 的宽度
+        int targetWidth = options.getOutputWidth() / Math.max(1, imageUrls.size());
+        int targetHeight = options.getOutputHeight();
         
+        List<ImageDecodePlanner.DecodePlan> plans = new ArrayList<>();
         for (String imageUrl : imageUrls) {
-            try {
-                // 将URL转换为本地文件路径
-                String filePath = convertUrlToFilePath(imageUrl);
-                File imageFile = new File(filePath);
+            plans.add(planImage(imageUrl, targetWidth, targetHeight));
+        }
+        return plans;
+    }
+    
+    /**
+     * 加载图片列表
+     * 按解码计划在解码执行器上并行解码；同时解码的图片按文件头估算的字节数受内存预算限制，
+     * 结果按输入顺序返回，任一图片失败时不再提交后续图片并抛出按顺序最先失败的异常。
+     * 任务取消时放弃等待，尚未开始的解码不再执行；已开始的解码可能被其他任务共享，继续完成并进入缓存
+     */
+    private List<BufferedImage> loadImages(List<String> imageUrls, List<ImageDecodePlanner.DecodePlan> plans,
+                                           CancellationToken token) throws Exception {
+        // 预算以KB为单位发放许可，单张图片超过预算时按整个预算计，保证总能执行
+        int totalPermits = (int) Math.max(1, Math.min(Integer.MAX_VALUE, decodeMemoryBudget / 1024));
+        Semaphore budget = new Semaphore(totalPermits);
+        AtomicBoolean failed = new AtomicBoolean(false);
+        List<CompletableFuture<BufferedImage>> futures = new CopyOnWriteArrayList<>();
+        // 取消后的future立即完成并归还许可，等待许可或结果的线程随即返回
+        Runnable unregister = token.onCancel(() -> futures.forEach(future -> future.cancel(false)));
+        
+        try {
+            for (int i = 0; i < plans.size() && !failed.get(); i++) {
+                token.throwIfCancelled();
+                String imageUrl = imageUrls.get(i);
+                ImageDecodePlanner.DecodePlan plan = plans.get(i);
+                int permits = (int) Math.min(totalPermits, Math.max(1, estimateDecodeBytes(plan) / 1024));
                 
-                // 检查文件是否存在
-                if (!imageFile.exists()) {
-                    logger.error("图片文件不存在: {}", filePath);
-                    throw new ValidationException("图片文件不存在: " + imageUrl);
+                budget.acquire(permits);
+                CompletableFuture<BufferedImage> future;
+                try {
+                    future = CompletableFuture.supplyAsync(() -> decodeImage(imageUrl, plan), imageDecodeExecutor);
+                } catch (RuntimeException e) {
+                    budget.release(permits);
+                    throw e;
                 }
-                
-                BufferedImage image = ImageIO.read(imageFile);
-                
-                if (image == null) {
-                    logger.error("无法读取图片文件: {}", filePath);
-                    throw new ValidationException("无法读取图片: " + imageUrl);
+                future.whenComplete((image, error) -> {
+                    budget.release(permits);
+                    if (error != null) {
+                        failed.set(true);
+                    }
+                });
+                futures.add(future);
+                if (token.isCancelled()) {
+                    future.cancel(false);
                 }
-                
-                images.add(image);
-                logger.debug("成功加载图片: {}", imageUrl);
-                
-            } catch (Exception e) {
-                logger.error("加载图片失败: " + imageUrl, e);
-                throw new ValidationException("加载图片失败: " + imageUrl + " - " + e.getMessage());
             }
+            
+            List<BufferedImage> images = new ArrayList<>(futures.size());
+            for (CompletableFuture<BufferedImage> future : futures) {
+                images.add(joinDecode(future));
+            }
+            return images;
+        } catch (Exception e) {
+            futures.forEach(future -> future.cancel(false));
+            throw e;
+        } finally {
+            unregister.run();
+        }
+    }
+    
+    /**
+     * 生成解码计划，优先使用上传时记录的图片尺寸，没有记录时读取文件头
+     */
+    private ImageDecodePlanner.DecodePlan planImage(String imageUrl, int targetWidth, int targetHeight) {
+        try {
+            // 将URL转换为本地文件路径
+            String filePath = convertUrlToFilePath(imageUrl);
+            File imageFile = new File(filePath);
+            
+            // 检查文件是否存在
+            if (!imageFile.exists()) {
+                logger.error("图片文件不存在: {}", filePath);
+                throw new ValidationException("图片文件不存在: " + imageUrl);
+            }
+            
+            // 上传时记录了尺寸的JPEG/PNG直接按记录生成计划，这两种格式不分块存储，不需要读取文件头
+            Optional<ProjectImage> stored = projectImageRepository.findFirstByOriginalUrl(imageUrl)
+                .filter(image -> image.getWidth() != null && image.getHeight() != null
+                    && ("jpeg".equals(image.getFormat()) || "png".equals(image.getFormat())));
+            if (stored.isPresent()) {
+                int width = stored.get().getWidth();
+                int height = stored.get().getHeight();
+                return new ImageDecodePlanner.DecodePlan(imageFile, width, height,
+                    ImageDecodePlanner.computeSubsampling(width, height, targetWidth, targetHeight), false);
+            }
+            return ImageDecodePlanner.plan(imageFile, targetWidth, targetHeight);
+        } catch (Exception e) {
+            logger.error("加载图片失败: " + imageUrl, e);
+            throw new ValidationException("加载图片失败: " + imageUrl + " - " + e.getMessage());
+        }
+    }
+    
+    /**
+     * 按计划解码单张图片
+     */
+    private BufferedImage decodeImage(String imageUrl, ImageDecodePlanner.DecodePlan plan) {
+        try {
+            BufferedImage image = decodedImageCache.getOrDecode(plan.getFile(), plan.getSubsampling(),
+                () -> ImageDecodePlanner.decode(plan));
+            
+            if (image == null) {
+                logger.error("无法读取图片文件: {}", plan.getFile().getPath());
+                throw new ValidationException("无法读取图片: " + imageUrl);
+            }
+            
+            logger.debug("成功加载图片: {} ({}x{}, 下采样 1/{})", 
+                imageUrl, plan.getWidth(), plan.getHeight(), plan.getSubsampling());
+            return image;
+            
+        } catch (Exception e) {
+            logger.error("加载图片失败: " + imageUrl, e);
+            throw new ValidationException("加载图片失败: " + imageUrl + " - " + e.getMessage());
+        }
+    }
+    
+    private static BufferedImage joinDecode(CompletableFuture<BufferedImage> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
         }
-        
-        return images;
+    }
+    
+    /**
+     * 估算解码一张图片的峰值字节数：解码结果按每像素4字节，另加解码器按源宽度缓存的扫描行
+     */
+    static long estimateDecodeBytes(ImageDecodePlanner.DecodePlan plan) {
+        return plan.getDecodedPixels() * 4L + (long) plan.getWidth() * 3L * 16L;
     }
     
     /**
@@ -221,8 +1131,15 @@ public class VRProcessingService {
      * 生成输出文件路径
      */
     private String generateOutputPath(Long projectId, String taskId) {
-        String fileName = "vr_" + projectId + "_" + taskId + ".jpg";
-        String dirPath = uploadBasePath + File.separator + "vr" + File.separator + "project_" + projectId;
+        return generateOutputPath(projectId, taskId, null);
+    }
+    
+    /**
+     * 生成输出文件路径，suffix用于区分同一任务的多个输出文件
+     */
+    private String generateOutputPath(Long projectId, String taskId, String suffix) {
+        String fileName = generateOutputFileName(projectId, taskId, suffix);
+        String dirPath = generateOutputDir(projectId);
         
         // 确保目录存在
         File dir = new File(dirPath);
@@ -233,35 +1150,74 @@ public class VRProcessingService {
         return dirPath + File.separator + fileName;
     }
     
+    /**
+     * 生成项目输出目录
+     */
+    private String generateOutputDir(Long projectId) {
+        return uploadBasePath + File.separator + "vr" + File.separator + "project_" + projectId;
+    }
+    
+    /**
+     * 生成项目输出目录的访问URL
+     */
+    private String generateOutputBaseUrl(Long projectId) {
+        return baseUrl + "/vr/project_" + projectId;
+    }
+    
     /**
      * 生成输出URL
      */
     private String generateOutputUrl(Long projectId, String taskId) {
-        String fileName = "vr_" + projectId + "_" + taskId + ".jpg";
-        return baseUrl + "/vr/project_" + projectId + "/" + fileName;
+        return generateOutputUrl(projectId, taskId, null);
     }
     
     /**
-     * 更新项目结果
+     * 生成输出URL，suffix用于区分同一任务的多个输出文件
      */
-    private void updateProjectWithResult(VrProject project, String resultUrl) {
-        try {
-            // 更新项目的场景数据
-            Map<String, Object> sceneData = new HashMap<>();
-            sceneData.put("type", "panorama");
-            sceneData.put("url", resultUrl);
-            sceneData.put("generatedAt", LocalDateTime.now().toString());
-            
-            project.setSceneData(sceneData);
-            project.setStatus(1); // 设置为已发布状态
-            
-            vrProjectRepository.save(project);
-            
-            logger.info("项目更新成功: projectId={}, resultUrl={}", project.getId(), resultUrl);
-            
-        } catch (Exception e) {
-            logger.error("更新项目失败: projectId=" + project.getId(), e);
+    private String generateOutputUrl(Long projectId, String taskId, String suffix) {
+        return generateOutputBaseUrl(projectId) + "/" + generateOutputFileName(projectId, taskId, suffix);
+    }
+    
+    private String generateOutputFileName(Long projectId, String taskId, String suffix) {
+        return "vr_" + projectId + "_" + taskId + (suffix == null ? "" : "_" + suffix) + ".jpg";
+    }
+    
+    /**
+     * 并行保存立方体贴图的各个面
+     *
+     * @return 面标识到访问URL的映射
+     */
+    private Map<String, String> saveCubeFaces(Long projectId, String taskId, Map<String, BufferedImage> faces,
+                                              int quality, boolean progressive) {
+        Map<String, String> faceUrls = new LinkedHashMap<>();
+        if (faces == null || faces.isEmpty()) {
+            return faceUrls;
         }
+        
+        faces.entrySet().parallelStream().forEach(entry -> {
+            String outputPath = generateOutputPath(projectId, taskId, entry.getKey());
+            try {
+                imageProcessingService.saveJpeg(entry.getValue(), outputPath, quality, progressive);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        
+        for (String face : faces.keySet()) {
+            faceUrls.put(face, generateOutputUrl(projectId, taskId, face));
+        }
+        return faceUrls;
+    }
+    
+    /**
+     * 创建场景数据
+     */
+    private Map<String, Object> createSceneData(String type, String resultUrl) {
+        Map<String, Object> sceneData = new HashMap<>();
+        sceneData.put("type", type);
+        sceneData.put("url", resultUrl);
+        sceneData.put("generatedAt", LocalDateTime.now().toString());
+        return sceneData;
     }
     
     /**
@@ -287,15 +1243,33 @@ public class VRProcessingService {
     
     /**
      * 取消处理任务
+     * 等待执行、排队等待内存和处理中的任务都可以取消：本实例执行中的任务通过取消令牌在当前行分块结束后停止，
+     * 随后释放内存预算、堆外缓冲区和已写出的文件；任务表同时标记为已取消，尚未认领的任务不再执行。
+     * 不在本实例内存中的任务只标记任务表，执行它的实例在下次心跳时停止。
+     * 任务正在登记结果、更新项目时不能取消
      */
     public boolean cancelProcessingTask(String taskId) {
         VRProcessingResponse response = processingTasks.get(taskId);
-        if (response != null && "PROCESSING".equals(response.getStatus())) {
+        if (response == null) {
+            return jobService.cancel(taskId);
+        }
+        taskStateLock.lock();
+        try {
+            if (!CANCELLABLE_STATUSES.contains(response.getStatus()) || committingTasks.contains(taskId)) {
+                return false;
+            }
             response.setStatus("CANCELLED");
             response.setMessage("任务已取消");
             response.setEndTime(LocalDateTime.now());
-            return true;
+        } finally {
+            taskStateLock.unlock();
+        }
+        CancellationToken token = cancellationTokens.get(taskId);
+        if (token != null) {
+            token.cancel();
         }
-        return false;
+        jobService.cancel(taskId);
+        logger.info("VR处理任务已取消: taskId={}", taskId);
+        return true;
     }
 }
\ No newline at end of file
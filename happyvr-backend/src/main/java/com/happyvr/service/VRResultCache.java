@@ -0,0 +1,324 @@
+package com.happyvr.service;
+
+import com.happyvr.dto.vr.VRProcessingRequest;
+import com.happyvr.entity.VrProject;
+import com.happyvr.entity.VrResult;
+import com.happyvr.exception.ResourceNotFoundException;
+import com.happyvr.repository.VrProjectRepository;
+import com.happyvr.repository.VrResultRepository;
+import com.happyvr.util.ImageResampler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * VR生成结果缓存服务
+ * 以输入图片内容摘要、规范化处理选项和影响输出的服务端配置的SHA-256作为结果标识，相同提交直接复用已有输出；
+ * 项目场景数据记录所引用结果的标识，引用计数归零时删除输出文件。
+ * 修改项目引用的结果时先锁定项目行，在同一事务中读取项目当前引用的结果、调整引用计数并更新项目
+ */
+@Service
+public class VRResultCache {
+    
+    private static final Logger logger = LoggerFactory.getLogger(VRResultCache.class);
+    
+    /**
+     * 场景数据中记录结果标识的键
+     */
+    public static final String SCENE_CONTENT_HASH = "contentHash";
+    
+    /**
+     * 处理算法版本，输出结果会因算法变化而不同时递增，使旧结果不再被复用
+     */
+    static final int PIPELINE_VERSION = 1;
+    
+    private static final int MAX_FILE_DIGESTS = 4096;
+    private static final int DIGEST_BUFFER_SIZE = 256 * 1024;
+    
+    @Autowired
+    private VrResultRepository vrResultRepository;
+    
+    @Autowired
+    private VrProjectRepository vrProjectRepository;
+    
+    // 以下服务端配置影响输出内容，修改后旧结果不再被复用
+    @Value("${file.upload.vr.stitch.overlap-ratio:0.1}")
+    private double stitchOverlapRatio = 0.1;
+    
+    @Value("${file.upload.vr.resample-kernel:BILINEAR}")
+    private ImageResampler.Kernel resampleKernel = ImageResampler.Kernel.BILINEAR;
+    
+    @Value("${file.upload.vr.jpeg.quality:90}")
+    private int defaultJpegQuality = 90;
+    
+    @Value("${file.upload.vr.jpeg.progressive:false}")
+    private boolean defaultJpegProgressive = false;
+    
+    @Value("${file.upload.vr.preview.enabled:true}")
+    private boolean previewEnabled = true;
+    
+    @Value("${file.upload.vr.preview.width:1024}")
+    private int previewWidth = 1024;
+    
+    @Value("${file.upload.vr.preview.quality:80}")
+    private int previewQuality = 80;
+    
+    // 文件摘要缓存，文件大小或修改时间变化时重新计算
+    private final Map<String, FileDigest> fileDigests = Collections.synchronizedMap(
+        new LinkedHashMap<String, FileDigest>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, FileDigest> eldest) {
+                return size() > MAX_FILE_DIGESTS;
+            }
+        });
+    
+    /**
+     * 计算结果标识
+     * 按输入顺序组合各图片文件内容的摘要，再加上规范化的处理类型、选项和服务端配置指纹
+     */
+    public String computeKey(List<File> inputs, String processingType,
+                             VRProcessingRequest.VRProcessingOptions options) throws IOException {
+        MessageDigest digest = newDigest();
+        digest.update(normalizeOptions(processingType, options).getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) ';');
+        digest.update(configFingerprint().getBytes(StandardCharsets.UTF_8));
+        for (File input : inputs) {
+            digest.update((byte) '\n');
+            digest.update(digestFile(input));
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+    
+    /**
+     * 规范化处理选项，只包含影响输出的字段
+     */
+    static String normalizeOptions(String processingType, VRProcessingRequest.VRProcessingOptions options) {
+        boolean tiles = Boolean.TRUE.equals(options.getEnableTiles());
+        StringBuilder builder = new StringBuilder();
+        builder.append("v=").append(PIPELINE_VERSION)
+            .append(";type=").append(processingType == null ? "" : processingType.trim().toUpperCase(Locale.ROOT))
+            .append(";size=").append(options.getOutputWidth()).append('x').append(options.getOutputHeight())
+            .append(";quality=").append(Math.max(1, Math.min(100, options.getQuality())))
+            .append(";progressive=").append(Boolean.TRUE.equals(options.getProgressive()))
+            .append(";optimize=").append(Boolean.TRUE.equals(options.getEnableOptimization()))
+            .append(";tiles=").append(tiles ? options.getTileSize() : 0);
+        return builder.toString();
+    }
+    
+    /**
+     * 服务端配置指纹：拼接重叠比例、重采样核、默认JPEG参数和预览图参数
+     */
+    String configFingerprint() {
+        return "overlap=" + stitchOverlapRatio
+            + ";kernel=" + resampleKernel
+            + ";jpeg=" + defaultJpegQuality + (defaultJpegProgressive ? "p" : "")
+            + ";preview=" + (previewEnabled ? previewWidth + "@" + previewQuality : "off");
+    }
+     
+    /**
+     * 复用已有结果，并把项目指向该结果
+     *
+     * @return 已有结果的场景数据，不存在时返回空且不修改项目
+     */
+    @Transactional
+    public Optional<Map<String, Object>> reuse(String contentHash, Long projectId) {
+        VrProject project = lockProject(projectId);
+        Optional<VrResult> existing = vrResultRepository.findByContentHashForUpdate(contentHash);
+        if (existing.isEmpty()) {
+            return Optional.empty();
+        }
+        
+        VrResult result = existing.get();
+        assign(project, result, false);
+        logger.info("复用VR生成结果: contentHash={}, referenceCount={}", contentHash, result.getReferenceCount());
+        return Optional.of(new HashMap<>(result.getSceneData()));
+    }
+    
+    /**
+     * 登记新生成的结果，并把项目指向该结果
+     * 如果相同结果已由并发任务先登记，则使用已有结果并删除本次输出
+     *
+     * @return 项目应使用的场景数据
+     */
+    @Transactional
+    public Map<String, Object> store(String contentHash, Map<String, Object> sceneData, List<String> outputPaths,
+                                     Long projectId) {
+        VrProject project = lockProject(projectId);
+        VrResult result = vrResultRepository.findByContentHashForUpdate(contentHash).orElse(null);
+        boolean created = result == null;
+        if (created) {
+            sceneData.put(SCENE_CONTENT_HASH, contentHash);
+            result = new VrResult(contentHash, sceneData, new ArrayList<>(outputPaths));
+        } else {
+            logger.info("相同结果已存在，删除本次输出: contentHash={}", contentHash);
+            deleteOutputs(outputPaths);
+        }
+        
+        assign(project, result, created);
+        return new HashMap<>(result.getSceneData());
+    }
+    
+    private VrProject lockProject(Long projectId) {
+        return vrProjectRepository.findByIdForUpdate(projectId)
+            .orElseThrow(() -> new ResourceNotFoundException("VR项目不存在"));
+    }
+    
+    /**
+     * 项目改为引用指定结果：按项目当前（已加锁）引用的结果判断是否计入引用并释放原结果，
+     * 然后更新项目场景数据和发布状态
+     *
+     * @param created 结果是否为本次新建，新建结果总要计入一次引用
+     */
+    private void assign(VrProject project, VrResult result, boolean created) {
+        String previousHash = contentHashOf(project.getSceneData());
+        boolean changed = !result.getContentHash().equals(previousHash);
+        if (changed || created) {
+            result.setReferenceCount(result.getReferenceCount() + 1);
+        }
+        vrResultRepository.save(result);
+        if (changed) {
+            release(previousHash);
+        }
+        
+        project.setSceneData(new HashMap<>(result.getSceneData()));
+        project.setStatus(1); // 设置为已发布状态
+        vrProjectRepository.save(project);
+        logger.info("项目更新成功: projectId={}, resultUrl={}", project.getId(), result.getSceneData().get("url"));
+    }
+    
+    /**
+     * 释放一次引用，引用计数归零时删除结果记录和输出文件
+     */
+    @Transactional
+    public void release(String contentHash) {
+        if (contentHash == null) {
+            return;
+        }
+        VrResult result = vrResultRepository.findByContentHashForUpdate(contentHash).orElse(null);
+        if (result == null) {
+            return;
+        }
+        
+        int remaining = result.getReferenceCount() - 1;
+        if (remaining > 0) {
+            result.setReferenceCount(remaining);
+            vrResultRepository.save(result);
+            return;
+        }
+        
+        logger.info("VR生成结果不再被引用，删除输出: contentHash={}", contentHash);
+        vrResultRepository.delete(result);
+        deleteOutputs(result.getOutputPaths());
+    }
+    
+    /**
+     * 读取场景数据中记录的结果标识
+     */
+    public static String contentHashOf(Map<String, Object> sceneData) {
+        if (sceneData == null) {
+            return null;
+        }
+        Object contentHash = sceneData.get(SCENE_CONTENT_HASH);
+        return contentHash instanceof String ? (String) contentHash : null;
+    }
+    
+    /**
+     * 删除输出文件和目录，处于事务中时在提交后删除
+     */
+    public void deleteOutputs(List<String> outputPaths) {
+        if (outputPaths == null || outputPaths.isEmpty()) {
+            return;
+        }
+        List<String> paths = new ArrayList<>(outputPaths);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    deletePaths(paths);
+                }
+            });
+        } else {
+            deletePaths(paths);
+        }
+    }
+    
+    private static void deletePaths(List<String> paths) {
+        for (String outputPath : paths) {
+            Path path = Paths.get(outputPath);
+            try (Stream<Path> walk = Files.walk(path)) {
+                walk.sorted(Comparator.reverseOrder()).forEach(child -> child.toFile().delete());
+            } catch (NoSuchFileException e) {
+                // 已被删除
+            } catch (IOException e) {
+                logger.warn("删除VR输出失败: " + outputPath, e);
+            }
+        }
+    }
+    
+    /**
+     * 计算文件内容摘要，按规范路径、大小和修改时间缓存
+     */
+    private byte[] digestFile(File file) throws IOException {
+        String canonicalPath = file.getCanonicalPath();
+        long size = file.length();
+        long lastModified = file.lastModified();
+        
+        FileDigest cached = fileDigests.get(canonicalPath);
+        if (cached != null && cached.size == size && cached.lastModified == lastModified) {
+            return cached.digest;
+        }
+        
+        MessageDigest digest = newDigest();
+        ByteBuffer buffer = ByteBuffer.allocate(DIGEST_BUFFER_SIZE);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        byte[] result = digest.digest();
+        fileDigests.put(canonicalPath, new FileDigest(size, lastModified, result));
+        return result;
+    }
+    
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256不可用", e);
+        }
+    }
+    
+    private static final class FileDigest {
+        private final long size;
+        private final long lastModified;
+        private final byte[] digest;
+        
+        FileDigest(long size, long lastModified, byte[] digest) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.digest = digest;
+        }
+    }
+}
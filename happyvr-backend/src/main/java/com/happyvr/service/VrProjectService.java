@@ -39,6 +39,9 @@ public class VrProjectService {
     @Autowired
     private UserRepository userRepository;
     
+    @Autowired
+    private VRResultCache resultCache;
+    
     private final SecureRandom secureRandom = new SecureRandom();
     
     /**
@@ -150,8 +153,8 @@ public class VrProjectService {
     public void deleteProject(Long projectId, Long userId) {
         logger.info("用户 {} 删除VR项目: projectId={}", userId, projectId);
         
-        // 获取项目
-        VrProject project = vrProjectRepository.findById(projectId)
+        // 获取项目并加锁，与VR任务写回结果互斥，释放的是项目当前引用的结果
+        VrProject project = vrProjectRepository.findByIdForUpdate(projectId)
             .orElseThrow(() -> new ResourceNotFoundException("VR项目不存在"));
         
         // 检查权限
@@ -159,8 +162,9 @@ public class VrProjectService {
             throw new UnauthorizedException("无权限删除此项目");
         }
         
-        // 删除项目
+        // 删除项目，释放对共享生成结果的引用
         vrProjectRepository.delete(project);
+        resultCache.release(VRResultCache.contentHashOf(project.getSceneData()));
         
         logger.info("VR项目删除成功: projectId={}", projectId);
     }
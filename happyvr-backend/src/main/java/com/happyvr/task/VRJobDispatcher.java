@@ -0,0 +1,167 @@
+package com.happyvr.task;
+
+import com.happyvr.entity.VrJob;
+import com.happyvr.service.VRJobService;
+import com.happyvr.service.VRProcessingService;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * VR任务调度器
+ * 从任务表认领待执行任务交给vrProcessingExecutor（每个任务一个虚拟线程）执行，同时执行的任务数不超过配置的并发数。
+ * 任务提交后立即唤醒认领，另有定时轮询兜底（其他实例提交的任务、重新排队的任务），
+ * 轮询时顺带刷新本实例执行中任务的心跳、停止已在任务表中取消的任务并重排心跳超时的任务
+ */
+@Component
+public class VRJobDispatcher {
+    
+    private static final Logger logger = LoggerFactory.getLogger(VRJobDispatcher.class);
+    
+    @Autowired
+    private VRJobService jobService;
+    
+    @Autowired
+    private VRProcessingService vrProcessingService;
+    
+    @Autowired
+    @Qualifier("vrProcessingExecutor")
+    private Executor vrProcessingExecutor;
+    
+    // 唤醒认领在通用执行器上进行，不占用提交任务的请求线程
+    @Autowired
+    @Qualifier("taskExecutor")
+    private Executor taskExecutor;
+    
+    @Value("${file.upload.vr.jobs.enabled:true}")
+    private boolean enabled = true;
+    
+    // 本实例同时执行的任务数上限，大于计算阶段并发数时后续任务可以提前加载图片
+    @Value("${file.upload.vr.jobs.concurrency:4}")
+    private int concurrency = 4;
+    
+    // 本实例执行中的任务及认领时的认领次数，心跳和结束状态只对该次认领生效
+    private final Map<String, Integer> running = new ConcurrentHashMap<>();
+    
+    private final ReentrantLock dispatchLock = new ReentrantLock();
+    private final AtomicBoolean dispatchRequested = new AtomicBoolean();
+    private volatile boolean stopped;
+    
+    /**
+     * 任务提交事务提交后唤醒认领
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onJobSubmitted(VRJobService.JobSubmittedEvent event) {
+        wakeUp();
+    }
+    
+    /**
+     * 异步触发一次认领
+     */
+    public void wakeUp() {
+        if (!enabled || stopped) {
+            return;
+        }
+        try {
+            taskExecutor.execute(this::dispatch);
+        } catch (RejectedExecutionException e) {
+            logger.debug("唤醒VR任务调度被拒绝，等待下次轮询");
+        }
+    }
+    
+    /**
+     * 定时轮询：刷新心跳、重排超时任务并认领待执行任务
+     */
+    @Scheduled(fixedDelayString = "${file.upload.vr.jobs.poll-interval-ms:2000}")
+    public void poll() {
+        if (!enabled || stopped) {
+            return;
+        }
+        try {
+            jobService.heartbeat(running);
+            // 在其他实例上取消的任务：通过任务表得知，停止本实例的执行
+            for (String taskId : jobService.findCancelled(running.keySet())) {
+                vrProcessingService.cancelProcessingTask(taskId);
+            }
+            jobService.requeueStale();
+            dispatch();
+        } catch (Exception e) {
+            logger.error("VR任务调度失败", e);
+        }
+    }
+    
+    /**
+     * 按空闲并发数认领任务并提交执行
+     * 同一时刻只有一个线程认领；认领期间到达的唤醒请求由持锁线程在释放前补做，不会丢失
+     */
+    void dispatch() {
+        dispatchRequested.set(true);
+        while (dispatchRequested.get() && dispatchLock.tryLock()) {
+            try {
+                dispatchRequested.set(false);
+                claimAndStart();
+            } finally {
+                dispatchLock.unlock();
+            }
+        }
+    }
+    
+    private void claimAndStart() {
+        int slots = concurrency - running.size();
+        if (slots <= 0 || stopped) {
+            return;
+        }
+        List<VrJob> jobs = jobService.claim(slots);
+        for (VrJob job : jobs) {
+            running.put(job.getTaskId(), job.getAttempts());
+            try {
+                vrProcessingExecutor.execute(() -> run(job));
+            } catch (RejectedExecutionException e) {
+                // 执行器已关闭：不再刷新心跳，任务在心跳超时后由其他实例重新认领
+                running.remove(job.getTaskId(), job.getAttempts());
+                logger.warn("VR任务提交执行被拒绝: taskId={}", job.getTaskId());
+            }
+        }
+        if (!jobs.isEmpty()) {
+            logger.debug("认领VR任务 {} 个，执行中 {} 个", jobs.size(), running.size());
+        }
+    }
+    
+    private void run(VrJob job) {
+        try {
+            vrProcessingService.runJob(job);
+        } catch (Exception e) {
+            logger.error("VR任务执行异常: taskId=" + job.getTaskId(), e);
+            jobService.finish(job.getTaskId(), job.getAttempts(), VrJob.STATUS_FAILED, null, e.getMessage());
+        } finally {
+            running.remove(job.getTaskId(), job.getAttempts());
+            wakeUp();
+        }
+    }
+    
+    /**
+     * 本实例执行中的任务数
+     */
+    public int getRunningCount() {
+        return running.size();
+    }
+    
+    @PreDestroy
+    public void stop() {
+        stopped = true;
+    }
+}
@@ -0,0 +1,122 @@
+package com.happyvr.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+/**
+ * 协作式取消令牌
+ * 处理任务在工作线程上绑定自己的令牌，像素内核、条带流水线和JPEG编码器通过current()取得令牌，
+ * 在每个行分块、条带或扫描行之间检查，取消后抛出CancellationException，使工作线程尽快退出。
+ * 没有绑定令牌的线程得到NONE，永远不会被取消
+ */
+public final class CancellationToken {
+    
+    /**
+     * 不可取消的令牌
+     */
+    public static final CancellationToken NONE = new CancellationToken();
+    
+    private static final ThreadLocal<CancellationToken> CURRENT = new ThreadLocal<>();
+    
+    private volatile boolean cancelled;
+    
+    // 取消时执行的回调，用于唤醒阻塞等待（如内存预算排队）的线程
+    private final List<Runnable> callbacks = new ArrayList<>();
+    
+    /**
+     * 取消，只有第一次调用会执行回调
+     */
+    public void cancel() {
+        if (this == NONE) {
+            throw new UnsupportedOperationException("NONE令牌不能取消");
+        }
+        List<Runnable> toRun;
+        synchronized (callbacks) {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            toRun = new ArrayList<>(callbacks);
+            callbacks.clear();
+        }
+        toRun.forEach(Runnable::run);
+    }
+    
+    public boolean isCancelled() {
+        return cancelled;
+    }
+    
+    /**
+     * 已取消时抛出CancellationException
+     */
+    public void throwIfCancelled() {
+        if (cancelled) {
+            throw new CancellationException("任务已取消");
+        }
+    }
+    
+    /**
+     * 登记取消回调，已取消时立即在当前线程执行
+     *
+     * @return 注销回调的句柄，等待结束后调用
+     */
+    public Runnable onCancel(Runnable callback) {
+        synchronized (callbacks) {
+            if (!cancelled) {
+                callbacks.add(callback);
+                return () -> {
+                    synchronized (callbacks) {
+                        callbacks.remove(callback);
+                    }
+                };
+            }
+        }
+        callback.run();
+        return () -> {};
+    }
+    
+    /**
+     * 把令牌绑定到当前线程，关闭返回的Scope时恢复之前绑定的令牌
+     */
+    public Scope bind() {
+        CancellationToken previous = CURRENT.get();
+        CURRENT.set(this);
+        return new Scope(previous);
+    }
+    
+    /**
+     * 当前线程绑定的令牌，没有绑定时返回NONE
+     */
+    public static CancellationToken current() {
+        CancellationToken token = CURRENT.get();
+        return token != null ? token : NONE;
+    }
+    
+    /**
+     * 检查当前线程绑定的令牌
+     */
+    public static void checkCurrent() {
+        current().throwIfCancelled();
+    }
+    
+    /**
+     * 令牌绑定范围
+     */
+    public static final class Scope implements AutoCloseable {
+        private final CancellationToken previous;
+        
+        private Scope(CancellationToken previous) {
+            this.previous = previous;
+        }
+        
+        @Override
+        public void close() {
+            if (previous != null) {
+                CURRENT.set(previous);
+            } else {
+                CURRENT.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.happyvr.util;
+
+import javax.imageio.stream.ImageOutputStreamImpl;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * 直接写入FileChannel的ImageOutputStream
+ * ImageIO.createImageOutputStream对普通OutputStream会额外使用临时文件或内存缓存，这里按位置直接读写通道
+ */
+final class ChannelImageOutputStream extends ImageOutputStreamImpl {
+    
+    private final FileChannel channel;
+    private final ByteBuffer single = ByteBuffer.allocate(1);
+    
+    ChannelImageOutputStream(FileChannel channel) {
+        this.channel = channel;
+    }
+    
+    @Override
+    public int read() throws IOException {
+        checkClosed();
+        bitOffset = 0;
+        single.clear();
+        if (channel.read(single, streamPos) <= 0) {
+            return -1;
+        }
+        streamPos++;
+        return single.get(0) & 0xFF;
+    }
+    
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        checkClosed();
+        bitOffset = 0;
+        if (len == 0) {
+            return 0;
+        }
+        int count = channel.read(ByteBuffer.wrap(b, off, len), streamPos);
+        if (count <= 0) {
+            return -1;
+        }
+        streamPos += count;
+        return count;
+    }
+    
+    @Override
+    public void write(int b) throws IOException {
+        flushBits();
+        single.clear();
+        single.put(0, (byte) b);
+        writeFully(single);
+    }
+    
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        flushBits();
+        writeFully(ByteBuffer.wrap(b, off, len));
+    }
+    
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            streamPos += channel.write(buffer, streamPos);
+        }
+    }
+    
+    @Override
+    public long length() {
+        try {
+            checkClosed();
+            return channel.size();
+        } catch (IOException e) {
+            return -1L;
+        }
+    }
+    
+    @Override
+    public void seek(long pos) throws IOException {
+        checkClosed();
+        if (pos < flushedPos) {
+            throw new IndexOutOfBoundsException("pos < flushedPos!");
+        }
+        bitOffset = 0;
+        streamPos = pos;
+    }
+}
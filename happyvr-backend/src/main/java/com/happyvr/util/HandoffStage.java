@@ -0,0 +1,218 @@
+package com.happyvr.util;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 有界交接阶段
+ * 上游先通过enter()占用交接位置（执行中加等待中的任务数不超过 concurrency + capacity，满时等待），
+ * 准备好输入后通过Ticket.run()按调用顺序等待执行位置，在阶段的执行器上执行并等待结果。
+ * 占位发生在上游准备输入之前，等待本阶段的已准备任务数不超过队列容量，上游不会无限超前。
+ * 等待期间调用线程绑定的取消令牌被取消时退出队列并抛出CancellationException；
+ * 执行时令牌同时绑定到执行器线程
+ */
+public final class HandoffStage {
+    
+    private final String name;
+    private final Executor executor;
+    private final int concurrency;
+    private final int capacity;
+    
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    
+    // 等待占位的任务，按到达顺序
+    private final Deque<Ticket> entering = new ArrayDeque<>();
+    // 已占位、等待执行位置的任务，按调用run()的顺序
+    private final Deque<Ticket> ready = new ArrayDeque<>();
+    private int admitted;
+    private int active;
+    
+    /**
+     * @param executor    执行本阶段工作的执行器，为null时在调用线程执行
+     * @param concurrency 同时执行的任务数
+     * @param capacity    已占位但未执行的任务数上限
+     */
+    public HandoffStage(String name, Executor executor, int concurrency, int capacity) {
+        this.name = name;
+        this.executor = executor;
+        this.concurrency = Math.max(1, concurrency);
+        this.capacity = Math.max(0, capacity);
+    }
+    
+    /**
+     * 占用交接位置，队列已满时等待
+     */
+    public Ticket enter(CancellationToken token) throws InterruptedException {
+        token.throwIfCancelled();
+        Ticket ticket = new Ticket();
+        lock.lock();
+        try {
+            entering.addLast(ticket);
+            Runnable unregister = token.onCancel(this::signalChanged);
+            try {
+                while (entering.peekFirst() != ticket || admitted >= concurrency + capacity) {
+                    token.throwIfCancelled();
+                    changed.await();
+                }
+                token.throwIfCancelled();
+            } catch (InterruptedException | RuntimeException e) {
+                entering.remove(ticket);
+                changed.signalAll();
+                throw e;
+            } finally {
+                unregister.run();
+            }
+            entering.removeFirst();
+            admitted++;
+            changed.signalAll();
+            return ticket;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    /**
+     * 执行中的任务数
+     */
+    public int getActiveCount() {
+        lock.lock();
+        try {
+            return active;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * 已占位但未执行的任务数
+     */
+    public int getQueuedCount() {
+        lock.lock();
+        try {
+            return admitted - active;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    private void signalChanged() {
+        lock.lock();
+        try {
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * 交接位置，关闭时释放；每个位置只能执行一次
+     */
+    public final class Ticket implements AutoCloseable {
+        
+        private boolean used;
+        private boolean closed;
+        
+        private Ticket() {}
+        
+        /**
+         * 按顺序等待执行位置，在阶段执行器上执行work并返回结果，work抛出的异常原样抛出；
+         * 执行结束后同时释放交接位置
+         */
+        public <T> T run(Callable<T> work) throws Exception {
+            CancellationToken token = CancellationToken.current();
+            acquireSlot(token);
+            try {
+                if (executor == null) {
+                    return work.call();
+                }
+                CompletableFuture<T> result = new CompletableFuture<>();
+                executor.execute(() -> {
+                    try (CancellationToken.Scope scope = token.bind()) {
+                        result.complete(work.call());
+                    } catch (Throwable e) {
+                        result.completeExceptionally(e);
+                    }
+                });
+                try {
+                    return result.get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof Error) {
+                        throw (Error) cause;
+                    }
+                    throw (Exception) cause;
+                }
+            } finally {
+                releaseSlot();
+                close();
+            }
+        }
+        
+        private void acquireSlot(CancellationToken token) throws InterruptedException {
+            token.throwIfCancelled();
+            lock.lock();
+            try {
+                if (used || closed) {
+                    throw new IllegalStateException(name + "阶段的交接位置已使用");
+                }
+                used = true;
+                ready.addLast(this);
+                Runnable unregister = token.onCancel(HandoffStage.this::signalChanged);
+                try {
+                    while (ready.peekFirst() != this || active >= concurrency) {
+                        token.throwIfCancelled();
+                        changed.await();
+                    }
+                    token.throwIfCancelled();
+                } catch (InterruptedException | RuntimeException e) {
+                    ready.remove(this);
+                    changed.signalAll();
+                    throw e;
+                } finally {
+                    unregister.run();
+                }
+                ready.removeFirst();
+                active++;
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+        
+        private void releaseSlot() {
+            lock.lock();
+            try {
+                active--;
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+        
+        @Override
+        public void close() {
+            lock.lock();
+            try {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                admitted--;
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package com.happyvr.util;
+
+import com.happyvr.exception.ValidationException;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * 图片解码规划器
+ * 先只读取文件头获得尺寸，再根据目标尺寸计算下采样倍数，通过ImageReader按需解码
+ */
+public final class ImageDecodePlanner {
+    
+    /**
+     * 解码后像素数超过该值的分块存储图片按区域并行解码
+     */
+    public static final long REGION_DECODE_MIN_PIXELS = 16L * 1024 * 1024;
+    
+    /**
+     * 区域解码时每个区域的最小源行数
+     */
+    private static final int MIN_REGION_ROWS = 256;
+    
+    private ImageDecodePlanner() {}
+    
+    /**
+     * 读取文件头并生成解码计划
+     *
+     * @param targetWidth  解码结果至少需要的宽度，小于等于0表示不下采样
+     * @param targetHeight 解码结果至少需要的高度，小于等于0表示不下采样
+     */
+    public static DecodePlan plan(File file, int targetWidth, int targetHeight) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(file)) {
+            ImageReader reader = findReader(input, file);
+            try {
+                reader.setInput(input, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                boolean tiled = reader.isImageTiled(0);
+                int subsampling = computeSubsampling(width, height, targetWidth, targetHeight);
+                return new DecodePlan(file, width, height, subsampling, tiled);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+    
+    /**
+     * 计算下采样倍数，保证解码结果在两个方向上都不小于目标尺寸
+     */
+    public static int computeSubsampling(int width, int height, int targetWidth, int targetHeight) {
+        if (targetWidth <= 0 || targetHeight <= 0) {
+            return 1;
+        }
+        return Math.max(1, Math.min(width / targetWidth, height / targetHeight));
+    }
+    
+    /**
+     * 按计划解码图片
+     */
+    public static BufferedImage decode(DecodePlan plan) throws IOException {
+        return decode(plan, REGION_DECODE_MIN_PIXELS);
+    }
+    
+    static BufferedImage decode(DecodePlan plan, long regionDecodeMinPixels) throws IOException {
+        if (plan.isTiled() && plan.getDecodedPixels() >= regionDecodeMinPixels) {
+            return decodeRegions(plan);
+        }
+        
+        try (ImageInputStream input = ImageIO.createImageInputStream(plan.getFile())) {
+            ImageReader reader = findReader(input, plan.getFile());
+            try {
+                reader.setInput(input, true, true);
+                ImageReadParam param = reader.getDefaultReadParam();
+                applySubsampling(param, plan.getSubsampling());
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+    
+    /**
+     * 按水平区域并行解码到同一张目标图片
+     * 只用于分块存储的图片，顺序编码的JPEG/PNG解码任一区域都要先解码其上方所有行，并行反而增加总开销
+     */
+    private static BufferedImage decodeRegions(DecodePlan plan) throws IOException {
+        BufferedImage destination;
+        try (ImageInputStream input = ImageIO.createImageInputStream(plan.getFile())) {
+            ImageReader reader = findReader(input, plan.getFile());
+            try {
+                reader.setInput(input, true, true);
+                ImageTypeSpecifier type = reader.getImageTypes(0).next();
+                destination = type.createBufferedImage(plan.getDecodedWidth(), plan.getDecodedHeight());
+            } finally {
+                reader.dispose();
+            }
+        }
+        
+        // 区域高度取下采样倍数的整数倍，保证各区域的采样网格与整图一致
+        int subsampling = plan.getSubsampling();
+        int regionRows = Math.max(MIN_REGION_ROWS, plan.getHeight() / Runtime.getRuntime().availableProcessors());
+        regionRows = (regionRows + subsampling - 1) / subsampling * subsampling;
+        List<Rectangle> regions = new ArrayList<>();
+        for (int y = 0; y < plan.getHeight(); y += regionRows) {
+            regions.add(new Rectangle(0, y, plan.getWidth(), Math.min(regionRows, plan.getHeight() - y)));
+        }
+        
+        BufferedImage target = destination;
+        try {
+            regions.parallelStream().forEach(region -> decodeRegion(plan, target, region));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return destination;
+    }
+    
+    private static void decodeRegion(DecodePlan plan, BufferedImage destination, Rectangle region) {
+        try (ImageInputStream input = ImageIO.createImageInputStream(plan.getFile())) {
+            ImageReader reader = findReader(input, plan.getFile());
+            try {
+                reader.setInput(input, true, true);
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceRegion(region);
+                applySubsampling(param, plan.getSubsampling());
+                param.setDestination(destination);
+                param.setDestinationOffset(new Point(0, region.y / plan.getSubsampling()));
+                reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+    
+    private static void applySubsampling(ImageReadParam param, int subsampling) {
+        if (subsampling > 1) {
+            param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+        }
+    }
+    
+    static ImageReader findReader(ImageInputStream input, File file) {
+        if (input == null) {
+            throw new ValidationException("无法读取图片文件: " + file.getPath());
+        }
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+        if (!readers.hasNext()) {
+            throw new ValidationException("不支持的图片格式: " + file.getPath());
+        }
+        return readers.next();
+    }
+    
+    /**
+     * 解码计划
+     */
+    public static class DecodePlan {
+        private final File file;
+        private final int width;
+        private final int height;
+        private final int subsampling;
+        private final boolean tiled;
+        
+        public DecodePlan(File file, int width, int height, int subsampling, boolean tiled) {
+            this.file = file;
+            this.width = width;
+            this.height = height;
+            this.subsampling = subsampling;
+            this.tiled = tiled;
+        }
+        
+        public File getFile() { return file; }
+        public int getWidth() { return width; }
+        public int getHeight() { return height; }
+        public int getSubsampling() { return subsampling; }
+        public boolean isTiled() { return tiled; }
+        
+        /**
+         * 解码后的宽度
+         */
+        public int getDecodedWidth() {
+            return (width + subsampling - 1) / subsampling;
+        }
+        
+        /**
+         * 解码后的高度
+         */
+        public int getDecodedHeight() {
+            return (height + subsampling - 1) / subsampling;
+        }
+        
+        public long getDecodedPixels() {
+            return (long) getDecodedWidth() * getDecodedHeight();
+        }
+    }
+}
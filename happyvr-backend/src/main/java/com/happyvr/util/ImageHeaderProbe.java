@@ -0,0 +1,214 @@
+package com.happyvr.util;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.color.ColorSpace;
+import java.awt.image.ColorModel;
+import java.awt.image.IndexColorModel;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Iterator;
+import java.util.Locale;
+
+/**
+ * 图片文件头探测
+ * 通过ImageReader读取尺寸和颜色模型，EXIF方向直接扫描JPEG文件头的标记段获得，不解码像素
+ */
+public final class ImageHeaderProbe {
+    
+    /**
+     * EXIF方向：正常
+     */
+    public static final int ORIENTATION_NORMAL = 1;
+    
+    private static final int SOI_MARKER = 0xFFD8;
+    private static final int APP1_MARKER = 0xE1;
+    private static final int SOS_MARKER = 0xDA;
+    private static final int EOI_MARKER = 0xD9;
+    private static final int EXIF_ORIENTATION_TAG = 0x0112;
+    private static final byte[] EXIF_HEADER = {'E', 'x', 'i', 'f', 0, 0};
+    
+    private ImageHeaderProbe() {}
+    
+    /**
+     * 探测图片文件头
+     */
+    public static ImageHeader probe(File file) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(file)) {
+            ImageReader reader = ImageDecodePlanner.findReader(input, file);
+            try {
+                reader.setInput(input, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                ColorModel colorModel = colorModelOf(reader);
+                String format = reader.getFormatName().toLowerCase(Locale.ROOT);
+                int orientation = "jpeg".equals(format) ? readOrientation(input) : ORIENTATION_NORMAL;
+                return new ImageHeader(format, width, height,
+                    describe(colorModel), colorModel != null && colorModel.hasAlpha(), orientation);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+    
+    private static ColorModel colorModelOf(ImageReader reader) throws IOException {
+        ImageTypeSpecifier type = reader.getRawImageType(0);
+        if (type == null) {
+            Iterator<ImageTypeSpecifier> types = reader.getImageTypes(0);
+            type = types.hasNext() ? types.next() : null;
+        }
+        return type != null ? type.getColorModel() : null;
+    }
+    
+    /**
+     * 颜色模型名称：RGB、RGBA、GRAY、GRAY_ALPHA、INDEXED、CMYK、YCbCr或OTHER
+     */
+    static String describe(ColorModel colorModel) {
+        if (colorModel == null) {
+            return "OTHER";
+        }
+        if (colorModel instanceof IndexColorModel) {
+            return "INDEXED";
+        }
+        switch (colorModel.getColorSpace().getType()) {
+            case ColorSpace.TYPE_RGB:
+                return colorModel.hasAlpha() ? "RGBA" : "RGB";
+            case ColorSpace.TYPE_GRAY:
+                return colorModel.hasAlpha() ? "GRAY_ALPHA" : "GRAY";
+            case ColorSpace.TYPE_CMYK:
+                return "CMYK";
+            case ColorSpace.TYPE_YCbCr:
+                return "YCbCr";
+            default:
+                return "OTHER";
+        }
+    }
+    
+    /**
+     * 扫描JPEG文件头中的标记段，从EXIF APP1段读取方向，遇到图像数据（SOS）即停止；
+     * 不依赖ImageReader的元数据树，APP0/APP1顺序不规范的相机文件也能读取。
+     * 其他格式或没有方向信息时返回ORIENTATION_NORMAL
+     */
+    static int readOrientation(ImageInputStream input) throws IOException {
+        input.seek(0);
+        input.setByteOrder(ByteOrder.BIG_ENDIAN);
+        if (input.readUnsignedShort() != SOI_MARKER) {
+            return ORIENTATION_NORMAL;
+        }
+        while (true) {
+            int prefix = input.read();
+            if (prefix != 0xFF) {
+                return ORIENTATION_NORMAL;
+            }
+            int marker = input.read();
+            while (marker == 0xFF) {
+                marker = input.read();
+            }
+            if (marker < 0 || marker == SOS_MARKER || marker == EOI_MARKER) {
+                return ORIENTATION_NORMAL;
+            }
+            int length = input.readUnsignedShort() - 2;
+            if (length < 0) {
+                return ORIENTATION_NORMAL;
+            }
+            if (marker == APP1_MARKER) {
+                byte[] segment = new byte[length];
+                input.readFully(segment);
+                int orientation = exifOrientation(segment);
+                if (orientation != 0) {
+                    return orientation;
+                }
+            } else {
+                input.skipBytes(length);
+            }
+        }
+    }
+    
+    /**
+     * 解析EXIF段中IFD0的方向标签，不是EXIF段或没有方向标签时返回0
+     */
+    static int exifOrientation(byte[] segment) {
+        if (segment.length < EXIF_HEADER.length + 8) {
+            return 0;
+        }
+        for (int i = 0; i < EXIF_HEADER.length; i++) {
+            if (segment[i] != EXIF_HEADER[i]) {
+                return 0;
+            }
+        }
+        // TIFF头：字节序标记、42、IFD0偏移，偏移相对TIFF头起始位置
+        ByteBuffer tiff = ByteBuffer.wrap(segment, EXIF_HEADER.length, segment.length - EXIF_HEADER.length).slice();
+        if (tiff.get(0) == 'I' && tiff.get(1) == 'I') {
+            tiff.order(ByteOrder.LITTLE_ENDIAN);
+        } else if (tiff.get(0) != 'M' || tiff.get(1) != 'M') {
+            return 0;
+        }
+        long ifdOffset = tiff.getInt(4) & 0xFFFFFFFFL;
+        if (ifdOffset + 2 > tiff.limit()) {
+            return 0;
+        }
+        int entries = tiff.getShort((int) ifdOffset) & 0xFFFF;
+        for (int i = 0; i < entries; i++) {
+            int entry = (int) ifdOffset + 2 + i * 12;
+            if (entry + 12 > tiff.limit()) {
+                return 0;
+            }
+            if ((tiff.getShort(entry) & 0xFFFF) == EXIF_ORIENTATION_TAG) {
+                int orientation = tiff.getShort(entry + 8) & 0xFFFF;
+                return orientation >= 1 && orientation <= 8 ? orientation : 0;
+            }
+        }
+        return 0;
+    }
+    
+    /**
+     * 图片文件头信息
+     */
+    public static class ImageHeader {
+        private final String format;
+        private final int width;
+        private final int height;
+        private final String colorModel;
+        private final boolean hasAlpha;
+        private final int orientation;
+        
+        public ImageHeader(String format, int width, int height, String colorModel, boolean hasAlpha,
+                           int orientation) {
+            this.format = format;
+            this.width = width;
+            this.height = height;
+            this.colorModel = colorModel;
+            this.hasAlpha = hasAlpha;
+            this.orientation = orientation;
+        }
+        
+        public String getFormat() { return format; }
+        public int getWidth() { return width; }
+        public int getHeight() { return height; }
+        public String getColorModel() { return colorModel; }
+        public boolean hasAlpha() { return hasAlpha; }
+        
+        /**
+         * EXIF方向（1-8），5-8表示显示时宽高互换
+         */
+        public int getOrientation() { return orientation; }
+        
+        /**
+         * 按EXIF方向旋转后的显示宽度
+         */
+        public int getDisplayWidth() {
+            return orientation >= 5 ? height : width;
+        }
+        
+        /**
+         * 按EXIF方向旋转后的显示高度
+         */
+        public int getDisplayHeight() {
+            return orientation >= 5 ? width : height;
+        }
+    }
+}
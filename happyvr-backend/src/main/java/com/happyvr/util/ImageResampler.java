@@ -0,0 +1,260 @@
+package com.happyvr.util;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * 可分离两遍重采样器
+ * 水平、垂直两个方向分别按预计算的单轴权重表卷积（按乘加次数较少的顺序执行），缩小时按缩放比例扩大卷积核支撑范围以避免混叠；
+ * 直接在TYPE_INT_RGB的int[]像素上按行分块并行执行
+ */
+public final class ImageResampler {
+    
+    /**
+     * 定点数权重精度（14位），权重和为1 << WEIGHT_BITS
+     */
+    static final int WEIGHT_BITS = 14;
+    
+    private static final int WEIGHT_ONE = 1 << WEIGHT_BITS;
+    private static final int ROUNDING = 1 << (WEIGHT_BITS - 1);
+    
+    /**
+     * 重采样卷积核
+     */
+    public enum Kernel {
+        /**
+         * 盒式滤波，缩小时等价于区域平均
+         */
+        BOX(0.5) {
+            @Override
+            double weight(double x) {
+                return x >= -0.5 && x < 0.5 ? 1.0 : 0.0;
+            }
+        },
+        /**
+         * 三角滤波，放大时等价于双线性插值
+         */
+        BILINEAR(1.0) {
+            @Override
+            double weight(double x) {
+                x = Math.abs(x);
+                return x < 1.0 ? 1.0 - x : 0.0;
+            }
+        },
+        /**
+         * Lanczos窗口sinc滤波（a = 3），锐度最好，计算量约为双线性的三倍
+         */
+        LANCZOS3(3.0) {
+            @Override
+            double weight(double x) {
+                x = Math.abs(x);
+                if (x < 1e-8) {
+                    return 1.0;
+                }
+                if (x >= 3.0) {
+                    return 0.0;
+                }
+                double piX = Math.PI * x;
+                return 3.0 * Math.sin(piX) * Math.sin(piX / 3.0) / (piX * piX);
+            }
+        };
+        
+        private final double radius;
+        
+        Kernel(double radius) {
+            this.radius = radius;
+        }
+        
+        public double getRadius() {
+            return radius;
+        }
+        
+        abstract double weight(double x);
+    }
+    
+    private ImageResampler() {}
+    
+    /**
+     * 将图片重采样到指定尺寸，结果为TYPE_INT_RGB
+     */
+    public static BufferedImage resample(BufferedImage source, int targetWidth, int targetHeight, Kernel kernel) {
+        if (targetWidth <= 0 || targetHeight <= 0) {
+            throw new IllegalArgumentException("目标尺寸必须大于0");
+        }
+        BufferedImage target = RasterKernels.newRgbImage(targetWidth, targetHeight);
+        resample(source, target, kernel);
+        return target;
+    }
+    
+    /**
+     * 将图片重采样到已分配的TYPE_INT_RGB目标图片，目标尺寸取目标图片尺寸，全部像素被覆盖
+     */
+    public static BufferedImage resample(BufferedImage source, BufferedImage target, Kernel kernel) {
+        int targetWidth = target.getWidth();
+        int targetHeight = target.getHeight();
+        int sourceWidth = source.getWidth();
+        int sourceHeight = source.getHeight();
+        int[] sourcePixels = RasterKernels.rgbPixels(source);
+        int[] targetPixels = RasterKernels.rgbData(target);
+        
+        if (sourceWidth == targetWidth && sourceHeight == targetHeight) {
+            System.arraycopy(sourcePixels, 0, targetPixels, 0, targetPixels.length);
+            return target;
+        }
+        
+        // 尺寸不变的方向跳过对应的一遍
+        if (sourceHeight == targetHeight) {
+            horizontalPass(sourcePixels, sourceWidth, targetPixels, targetWidth, targetHeight,
+                AxisWeights.compute(sourceWidth, targetWidth, kernel));
+            return target;
+        }
+        AxisWeights rows = AxisWeights.compute(sourceHeight, targetHeight, kernel);
+        if (sourceWidth == targetWidth) {
+            verticalPass(sourcePixels, targetPixels, targetWidth, targetHeight, rows);
+            return target;
+        }
+        
+        // 按两种顺序的乘加次数选择先做哪一遍，缩小时通常先缩小采样点多的方向
+        AxisWeights columns = AxisWeights.compute(sourceWidth, targetWidth, kernel);
+        long horizontalFirst = (long) sourceHeight * targetWidth * columns.stride
+            + (long) targetHeight * targetWidth * rows.stride;
+        long verticalFirst = (long) targetHeight * sourceWidth * rows.stride
+            + (long) targetHeight * targetWidth * columns.stride;
+        if (horizontalFirst <= verticalFirst) {
+            int[] intermediate = new int[targetWidth * sourceHeight];
+            horizontalPass(sourcePixels, sourceWidth, intermediate, targetWidth, sourceHeight, columns);
+            verticalPass(intermediate, targetPixels, targetWidth, targetHeight, rows);
+        } else {
+            int[] intermediate = new int[sourceWidth * targetHeight];
+            verticalPass(sourcePixels, intermediate, sourceWidth, targetHeight, rows);
+            horizontalPass(intermediate, sourceWidth, targetPixels, targetWidth, targetHeight, columns);
+        }
+        return target;
+    }
+    
+    /**
+     * 水平方向重采样：每行独立，按行分块并行
+     */
+    private static void horizontalPass(int[] source, int sourceWidth, int[] target, int targetWidth, int height,
+                                       AxisWeights columns) {
+        RasterKernels.forEachRowBand(targetWidth, height, (rowStart, rowEnd) -> {
+            int[] starts = columns.starts;
+            int[] counts = columns.counts;
+            int[] weights = columns.weights;
+            int stride = columns.stride;
+            for (int y = rowStart; y < rowEnd; y++) {
+                int sourceRow = y * sourceWidth;
+                int targetRow = y * targetWidth;
+                for (int x = 0; x < targetWidth; x++) {
+                    int base = sourceRow + starts[x];
+                    int weightBase = x * stride;
+                    int red = ROUNDING;
+                    int green = ROUNDING;
+                    int blue = ROUNDING;
+                    for (int k = 0, count = counts[x]; k < count; k++) {
+                        int pixel = source[base + k];
+                        int weight = weights[weightBase + k];
+                        red += ((pixel >> 16) & 0xFF) * weight;
+                        green += ((pixel >> 8) & 0xFF) * weight;
+                        blue += (pixel & 0xFF) * weight;
+                    }
+                    target[targetRow + x] = pack(red, green, blue);
+                }
+            }
+        });
+    }
+    
+    /**
+     * 垂直方向重采样：每个输出像素由同一列的若干源行加权累加，各源行按列顺序连续访问
+     */
+    private static void verticalPass(int[] source, int[] target, int width, int targetHeight, AxisWeights rows) {
+        RasterKernels.forEachRowBand(width, targetHeight, (rowStart, rowEnd) -> {
+            int[] rowBases = new int[rows.stride];
+            for (int y = rowStart; y < rowEnd; y++) {
+                int start = rows.starts[y];
+                int count = rows.counts[y];
+                int weightBase = y * rows.stride;
+                for (int k = 0; k < count; k++) {
+                    rowBases[k] = (start + k) * width;
+                }
+                PixelKernels.resampleRow(source, rowBases, rows.weights, weightBase, count, target, y * width, width);
+            }
+        });
+    }
+    
+    private static int pack(int red, int green, int blue) {
+        return (clampChannel(red >> WEIGHT_BITS) << 16)
+            | (clampChannel(green >> WEIGHT_BITS) << 8)
+            | clampChannel(blue >> WEIGHT_BITS);
+    }
+    
+    private static int clampChannel(int value) {
+        return value < 0 ? 0 : Math.min(value, 255);
+    }
+    
+    /**
+     * 单轴权重表：每个输出坐标对应的源起点、采样数和定点权重（按最大采样数定长存储）
+     */
+    static final class AxisWeights {
+        final int[] starts;
+        final int[] counts;
+        final int[] weights;
+        final int stride;
+        
+        private AxisWeights(int[] starts, int[] counts, int[] weights, int stride) {
+            this.starts = starts;
+            this.counts = counts;
+            this.weights = weights;
+            this.stride = stride;
+        }
+        
+        static AxisWeights compute(int sourceSize, int targetSize, Kernel kernel) {
+            double scale = (double) sourceSize / targetSize;
+            // 缩小时卷积核按缩放比例展宽，起到低通滤波作用
+            double filterScale = Math.max(1.0, scale);
+            double support = kernel.getRadius() * filterScale;
+            int stride = (int) Math.ceil(support) * 2 + 1;
+            
+            int[] starts = new int[targetSize];
+            int[] counts = new int[targetSize];
+            int[] weights = new int[targetSize * stride];
+            double[] raw = new double[stride];
+            
+            for (int i = 0; i < targetSize; i++) {
+                double center = (i + 0.5) * scale;
+                int first = Math.max(0, (int) Math.floor(center - support));
+                int last = Math.min(sourceSize, (int) Math.ceil(center + support));
+                int count = Math.min(stride, last - first);
+                
+                double total = 0;
+                for (int k = 0; k < count; k++) {
+                    raw[k] = kernel.weight((first + k + 0.5 - center) / filterScale);
+                    total += raw[k];
+                }
+                if (total == 0) {
+                    // 盒式滤波在放大且中心恰好落在像素边界时可能没有采样，退化为最近邻
+                    first = Math.min(sourceSize - 1, Math.max(0, (int) Math.floor(center)));
+                    count = 1;
+                    raw[0] = 1.0;
+                    total = 1.0;
+                }
+                
+                // 归一化为定点权重，把舍入误差补到最大的权重上，保证权重和严格等于1
+                int base = i * stride;
+                int sum = 0;
+                int largest = 0;
+                for (int k = 0; k < count; k++) {
+                    int weight = (int) Math.round(raw[k] / total * WEIGHT_ONE);
+                    weights[base + k] = weight;
+                    sum += weight;
+                    if (weight > weights[base + largest]) {
+                        largest = k;
+                    }
+                }
+                weights[base + largest] += WEIGHT_ONE - sum;
+                starts[i] = first;
+                counts[i] = count;
+            }
+            return new AxisWeights(starts, counts, weights, stride);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.happyvr.util;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.event.IIOWriteProgressListener;
+import javax.imageio.plugins.jpeg.JPEGImageWriteParam;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+
+/**
+ * JPEG编码器
+ * 使用显式压缩质量、优化的哈夫曼表和可选的渐进式扫描，编码结果直接写入文件通道。
+ * 当前线程绑定了取消令牌时，编码器每次报告进度都检查令牌，取消后中止编码并抛出CancellationException
+ */
+public final class JpegEncoder {
+    
+    private JpegEncoder() {}
+    
+    /**
+     * 编码并写入文件
+     *
+     * @param image       不含alpha通道的图片
+     * @param path        输出文件，已存在时覆盖
+     * @param quality     压缩质量，1-100
+     * @param progressive 是否使用渐进式扫描，客户端可先显示低清晰度全图
+     */
+    public static void write(BufferedImage image, Path path, int quality, boolean progressive) throws IOException {
+        if (image.getColorModel().hasAlpha()) {
+            throw new IllegalArgumentException("JPEG不支持alpha通道");
+        }
+        
+        CancellationToken token = CancellationToken.current();
+        token.throwIfCancelled();
+        ImageWriter writer = createWriter();
+        if (token != CancellationToken.NONE) {
+            writer.addIIOWriteProgressListener(new AbortOnCancel(token));
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+             ImageOutputStream output = new ChannelImageOutputStream(channel)) {
+            writer.setOutput(output);
+            writer.write(null, new IIOImage(image, null, null), createWriteParam(writer, quality, progressive));
+            token.throwIfCancelled();
+        } finally {
+            writer.dispose();
+        }
+    }
+    
+    /**
+     * 创建编码参数
+     */
+    static ImageWriteParam createWriteParam(ImageWriter writer, int quality, boolean progressive) {
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality(Math.max(1, Math.min(100, quality)) / 100f);
+        param.setProgressiveMode(progressive ? ImageWriteParam.MODE_DEFAULT : ImageWriteParam.MODE_DISABLED);
+        if (param instanceof JPEGImageWriteParam) {
+            // 渐进式扫描总是使用优化的哈夫曼表，基线模式需要显式开启
+            ((JPEGImageWriteParam) param).setOptimizeHuffmanTables(true);
+        }
+        return param;
+    }
+    
+    /**
+     * 编码进度监听器，令牌取消后中止编码
+     * ImageWriter.abort()只能在执行编码的线程调用，进度回调正好在该线程上
+     */
+    private static final class AbortOnCancel implements IIOWriteProgressListener {
+        private final CancellationToken token;
+        
+        AbortOnCancel(CancellationToken token) {
+            this.token = token;
+        }
+        
+        @Override
+        public void imageProgress(ImageWriter source, float percentageDone) {
+            if (token.isCancelled()) {
+                source.abort();
+            }
+        }
+        
+        @Override public void writeAborted(ImageWriter source) {}
+        @Override public void imageStarted(ImageWriter source, int imageIndex) {}
+        @Override public void imageComplete(ImageWriter source) {}
+        @Override public void thumbnailStarted(ImageWriter source, int imageIndex, int thumbnailIndex) {}
+        @Override public void thumbnailProgress(ImageWriter source, float percentageDone) {}
+        @Override public void thumbnailComplete(ImageWriter source) {}
+    }
+    
+    private static ImageWriter createWriter() throws IOException {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpeg");
+        if (!writers.hasNext()) {
+            throw new IOException("没有可用的JPEG编码器");
+        }
+        return writers.next();
+    }
+}
@@ -0,0 +1,276 @@
+package com.happyvr.util;
+
+import java.awt.image.BufferedImage;
+import java.util.List;
+
+/**
+ * 全景图拼接器
+ * 输入图片按顺序环绕排列，相邻图片在接缝两侧各重叠半个重叠宽度（包括首尾相接的360°接缝），
+ * 重叠区内按距离线性羽化混合；每张图片直接双线性采样到预分配的输出像素数组，不生成中间缩放图片
+ */
+public final class PanoramaStitcher {
+    
+    /**
+     * 定点数权重精度（8位）
+     */
+    private static final int WEIGHT_ONE = 256;
+    
+    private PanoramaStitcher() {}
+    
+    /**
+     * 拼接全景图
+     *
+     * @param images        按水平顺序排列的输入图片
+     * @param outputWidth   输出宽度
+     * @param outputHeight  输出高度
+     * @param overlapRatio  相邻图片的重叠宽度占每张图片槽位宽度的比例，取值[0, 1]，0表示硬拼接
+     */
+    public static BufferedImage stitch(List<BufferedImage> images, int outputWidth, int outputHeight,
+                                       double overlapRatio) {
+        if (outputWidth <= 0 || outputHeight <= 0) {
+            throw new IllegalArgumentException("输出尺寸必须大于0");
+        }
+        BufferedImage panorama = RasterKernels.newRgbImage(outputWidth, outputHeight);
+        stitch(images, panorama, overlapRatio);
+        return panorama;
+    }
+    
+    /**
+     * 拼接全景图到已分配的TYPE_INT_RGB目标图片，输出尺寸取目标图片尺寸，全部像素被覆盖
+     */
+    public static void stitch(List<BufferedImage> images, BufferedImage target, double overlapRatio) {
+        int outputWidth = target.getWidth();
+        int outputHeight = target.getHeight();
+        Sampler sampler = new Sampler(images, outputWidth, outputHeight, overlapRatio);
+        int[] output = RasterKernels.rgbData(target);
+        
+        RasterKernels.forEachRowBand(outputWidth, outputHeight, (rowStart, rowEnd) -> {
+            for (int y = rowStart; y < rowEnd; y++) {
+                sampler.renderRow(y, output, y * outputWidth);
+            }
+        });
+    }
+    
+    /**
+     * 拼接全景图到堆外像素缓冲区，输出尺寸取缓冲区尺寸；每个行分块只使用一行的堆内存
+     */
+    public static void stitch(List<BufferedImage> images, PixelBuffer target, double overlapRatio) {
+        int outputWidth = target.getWidth();
+        Sampler sampler = new Sampler(images, outputWidth, target.getHeight(), overlapRatio);
+        
+        RasterKernels.forEachRowBand(outputWidth, target.getHeight(), (rowStart, rowEnd) -> {
+            int[] row = new int[outputWidth];
+            for (int y = rowStart; y < rowEnd; y++) {
+                sampler.renderRow(y, row, 0);
+                target.setRow(y, row, 0);
+            }
+        });
+    }
+    
+    /**
+     * 创建逐行采样器，可按任意顺序生成单行输出，供条带流水线按需渲染
+     */
+    public static Sampler sampler(List<BufferedImage> images, int outputWidth, int outputHeight,
+                                  double overlapRatio) {
+        if (outputWidth <= 0 || outputHeight <= 0) {
+            throw new IllegalArgumentException("输出尺寸必须大于0");
+        }
+        return new Sampler(images, outputWidth, outputHeight, overlapRatio);
+    }
+    
+    /**
+     * 输出像素的采样器：输入像素、列采样表和各图片的行采样表
+     */
+    public static final class Sampler {
+        private final int[][] pixels;
+        private final ColumnMap columns;
+        private final int[][] rowOffsets0;
+        private final int[][] rowOffsets1;
+        private final int[][] rowWeights;
+        private final int outputWidth;
+        
+        private Sampler(List<BufferedImage> images, int outputWidth, int outputHeight, double overlapRatio) {
+            if (images.isEmpty()) {
+                throw new IllegalArgumentException("图片列表不能为空");
+            }
+            int count = images.size();
+            this.outputWidth = outputWidth;
+            this.pixels = new int[count][];
+            for (int i = 0; i < count; i++) {
+                pixels[i] = RasterKernels.rgbPixels(images.get(i));
+            }
+            
+            this.columns = ColumnMap.build(images, outputWidth, Math.max(0, Math.min(1, overlapRatio)));
+            this.rowOffsets0 = new int[count][];
+            this.rowOffsets1 = new int[count][];
+            this.rowWeights = new int[count][];
+            for (int i = 0; i < count; i++) {
+                buildRowMap(images.get(i), outputHeight, rowOffsets0, rowOffsets1, rowWeights, i);
+            }
+        }
+        
+        /**
+         * 生成第y行输出像素，写入target[offset, offset + outputWidth)
+         */
+        public void renderRow(int y, int[] target, int offset) {
+            for (int x = 0; x < outputWidth; x++) {
+                int a = columns.imageA[x];
+                int color = bilinear(pixels[a], rowOffsets0[a][y], rowOffsets1[a][y], rowWeights[a][y],
+                    columns.x0A[x], columns.x1A[x], columns.fxA[x]);
+                int blend = columns.weightB[x];
+                if (blend > 0) {
+                    int b = columns.imageB[x];
+                    int other = bilinear(pixels[b], rowOffsets0[b][y], rowOffsets1[b][y], rowWeights[b][y],
+                        columns.x0B[x], columns.x1B[x], columns.fxB[x]);
+                    color = lerp(color, other, blend);
+                }
+                target[offset + x] = color;
+            }
+        }
+    }
+    
+    /**
+     * 计算每个输出行在某张源图片中的两条采样行偏移及插值权重
+     */
+    private static void buildRowMap(BufferedImage image, int outputHeight, int[][] offsets0, int[][] offsets1,
+                                    int[][] weights, int index) {
+        int sourceWidth = image.getWidth();
+        int sourceHeight = image.getHeight();
+        int[] row0 = new int[outputHeight];
+        int[] row1 = new int[outputHeight];
+        int[] fraction = new int[outputHeight];
+        double scale = (double) sourceHeight / outputHeight;
+        for (int y = 0; y < outputHeight; y++) {
+            double sourceY = (y + 0.5) * scale - 0.5;
+            int y0 = (int) Math.floor(sourceY);
+            int weight = (int) Math.round((sourceY - y0) * WEIGHT_ONE);
+            int y1 = clamp(y0 + 1, sourceHeight - 1);
+            y0 = clamp(y0, sourceHeight - 1);
+            row0[y] = y0 * sourceWidth;
+            row1[y] = y1 * sourceWidth;
+            fraction[y] = weight;
+        }
+        offsets0[index] = row0;
+        offsets1[index] = row1;
+        weights[index] = fraction;
+    }
+    
+    private static int bilinear(int[] source, int row0, int row1, int fy, int x0, int x1, int fx) {
+        int top = lerp(source[row0 + x0], source[row0 + x1], fx);
+        int bottom = lerp(source[row1 + x0], source[row1 + x1], fx);
+        return lerp(top, bottom, fy);
+    }
+    
+    /**
+     * 按8位定点权重混合两个0x00RRGGBB像素，weight为q的权重
+     */
+    static int lerp(int p, int q, int weight) {
+        if (weight <= 0) {
+            return p;
+        }
+        if (weight >= WEIGHT_ONE) {
+            return q;
+        }
+        int inverse = WEIGHT_ONE - weight;
+        int redBlue = (((p & 0xFF00FF) * inverse + (q & 0xFF00FF) * weight) >>> 8) & 0xFF00FF;
+        int green = (((p & 0x00FF00) * inverse + (q & 0x00FF00) * weight) >>> 8) & 0x00FF00;
+        return redBlue | green;
+    }
+    
+    private static int clamp(int value, int max) {
+        return value < 0 ? 0 : Math.min(value, max);
+    }
+    
+    /**
+     * 每个输出列的采样表：主图片及其采样列，接缝重叠区内另记录相邻图片及其混合权重
+     */
+    private static final class ColumnMap {
+        private final int[] imageA;
+        private final int[] x0A;
+        private final int[] x1A;
+        private final int[] fxA;
+        private final int[] imageB;
+        private final int[] x0B;
+        private final int[] x1B;
+        private final int[] fxB;
+        private final int[] weightB;
+        
+        private ColumnMap(int width) {
+            imageA = new int[width];
+            x0A = new int[width];
+            x1A = new int[width];
+            fxA = new int[width];
+            imageB = new int[width];
+            x0B = new int[width];
+            x1B = new int[width];
+            fxB = new int[width];
+            weightB = new int[width];
+        }
+        
+        static ColumnMap build(List<BufferedImage> images, int outputWidth, double overlapRatio) {
+            int count = images.size();
+            ColumnMap map = new ColumnMap(outputWidth);
+            
+            // 第i张图片的槽位为[i * slot, (i + 1) * slot)，实际覆盖范围向两侧各扩展半个重叠宽度
+            double slot = (double) outputWidth / count;
+            double overlap = slot * overlapRatio;
+            double halfOverlap = overlap / 2;
+            double span = slot + overlap;
+            
+            for (int x = 0; x < outputWidth; x++) {
+                double center = x + 0.5;
+                int primary = Math.min(count - 1, (int) (center / slot));
+                int neighbor = -1;
+                double primaryWeight = 1.0;
+                
+                if (count > 1 && overlap > 0) {
+                    double toLeft = center - primary * slot;
+                    double toRight = (primary + 1) * slot - center;
+                    if (toLeft < halfOverlap) {
+                        neighbor = (primary + count - 1) % count;
+                        primaryWeight = (toLeft + halfOverlap) / overlap;
+                    } else if (toRight < halfOverlap) {
+                        neighbor = (primary + 1) % count;
+                        primaryWeight = (toRight + halfOverlap) / overlap;
+                    }
+                }
+                
+                map.imageA[x] = primary;
+                map.setColumn(images.get(primary), primary, center, slot, halfOverlap, span, outputWidth, x, true);
+                if (neighbor >= 0) {
+                    map.imageB[x] = neighbor;
+                    map.setColumn(images.get(neighbor), neighbor, center, slot, halfOverlap, span, outputWidth, x, false);
+                    map.weightB[x] = (int) Math.round((1.0 - primaryWeight) * WEIGHT_ONE);
+                }
+            }
+            return map;
+        }
+        
+        private void setColumn(BufferedImage image, int index, double center, double slot, double halfOverlap,
+                               double span, int outputWidth, int x, boolean primary) {
+            // 图片覆盖范围的起点可能跨越0°接缝，局部坐标需按输出宽度回绕
+            double local = center - (index * slot - halfOverlap);
+            if (local > span) {
+                local -= outputWidth;
+            }
+            if (local < 0 && local + outputWidth <= span) {
+                local += outputWidth;
+            }
+            int sourceWidth = image.getWidth();
+            double sourceX = local * sourceWidth / span - 0.5;
+            int x0 = (int) Math.floor(sourceX);
+            int weight = (int) Math.round((sourceX - x0) * WEIGHT_ONE);
+            int x1 = clamp(x0 + 1, sourceWidth - 1);
+            x0 = clamp(x0, sourceWidth - 1);
+            if (primary) {
+                x0A[x] = x0;
+                x1A[x] = x1;
+                fxA[x] = weight;
+            } else {
+                x0B[x] = x0;
+                x1B[x] = x1;
+                fxB[x] = weight;
+            }
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package com.happyvr.util;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 堆外像素缓冲区
+ * 以0x00RRGGBB格式按行存储像素，数据位于直接内存或内存映射的临时文件中，不占用Java堆；
+ * 超大图片按行拆分为多个不超过1GB的段，避免单个映射超过2GB的限制。
+ * 通过asImage()得到共享存储的BufferedImage视图，可直接交给ImageIO编码
+ */
+public final class PixelBuffer implements AutoCloseable {
+    
+    /**
+     * 每段的最大字节数
+     */
+    private static final long MAX_SEGMENT_BYTES = 1L << 30;
+    
+    private final int width;
+    private final int height;
+    private final int rowsPerSegment;
+    private final int pixelsPerSegment;
+    private final IntBuffer[] segments;
+    private final Path scratchFile;
+    private final FileChannel channel;
+    private volatile boolean closed;
+    
+    private PixelBuffer(int width, int height, int rowsPerSegment, IntBuffer[] segments,
+                        Path scratchFile, FileChannel channel) {
+        this.width = width;
+        this.height = height;
+        this.rowsPerSegment = rowsPerSegment;
+        this.pixelsPerSegment = rowsPerSegment * width;
+        this.segments = segments;
+        this.scratchFile = scratchFile;
+        this.channel = channel;
+    }
+    
+    /**
+     * 分配像素缓冲区
+     *
+     * @param scratchDirectory  临时文件目录
+     * @param mappedMinBytes    像素字节数达到该值时使用内存映射的临时文件，否则使用直接内存
+     */
+    public static PixelBuffer allocate(int width, int height, Path scratchDirectory, long mappedMinBytes)
+            throws IOException {
+        return allocate(width, height, scratchDirectory, mappedMinBytes, MAX_SEGMENT_BYTES);
+    }
+    
+    static PixelBuffer allocate(int width, int height, Path scratchDirectory, long mappedMinBytes,
+                                long maxSegmentBytes) throws IOException {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("图片尺寸必须大于0");
+        }
+        if ((long) width * height > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("图片像素数超过上限: " + width + "x" + height);
+        }
+        long rowBytes = (long) width * Integer.BYTES;
+        int rowsPerSegment = (int) Math.max(1, Math.min(height, maxSegmentBytes / rowBytes));
+        int segmentCount = (height + rowsPerSegment - 1) / rowsPerSegment;
+        IntBuffer[] segments = new IntBuffer[segmentCount];
+        
+        long totalBytes = rowBytes * height;
+        if (totalBytes < mappedMinBytes) {
+            for (int i = 0; i < segmentCount; i++) {
+                segments[i] = ByteBuffer.allocateDirect((int) (segmentRows(i, rowsPerSegment, height) * rowBytes))
+                    .order(ByteOrder.nativeOrder())
+                    .asIntBuffer();
+            }
+            return new PixelBuffer(width, height, rowsPerSegment, segments, null, null);
+        }
+        
+        Files.createDirectories(scratchDirectory);
+        Path scratchFile = Files.createTempFile(scratchDirectory, "pixels_", ".raw");
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(scratchFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            for (int i = 0; i < segmentCount; i++) {
+                long position = (long) i * rowsPerSegment * rowBytes;
+                long size = segmentRows(i, rowsPerSegment, height) * rowBytes;
+                segments[i] = channel.map(FileChannel.MapMode.READ_WRITE, position, size)
+                    .order(ByteOrder.nativeOrder())
+                    .asIntBuffer();
+            }
+            return new PixelBuffer(width, height, rowsPerSegment, segments, scratchFile, channel);
+        } catch (IOException | RuntimeException e) {
+            if (channel != null) {
+                channel.close();
+            }
+            Files.deleteIfExists(scratchFile);
+            throw e;
+        }
+    }
+    
+    private static long segmentRows(int segment, int rowsPerSegment, int height) {
+        return Math.min(rowsPerSegment, height - (long) segment * rowsPerSegment);
+    }
+    
+    public int getWidth() { return width; }
+    public int getHeight() { return height; }
+    
+    /**
+     * 是否使用内存映射的临时文件
+     */
+    public boolean isMapped() {
+        return scratchFile != null;
+    }
+    
+    int getSegmentCount() {
+        return segments.length;
+    }
+    
+    Path getScratchFile() {
+        return scratchFile;
+    }
+    
+    /**
+     * 按行优先的线性下标读取像素
+     */
+    public int get(int index) {
+        return segments[index / pixelsPerSegment].get(index % pixelsPerSegment);
+    }
+    
+    /**
+     * 按行优先的线性下标写入像素
+     */
+    public void set(int index, int pixel) {
+        segments[index / pixelsPerSegment].put(index % pixelsPerSegment, pixel);
+    }
+    
+    /**
+     * 读取一行像素到target[targetOffset, targetOffset + width)
+     */
+    public void getRow(int y, int[] target, int targetOffset) {
+        segments[y / rowsPerSegment].get((y % rowsPerSegment) * width, target, targetOffset, width);
+    }
+    
+    /**
+     * 将source[sourceOffset, sourceOffset + width)写入一行
+     */
+    public void setRow(int y, int[] source, int sourceOffset) {
+        segments[y / rowsPerSegment].put((y % rowsPerSegment) * width, source, sourceOffset, width);
+    }
+    
+    /**
+     * 共享存储的BufferedImage视图，写入视图即修改缓冲区；缓冲区关闭后视图不可再使用
+     */
+    public BufferedImage asImage() {
+        DirectColorModel colorModel = new DirectColorModel(24, 0xFF0000, 0x00FF00, 0x0000FF);
+        SinglePixelPackedSampleModel sampleModel = new SinglePixelPackedSampleModel(DataBuffer.TYPE_INT,
+            width, height, colorModel.getMasks());
+        WritableRaster raster = Raster.createWritableRaster(sampleModel, new PixelDataBuffer(), null);
+        return new BufferedImage(colorModel, raster, false, null);
+    }
+    
+    /**
+     * 复制为堆上的TYPE_INT_RGB图片
+     */
+    public BufferedImage toHeapImage() {
+        BufferedImage image = RasterKernels.newRgbImage(width, height);
+        int[] target = RasterKernels.rgbData(image);
+        RasterKernels.forEachRowBand(width, height, (rowStart, rowEnd) -> {
+            for (int y = rowStart; y < rowEnd; y++) {
+                getRow(y, target, y * width);
+            }
+        });
+        return image;
+    }
+    
+    /**
+     * 释放临时文件；直接内存和映射区域在缓冲区对象被回收时释放
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (channel != null) {
+            try {
+                channel.close();
+            } finally {
+                Files.deleteIfExists(scratchFile);
+            }
+        }
+    }
+    
+    /**
+     * 访问堆外像素的数据缓冲区，供Java2D和ImageIO按元素读写
+     */
+    private final class PixelDataBuffer extends DataBuffer {
+        
+        PixelDataBuffer() {
+            super(DataBuffer.TYPE_INT, width * height);
+        }
+        
+        @Override
+        public int getElem(int bank, int i) {
+            return get(i);
+        }
+        
+        @Override
+        public void setElem(int bank, int i, int val) {
+            set(i, val);
+        }
+    }
+}
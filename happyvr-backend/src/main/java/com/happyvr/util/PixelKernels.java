@@ -0,0 +1,204 @@
+package com.happyvr.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 逐像素热点循环
+ * 默认使用标量实现（JIT可自动向量化）。使用 mvn -Pvector 构建时同时编译Vector API实现，
+ * 运行时加载了jdk.incubator.vector模块（启动参数 --add-modules jdk.incubator.vector）且硬件向量宽度不少于4个int时
+ * 改用该实现；两种实现结果逐位一致。
+ * 启动参数 -Dhappyvr.vector.enabled=false 可强制使用标量实现
+ */
+public final class PixelKernels {
+    
+    private static final Logger logger = LoggerFactory.getLogger(PixelKernels.class);
+    
+    /**
+     * 向量实现开关的系统属性
+     */
+    public static final String VECTOR_PROPERTY = "happyvr.vector.enabled";
+    
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+    
+    private static final String VECTOR_IMPLEMENTATION = "com.happyvr.util.VectorKernels";
+    
+    // Vector API实现，不可用时为null
+    private static final Implementation VECTOR = loadVectorKernels();
+    
+    private PixelKernels() {}
+    
+    /**
+     * 可替换的内核实现
+     */
+    interface Implementation {
+        
+        int laneCount();
+        
+        void copyRgb(int[] source, int sourceOffset, int[] target, int targetOffset, int length);
+        
+        void flattenAlpha(int[] source, int sourceOffset, int[] target, int targetOffset, int length,
+                          int background);
+        
+        void resampleRow(int[] source, int[] rowBases, int[] weights, int weightOffset, int count,
+                         int[] target, int targetOffset, int width);
+        
+        void gather(int[] source, int[] indices, int indexOffset, int[] target, int start, int end);
+    }
+    
+    /**
+     * 当前是否使用Vector API实现
+     */
+    public static boolean isVectorEnabled() {
+        return VECTOR != null;
+    }
+    
+    /**
+     * Vector API实现，未编译或模块未加载时为null，与开关和向量宽度无关
+     */
+    static Implementation vectorKernels() {
+        try {
+            return ModuleLayer.boot().findModule(VECTOR_MODULE).isPresent()
+                ? (Implementation) Class.forName(VECTOR_IMPLEMENTATION).getDeclaredConstructor().newInstance()
+                : null;
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+    
+    /**
+     * 复制像素并去掉alpha通道，结果为0x00RRGGBB
+     */
+    public static void copyRgb(int[] source, int sourceOffset, int[] target, int targetOffset, int length) {
+        if (VECTOR != null) {
+            VECTOR.copyRgb(source, sourceOffset, target, targetOffset, length);
+        } else {
+            copyRgbScalar(source, sourceOffset, target, targetOffset, length);
+        }
+    }
+    
+    /**
+     * 将非预乘ARGB像素按alpha合成到不透明背景色上，结果为0x00RRGGBB
+     */
+    public static void flattenAlpha(int[] source, int sourceOffset, int[] target, int targetOffset, int length,
+                                    int background) {
+        if (VECTOR != null) {
+            VECTOR.flattenAlpha(source, sourceOffset, target, targetOffset, length, background);
+        } else {
+            flattenAlphaScalar(source, sourceOffset, target, targetOffset, length, background);
+        }
+    }
+    
+    /**
+     * 重采样垂直方向的一个输出行：同一列的count个源行按14位定点权重加权累加
+     *
+     * @param rowBases 参与累加的各源行在source中的起始偏移
+     */
+    static void resampleRow(int[] source, int[] rowBases, int[] weights, int weightOffset, int count,
+                            int[] target, int targetOffset, int width) {
+        if (VECTOR != null) {
+            VECTOR.resampleRow(source, rowBases, weights, weightOffset, count, target, targetOffset, width);
+        } else {
+            resampleRowScalar(source, rowBases, weights, weightOffset, count, target, targetOffset, 0, width);
+        }
+    }
+    
+    /**
+     * 按索引收集像素：target[i] = source[indices[indexOffset + i]]，i属于[start, end)
+     */
+    static void gather(int[] source, int[] indices, int indexOffset, int[] target, int start, int end) {
+        if (VECTOR != null) {
+            VECTOR.gather(source, indices, indexOffset, target, start, end);
+        } else {
+            gatherScalar(source, indices, indexOffset, target, start, end);
+        }
+    }
+    
+    static void copyRgbScalar(int[] source, int sourceOffset, int[] target, int targetOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            target[targetOffset + i] = source[sourceOffset + i] & 0xFFFFFF;
+        }
+    }
+    
+    static void flattenAlphaScalar(int[] source, int sourceOffset, int[] target, int targetOffset, int length,
+                                   int background) {
+        int backgroundRed = (background >> 16) & 0xFF;
+        int backgroundGreen = (background >> 8) & 0xFF;
+        int backgroundBlue = background & 0xFF;
+        for (int i = 0; i < length; i++) {
+            int pixel = source[sourceOffset + i];
+            int alpha = pixel >>> 24;
+            int inverse = 255 - alpha;
+            int red = div255(((pixel >> 16) & 0xFF) * alpha + backgroundRed * inverse);
+            int green = div255(((pixel >> 8) & 0xFF) * alpha + backgroundGreen * inverse);
+            int blue = div255((pixel & 0xFF) * alpha + backgroundBlue * inverse);
+            target[targetOffset + i] = (red << 16) | (green << 8) | blue;
+        }
+    }
+    
+    static void resampleRowScalar(int[] source, int[] rowBases, int[] weights, int weightOffset, int count,
+                                  int[] target, int targetOffset, int from, int to) {
+        int rounding = 1 << (ImageResampler.WEIGHT_BITS - 1);
+        for (int x = from; x < to; x++) {
+            int red = rounding;
+            int green = rounding;
+            int blue = rounding;
+            for (int k = 0; k < count; k++) {
+                int pixel = source[rowBases[k] + x];
+                int weight = weights[weightOffset + k];
+                red += ((pixel >> 16) & 0xFF) * weight;
+                green += ((pixel >> 8) & 0xFF) * weight;
+                blue += (pixel & 0xFF) * weight;
+            }
+            target[targetOffset + x] = (clampChannel(red >> ImageResampler.WEIGHT_BITS) << 16)
+                | (clampChannel(green >> ImageResampler.WEIGHT_BITS) << 8)
+                | clampChannel(blue >> ImageResampler.WEIGHT_BITS);
+        }
+    }
+    
+    static void gatherScalar(int[] source, int[] indices, int indexOffset, int[] target, int start, int end) {
+        for (int i = start; i < end; i++) {
+            target[i] = source[indices[indexOffset + i]];
+        }
+    }
+    
+    /**
+     * 对[0, 255 * 255]范围内的整数精确计算 round(x / 255)
+     */
+    static int div255(int value) {
+        int t = value + 128;
+        return (t + (t >> 8)) >> 8;
+    }
+    
+    static int clampChannel(int value) {
+        return value < 0 ? 0 : Math.min(value, 255);
+    }
+    
+    private static Implementation loadVectorKernels() {
+        if (!Boolean.parseBoolean(System.getProperty(VECTOR_PROPERTY, "true"))) {
+            logger.info("像素内核使用标量实现（{}=false）", VECTOR_PROPERTY);
+            return null;
+        }
+        if (ModuleLayer.boot().findModule(VECTOR_MODULE).isEmpty()) {
+            logger.info("像素内核使用标量实现（未加载{}模块）", VECTOR_MODULE);
+            return null;
+        }
+        try {
+            Implementation kernels = vectorKernels();
+            if (kernels == null) {
+                logger.info("像素内核使用标量实现（构建时未启用vector配置）");
+                return null;
+            }
+            int lanes = kernels.laneCount();
+            if (lanes < 4) {
+                logger.info("像素内核使用标量实现（向量宽度仅{}个int）", lanes);
+                return null;
+            }
+            logger.info("像素内核使用Vector API实现（{}个int/向量）", lanes);
+            return kernels;
+        } catch (Throwable e) {
+            logger.warn("Vector API初始化失败，像素内核使用标量实现", e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.happyvr.util;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * 栅格像素内核工具类
+ * 直接操作TYPE_INT_RGB图片的int[]数据缓冲区，并按行分块在ForkJoinPool上并行执行。
+ * 每个分块执行前检查调用线程绑定的CancellationToken，任务取消后剩余分块不再执行
+ */
+public final class RasterKernels {
+    
+    /**
+     * 每个分块的最小行数，避免任务粒度过细
+     */
+    public static final int MIN_ROWS_PER_TILE = 16;
+    
+    /**
+     * 每个分块的最小像素数，小图直接在当前线程执行
+     */
+    private static final int MIN_PIXELS_PER_TILE = 64 * 1024;
+    
+    private RasterKernels() {}
+    
+    /**
+     * 行区间内核，处理[rowStart, rowEnd)范围内的行
+     */
+    @FunctionalInterface
+    public interface RowBandKernel {
+        void apply(int rowStart, int rowEnd);
+    }
+    
+    /**
+     * 创建TYPE_INT_RGB图片
+     */
+    public static BufferedImage newRgbImage(int width, int height) {
+        return new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    }
+    
+    /**
+     * 判断图片是否为紧凑排列的TYPE_INT_RGB，可直接访问其int[]数据
+     */
+    public static boolean isPackedRgb(BufferedImage image) {
+        if (image.getType() != BufferedImage.TYPE_INT_RGB) {
+            return false;
+        }
+        WritableRaster raster = image.getRaster();
+        if (!(raster.getDataBuffer() instanceof DataBufferInt)
+                || !(raster.getSampleModel() instanceof SinglePixelPackedSampleModel)) {
+            return false;
+        }
+        SinglePixelPackedSampleModel sampleModel = (SinglePixelPackedSampleModel) raster.getSampleModel();
+        return raster.getSampleModelTranslateX() == 0
+            && raster.getSampleModelTranslateY() == 0
+            && raster.getDataBuffer().getOffset() == 0
+            && sampleModel.getScanlineStride() == image.getWidth();
+    }
+    
+    /**
+     * 获取TYPE_INT_RGB图片底层的像素数组（共享存储，写入即修改图片）
+     */
+    public static int[] rgbData(BufferedImage image) {
+        if (!isPackedRgb(image)) {
+            throw new IllegalArgumentException("图片不是紧凑排列的TYPE_INT_RGB格式");
+        }
+        return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    }
+    
+    /**
+     * 读取图片像素为0x00RRGGBB数组
+     * TYPE_INT_RGB图片直接返回底层数组，其他类型批量转换为副本
+     */
+    public static int[] rgbPixels(BufferedImage image) {
+        if (isPackedRgb(image)) {
+            return rgbData(image);
+        }
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] pixels = image.getRGB(0, 0, width, height, null, 0, width);
+        PixelKernels.copyRgb(pixels, 0, pixels, 0, pixels.length);
+        return pixels;
+    }
+    
+    /**
+     * 按行分块并行执行内核
+     * 在ForkJoinPool工作线程中调用时（如VR任务的计算阶段）使用该线程所在的池，否则使用公共池
+     */
+    public static void forEachRowBand(int width, int height, RowBandKernel kernel) {
+        forEachRowBand(currentPool(), width, height, kernel);
+    }
+    
+    /**
+     * 调用线程所在的ForkJoinPool，不在池中时返回公共池
+     */
+    static ForkJoinPool currentPool() {
+        return ForkJoinTask.inForkJoinPool() ? ForkJoinTask.getPool() : ForkJoinPool.commonPool();
+    }
+    
+    /**
+     * 在指定的ForkJoinPool上按行分块并行执行内核
+     * 调用线程绑定的取消令牌同时绑定到执行分块的工作线程，内核中嵌套的并行调用也能检查
+     */
+    public static void forEachRowBand(ForkJoinPool pool, int width, int height, RowBandKernel kernel) {
+        if (height <= 0) {
+            return;
+        }
+        CancellationToken token = CancellationToken.current();
+        token.throwIfCancelled();
+        int rowsPerTile = rowsPerTile(width, height, pool.getParallelism());
+        if (rowsPerTile >= height) {
+            kernel.apply(0, height);
+        } else {
+            pool.invoke(new RowBandTask(kernel, token, 0, height, rowsPerTile));
+        }
+        // 执行期间被取消时结果不完整，不能返回给调用方
+        token.throwIfCancelled();
+    }
+    
+    /**
+     * 计算每个分块的行数
+     */
+    static int rowsPerTile(int width, int height, int parallelism) {
+        int minRows = Math.max(MIN_ROWS_PER_TILE, MIN_PIXELS_PER_TILE / Math.max(1, width));
+        // 每个工作线程约分配4个分块，便于负载均衡
+        int targetRows = (height + parallelism * 4 - 1) / (parallelism * 4);
+        return Math.max(minRows, targetRows);
+    }
+    
+    /**
+     * 行分块任务，递归二分直到分块不超过阈值
+     */
+    private static class RowBandTask extends RecursiveAction {
+        
+        private final RowBandKernel kernel;
+        private final CancellationToken token;
+        private final int rowStart;
+        private final int rowEnd;
+        private final int rowsPerTile;
+        
+        RowBandTask(RowBandKernel kernel, CancellationToken token, int rowStart, int rowEnd, int rowsPerTile) {
+            this.kernel = kernel;
+            this.token = token;
+            this.rowStart = rowStart;
+            this.rowEnd = rowEnd;
+            this.rowsPerTile = rowsPerTile;
+        }
+        
+        @Override
+        protected void compute() {
+            token.throwIfCancelled();
+            if (rowEnd - rowStart <= rowsPerTile) {
+                if (token == CancellationToken.NONE) {
+                    kernel.apply(rowStart, rowEnd);
+                    return;
+                }
+                try (CancellationToken.Scope scope = token.bind()) {
+                    kernel.apply(rowStart, rowEnd);
+                }
+                return;
+            }
+            int middle = (rowStart + rowEnd) >>> 1;
+            invokeAll(new RowBandTask(kernel, token, rowStart, middle, rowsPerTile),
+                new RowBandTask(kernel, token, middle, rowEnd, rowsPerTile));
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package com.happyvr.util;
+
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * 坐标重映射查找表
+ * 记录目标图片每个像素对应的源像素索引，投影变换只需按表收集像素
+ *
+ * 支持两种布局：
+ * ROW_COLUMN - 源行只依赖目标行时使用，按行存储源行偏移(int)，按像素存储源列号(char)，每像素2字节
+ * FULL       - 按像素存储源像素索引(int)，每像素4字节
+ */
+public final class RemapTable {
+    
+    /**
+     * 表布局
+     */
+    public enum Layout {
+        ROW_COLUMN(1),
+        FULL(2);
+        
+        private final int code;
+        
+        Layout(int code) {
+            this.code = code;
+        }
+        
+        public int getCode() {
+            return code;
+        }
+        
+        public static Layout fromCode(int code) {
+            for (Layout layout : values()) {
+                if (layout.code == code) {
+                    return layout;
+                }
+            }
+            throw new IllegalArgumentException("Unknown remap layout: " + code);
+        }
+    }
+    
+    /**
+     * 源列号以char存储，源图宽度不能超过此值
+     */
+    public static final int MAX_COLUMN_SOURCE_WIDTH = Character.MAX_VALUE + 1;
+    
+    private final Layout layout;
+    private final int sourceWidth;
+    private final int sourceHeight;
+    private final int width;
+    private final int height;
+    private final int[] rowOffsets;
+    private final CharBuffer columns;
+    private final IntBuffer indices;
+    
+    private RemapTable(Layout layout, int sourceWidth, int sourceHeight, int width, int height,
+                       int[] rowOffsets, CharBuffer columns, IntBuffer indices) {
+        this.layout = layout;
+        this.sourceWidth = sourceWidth;
+        this.sourceHeight = sourceHeight;
+        this.width = width;
+        this.height = height;
+        this.rowOffsets = rowOffsets;
+        this.columns = columns;
+        this.indices = indices;
+    }
+    
+    /**
+     * 创建行列布局的查找表
+     *
+     * @param rowOffsets 每个目标行对应的源行偏移（源行号 * 源宽度）
+     * @param columns    每个目标像素对应的源列号
+     */
+    public static RemapTable rowColumn(int sourceWidth, int sourceHeight, int width, int height,
+                                       int[] rowOffsets, CharBuffer columns) {
+        if (sourceWidth > MAX_COLUMN_SOURCE_WIDTH) {
+            throw new IllegalArgumentException("源图宽度超过行列布局上限: " + sourceWidth);
+        }
+        if (rowOffsets.length != height || columns.capacity() != width * height) {
+            throw new IllegalArgumentException("查找表尺寸与目标尺寸不一致");
+        }
+        return new RemapTable(Layout.ROW_COLUMN, sourceWidth, sourceHeight, width, height,
+            rowOffsets, columns, null);
+    }
+    
+    /**
+     * 创建完整索引布局的查找表
+     *
+     * @param indices 每个目标像素对应的源像素索引
+     */
+    public static RemapTable full(int sourceWidth, int sourceHeight, int width, int height, IntBuffer indices) {
+        if (indices.capacity() != width * height) {
+            throw new IllegalArgumentException("查找表尺寸与目标尺寸不一致");
+        }
+        return new RemapTable(Layout.FULL, sourceWidth, sourceHeight, width, height, null, null, indices);
+    }
+    
+    /**
+     * 按表收集[rowStart, rowEnd)范围内的目标像素
+     */
+    public void gather(int[] source, int[] target, int rowStart, int rowEnd) {
+        if (layout == Layout.ROW_COLUMN) {
+            gatherRowColumn(source, target, rowStart, rowEnd);
+        } else {
+            gatherFull(source, target, rowStart, rowEnd);
+        }
+    }
+    
+    /**
+     * 按表并行收集全部目标像素
+     */
+    public void gather(int[] source, int[] target) {
+        if (source.length < sourceWidth * sourceHeight || target.length < width * height) {
+            throw new IllegalArgumentException("像素数组尺寸与查找表不一致");
+        }
+        RasterKernels.forEachRowBand(width, height, (rowStart, rowEnd) -> gather(source, target, rowStart, rowEnd));
+    }
+    
+    /**
+     * 按表并行收集全部目标像素，源和目标都位于堆外缓冲区；每个行分块只使用一行的堆内存
+     */
+    public void gather(PixelBuffer source, PixelBuffer target) {
+        if (source.getWidth() != sourceWidth || source.getHeight() != sourceHeight
+                || target.getWidth() != width || target.getHeight() != height) {
+            throw new IllegalArgumentException("像素缓冲区尺寸与查找表不一致");
+        }
+        RasterKernels.forEachRowBand(width, height, (rowStart, rowEnd) -> {
+            int[] row = new int[width];
+            for (int y = rowStart; y < rowEnd; y++) {
+                int offset = y * width;
+                if (layout == Layout.ROW_COLUMN) {
+                    int sourceRow = rowOffsets[y];
+                    for (int x = 0; x < width; x++) {
+                        row[x] = source.get(sourceRow + columns.get(offset + x));
+                    }
+                } else {
+                    for (int x = 0; x < width; x++) {
+                        row[x] = source.get(indices.get(offset + x));
+                    }
+                }
+                target.setRow(y, row, 0);
+            }
+        });
+    }
+    
+    /**
+     * 行列布局下第y个目标行对应的源行号
+     */
+    public int sourceRowOf(int y) {
+        if (layout != Layout.ROW_COLUMN) {
+            throw new IllegalStateException("只有行列布局的查找表可以逐行收集");
+        }
+        return rowOffsets[y] / sourceWidth;
+    }
+    
+    /**
+     * 行列布局下从单个源行收集第y个目标行的像素，写入target[targetOffset, targetOffset + width)
+     *
+     * @param sourceRow 第sourceRowOf(y)个源行的像素
+     */
+    public void gatherRow(int y, int[] sourceRow, int[] target, int targetOffset) {
+        if (layout != Layout.ROW_COLUMN) {
+            throw new IllegalStateException("只有行列布局的查找表可以逐行收集");
+        }
+        int offset = y * width;
+        if (columns.hasArray()) {
+            char[] columnArray = columns.array();
+            int base = columns.arrayOffset() + offset;
+            for (int x = 0; x < width; x++) {
+                target[targetOffset + x] = sourceRow[columnArray[base + x]];
+            }
+            return;
+        }
+        for (int x = 0; x < width; x++) {
+            target[targetOffset + x] = sourceRow[columns.get(offset + x)];
+        }
+    }
+    
+    private void gatherRowColumn(int[] source, int[] target, int rowStart, int rowEnd) {
+        if (columns.hasArray()) {
+            char[] columnArray = columns.array();
+            int base = columns.arrayOffset();
+            for (int y = rowStart; y < rowEnd; y++) {
+                int sourceRow = rowOffsets[y];
+                int offset = y * width;
+                for (int x = 0; x < width; x++) {
+                    target[offset + x] = source[sourceRow + columnArray[base + offset + x]];
+                }
+            }
+            return;
+        }
+        for (int y = rowStart; y < rowEnd; y++) {
+            int sourceRow = rowOffsets[y];
+            int offset = y * width;
+            for (int x = 0; x < width; x++) {
+                target[offset + x] = source[sourceRow + columns.get(offset + x)];
+            }
+        }
+    }
+    
+    private void gatherFull(int[] source, int[] target, int rowStart, int rowEnd) {
+        int start = rowStart * width;
+        int end = rowEnd * width;
+        if (indices.hasArray()) {
+            PixelKernels.gather(source, indices.array(), indices.arrayOffset(), target, start, end);
+            return;
+        }
+        for (int i = start; i < end; i++) {
+            target[i] = source[indices.get(i)];
+        }
+    }
+    
+    /**
+     * 查找表占用的字节数
+     */
+    public long sizeInBytes() {
+        if (layout == Layout.ROW_COLUMN) {
+            return (long) rowOffsets.length * Integer.BYTES + (long) columns.capacity() * Character.BYTES;
+        }
+        return (long) indices.capacity() * Integer.BYTES;
+    }
+    
+    public Layout getLayout() { return layout; }
+    public int getSourceWidth() { return sourceWidth; }
+    public int getSourceHeight() { return sourceHeight; }
+    public int getWidth() { return width; }
+    public int getHeight() { return height; }
+    
+    /**
+     * 行偏移数组（仅行列布局）
+     */
+    public int[] getRowOffsets() { return rowOffsets; }
+    
+    /**
+     * 源列号（仅行列布局），返回只读视图
+     */
+    public CharBuffer getColumns() { return columns == null ? null : columns.asReadOnlyBuffer(); }
+    
+    /**
+     * 源像素索引（仅完整布局），返回只读视图
+     */
+    public IntBuffer getIndices() { return indices == null ? null : indices.asReadOnlyBuffer(); }
+}
@@ -0,0 +1,250 @@
+package com.happyvr.util;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 水平条带流水线
+ * 生产线程按从上到下的顺序逐条把固定高度的条带交给计算线程池渲染（条带内按行分块并行，
+ * 嵌套的并行调用也在该线程池上执行），放入有界队列；生产线程只负责等待缓冲区和排队，不做像素计算；
+ * 消费方通过asImage()得到的BufferedImage视图按行顺序读取像素（如JPEG编码器逐行读取），
+ * 读完一条即归还缓冲区。整张图片从不完整存在于内存中，峰值像素内存为(队列容量 + 2) × 条带大小。
+ * 启动线程绑定的取消令牌绑定到渲染线程，每个条带渲染前检查，取消后消费方读取下一条时收到CancellationException
+ */
+public final class StripPipeline implements AutoCloseable {
+    
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+    
+    /**
+     * 条带渲染函数，将[rowStart, rowEnd)行的像素（0x00RRGGBB）写入target，target按行紧凑排列
+     */
+    @FunctionalInterface
+    public interface StripRenderer {
+        void render(int rowStart, int rowEnd, int[] target);
+    }
+    
+    private final int width;
+    private final int height;
+    private final int stripHeight;
+    private final BlockingQueue<Strip> ready;
+    private final BlockingQueue<int[]> free;
+    private final Thread producer;
+    private volatile boolean closed;
+    
+    // 消费方当前持有的条带，只在消费线程中访问
+    private Strip current;
+    
+    private StripPipeline(int width, int height, int stripHeight, int queueStrips, ForkJoinPool pool,
+                          StripRenderer renderer, CancellationToken token) {
+        this.width = width;
+        this.height = height;
+        this.stripHeight = stripHeight;
+        // 缓冲区总数限制了在途条带数，就绪队列比缓冲区多留一个位置给错误通知
+        this.ready = new ArrayBlockingQueue<>(queueStrips + 3);
+        this.free = new ArrayBlockingQueue<>(queueStrips + 2);
+        for (int i = 0; i < queueStrips + 2; i++) {
+            free.add(new int[stripHeight * width]);
+        }
+        this.producer = new Thread(() -> produce(pool, renderer, token),
+            "StripProducer-" + THREAD_COUNTER.incrementAndGet());
+        this.producer.setDaemon(true);
+    }
+    
+    /**
+     * 创建并启动流水线，条带在调用线程所在的ForkJoinPool上渲染，不在池中时使用公共池
+     */
+    public static StripPipeline start(int width, int height, int stripHeight, int queueStrips,
+                                      StripRenderer renderer) {
+        return start(width, height, stripHeight, queueStrips, RasterKernels.currentPool(), renderer);
+    }
+    
+    /**
+     * 创建并启动流水线
+     *
+     * @param stripHeight 每个条带的行数
+     * @param queueStrips 已渲染但尚未读取的条带数上限
+     * @param pool        渲染条带的线程池
+     */
+    public static StripPipeline start(int width, int height, int stripHeight, int queueStrips, ForkJoinPool pool,
+                                      StripRenderer renderer) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("图片尺寸必须大于0");
+        }
+        if (stripHeight <= 0 || queueStrips <= 0) {
+            throw new IllegalArgumentException("条带高度和队列容量必须大于0");
+        }
+        int rows = Math.min(stripHeight, height);
+        if ((long) rows * width > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("条带过大: " + width + "x" + rows);
+        }
+        StripPipeline pipeline = new StripPipeline(width, height, rows, queueStrips, pool, renderer,
+            CancellationToken.current());
+        pipeline.producer.start();
+        return pipeline;
+    }
+    
+    /**
+     * 流水线持有的像素缓冲区字节数
+     */
+    public static long bufferBytes(int width, int stripHeight, int queueStrips) {
+        return (long) width * stripHeight * Integer.BYTES * (queueStrips + 2);
+    }
+    
+    public int getWidth() { return width; }
+    public int getHeight() { return height; }
+    public int getStripHeight() { return stripHeight; }
+    
+    /**
+     * 按行顺序读取的BufferedImage视图，回读已释放的条带时抛出IllegalStateException
+     */
+    public BufferedImage asImage() {
+        DirectColorModel colorModel = new DirectColorModel(24, 0xFF0000, 0x00FF00, 0x0000FF);
+        SinglePixelPackedSampleModel sampleModel = new SinglePixelPackedSampleModel(DataBuffer.TYPE_INT,
+            width, height, colorModel.getMasks());
+        WritableRaster raster = Raster.createWritableRaster(sampleModel, new StripDataBuffer(), null);
+        return new BufferedImage(colorModel, raster, false, null);
+    }
+    
+    /**
+     * 停止生产线程，消费方提前结束（如编码失败）时也必须调用
+     */
+    @Override
+    public void close() {
+        closed = true;
+        producer.interrupt();
+        try {
+            producer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        ready.clear();
+    }
+    
+    private void produce(ForkJoinPool pool, StripRenderer renderer, CancellationToken token) {
+        try {
+            for (int rowStart = 0; rowStart < height && !closed; rowStart += stripHeight) {
+                int rowEnd = Math.min(height, rowStart + stripHeight);
+                int[] pixels = free.take();
+                token.throwIfCancelled();
+                renderOnPool(pool, renderer, token, rowStart, rowEnd, pixels);
+                ready.put(new Strip(rowStart, rowEnd, pixels, null));
+            }
+        } catch (InterruptedException e) {
+            // 流水线已关闭
+        } catch (RuntimeException | Error e) {
+            if (!closed) {
+                ready.offer(new Strip(0, 0, null, e));
+            }
+        }
+    }
+    
+    /**
+     * 在线程池上渲染一个条带并等待完成，渲染抛出的异常原样抛出
+     */
+    private static void renderOnPool(ForkJoinPool pool, StripRenderer renderer, CancellationToken token,
+                                     int rowStart, int rowEnd, int[] pixels) throws InterruptedException {
+        CompletableFuture<Void> strip = CompletableFuture.runAsync(() -> {
+            try (CancellationToken.Scope scope = token.bind()) {
+                renderer.render(rowStart, rowEnd, pixels);
+            }
+        }, pool);
+        try {
+            strip.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw (RuntimeException) cause;
+        }
+    }
+    
+    /**
+     * 定位包含第row行的条带，必要时归还当前条带并等待下一条
+     */
+    private Strip stripFor(int row) {
+        Strip strip = current;
+        if (strip != null && row >= strip.rowStart && row < strip.rowEnd) {
+            return strip;
+        }
+        if (strip != null && row < strip.rowStart) {
+            throw new IllegalStateException("条带流水线只支持按行顺序读取: " + row);
+        }
+        while (strip == null || row >= strip.rowEnd) {
+            if (strip != null) {
+                free.offer(strip.pixels);
+            }
+            strip = nextStrip();
+            if (row < strip.rowStart) {
+                throw new IllegalStateException("条带流水线只支持按行顺序读取: " + row);
+            }
+        }
+        current = strip;
+        return strip;
+    }
+    
+    private Strip nextStrip() {
+        if (closed) {
+            throw new IllegalStateException("条带流水线已关闭");
+        }
+        Strip strip;
+        try {
+            strip = ready.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("等待条带时被中断", e);
+        }
+        if (strip.error instanceof RuntimeException) {
+            throw (RuntimeException) strip.error;
+        }
+        if (strip.error != null) {
+            throw (Error) strip.error;
+        }
+        return strip;
+    }
+    
+    private static final class Strip {
+        private final int rowStart;
+        private final int rowEnd;
+        private final int[] pixels;
+        private final Throwable error;
+        
+        Strip(int rowStart, int rowEnd, int[] pixels, Throwable error) {
+            this.rowStart = rowStart;
+            this.rowEnd = rowEnd;
+            this.pixels = pixels;
+            this.error = error;
+        }
+    }
+    
+    /**
+     * 按元素读取当前条带的数据缓冲区，不支持写入
+     */
+    private final class StripDataBuffer extends DataBuffer {
+        
+        StripDataBuffer() {
+            super(DataBuffer.TYPE_INT, width * height);
+        }
+        
+        @Override
+        public int getElem(int bank, int i) {
+            Strip strip = stripFor(i / width);
+            return strip.pixels[i - strip.rowStart * width];
+        }
+        
+        @Override
+        public void setElem(int bank, int i, int val) {
+            throw new UnsupportedOperationException("条带流水线视图只读");
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.happyvr.util;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * PixelKernels的Vector API实现
+ * 只在启用vector配置（mvn -Pvector）构建时编译，由PixelKernels在确认jdk.incubator.vector模块已加载后反射创建；
+ * 循环尾部交给标量实现
+ */
+final class VectorKernels implements PixelKernels.Implementation {
+    
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+    
+    VectorKernels() {}
+    
+    @Override
+    public int laneCount() {
+        return SPECIES.length();
+    }
+    
+    @Override
+    public void copyRgb(int[] source, int sourceOffset, int[] target, int targetOffset, int length) {
+        int bound = SPECIES.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            IntVector.fromArray(SPECIES, source, sourceOffset + i)
+                .and(0xFFFFFF)
+                .intoArray(target, targetOffset + i);
+        }
+        PixelKernels.copyRgbScalar(source, sourceOffset + i, target, targetOffset + i, length - i);
+    }
+    
+    @Override
+    public void flattenAlpha(int[] source, int sourceOffset, int[] target, int targetOffset, int length,
+                             int background) {
+        IntVector backgroundRed = IntVector.broadcast(SPECIES, (background >> 16) & 0xFF);
+        IntVector backgroundGreen = IntVector.broadcast(SPECIES, (background >> 8) & 0xFF);
+        IntVector backgroundBlue = IntVector.broadcast(SPECIES, background & 0xFF);
+        IntVector opaque = IntVector.broadcast(SPECIES, 255);
+        
+        int bound = SPECIES.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            IntVector pixel = IntVector.fromArray(SPECIES, source, sourceOffset + i);
+            IntVector alpha = pixel.lanewise(VectorOperators.LSHR, 24);
+            IntVector inverse = opaque.sub(alpha);
+            IntVector red = div255(pixel.lanewise(VectorOperators.LSHR, 16).and(0xFF).mul(alpha)
+                .add(backgroundRed.mul(inverse)));
+            IntVector green = div255(pixel.lanewise(VectorOperators.LSHR, 8).and(0xFF).mul(alpha)
+                .add(backgroundGreen.mul(inverse)));
+            IntVector blue = div255(pixel.and(0xFF).mul(alpha).add(backgroundBlue.mul(inverse)));
+            red.lanewise(VectorOperators.LSHL, 16)
+                .or(green.lanewise(VectorOperators.LSHL, 8))
+                .or(blue)
+                .intoArray(target, targetOffset + i);
+        }
+        PixelKernels.flattenAlphaScalar(source, sourceOffset + i, target, targetOffset + i, length - i, background);
+    }
+    
+    @Override
+    public void resampleRow(int[] source, int[] rowBases, int[] weights, int weightOffset, int count,
+                            int[] target, int targetOffset, int width) {
+        int shift = ImageResampler.WEIGHT_BITS;
+        IntVector rounding = IntVector.broadcast(SPECIES, 1 << (shift - 1));
+        
+        int bound = SPECIES.loopBound(width);
+        int x = 0;
+        for (; x < bound; x += SPECIES.length()) {
+            IntVector red = rounding;
+            IntVector green = rounding;
+            IntVector blue = rounding;
+            for (int k = 0; k < count; k++) {
+                IntVector pixel = IntVector.fromArray(SPECIES, source, rowBases[k] + x);
+                int weight = weights[weightOffset + k];
+                red = red.add(pixel.lanewise(VectorOperators.LSHR, 16).and(0xFF).mul(weight));
+                green = green.add(pixel.lanewise(VectorOperators.LSHR, 8).and(0xFF).mul(weight));
+                blue = blue.add(pixel.and(0xFF).mul(weight));
+            }
+            clamp(red.lanewise(VectorOperators.ASHR, shift)).lanewise(VectorOperators.LSHL, 16)
+                .or(clamp(green.lanewise(VectorOperators.ASHR, shift)).lanewise(VectorOperators.LSHL, 8))
+                .or(clamp(blue.lanewise(VectorOperators.ASHR, shift)))
+                .intoArray(target, targetOffset + x);
+        }
+        PixelKernels.resampleRowScalar(source, rowBases, weights, weightOffset, count, target, targetOffset, x, width);
+    }
+    
+    @Override
+    public void gather(int[] source, int[] indices, int indexOffset, int[] target, int start, int end) {
+        int bound = start + SPECIES.loopBound(end - start);
+        int i = start;
+        for (; i < bound; i += SPECIES.length()) {
+            IntVector.fromArray(SPECIES, source, 0, indices, indexOffset + i).intoArray(target, i);
+        }
+        PixelKernels.gatherScalar(source, indices, indexOffset, target, i, end);
+    }
+    
+    private static IntVector div255(IntVector value) {
+        IntVector t = value.add(128);
+        return t.add(t.lanewise(VectorOperators.ASHR, 8)).lanewise(VectorOperators.ASHR, 8);
+    }
+    
+    private static IntVector clamp(IntVector value) {
+        return value.max(0).min(255);
+    }
+}
@@ -0,0 +1,4 @@
+-- VR处理任务优先级：INTERACTIVE（交互提交）、BULK（批量重新生成），调度器按优先级加权轮询
+ALTER TABLE vr_jobs
+    ADD COLUMN priority VARCHAR(20) NOT NULL DEFAULT 'INTERACTIVE' COMMENT '优先级：INTERACTIVE, BULK' AFTER status,
+    ADD INDEX idx_user_status (user_id, status);
@@ -0,0 +1,4 @@
+-- 批量提交的VR处理任务共用一个批次ID，用于查询批次的汇总进度
+ALTER TABLE vr_jobs
+    ADD COLUMN batch_id VARCHAR(36) NULL COMMENT '批次ID，单独提交的任务为空' AFTER user_id,
+    ADD INDEX idx_batch_id (batch_id);
@@ -0,0 +1,3 @@
+-- 按上传时记录的图片尺寸计算的输入总像素数，用于公平调度的任务成本
+ALTER TABLE vr_jobs
+    ADD COLUMN input_pixels BIGINT NULL COMMENT '输入图片总像素数，有图片未记录尺寸时为空' AFTER request;
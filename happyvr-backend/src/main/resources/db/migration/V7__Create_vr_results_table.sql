@@ -0,0 +1,11 @@
+-- 创建VR生成结果表（按内容哈希去重，多个项目共享时按引用计数回收）
+CREATE TABLE vr_results (
+    id BIGINT PRIMARY KEY AUTO_INCREMENT,
+    content_hash CHAR(64) NOT NULL COMMENT '输入图片内容和处理选项的SHA-256',
+    scene_data JSON COMMENT '场景数据',
+    output_paths JSON COMMENT '输出文件和目录路径',
+    reference_count INT NOT NULL DEFAULT 0 COMMENT '引用此结果的项目数',
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+    UNIQUE KEY uk_content_hash (content_hash)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='VR生成结果表';
@@ -0,0 +1,8 @@
+-- 上传时探测的图片元数据，上传的图片在关联项目前project_id为空
+ALTER TABLE project_images
+    MODIFY project_id BIGINT NULL COMMENT '项目ID',
+    ADD COLUMN format VARCHAR(16) COMMENT '图片格式' AFTER height,
+    ADD COLUMN color_model VARCHAR(16) COMMENT '颜色模型' AFTER format,
+    ADD COLUMN has_alpha BOOLEAN COMMENT '是否含alpha通道' AFTER color_model,
+    ADD COLUMN orientation INT COMMENT 'EXIF方向（1-8）' AFTER has_alpha,
+    ADD INDEX idx_original_url (original_url);
@@ -0,0 +1,22 @@
+-- 创建VR处理任务表（调度器通过SELECT ... FOR UPDATE SKIP LOCKED认领待执行任务）
+CREATE TABLE vr_jobs (
+    id BIGINT PRIMARY KEY AUTO_INCREMENT,
+    task_id CHAR(36) NOT NULL COMMENT '任务ID',
+    project_id BIGINT NOT NULL COMMENT '项目ID',
+    user_id BIGINT COMMENT '提交用户ID',
+    status VARCHAR(20) NOT NULL DEFAULT 'PENDING' COMMENT '状态：PENDING, RUNNING, COMPLETED, FAILED, CANCELLED',
+    request JSON COMMENT '处理请求',
+    attempts INT NOT NULL DEFAULT 0 COMMENT '已认领次数',
+    worker_id VARCHAR(100) COMMENT '执行实例',
+    heartbeat_at TIMESTAMP NULL COMMENT '最近心跳时间',
+    started_at TIMESTAMP NULL COMMENT '开始执行时间',
+    finished_at TIMESTAMP NULL COMMENT '结束时间',
+    result_url VARCHAR(255) COMMENT '结果URL',
+    error_message VARCHAR(1000) COMMENT '错误信息',
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+    UNIQUE KEY uk_task_id (task_id),
+    INDEX idx_status_id (status, id),
+    INDEX idx_status_heartbeat (status, heartbeat_at),
+    FOREIGN KEY (project_id) REFERENCES vr_projects(id) ON DELETE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='VR处理任务表';
@@ -0,0 +1,102 @@
+package com.happyvr.benchmark;
+
+import com.happyvr.util.ImageResampler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 调整图片大小基准测试：原Graphics2D双线性实现与可分离重采样器各卷积核对比
+ *
+ * 运行方式：mvn test-compile 后以测试classpath执行本类的main方法
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResizeBenchmark {
+    
+    /**
+     * 源尺寸 -> 目标尺寸，覆盖拼接输入缩小、瓦片逐级减半和放大三种场景
+     */
+    @Param({"4000x3000->2048x2048", "4096x2048->2048x1024", "1024x512->4096x2048"})
+    public String scenario;
+    
+    private BufferedImage source;
+    private int targetWidth;
+    private int targetHeight;
+    
+    @Setup
+    public void setUp() {
+        String[] parts = scenario.split("->");
+        int[] sourceSize = parseSize(parts[0]);
+        int[] targetSize = parseSize(parts[1]);
+        targetWidth = targetSize[0];
+        targetHeight = targetSize[1];
+        
+        source = new BufferedImage(sourceSize[0], sourceSize[1], BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(42L);
+        for (int y = 0; y < sourceSize[1]; y++) {
+            for (int x = 0; x < sourceSize[0]; x++) {
+                source.setRGB(x, y, random.nextInt(0x1000000));
+            }
+        }
+    }
+    
+    @Benchmark
+    public BufferedImage graphics2dBilinear() {
+        BufferedImage resizedImage = new BufferedImage(targetWidth, targetHeight, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = resizedImage.createGraphics();
+        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g2d.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g2d.drawImage(source, 0, 0, targetWidth, targetHeight, null);
+        g2d.dispose();
+        return resizedImage;
+    }
+    
+    @Benchmark
+    public BufferedImage resamplerBox() {
+        return ImageResampler.resample(source, targetWidth, targetHeight, ImageResampler.Kernel.BOX);
+    }
+    
+    @Benchmark
+    public BufferedImage resamplerBilinear() {
+        return ImageResampler.resample(source, targetWidth, targetHeight, ImageResampler.Kernel.BILINEAR);
+    }
+    
+    @Benchmark
+    public BufferedImage resamplerLanczos3() {
+        return ImageResampler.resample(source, targetWidth, targetHeight, ImageResampler.Kernel.LANCZOS3);
+    }
+    
+    private static int[] parseSize(String size) {
+        String[] parts = size.split("x");
+        return new int[]{Integer.parseInt(parts[0]), Integer.parseInt(parts[1])};
+    }
+    
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+            .include(ResizeBenchmark.class.getSimpleName())
+            .build()).run();
+    }
+}
@@ -0,0 +1,81 @@
+package com.happyvr.dto.vr;
+
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validation;
+import jakarta.validation.Validator;
+import jakarta.validation.ValidatorFactory;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VRProcessingRequestTest {
+    
+    private static ValidatorFactory validatorFactory;
+    private static Validator validator;
+    
+    @BeforeAll
+    static void setUpClass() {
+        validatorFactory = Validation.buildDefaultValidatorFactory();
+        validator = validatorFactory.getValidator();
+    }
+    
+    @AfterAll
+    static void tearDownClass() {
+        validatorFactory.close();
+    }
+    
+    @Test
+    void validate_ShouldAcceptDefaultOptions() {
+        // Given
+        VRProcessingRequest request = newRequest(new VRProcessingRequest.VRProcessingOptions());
+        
+        // When & Then
+        assertTrue(validator.validate(request).isEmpty());
+    }
+    
+    @Test
+    void validate_ShouldRejectNullTileSize() {
+        // Given - JSON中显式传入"tileSize": null
+        VRProcessingRequest.VRProcessingOptions options = new VRProcessingRequest.VRProcessingOptions();
+        options.setTileSize(null);
+        
+        // When
+        Set<String> fields = violatedFields(newRequest(options));
+        
+        // Then
+        assertEquals(Set.of("options.tileSize"), fields);
+    }
+    
+    @Test
+    void validate_ShouldRejectOutputSizeOutOfBounds() {
+        // Given
+        VRProcessingRequest.VRProcessingOptions options = new VRProcessingRequest.VRProcessingOptions();
+        options.setOutputWidth(65536);
+        options.setOutputHeight(0);
+        
+        // When
+        Set<String> fields = violatedFields(newRequest(options));
+        
+        // Then
+        assertEquals(Set.of("options.outputWidth", "options.outputHeight"), fields);
+    }
+    
+    private static VRProcessingRequest newRequest(VRProcessingRequest.VRProcessingOptions options) {
+        VRProcessingRequest request = new VRProcessingRequest(1L, Arrays.asList("/files/a.jpg"));
+        request.setOptions(options);
+        return request;
+    }
+    
+    private static Set<String> violatedFields(VRProcessingRequest request) {
+        return validator.validate(request).stream()
+            .map(ConstraintViolation::getPropertyPath)
+            .map(Object::toString)
+            .collect(Collectors.toSet());
+    }
+}
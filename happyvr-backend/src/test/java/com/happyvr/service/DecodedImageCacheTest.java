@@ -0,0 +1,140 @@
+package com.happyvr.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DecodedImageCacheTest {
+    
+    @TempDir
+    Path tempDir;
+    
+    private DecodedImageCache decodedImageCache;
+    
+    @BeforeEach
+    void setUp() {
+        decodedImageCache = new DecodedImageCache();
+    }
+    
+    @Test
+    void getOrDecode_ShouldDecodeOnce_WhenSameFileAndScale() throws Exception {
+        // Given
+        File file = createFile("a.jpg");
+        AtomicInteger decodes = new AtomicInteger();
+        DecodedImageCache.Decoder decoder = () -> {
+            decodes.incrementAndGet();
+            return new BufferedImage(4, 2, BufferedImage.TYPE_INT_RGB);
+        };
+        
+        // When
+        BufferedImage first = decodedImageCache.getOrDecode(file, 1, decoder);
+        BufferedImage second = decodedImageCache.getOrDecode(new File(tempDir.toFile(), "./a.jpg"), 1, decoder);
+        BufferedImage halfScale = decodedImageCache.getOrDecode(file, 2, decoder);
+        
+        // Then - 同一文件的不同路径写法命中同一条目，下采样倍数不同时重新解码
+        assertSame(first, second);
+        assertNotSame(first, halfScale);
+        assertEquals(2, decodes.get());
+        assertEquals(1, decodedImageCache.getHitCount());
+        assertEquals(2, decodedImageCache.getMissCount());
+        assertEquals(2 * 32L, decodedImageCache.getCurrentBytes());
+    }
+    
+    @Test
+    void getOrDecode_ShouldDecodeAgain_WhenFileModified() throws Exception {
+        // Given
+        File file = createFile("a.jpg");
+        AtomicInteger decodes = new AtomicInteger();
+        DecodedImageCache.Decoder decoder = () -> {
+            decodes.incrementAndGet();
+            return new BufferedImage(4, 2, BufferedImage.TYPE_INT_RGB);
+        };
+        decodedImageCache.getOrDecode(file, 1, decoder);
+        
+        // When
+        assertTrue(file.setLastModified(file.lastModified() + 2000));
+        decodedImageCache.getOrDecode(file, 1, decoder);
+        
+        // Then
+        assertEquals(2, decodes.get());
+    }
+    
+    @Test
+    void getOrDecode_ShouldMoveEvictedImagesToSoftTier_WhenOverByteBudget() throws Exception {
+        // Given - 每张4x2的TYPE_INT_RGB图片占32字节，预算只够两张
+        ReflectionTestUtils.setField(decodedImageCache, "maxBytes", 64L);
+        File a = createFile("a.jpg");
+        File b = createFile("b.jpg");
+        File c = createFile("c.jpg");
+        BufferedImage imageA = decodedImageCache.getOrDecode(a, 1, () -> newImage());
+        decodedImageCache.getOrDecode(b, 1, () -> newImage());
+        
+        // When
+        decodedImageCache.getOrDecode(c, 1, () -> newImage());
+        
+        // Then - a被转为软引用，仍能命中且不重新解码
+        assertEquals(2, decodedImageCache.getSize());
+        assertEquals(64L, decodedImageCache.getCurrentBytes());
+        assertEquals(1, decodedImageCache.getEvictionCount());
+        BufferedImage again = decodedImageCache.getOrDecode(a, 1, () -> {
+            throw new AssertionError("不应重新解码");
+        });
+        assertSame(imageA, again);
+        assertEquals(1, decodedImageCache.getSoftHitCount());
+        assertEquals(64L, decodedImageCache.getCurrentBytes());
+    }
+    
+    @Test
+    void getOrDecode_ShouldNotCache_WhenDecoderReturnsNull() throws Exception {
+        // Given
+        File file = createFile("a.jpg");
+        
+        // When
+        BufferedImage image = decodedImageCache.getOrDecode(file, 1, () -> null);
+        
+        // Then
+        assertNull(image);
+        assertEquals(0, decodedImageCache.getSize());
+        assertEquals(0, decodedImageCache.getSoftSize());
+    }
+    
+    @Test
+    void bindTo_ShouldExposeCacheCountersAndSize() throws Exception {
+        // Given
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        decodedImageCache.bindTo(registry);
+        File file = createFile("a.jpg");
+        
+        // When
+        decodedImageCache.getOrDecode(file, 1, DecodedImageCacheTest::newImage);
+        decodedImageCache.getOrDecode(file, 1, DecodedImageCacheTest::newImage);
+        
+        // Then
+        assertEquals(1.0, registry.get("happyvr.decode.cache.requests").tag("result", "hit").functionCounter().count());
+        assertEquals(0.0, registry.get("happyvr.decode.cache.requests").tag("result", "soft_hit").functionCounter().count());
+        assertEquals(1.0, registry.get("happyvr.decode.cache.requests").tag("result", "miss").functionCounter().count());
+        assertEquals(0.0, registry.get("happyvr.decode.cache.evictions").functionCounter().count());
+        assertEquals(1.0, registry.get("happyvr.decode.cache.size").gauge().value());
+        assertEquals(32.0, registry.get("happyvr.decode.cache.bytes").gauge().value());
+    }
+    
+    private File createFile(String name) throws Exception {
+        Path path = tempDir.resolve(name);
+        Files.write(path, new byte[] {1, 2, 3});
+        return path.toFile();
+    }
+    
+    private static BufferedImage newImage() {
+        return new BufferedImage(4, 2, BufferedImage.TYPE_INT_RGB);
+    }
+}
@@ -3,17 +3,24 @@ package com.happyvr.service;
 import com.happyvr.config.FileUploadConfig;
 import com.happyvr.dto.upload.FileUploadResponse;
 import com.happyvr.dto.upload.UploadProgressResponse;
+import com.happyvr.entity.ProjectImage;
 import com.happyvr.exception.ValidationException;
+import com.happyvr.repository.ProjectImageRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.web.multipart.MultipartFile;
 
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
 
@@ -27,6 +34,12 @@ class FileUploadServiceTest {
     @Mock
     private FileUploadConfig fileUploadConfig;
     
+    @Mock
+    private ImageDerivativeService imageDerivativeService;
+    
+    @Mock
+    private ProjectImageRepository projectImageRepository;
+    
     @InjectMocks
     private FileUploadService fileUploadService;
     
@@ -66,6 +79,62 @@ class FileUploadServiceTest {
         assertEquals(uploadId, response.getUploadId());
         assertTrue(response.getFileName().endsWith(".jpg"));
         assertTrue(response.getFileUrl().contains("/files/user_1/"));
+        String baseUrl = response.getFileUrl().substring(0, response.getFileUrl().length() - ".jpg".length());
+        assertEquals(baseUrl + "_thumb.jpg", response.getThumbnailUrl());
+        assertEquals(baseUrl + "_preview.jpg", response.getPreviewUrl());
+        // 文件头无法识别时仍保存记录，只是没有尺寸
+        assertNull(response.getWidth());
+        verify(projectImageRepository).save(argThat(image -> image.getWidth() == null
+            && image.getFileSize() == "test image content".length()));
+        verify(imageDerivativeService).generateAsync(argThat(path -> path.endsWith(response.getFileName())));
+    }
+    
+    @Test
+    void uploadSingleFile_ShouldStoreHeaderMetadata_WhenImageReadable() throws Exception {
+        // Given
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(120, 60, BufferedImage.TYPE_INT_ARGB), "png", png);
+        MockMultipartFile file = new MockMultipartFile("file", "pano.png", "image/png", png.toByteArray());
+        
+        // When
+        FileUploadResponse response = fileUploadService.uploadSingleFile(file, 1L, "test-upload-id");
+        
+        // Then
+        assertEquals(120, response.getWidth());
+        assertEquals(60, response.getHeight());
+        ArgumentCaptor<ProjectImage> captor = ArgumentCaptor.forClass(ProjectImage.class);
+        verify(projectImageRepository).save(captor.capture());
+        ProjectImage image = captor.getValue();
+        assertEquals(response.getFileUrl(), image.getOriginalUrl());
+        assertNull(image.getProject());
+        assertEquals((long) png.size(), image.getFileSize());
+        assertEquals(120, image.getWidth());
+        assertEquals(60, image.getHeight());
+        assertEquals("png", image.getFormat());
+        assertEquals("RGBA", image.getColorModel());
+        assertTrue(image.getHasAlpha());
+        assertEquals(1, image.getOrientation());
+    }
+    
+    @Test
+    void deleteFile_ShouldDeleteThumbnailAndPreview() throws Exception {
+        // Given
+        Path dir = Files.createDirectories(tempDir.resolve("user_1").resolve("2024").resolve("01"));
+        Path original = Files.writeString(dir.resolve("pano.png"), "original");
+        Path thumbnail = Files.writeString(dir.resolve("pano_thumb.jpg"), "thumb");
+        Path preview = Files.writeString(dir.resolve("pano_preview.jpg"), "preview");
+        Path other = Files.writeString(dir.resolve("other_thumb.jpg"), "other");
+        
+        // When
+        boolean deleted = fileUploadService.deleteFile("user_1/2024/01/pano.png");
+        
+        // Then
+        assertTrue(deleted);
+        assertFalse(Files.exists(original));
+        assertFalse(Files.exists(thumbnail));
+        assertFalse(Files.exists(preview));
+        assertTrue(Files.exists(other));
+        verify(projectImageRepository).deleteByOriginalUrl("/files/user_1/2024/01/pano.png");
     }
     
     @Test
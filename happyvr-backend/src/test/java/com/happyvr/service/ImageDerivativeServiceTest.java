@@ -0,0 +1,127 @@
+package com.happyvr.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InjectMocks;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.imageio.ImageIO;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+@ExtendWith(MockitoExtension.class)
+class ImageDerivativeServiceTest {
+    
+    @Spy
+    private ImageProcessingService imageProcessingService = new ImageProcessingService();
+    
+    @InjectMocks
+    private ImageDerivativeService imageDerivativeService;
+    
+    @TempDir
+    Path tempDir;
+    
+    @BeforeEach
+    void setUp() {
+        Executor directExecutor = Runnable::run;
+        ReflectionTestUtils.setField(imageProcessingService, "rasterPool", new RasterPool());
+        ReflectionTestUtils.setField(imageDerivativeService, "derivativeExecutor", directExecutor);
+        ReflectionTestUtils.setField(imageDerivativeService, "thumbnailSize", 64);
+        ReflectionTestUtils.setField(imageDerivativeService, "previewSize", 200);
+    }
+    
+    @Test
+    void generateAsync_ShouldWriteThumbnailAndPreviewNextToOriginal() throws Exception {
+        // Given
+        BufferedImage image = new BufferedImage(800, 400, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = image.createGraphics();
+        g2d.setColor(Color.RED);
+        g2d.fillRect(0, 0, 800, 400);
+        g2d.dispose();
+        Path original = tempDir.resolve("20240101_120000_abcd1234.png");
+        ImageIO.write(image, "png", original.toFile());
+        
+        // When
+        imageDerivativeService.generateAsync(original).join();
+        
+        // Then - 等比缩放到最长边限制，输出为JPEG
+        BufferedImage preview = ImageIO.read(tempDir.resolve("20240101_120000_abcd1234_preview.jpg").toFile());
+        BufferedImage thumbnail = ImageIO.read(tempDir.resolve("20240101_120000_abcd1234_thumb.jpg").toFile());
+        assertEquals(200, preview.getWidth());
+        assertEquals(100, preview.getHeight());
+        assertEquals(64, thumbnail.getWidth());
+        assertEquals(32, thumbnail.getHeight());
+        assertTrue(((thumbnail.getRGB(32, 16) >> 16) & 0xFF) > 200);
+        try (var files = Files.list(tempDir)) {
+            assertEquals(3, files.count());
+        }
+    }
+    
+    @Test
+    void generateAsync_ShouldNotWriteDerivatives_WhenOriginalUnreadable() throws Exception {
+        // Given
+        Path original = tempDir.resolve("broken.jpg");
+        Files.write(original, "not an image".getBytes());
+        
+        // When
+        imageDerivativeService.generateAsync(original).join();
+        
+        // Then - 不把原图当作派生图
+        assertFalse(Files.exists(tempDir.resolve("broken_thumb.jpg")));
+        assertFalse(Files.exists(tempDir.resolve("broken_preview.jpg")));
+        assertEquals(0, imageDerivativeService.getPendingCount());
+    }
+    
+    @Test
+    void generateAsync_ShouldRetryLater_WhenExecutorRejects() throws Exception {
+        // Given
+        Executor fullExecutor = task -> {
+            throw new RejectedExecutionException("队列已满");
+        };
+        ReflectionTestUtils.setField(imageDerivativeService, "derivativeExecutor", fullExecutor);
+        Path original = tempDir.resolve("photo.png");
+        ImageIO.write(new BufferedImage(800, 400, BufferedImage.TYPE_INT_RGB), "png", original.toFile());
+        
+        // When
+        imageDerivativeService.generateAsync(original).join();
+        
+        // Then - 不在调用线程上解码缩放，也不生成派生图文件
+        verifyNoInteractions(imageProcessingService);
+        assertFalse(Files.exists(tempDir.resolve("photo_thumb.jpg")));
+        assertFalse(Files.exists(tempDir.resolve("photo_preview.jpg")));
+        assertEquals(1, imageDerivativeService.getPendingCount());
+        
+        // When - 队列空闲后重新提交
+        Executor directExecutor = Runnable::run;
+        ReflectionTestUtils.setField(imageDerivativeService, "derivativeExecutor", directExecutor);
+        imageDerivativeService.retryPending();
+        
+        // Then - 生成缩小后的JPEG缩略图
+        BufferedImage thumbnail = ImageIO.read(tempDir.resolve("photo_thumb.jpg").toFile());
+        assertEquals(64, thumbnail.getWidth());
+        assertEquals(32, thumbnail.getHeight());
+        try (ImageInputStream input = ImageIO.createImageInputStream(tempDir.resolve("photo_thumb.jpg").toFile())) {
+            assertEquals("jpeg", ImageIO.getImageReaders(input).next().getFormatName().toLowerCase());
+        }
+        assertEquals(0, imageDerivativeService.getPendingCount());
+    }
+    
+    @Test
+    void fitWithin_ShouldKeepAspectRatioWithoutUpscaling() {
+        assertArrayEquals(new int[] {320, 160}, ImageDerivativeService.fitWithin(4096, 2048, 320));
+        assertArrayEquals(new int[] {180, 320}, ImageDerivativeService.fitWithin(1080, 1920, 320));
+        assertArrayEquals(new int[] {100, 50}, ImageDerivativeService.fitWithin(100, 50, 320));
+    }
+}
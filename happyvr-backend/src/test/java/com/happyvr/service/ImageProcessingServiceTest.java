@@ -1,26 +1,39 @@
 package com.happyvr.service;
 
 import com.happyvr.exception.ValidationException;
+import com.happyvr.util.PixelBuffer;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.api.io.TempDir;
 import org.mockito.InjectMocks;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
 
+import javax.imageio.ImageIO;
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 @ExtendWith(MockitoExtension.class)
 class ImageProcessingServiceTest {
     
+    @Spy
+    private RemapTableCache remapTableCache = new RemapTableCache();
+    
+    @Spy
+    private RasterPool rasterPool = new RasterPool();
+    
     @InjectMocks
     private ImageProcessingService imageProcessingService;
     
@@ -148,6 +161,128 @@ class ImageProcessingServiceTest {
         assertEquals(panorama.getHeight(), sphericalImage.getHeight());
     }
     
+    @Test
+    void createSphericalMapping_ShouldMatchPerPixelReference() {
+        // Given - 随机噪声图片，尺寸不是分块大小的整数倍
+        BufferedImage panorama = createNoiseImage(517, 259, BufferedImage.TYPE_INT_RGB, 42L);
+        BufferedImage argbPanorama = createNoiseImage(301, 150, BufferedImage.TYPE_INT_ARGB, 7L);
+        
+        // When
+        BufferedImage sphericalImage = imageProcessingService.createSphericalMapping(panorama);
+        BufferedImage argbSphericalImage = imageProcessingService.createSphericalMapping(argbPanorama);
+        
+        // Then - 与逐像素实现的结果完全一致
+        assertPixelsEqual(referenceSphericalMapping(panorama), sphericalImage);
+        assertPixelsEqual(referenceSphericalMapping(argbPanorama), argbSphericalImage);
+    }
+    
+    @Test
+    void cleanupScratch_ShouldDeleteLeftoverPixelFiles() throws Exception {
+        // Given - 上次异常退出遗留的临时文件
+        ReflectionTestUtils.setField(imageProcessingService, "cacheDir", tempDir.toString());
+        Path scratch = Files.createDirectories(tempDir.resolve("scratch"));
+        Path leftover = Files.writeString(scratch.resolve("pixels_123.raw"), "pixels");
+        Path other = Files.writeString(scratch.resolve("notes.txt"), "keep");
+        
+        // When
+        imageProcessingService.cleanupScratch();
+        
+        // Then
+        assertFalse(Files.exists(leftover));
+        assertTrue(Files.exists(other));
+    }
+    
+    @Test
+    void createSphericalMapping_ShouldMatchHeapResult_WhenOffHeap() throws Exception {
+        // Given - 映射阈值为0，缓冲区使用临时文件
+        ReflectionTestUtils.setField(imageProcessingService, "cacheDir", tempDir.toString());
+        ReflectionTestUtils.setField(imageProcessingService, "offHeapMappedMinBytes", 0L);
+        List<BufferedImage> images = Arrays.asList(
+            createNoiseImage(200, 180, BufferedImage.TYPE_INT_RGB, 3L),
+            createNoiseImage(220, 160, BufferedImage.TYPE_INT_ARGB, 4L));
+        
+        // When
+        BufferedImage expected = imageProcessingService.createSphericalMapping(
+            imageProcessingService.createPanorama(images, 517, 259));
+        try (PixelBuffer panorama = imageProcessingService.createPanoramaOffHeap(images, 517, 259);
+             PixelBuffer spherical = imageProcessingService.createSphericalMapping(panorama)) {
+            
+            // Then
+            assertTrue(spherical.isMapped());
+            assertPixelsEqual(expected, spherical.asImage());
+            
+            // JPEG编码直接读取缓冲区视图
+            Path output = tempDir.resolve("offheap.jpg");
+            imageProcessingService.saveJpeg(spherical.asImage(), output.toString(), 90, false);
+            BufferedImage decoded = ImageIO.read(output.toFile());
+            assertEquals(517, decoded.getWidth());
+            assertEquals(259, decoded.getHeight());
+        }
+        try (var files = Files.list(tempDir.resolve("scratch"))) {
+            assertEquals(0, files.count());
+        }
+    }
+    
+    @Test
+    void saveSphericalJpegStreaming_ShouldMatchFullFramePipeline() throws Exception {
+        // Given
+        List<BufferedImage> images = Arrays.asList(
+            createNoiseImage(200, 180, BufferedImage.TYPE_INT_RGB, 5L),
+            createNoiseImage(220, 160, BufferedImage.TYPE_INT_RGB, 6L));
+        Path expectedPath = tempDir.resolve("full.jpg");
+        Path streamedPath = tempDir.resolve("streamed.jpg");
+        imageProcessingService.saveJpeg(imageProcessingService.createSphericalMapping(
+            imageProcessingService.createPanorama(images, 517, 259)), expectedPath.toString(), 85, false);
+        
+        // When - 条带高度不是图片高度的约数
+        ReflectionTestUtils.setField(imageProcessingService, "vrComputePool", ForkJoinPool.commonPool());
+        imageProcessingService.saveSphericalJpegStreaming(images, 517, 259, streamedPath.toString(), 85, false, 37, 2);
+        
+        // Then - 编码器读到的像素完全一致，输出文件逐字节相同
+        assertArrayEquals(Files.readAllBytes(expectedPath), Files.readAllBytes(streamedPath));
+    }
+    
+    @Test
+    void createSphericalMapping_ShouldReuseCachedRemapTable() {
+        // Given
+        BufferedImage first = createNoiseImage(256, 128, BufferedImage.TYPE_INT_RGB, 1L);
+        BufferedImage second = createNoiseImage(256, 128, BufferedImage.TYPE_INT_RGB, 2L);
+        
+        // When
+        imageProcessingService.createSphericalMapping(first);
+        BufferedImage mapped = imageProcessingService.createSphericalMapping(second);
+        
+        // Then
+        assertEquals(1, remapTableCache.getMissCount());
+        assertEquals(1, remapTableCache.getHitCount());
+        assertPixelsEqual(referenceSphericalMapping(second), mapped);
+    }
+    
+    @Test
+    void createCubeFaces_ShouldRenderSixFaces() {
+        // Given - 左半边红色、右半边蓝色的全景图
+        BufferedImage panorama = new BufferedImage(400, 200, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = panorama.createGraphics();
+        g2d.setColor(Color.RED);
+        g2d.fillRect(0, 0, 200, 200);
+        g2d.setColor(Color.BLUE);
+        g2d.fillRect(200, 0, 200, 200);
+        g2d.dispose();
+        
+        // When
+        java.util.Map<String, BufferedImage> faces = imageProcessingService.createCubeFaces(panorama, 64);
+        
+        // Then
+        assertEquals(Arrays.asList("px", "nx", "py", "ny", "pz", "nz"), new java.util.ArrayList<>(faces.keySet()));
+        faces.values().forEach(face -> {
+            assertEquals(64, face.getWidth());
+            assertEquals(64, face.getHeight());
+        });
+        // 右侧面对应全景图右半部分，左侧面对应左半部分
+        assertEquals(Color.BLUE.getRGB(), faces.get("px").getRGB(32, 32));
+        assertEquals(Color.RED.getRGB(), faces.get("nx").getRGB(32, 32));
+    }
+    
     @Test
     void saveImage_ShouldSaveSuccessfully() throws IOException {
         // Given
@@ -163,6 +298,42 @@ class ImageProcessingServiceTest {
         assertTrue(outputFile.length() > 0);
     }
     
+    @Test
+    void saveJpeg_ShouldApplyQualityAndProgressiveMode() throws IOException {
+        // Given
+        BufferedImage noise = createNoiseImage(256, 128, BufferedImage.TYPE_INT_RGB, 3L);
+        String highPath = tempDir.resolve("high.jpg").toString();
+        String lowPath = tempDir.resolve("low.jpg").toString();
+        String progressivePath = tempDir.resolve("progressive.jpg").toString();
+        
+        // When
+        imageProcessingService.saveJpeg(noise, highPath, 95, false);
+        imageProcessingService.saveJpeg(noise, lowPath, 30, false);
+        imageProcessingService.saveJpeg(noise, progressivePath, 95, true);
+        
+        // Then - 质量越低文件越小，渐进式文件包含SOF2标记
+        assertTrue(new File(lowPath).length() < new File(highPath).length());
+        assertFalse(containsMarker(Files.readAllBytes(Paths.get(highPath)), 0xC2));
+        assertTrue(containsMarker(Files.readAllBytes(Paths.get(progressivePath)), 0xC2));
+        BufferedImage decoded = ImageIO.read(new File(progressivePath));
+        assertEquals(256, decoded.getWidth());
+        assertEquals(128, decoded.getHeight());
+    }
+    
+    @Test
+    void saveJpeg_ShouldFlattenAlpha_WhenImageHasAlpha() throws IOException {
+        // Given - 全透明图片合成到白色背景
+        BufferedImage transparent = new BufferedImage(32, 32, BufferedImage.TYPE_INT_ARGB);
+        String outputPath = tempDir.resolve("nested/alpha.jpg").toString();
+        
+        // When
+        imageProcessingService.saveJpeg(transparent, outputPath, 90, false);
+        
+        // Then
+        BufferedImage decoded = ImageIO.read(new File(outputPath));
+        assertTrue((decoded.getRGB(16, 16) & 0xFF) > 250);
+    }
+    
     @Test
     void saveImage_ShouldThrowException_WhenInvalidFormat() {
         // Given
@@ -195,4 +366,55 @@ class ImageProcessingServiceTest {
         assertThrows(ValidationException.class, 
             () -> imageProcessingService.getImageInfo(imagePath));
     }
-}
\ No newline at end of file
+    
+    private static BufferedImage createNoiseImage(int width, int height, int type, long seed) {
+        BufferedImage image = new BufferedImage(width, height, type);
+        java.util.Random random = new java.util.Random(seed);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, random.nextInt());
+            }
+        }
+        return image;
+    }
+    
+    private static BufferedImage referenceSphericalMapping(BufferedImage panorama) {
+        int width = panorama.getWidth();
+        int height = panorama.getHeight();
+        BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                double theta = (double) x / width * 2 * Math.PI;
+                double phi = (double) y / height * Math.PI;
+                double cartX = Math.sin(phi) * Math.cos(theta);
+                double cartY = Math.cos(phi);
+                double cartZ = Math.sin(phi) * Math.sin(theta);
+                int sourceX = (int) ((Math.atan2(cartZ, cartX) + Math.PI) / (2 * Math.PI) * width);
+                int sourceY = (int) (Math.acos(cartY) / Math.PI * height);
+                sourceX = Math.max(0, Math.min(width - 1, sourceX));
+                sourceY = Math.max(0, Math.min(height - 1, sourceY));
+                result.setRGB(x, y, panorama.getRGB(sourceX, sourceY));
+            }
+        }
+        return result;
+    }
+    
+    private static void assertPixelsEqual(BufferedImage expected, BufferedImage actual) {
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                assertEquals(expected.getRGB(x, y), actual.getRGB(x, y), "像素不一致: (" + x + ", " + y + ")");
+            }
+        }
+    }
+    
+    private static boolean containsMarker(byte[] data, int marker) {
+        for (int i = 0; i + 1 < data.length; i++) {
+            if ((data[i] & 0xFF) == 0xFF && (data[i + 1] & 0xFF) == marker) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,98 @@
+package com.happyvr.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.awt.image.BufferedImage;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RasterPoolTest {
+    
+    private RasterPool rasterPool;
+    
+    @BeforeEach
+    void setUp() {
+        rasterPool = new RasterPool();
+    }
+    
+    @Test
+    void acquire_ShouldReuseReleasedImage_WhenSameSizeAndType() {
+        // Given
+        BufferedImage first = rasterPool.acquire(8, 4, BufferedImage.TYPE_INT_RGB);
+        rasterPool.release(first);
+        
+        // When
+        BufferedImage second = rasterPool.acquire(8, 4, BufferedImage.TYPE_INT_RGB);
+        BufferedImage otherSize = rasterPool.acquire(4, 8, BufferedImage.TYPE_INT_RGB);
+        
+        // Then
+        assertSame(first, second);
+        assertNotSame(first, otherSize);
+        assertEquals(1, rasterPool.getHitCount());
+        assertEquals(2, rasterPool.getMissCount());
+        assertEquals(1.0 / 3, rasterPool.getHitRate(), 1e-9);
+        assertEquals(0, rasterPool.getIdleCount());
+        assertEquals(2, rasterPool.getLeasedCount());
+    }
+    
+    @Test
+    void release_ShouldIgnoreForeignAndRepeatedImages() {
+        // Given
+        BufferedImage foreign = new BufferedImage(8, 4, BufferedImage.TYPE_INT_RGB);
+        BufferedImage leased = rasterPool.acquire(8, 4, BufferedImage.TYPE_INT_RGB);
+        
+        // When
+        rasterPool.release(foreign);
+        rasterPool.release(leased);
+        rasterPool.release(leased);
+        rasterPool.release(null);
+        
+        // Then - 外部图片（如解码缓存中的共享图片）不能被池复用，重复归还不会产生两个空闲条目
+        assertEquals(1, rasterPool.getIdleCount());
+        assertEquals(8 * 4 * 4L, rasterPool.getRetainedBytes());
+        assertSame(leased, rasterPool.acquire(8, 4, BufferedImage.TYPE_INT_RGB));
+        assertNotSame(foreign, rasterPool.acquire(8, 4, BufferedImage.TYPE_INT_RGB));
+    }
+    
+    @Test
+    void release_ShouldEvictLeastRecentlyReleased_WhenOverRetainedBytes() {
+        // Given - 上限只够保留两张8x4的图片
+        ReflectionTestUtils.setField(rasterPool, "maxRetainedBytes", 2 * 8 * 4 * 4L);
+        BufferedImage first = rasterPool.acquire(8, 4, BufferedImage.TYPE_INT_RGB);
+        BufferedImage second = rasterPool.acquire(8, 4, BufferedImage.TYPE_INT_RGB);
+        BufferedImage third = rasterPool.acquire(4, 8, BufferedImage.TYPE_INT_RGB);
+        BufferedImage oversized = rasterPool.acquire(16, 16, BufferedImage.TYPE_INT_RGB);
+        
+        // When
+        rasterPool.release(first);
+        rasterPool.release(second);
+        rasterPool.release(third);
+        rasterPool.release(oversized);
+        
+        // Then - 最早归还的被淘汰，超过上限的图片不保留
+        assertEquals(1, rasterPool.getEvictionCount());
+        assertEquals(2, rasterPool.getIdleCount());
+        assertEquals(2 * 8 * 4 * 4L, rasterPool.getRetainedBytes());
+        assertSame(third, rasterPool.acquire(4, 8, BufferedImage.TYPE_INT_RGB));
+        assertSame(second, rasterPool.acquire(8, 4, BufferedImage.TYPE_INT_RGB));
+        assertNotSame(first, rasterPool.acquire(8, 4, BufferedImage.TYPE_INT_RGB));
+    }
+    
+    @Test
+    void bindTo_ShouldExposeHitAndMissCounters() {
+        // Given
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        rasterPool.bindTo(registry);
+        rasterPool.release(rasterPool.acquire(8, 4, BufferedImage.TYPE_INT_RGB));
+        rasterPool.acquire(8, 4, BufferedImage.TYPE_INT_RGB);
+        
+        // Then
+        assertEquals(1.0, registry.get("happyvr.raster.pool.requests").tag("result", "hit").functionCounter().count());
+        assertEquals(1.0, registry.get("happyvr.raster.pool.requests").tag("result", "miss").functionCounter().count());
+        assertEquals(0.5, registry.get("happyvr.raster.pool.hit.ratio").gauge().value());
+        assertEquals(1.0, registry.get("happyvr.raster.pool.leased").gauge().value());
+    }
+}
@@ -0,0 +1,147 @@
+package com.happyvr.service;
+
+import com.happyvr.util.RemapTable;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RemapTableCacheTest {
+    
+    @TempDir
+    Path tempDir;
+    
+    private RemapTableCache remapTableCache;
+    
+    @BeforeEach
+    void setUp() {
+        remapTableCache = new RemapTableCache();
+        ReflectionTestUtils.setField(remapTableCache, "cacheDir", tempDir.toString());
+    }
+    
+    @Test
+    void getOrBuild_ShouldBuildOnce_WhenKeyRepeated() {
+        // Given
+        RemapTableCache.RemapKey key = new RemapTableCache.RemapKey("test", 4, 2, 4, 2);
+        AtomicInteger builds = new AtomicInteger();
+        
+        // When
+        RemapTable first = remapTableCache.getOrBuild(key, () -> {
+            builds.incrementAndGet();
+            return mirrorTable(4, 2);
+        });
+        RemapTable second = remapTableCache.getOrBuild(key, () -> {
+            builds.incrementAndGet();
+            return mirrorTable(4, 2);
+        });
+        
+        // Then
+        assertSame(first, second);
+        assertEquals(1, builds.get());
+        assertEquals(1, remapTableCache.getHitCount());
+        assertEquals(1, remapTableCache.getMissCount());
+    }
+    
+    @Test
+    void bindTo_ShouldExposeCacheCountersAndSize() {
+        // Given
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        remapTableCache.bindTo(registry);
+        RemapTableCache.RemapKey key = new RemapTableCache.RemapKey("test", 4, 2, 4, 2);
+        
+        // When
+        remapTableCache.getOrBuild(key, () -> mirrorTable(4, 2));
+        remapTableCache.getOrBuild(key, () -> mirrorTable(4, 2));
+        
+        // Then
+        assertEquals(1.0, registry.get("happyvr.remap.cache.requests").tag("result", "hit").functionCounter().count());
+        assertEquals(1.0, registry.get("happyvr.remap.cache.requests").tag("result", "miss").functionCounter().count());
+        assertEquals(0.0, registry.get("happyvr.remap.cache.disk.loads").functionCounter().count());
+        assertEquals(1.0, registry.get("happyvr.remap.cache.size").gauge().value());
+        assertEquals(32.0, registry.get("happyvr.remap.cache.bytes").gauge().value());
+    }
+    
+    @Test
+    void getOrBuild_ShouldEvictLeastRecentlyUsed_WhenOverByteBudget() {
+        // Given - 每张4x2的完整表占32字节，预算只够两张
+        ReflectionTestUtils.setField(remapTableCache, "maxBytes", 64L);
+        RemapTableCache.RemapKey keyA = new RemapTableCache.RemapKey("a", 4, 2, 4, 2);
+        RemapTableCache.RemapKey keyB = new RemapTableCache.RemapKey("b", 4, 2, 4, 2);
+        RemapTableCache.RemapKey keyC = new RemapTableCache.RemapKey("c", 4, 2, 4, 2);
+        
+        // When
+        remapTableCache.getOrBuild(keyA, () -> mirrorTable(4, 2));
+        remapTableCache.getOrBuild(keyB, () -> mirrorTable(4, 2));
+        remapTableCache.getOrBuild(keyA, () -> mirrorTable(4, 2)); // A变为最近使用
+        remapTableCache.getOrBuild(keyC, () -> mirrorTable(4, 2));
+        
+        // Then
+        assertNotNull(remapTableCache.getIfPresent(keyA));
+        assertNull(remapTableCache.getIfPresent(keyB));
+        assertNotNull(remapTableCache.getIfPresent(keyC));
+        assertEquals(1, remapTableCache.getEvictionCount());
+        assertEquals(64L, remapTableCache.getCurrentBytes());
+    }
+    
+    @Test
+    void getOrBuild_ShouldLoadFromDisk_WhenSpillEnabled() throws Exception {
+        // Given
+        ReflectionTestUtils.setField(remapTableCache, "diskSpillEnabled", true);
+        RemapTableCache.RemapKey fullKey = new RemapTableCache.RemapKey("full", 4, 2, 4, 2);
+        RemapTableCache.RemapKey rowKey = new RemapTableCache.RemapKey("row", 4, 2, 4, 2);
+        remapTableCache.getOrBuild(fullKey, () -> mirrorTable(4, 2));
+        remapTableCache.getOrBuild(rowKey, () -> rowMirrorTable(4, 2));
+        assertTrue(Files.exists(remapTableCache.resolveSpillPath(fullKey)));
+        
+        // 模拟重启：新的缓存实例没有内存中的表
+        RemapTableCache restarted = new RemapTableCache();
+        ReflectionTestUtils.setField(restarted, "cacheDir", tempDir.toString());
+        ReflectionTestUtils.setField(restarted, "diskSpillEnabled", true);
+        
+        // When
+        RemapTable full = restarted.getOrBuild(fullKey, () -> fail("不应重新构建"));
+        RemapTable row = restarted.getOrBuild(rowKey, () -> fail("不应重新构建"));
+        
+        // Then
+        assertEquals(2, restarted.getDiskLoadCount());
+        int[] source = {1, 2, 3, 4, 5, 6, 7, 8};
+        int[] expected = {4, 3, 2, 1, 8, 7, 6, 5};
+        int[] target = new int[8];
+        full.gather(source, target);
+        assertArrayEquals(expected, target);
+        target = new int[8];
+        row.gather(source, target);
+        assertArrayEquals(expected, target);
+    }
+    
+    private static RemapTable mirrorTable(int width, int height) {
+        int[] indices = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                indices[y * width + x] = y * width + (width - 1 - x);
+            }
+        }
+        return RemapTable.full(width, height, width, height, IntBuffer.wrap(indices));
+    }
+    
+    private static RemapTable rowMirrorTable(int width, int height) {
+        int[] rowOffsets = new int[height];
+        char[] columns = new char[width * height];
+        for (int y = 0; y < height; y++) {
+            rowOffsets[y] = y * width;
+            for (int x = 0; x < width; x++) {
+                columns[y * width + x] = (char) (width - 1 - x);
+            }
+        }
+        return RemapTable.rowColumn(width, height, width, height, rowOffsets, CharBuffer.wrap(columns));
+    }
+}
@@ -0,0 +1,85 @@
+package com.happyvr.service;
+
+import com.happyvr.exception.ValidationException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InjectMocks;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(MockitoExtension.class)
+class TilePyramidServiceTest {
+    
+    @Spy
+    private ImageProcessingService imageProcessingService = new ImageProcessingService();
+    
+    @InjectMocks
+    private TilePyramidService tilePyramidService;
+    
+    @TempDir
+    Path tempDir;
+    
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(imageProcessingService, "rasterPool", new RasterPool());
+    }
+    
+    @Test
+    @SuppressWarnings("unchecked")
+    void createPyramid_ShouldWriteTilesAndManifest() throws Exception {
+        // Given
+        BufferedImage panorama = new BufferedImage(1000, 500, BufferedImage.TYPE_INT_RGB);
+        
+        // When
+        Map<String, Object> manifest = tilePyramidService.createPyramid(
+            Collections.singletonMap("equirect", panorama), tempDir.toString(), "/files/vr/project_1/tiles_t", 256, 85);
+        
+        // Then - 1000x500 -> 500x250 -> 250x125，共3级
+        assertEquals(256, manifest.get("tileSize"));
+        assertEquals("/files/vr/project_1/tiles_t/{face}/{level}/{y}_{x}.jpg", manifest.get("urlTemplate"));
+        List<Map<String, Object>> levels = (List<Map<String, Object>>) manifest.get("levels");
+        assertEquals(3, levels.size());
+        assertEquals(250, levels.get(0).get("width"));
+        assertEquals(1000, levels.get(2).get("width"));
+        assertEquals(4, levels.get(2).get("columns"));
+        assertEquals(2, levels.get(2).get("rows"));
+        
+        File lastTile = tempDir.resolve("equirect/2/1_3.jpg").toFile();
+        assertTrue(lastTile.exists());
+        BufferedImage tile = ImageIO.read(lastTile);
+        assertEquals(1000 - 3 * 256, tile.getWidth());
+        assertEquals(500 - 256, tile.getHeight());
+        assertTrue(tempDir.resolve("equirect/0/0_0.jpg").toFile().exists());
+    }
+    
+    @Test
+    void createPyramid_ShouldThrowException_WhenSourcesEmpty() {
+        assertThrows(ValidationException.class, () -> tilePyramidService.createPyramid(
+            Collections.emptyMap(), tempDir.toString(), "/files", 256, 85));
+    }
+    
+    @Test
+    void createPyramid_ShouldThrowException_WhenTileSizeOutOfRange() {
+        Map<String, BufferedImage> sources = Collections.singletonMap("equirect",
+            new BufferedImage(1000, 500, BufferedImage.TYPE_INT_RGB));
+        
+        assertThrows(ValidationException.class, () -> tilePyramidService.createPyramid(
+            sources, tempDir.toString(), "/files", 1, 85));
+        assertThrows(ValidationException.class, () -> tilePyramidService.createPyramid(
+            sources, tempDir.toString(), "/files", 4096, 85));
+        assertEquals(0, tempDir.toFile().list().length);
+    }
+}
@@ -0,0 +1,131 @@
+package com.happyvr.service;
+
+import com.happyvr.dto.vr.VRProcessingRequest;
+import com.happyvr.entity.VrJob;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VRJobSchedulerTest {
+    
+    private VRJobScheduler scheduler;
+    
+    @BeforeEach
+    void setUp() {
+        scheduler = new VRJobScheduler();
+        ReflectionTestUtils.setField(scheduler, "perUserConcurrency", 0);
+    }
+    
+    @Test
+    void select_ShouldInterleaveUsers_WhenOneUserSubmittedFirst() {
+        // Given: 用户1先提交了10个任务，用户2随后提交1个
+        List<VrJob> pending = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            pending.add(job("a" + i, 1L, VrJob.PRIORITY_INTERACTIVE, 4096, 2048));
+        }
+        VrJob late = job("b0", 2L, VrJob.PRIORITY_INTERACTIVE, 4096, 2048);
+        pending.add(late);
+        
+        // When
+        List<VrJob> selected = scheduler.select(pending, Collections.emptyMap(), 2);
+        
+        // Then: 用户2不必等用户1的全部任务完成
+        assertEquals("a0", selected.get(0).getTaskId());
+        assertSame(late, selected.get(1));
+    }
+    
+    @Test
+    void select_ShouldRespectPerUserConcurrency() {
+        // Given: 用户1已有1个执行中任务，上限为2
+        ReflectionTestUtils.setField(scheduler, "perUserConcurrency", 2);
+        List<VrJob> pending = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            pending.add(job("a" + i, 1L, VrJob.PRIORITY_INTERACTIVE, 1024, 512));
+        }
+        
+        // When
+        List<VrJob> selected = scheduler.select(pending, Collections.singletonMap(1L, 1L), 3);
+        
+        // Then
+        assertEquals(1, selected.size());
+        assertEquals("a0", selected.get(0).getTaskId());
+    }
+    
+    @Test
+    void select_ShouldWeightInteractiveOverBulk_WithoutStarvingBulk() {
+        // Given: 额度足够大，只比较优先级之间的权重
+        ReflectionTestUtils.setField(scheduler, "quantumMegapixels", 1000.0);
+        List<VrJob> pending = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            pending.add(job("bulk" + i, 2L, VrJob.PRIORITY_BULK, 4096, 2048));
+        }
+        for (int i = 0; i < 10; i++) {
+            pending.add(job("int" + i, 1L, VrJob.PRIORITY_INTERACTIVE, 4096, 2048));
+        }
+        
+        // When
+        List<VrJob> selected = scheduler.select(pending, Collections.emptyMap(), 5);
+        
+        // Then: 权重4:1
+        long bulk = selected.stream().filter(j -> VrJob.PRIORITY_BULK.equals(j.getPriority())).count();
+        assertEquals(4, selected.size() - bulk);
+        assertEquals(1, bulk);
+    }
+    
+    @Test
+    void select_ShouldShareMegapixels_NotJobCounts() {
+        // Given: 用户1提交约33.5百万像素的大图，用户2提交约2.1百万像素的小图，额度16
+        List<VrJob> pending = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            pending.add(job("big" + i, 1L, VrJob.PRIORITY_INTERACTIVE, 8192, 4096));
+        }
+        for (int i = 0; i < 40; i++) {
+            pending.add(job("small" + i, 2L, VrJob.PRIORITY_INTERACTIVE, 2048, 1024));
+        }
+        
+        // When
+        List<VrJob> selected = scheduler.select(pending, Collections.emptyMap(), 20);
+        
+        // Then: 用户1积累三轮额度后执行1个大任务，其余机会给小任务，两者像素量接近
+        long big = selected.stream().filter(j -> j.getUserId() == 1L).count();
+        assertEquals(1, big);
+        double bigMegapixels = big * VRJobScheduler.costOf(pending.get(0));
+        double smallMegapixels = (selected.size() - big) * VRJobScheduler.costOf(pending.get(4));
+        assertTrue(smallMegapixels >= bigMegapixels && smallMegapixels < 2 * bigMegapixels);
+    }
+    
+    @Test
+    void order_ShouldNotChangeSchedulingState() {
+        // Given
+        List<VrJob> pending = new ArrayList<>();
+        pending.add(job("a0", 1L, VrJob.PRIORITY_INTERACTIVE, 4096, 2048));
+        pending.add(job("a1", 1L, VrJob.PRIORITY_INTERACTIVE, 4096, 2048));
+        pending.add(job("b0", 2L, VrJob.PRIORITY_INTERACTIVE, 4096, 2048));
+        
+        // When
+        List<VrJob> first = scheduler.order(pending);
+        List<VrJob> second = scheduler.order(pending);
+        
+        // Then: 预计顺序与实际认领顺序一致
+        assertEquals(first, second);
+        assertEquals(first, scheduler.select(pending, Collections.emptyMap(), 3));
+    }
+    
+    private VrJob job(String taskId, Long userId, String priority, int width, int height) {
+        VRProcessingRequest request = new VRProcessingRequest();
+        VRProcessingRequest.VRProcessingOptions options = new VRProcessingRequest.VRProcessingOptions();
+        options.setOutputWidth(width);
+        options.setOutputHeight(height);
+        request.setOptions(options);
+        request.setPriority(priority);
+        VrJob job = new VrJob(taskId, 1L, userId, request);
+        job.setPriority(priority);
+        return job;
+    }
+}
@@ -0,0 +1,283 @@
+package com.happyvr.service;
+
+import com.happyvr.dto.vr.VRProcessingRequest;
+import com.happyvr.entity.ProjectImage;
+import com.happyvr.entity.User;
+import com.happyvr.entity.VrJob;
+import com.happyvr.entity.VrProject;
+import com.happyvr.repository.ProjectImageRepository;
+import com.happyvr.repository.VrJobRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class VRJobServiceTest {
+    
+    @Mock
+    private VrJobRepository jobRepository;
+    
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+    
+    @Mock
+    private ProjectImageRepository projectImageRepository;
+    
+    @Spy
+    private VRJobScheduler scheduler = new VRJobScheduler();
+    
+    @InjectMocks
+    private VRJobService jobService;
+    
+    @Test
+    void submit_ShouldPersistPendingJobAndPublishEvent() {
+        // Given
+        User user = new User();
+        user.setId(7L);
+        VrProject project = new VrProject();
+        project.setId(1L);
+        project.setUser(user);
+        VRProcessingRequest request = new VRProcessingRequest();
+        when(jobRepository.save(any(VrJob.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        
+        // When
+        VrJob job = jobService.submit("task-1", request, project);
+        
+        // Then
+        assertEquals(VrJob.STATUS_PENDING, job.getStatus());
+        assertEquals(1L, job.getProjectId());
+        assertEquals(7L, job.getUserId());
+        assertSame(request, job.getRequest());
+        ArgumentCaptor<VRJobService.JobSubmittedEvent> event = ArgumentCaptor.forClass(VRJobService.JobSubmittedEvent.class);
+        verify(eventPublisher).publishEvent(event.capture());
+        assertEquals("task-1", event.getValue().getTaskId());
+    }
+    
+    @Test
+    void newJob_ShouldRecordInputPixels_WhenAllImagesHaveStoredDimensions() {
+        // Given
+        VrProject project = new VrProject();
+        project.setId(1L);
+        ProjectImage first = new ProjectImage("/files/a.jpg", null);
+        first.setWidth(4000);
+        first.setHeight(3000);
+        ProjectImage second = new ProjectImage("/files/b.jpg", null);
+        second.setWidth(2000);
+        second.setHeight(1000);
+        when(projectImageRepository.findFirstByOriginalUrl("/files/a.jpg")).thenReturn(Optional.of(first));
+        when(projectImageRepository.findFirstByOriginalUrl("/files/b.jpg")).thenReturn(Optional.of(second));
+        when(projectImageRepository.findFirstByOriginalUrl("/files/c.jpg")).thenReturn(Optional.empty());
+        
+        // When
+        VrJob known = jobService.newJob("task-1", new VRProcessingRequest(1L, Arrays.asList("/files/a.jpg", "/files/b.jpg")),
+            project, 7L);
+        VrJob unknown = jobService.newJob("task-2", new VRProcessingRequest(1L, Arrays.asList("/files/a.jpg", "/files/c.jpg")),
+            project, 7L);
+        
+        // Then - 有图片没有记录尺寸时不记录，调度成本只计输出
+        assertEquals(14_000_000L, known.getInputPixels());
+        assertNull(unknown.getInputPixels());
+        assertEquals(VRJobScheduler.costOf(unknown) + 14.0, VRJobScheduler.costOf(known), 1e-9);
+    }
+    
+    @Test
+    void submitBatch_ShouldPersistJobsWithBatchIdAndPublishOneEvent() {
+        // Given
+        List<VrJob> jobs = Arrays.asList(new VrJob("task-1", 1L, 7L, null), new VrJob("task-2", 2L, 7L, null));
+        when(jobRepository.saveAll(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+        
+        // When
+        List<VrJob> saved = jobService.submitBatch("batch-1", jobs);
+        
+        // Then
+        assertEquals(jobs, saved);
+        assertTrue(saved.stream().allMatch(job -> "batch-1".equals(job.getBatchId())));
+        verify(eventPublisher, times(1)).publishEvent(any(VRJobService.JobSubmittedEvent.class));
+    }
+    
+    @Test
+    void claim_ShouldMarkJobsRunningByThisWorker() {
+        // Given
+        VrJob first = new VrJob("task-1", 1L, null, null);
+        VrJob retried = new VrJob("task-2", 1L, null, null);
+        retried.setAttempts(1);
+        LocalDateTime startedAt = LocalDateTime.now().minusMinutes(5);
+        retried.setStartedAt(startedAt);
+        when(jobRepository.findPendingForUpdate(any(Pageable.class))).thenReturn(Arrays.asList(first, retried));
+        
+        // When
+        List<VrJob> jobs = jobService.claim(2);
+        
+        // Then
+        assertEquals(2, jobs.size());
+        for (VrJob job : jobs) {
+            assertEquals(VrJob.STATUS_RUNNING, job.getStatus());
+            assertEquals(jobService.getWorkerId(), job.getWorkerId());
+            assertNotNull(job.getHeartbeatAt());
+        }
+        assertEquals(1, first.getAttempts());
+        assertEquals(2, retried.getAttempts());
+        assertEquals(startedAt, retried.getStartedAt());
+        
+        ArgumentCaptor<Pageable> pageable = ArgumentCaptor.forClass(Pageable.class);
+        verify(jobRepository).findPendingForUpdate(pageable.capture());
+        assertEquals(500, pageable.getValue().getPageSize());
+    }
+    
+    @Test
+    void claim_ShouldSkipUsersAtConcurrencyCap() {
+        // Given: 用户7已有2个执行中任务，达到单用户并发上限
+        VrJob capped = new VrJob("task-1", 1L, 7L, null);
+        VrJob other = new VrJob("task-2", 2L, 8L, null);
+        when(jobRepository.findPendingForUpdate(any(Pageable.class))).thenReturn(Arrays.asList(capped, other));
+        when(jobRepository.countRunningByUser()).thenReturn(Collections.singletonList(new Object[]{7L, 2L}));
+        
+        // When
+        List<VrJob> jobs = jobService.claim(2);
+        
+        // Then
+        assertEquals(Collections.singletonList(other), jobs);
+        assertEquals(VrJob.STATUS_PENDING, capped.getStatus());
+    }
+    
+    @Test
+    void queuePosition_ShouldFollowScheduleOrder() {
+        // Given: 用户7先提交了两个任务，用户8的任务轮到第二个
+        VrJob first = new VrJob("task-1", 1L, 7L, null);
+        VrJob second = new VrJob("task-2", 1L, 7L, null);
+        VrJob other = new VrJob("task-3", 2L, 8L, null);
+        when(jobRepository.findByStatusOrderById(eq(VrJob.STATUS_PENDING), any(Pageable.class)))
+            .thenReturn(Arrays.asList(first, second, other));
+        
+        // When & Then
+        assertEquals(1, jobService.queuePosition("task-1").get().getPosition());
+        assertEquals(2, jobService.queuePosition("task-3").get().getPosition());
+        assertEquals(3, jobService.queuePosition("task-2").get().getPosition());
+        assertFalse(jobService.queuePosition("task-2").get().isExceeded());
+        assertFalse(jobService.queuePosition("task-9").isPresent());
+    }
+    
+    @Test
+    void queuePosition_ShouldReportExceeded_WhenTaskBeyondScanLimit() {
+        // Given: 只对最早的2个待执行任务排序
+        ReflectionTestUtils.setField(jobService, "scanLimit", 2);
+        VrJob first = new VrJob("task-1", 1L, 7L, null);
+        VrJob second = new VrJob("task-2", 2L, 8L, null);
+        ArgumentCaptor<Pageable> page = ArgumentCaptor.forClass(Pageable.class);
+        when(jobRepository.findByStatusOrderById(eq(VrJob.STATUS_PENDING), page.capture()))
+            .thenReturn(Arrays.asList(first, second));
+        
+        // When
+        VRJobService.QueuePosition position = jobService.queuePosition("task-5").get();
+        
+        // Then: 报告位置大于2，不读取全部待执行任务
+        assertEquals(2, position.getPosition());
+        assertTrue(position.isExceeded());
+        assertEquals(2, page.getValue().getPageSize());
+    }
+    
+    @Test
+    void claim_ShouldNotQuery_WhenNoFreeSlots() {
+        assertTrue(jobService.claim(0).isEmpty());
+        verifyNoInteractions(jobRepository);
+    }
+    
+    @Test
+    void requeueStale_ShouldRequeueOrFailByAttempts() {
+        // Given
+        VrJob retry = new VrJob("task-1", 1L, null, null);
+        retry.setStatus(VrJob.STATUS_RUNNING);
+        retry.setAttempts(1);
+        retry.setWorkerId("dead-worker");
+        VrJob exhausted = new VrJob("task-2", 1L, null, null);
+        exhausted.setStatus(VrJob.STATUS_RUNNING);
+        exhausted.setAttempts(3);
+        when(jobRepository.findStaleForUpdate(any(LocalDateTime.class))).thenReturn(Arrays.asList(retry, exhausted));
+        
+        // When
+        int count = jobService.requeueStale();
+        
+        // Then
+        assertEquals(2, count);
+        assertEquals(VrJob.STATUS_PENDING, retry.getStatus());
+        assertNull(retry.getWorkerId());
+        assertEquals(VrJob.STATUS_FAILED, exhausted.getStatus());
+        assertNotNull(exhausted.getFinishedAt());
+    }
+    
+    @Test
+    void finish_ShouldUpdateOnlyCurrentClaim() {
+        // Given - 第1次认领的执行心跳延迟，任务已重新排队并被第2次认领
+        when(jobRepository.finishClaimed(eq("task-1"), eq(1), anyString(), any(), any(), any())).thenReturn(0);
+        when(jobRepository.finishClaimed(eq("task-1"), eq(2), anyString(), any(), any(), any())).thenReturn(1);
+        
+        // When & Then - 原执行的结束状态被忽略，不覆盖新执行的状态
+        assertFalse(jobService.finish("task-1", 1, VrJob.STATUS_COMPLETED, "/files/vr/old.jpg", null));
+        assertTrue(jobService.finish("task-1", 2, VrJob.STATUS_COMPLETED, "/files/vr/result.jpg", null));
+        verify(jobRepository).finishClaimed(eq("task-1"), eq(2), eq(VrJob.STATUS_COMPLETED),
+            eq("/files/vr/result.jpg"), isNull(), any(LocalDateTime.class));
+    }
+    
+    @Test
+    void finish_ShouldTruncateLongErrorMessage() {
+        // Given
+        when(jobRepository.finishClaimed(anyString(), any(), anyString(), any(), anyString(), any())).thenReturn(1);
+        
+        // When
+        jobService.finish("task-1", 1, VrJob.STATUS_FAILED, null, "x".repeat(1500));
+        
+        // Then
+        verify(jobRepository).finishClaimed(eq("task-1"), eq(1), eq(VrJob.STATUS_FAILED), isNull(),
+            argThat(message -> message.length() == 1000), any(LocalDateTime.class));
+    }
+    
+    @Test
+    void cancel_ShouldMarkUnfinishedJobCancelled() {
+        // Given
+        VrJob pending = new VrJob("task-1", 1L, null, null);
+        VrJob completed = new VrJob("task-2", 1L, null, null);
+        completed.setStatus(VrJob.STATUS_COMPLETED);
+        when(jobRepository.findByTaskId("task-1")).thenReturn(Optional.of(pending));
+        when(jobRepository.findByTaskId("task-2")).thenReturn(Optional.of(completed));
+        
+        // When & Then
+        assertTrue(jobService.cancel("task-1"));
+        assertEquals(VrJob.STATUS_CANCELLED, pending.getStatus());
+        assertNotNull(pending.getFinishedAt());
+        assertFalse(jobService.cancel("task-2"));
+        assertEquals(VrJob.STATUS_COMPLETED, completed.getStatus());
+    }
+    
+    @Test
+    void heartbeat_ShouldSkipUpdate_WhenNothingRunning() {
+        jobService.heartbeat(Collections.emptyMap());
+        verifyNoInteractions(jobRepository);
+    }
+    
+    @Test
+    void heartbeat_ShouldTouchEachTaskWithItsClaimAttempt() {
+        // When
+        jobService.heartbeat(Map.of("task-1", 1, "task-2", 3));
+        
+        // Then
+        verify(jobRepository).touchHeartbeat(eq("task-1"), eq(1), any(LocalDateTime.class));
+        verify(jobRepository).touchHeartbeat(eq("task-2"), eq(3), any(LocalDateTime.class));
+    }
+}
@@ -0,0 +1,114 @@
+package com.happyvr.service;
+
+import com.happyvr.util.CancellationToken;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VRMemoryAccountantTest {
+    
+    private VRMemoryAccountant accountant;
+    
+    @BeforeEach
+    void setUp() {
+        accountant = new VRMemoryAccountant();
+        ReflectionTestUtils.setField(accountant, "budgetBytes", 1000L);
+    }
+    
+    @Test
+    void reserve_ShouldAdmitImmediately_WhenWithinBudget() throws Exception {
+        VRMemoryAccountant.Reservation first = accountant.reserve("a", 400, () -> fail("不应排队"));
+        VRMemoryAccountant.Reservation second = accountant.reserve("b", 600, () -> fail("不应排队"));
+        
+        assertEquals(1000, accountant.getReservedBytes());
+        
+        first.close();
+        second.close();
+        // 重复关闭不会重复归还
+        second.close();
+        assertEquals(0, accountant.getReservedBytes());
+    }
+    
+    @Test
+    void reserve_ShouldQueue_UntilBudgetReleased() throws Exception {
+        VRMemoryAccountant.Reservation running = accountant.reserve("a", 800, null);
+        CountDownLatch queued = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<VRMemoryAccountant.Reservation> waiting =
+                executor.submit(() -> accountant.reserve("b", 500, queued::countDown));
+            
+            assertTrue(queued.await(5, TimeUnit.SECONDS));
+            assertThrows(TimeoutException.class, () -> waiting.get(100, TimeUnit.MILLISECONDS));
+            assertEquals(1, accountant.getQueuedCount());
+            
+            running.close();
+            VRMemoryAccountant.Reservation admitted = waiting.get(5, TimeUnit.SECONDS);
+            assertEquals(500, accountant.getReservedBytes());
+            assertEquals(0, accountant.getQueuedCount());
+            admitted.close();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+    
+    @Test
+    void reserve_ShouldLeaveQueue_WhenCancelledWhileWaiting() throws Exception {
+        VRMemoryAccountant.Reservation running = accountant.reserve("a", 800, null);
+        CancellationToken token = new CancellationToken();
+        CountDownLatch queued = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<VRMemoryAccountant.Reservation> waiting =
+                executor.submit(() -> accountant.reserve("b", 500, queued::countDown, token));
+            assertTrue(queued.await(5, TimeUnit.SECONDS));
+            
+            token.cancel();
+            
+            ExecutionException e = assertThrows(ExecutionException.class, () -> waiting.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(CancellationException.class, e.getCause());
+            assertEquals(0, accountant.getQueuedCount());
+            assertEquals(800, accountant.getReservedBytes());
+            running.close();
+            assertEquals(0, accountant.getReservedBytes());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+    
+    @Test
+    void reserve_ShouldLeaveQueue_WhenQueuedCallbackThrows() throws Exception {
+        VRMemoryAccountant.Reservation running = accountant.reserve("a", 800, null);
+        
+        // 排队回调失败（例如任务已被取消）时不能留在队首阻塞后续任务
+        assertThrows(CancellationException.class, () -> accountant.reserve("b", 500, () -> {
+            throw new CancellationException("任务已取消");
+        }));
+        assertEquals(0, accountant.getQueuedCount());
+        
+        running.close();
+        try (VRMemoryAccountant.Reservation next = accountant.reserve("c", 500, () -> fail("不应排队"))) {
+            assertEquals(500, accountant.getReservedBytes());
+        }
+    }
+    
+    @Test
+    void reserve_ShouldClampToBudget_WhenJobExceedsBudget() throws Exception {
+        try (VRMemoryAccountant.Reservation reservation = accountant.reserve("a", 5000, () -> fail("不应排队"))) {
+            assertEquals(1000, reservation.getBytes());
+            assertEquals(1000, accountant.getReservedBytes());
+        }
+        assertEquals(0, accountant.getReservedBytes());
+    }
+}
@@ -1,23 +1,52 @@
 package com.happyvr.service;
 
+import com.happyvr.dto.vr.VRBatchProcessingRequest;
+import com.happyvr.dto.vr.VRBatchProcessingResponse;
 import com.happyvr.dto.vr.VRProcessingRequest;
 import com.happyvr.dto.vr.VRProcessingResponse;
+import com.happyvr.entity.ProjectImage;
+import com.happyvr.entity.User;
+import com.happyvr.entity.VrJob;
 import com.happyvr.entity.VrProject;
 import com.happyvr.exception.ResourceNotFoundException;
+import com.happyvr.exception.ValidationException;
+import com.happyvr.repository.ProjectImageRepository;
 import com.happyvr.repository.VrProjectRepository;
+import com.happyvr.util.CancellationToken;
+import com.happyvr.util.ImageDecodePlanner;
+import com.happyvr.util.PixelBuffer;
 import com.happyvr.util.TestImageGenerator;
+import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.test.util.ReflectionTestUtils;
 
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -31,9 +60,31 @@ class VRProcessingServiceTest {
     @Mock
     private VrProjectRepository vrProjectRepository;
     
+    @Mock
+    private ProjectImageRepository projectImageRepository;
+    
+    @Mock
+    private TilePyramidService tilePyramidService;
+    
+    @Spy
+    private VRMemoryAccountant memoryAccountant = new VRMemoryAccountant();
+    
+    @Mock
+    private VRResultCache resultCache;
+    
+    @Spy
+    private DecodedImageCache decodedImageCache = new DecodedImageCache();
+    
+    @Mock
+    private VRJobService jobService;
+    
     @InjectMocks
     private VRProcessingService vrProcessingService;
     
+    private static ExecutorService decodeExecutor;
+    
+    private static ForkJoinPool computePool;
+    
     private VrProject testProject;
     private VRProcessingRequest testRequest;
     
@@ -45,6 +96,14 @@ class VRProcessingServiceTest {
         } catch (Exception e) {
             // 忽略图片创建失败，测试会处理这种情况
         }
+        decodeExecutor = Executors.newFixedThreadPool(2);
+        computePool = new ForkJoinPool(2);
+    }
+    
+    @AfterAll
+    static void tearDownClass() {
+        decodeExecutor.shutdownNow();
+        computePool.shutdownNow();
     }
     
     @BeforeEach
@@ -65,6 +124,31 @@ class VRProcessingServiceTest {
         // 设置测试用的配置值
         ReflectionTestUtils.setField(vrProcessingService, "uploadBasePath", "uploads");
         ReflectionTestUtils.setField(vrProcessingService, "baseUrl", "/files");
+        ReflectionTestUtils.setField(vrProcessingService, "imageDecodeExecutor", decodeExecutor);
+        ReflectionTestUtils.setField(vrProcessingService, "decodeMemoryBudget", 256L * 1024 * 1024);
+        ReflectionTestUtils.setField(vrProcessingService, "vrComputePool", computePool);
+        vrProcessingService.initStages();
+        
+        // 默认没有可复用的结果，登记后项目指向原样返回的场景数据
+        try {
+            lenient().when(resultCache.computeKey(anyList(), anyString(), any())).thenReturn("hash");
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+        lenient().when(resultCache.reuse(anyString(), any())).thenReturn(Optional.empty());
+        lenient().when(resultCache.store(anyString(), anyMap(), anyList(), any())).thenAnswer(invocation -> {
+            Map<String, Object> sceneData = invocation.getArgument(1);
+            testProject.setSceneData(sceneData);
+            return sceneData;
+        });
+        
+        // 提交的任务在当前线程立即执行，代替调度器认领
+        lenient().when(jobService.submit(anyString(), any(), any())).thenAnswer(invocation -> {
+            VrProject project = invocation.getArgument(2);
+            VrJob job = new VrJob(invocation.getArgument(0), project.getId(), null, invocation.getArgument(1));
+            vrProcessingService.runJob(job);
+            return job;
+        });
     }
     
     @Test
@@ -82,7 +166,7 @@ class VRProcessingServiceTest {
         // 初始状态应该是PENDING，但由于异步执行可能很快完成，所以我们检查状态不为空
         assertNotNull(response.getStatus());
         
-        verify(vrProjectRepository).findById(1L);
+        verify(vrProjectRepository, atLeastOnce()).findById(1L);
         
         // 等待一小段时间让异步任务完成
         try {
@@ -101,6 +185,686 @@ class VRProcessingServiceTest {
         }
     }
     
+    @Test
+    @SuppressWarnings("unchecked")
+    void startVRProcessing_ShouldSaveCubeFaces_WhenCubeMapRequested() throws Exception {
+        // Given
+        testRequest.setProcessingType("CUBE_MAP");
+        when(vrProjectRepository.findById(1L)).thenReturn(Optional.of(testProject));
+        Map<String, BufferedImage> faces = new LinkedHashMap<>();
+        for (String face : Arrays.asList("px", "nx", "py", "ny", "pz", "nz")) {
+            faces.put(face, new BufferedImage(8, 8, BufferedImage.TYPE_INT_RGB));
+        }
+        when(imageProcessingService.createCubeFaces(any(), eq(1024))).thenReturn(faces);
+        
+        // When
+        VRProcessingResponse response = vrProcessingService.startVRProcessing(testRequest);
+        
+        // Then
+        VRProcessingResponse finalResponse = vrProcessingService.getProcessingProgress(response.getTaskId());
+        assertEquals("COMPLETED", finalResponse.getStatus());
+        verify(imageProcessingService, times(7)).saveJpeg(any(), anyString(), eq(90), eq(false));
+        verify(imageProcessingService).saveJpeg(any(),
+            endsWith("vr_1_" + response.getTaskId() + "_pz.jpg"), eq(90), eq(false));
+        
+        Map<String, Object> sceneData = testProject.getSceneData();
+        assertEquals("cubemap", sceneData.get("type"));
+        Map<String, String> faceUrls = (Map<String, String>) sceneData.get("faces");
+        assertEquals(6, faceUrls.size());
+        assertEquals("/files/vr/project_1/vr_1_" + response.getTaskId() + "_px.jpg", faceUrls.get("px"));
+    }
+    
+    @Test
+    @SuppressWarnings("unchecked")
+    void startVRProcessing_ShouldRenderCubeFacesFromStitchedPanorama() throws Exception {
+        // Given - 拼接结果与球面映射结果颜色不同，立方体面只能从拼接结果采样
+        testRequest.setProcessingType("CUBE_MAP");
+        when(vrProjectRepository.findById(1L)).thenReturn(Optional.of(testProject));
+        BufferedImage stitched = new BufferedImage(64, 32, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < 32; y++) {
+            for (int x = 0; x < 64; x++) {
+                stitched.setRGB(x, y, (x << 16) | (y << 8) | 0x40);
+            }
+        }
+        BufferedImage mapped = new BufferedImage(64, 32, BufferedImage.TYPE_INT_RGB);
+        when(imageProcessingService.createPanorama(anyList(), eq(4096), eq(2048))).thenReturn(stitched);
+        when(imageProcessingService.createSphericalMapping(stitched)).thenReturn(mapped);
+        when(imageProcessingService.optimizeImage(mapped, 90)).thenReturn(mapped);
+        ImageProcessingService renderer = new ImageProcessingService();
+        ReflectionTestUtils.setField(renderer, "remapTableCache", new RemapTableCache());
+        Map<String, BufferedImage>[] rendered = new Map[1];
+        when(imageProcessingService.createCubeFaces(any(), eq(1024))).thenAnswer(invocation -> {
+            rendered[0] = renderer.createCubeFaces(invocation.getArgument(0), 8);
+            return rendered[0];
+        });
+        
+        // When
+        VRProcessingResponse response = vrProcessingService.startVRProcessing(testRequest);
+        
+        // Then - pz面像素(4, 4)的视线方向为(0.125, -0.125, 1)，经纬度对应拼接结果的像素(33, 17)
+        assertEquals("COMPLETED", vrProcessingService.getProcessingProgress(response.getTaskId()).getStatus());
+        verify(imageProcessingService).createCubeFaces(same(stitched), eq(1024));
+        assertEquals(stitched.getRGB(33, 17), rendered[0].get("pz").getRGB(4, 4));
+        verify(imageProcessingService).releaseImage(stitched);
+    }
+    
+    @Test
+    void startVRProcessing_ShouldStoreTileManifest_WhenTilesEnabled() {
+        // Given
+        VRProcessingRequest.VRProcessingOptions options = new VRProcessingRequest.VRProcessingOptions();
+        options.setEnableTiles(true);
+        options.setTileSize(256);
+        testRequest.setOptions(options);
+        when(vrProjectRepository.findById(1L)).thenReturn(Optional.of(testProject));
+        Map<String, Object> manifest = Map.of("tileSize", 256);
+        when(tilePyramidService.createPyramid(anyMap(), anyString(), anyString(), eq(256), eq(90))).thenReturn(manifest);
+        
+        // When
+        VRProcessingResponse response = vrProcessingService.startVRProcessing(testRequest);
+        
+        // Then
+        assertEquals("COMPLETED", vrProcessingService.getProcessingProgress(response.getTaskId()).getStatus());
+        verify(tilePyramidService).createPyramid(argThat(sources -> sources.containsKey("equirect")),
+            endsWith("tiles_" + response.getTaskId()),
+            eq("/files/vr/project_1/tiles_" + response.getTaskId()), eq(256), eq(90));
+        assertEquals(manifest, testProject.getSceneData().get("tiles"));
+    }
+    
+    @Test
+    @SuppressWarnings("unchecked")
+    void startVRProcessing_ShouldLoadImagesInOrder_WhenDecodedInParallel() {
+        // Given - 预算只够同时解码一张图片
+        ReflectionTestUtils.setField(vrProcessingService, "decodeMemoryBudget", 1024L);
+        when(vrProjectRepository.findById(1L)).thenReturn(Optional.of(testProject));
+        
+        // When
+        VRProcessingResponse response = vrProcessingService.startVRProcessing(testRequest);
+        
+        // Then - image1为蓝色，image2为红色
+        assertEquals("COMPLETED", vrProcessingService.getProcessingProgress(response.getTaskId()).getStatus());
+        ArgumentCaptor<List<BufferedImage>> captor = ArgumentCaptor.forClass(List.class);
+        verify(imageProcessingService).createPanorama(captor.capture(), eq(4096), eq(2048));
+        List<BufferedImage> images = captor.getValue();
+        assertEquals(2, images.size());
+        assertTrue((images.get(0).getRGB(10, 10) & 0xFF) > 200);
+        assertTrue(((images.get(1).getRGB(10, 10) >> 16) & 0xFF) > 200);
+    }
+    
+    @Test
+    void startVRProcessing_ShouldRunPixelStagesOnComputePool() {
+        // Given
+        when(vrProjectRepository.findById(1L)).thenReturn(Optional.of(testProject));
+        List<Thread> renderThreads = new CopyOnWriteArrayList<>();
+        when(imageProcessingService.createPanorama(anyList(), anyInt(), anyInt())).thenAnswer(invocation -> {
+            renderThreads.add(Thread.currentThread());
+            return null;
+        });
+        
+        // When
+        VRProcessingResponse response = vrProcessingService.startVRProcessing(testRequest);
+        
+        // Then - 拼接在计算线程池上执行，结果在任务线程上写回
+        assertEquals("COMPLETED", vrProcessingService.getProcessingProgress(response.getTaskId()).getStatus());
+        assertEquals(1, renderThreads.size());
+        assertTrue(renderThreads.get(0) instanceof ForkJoinWorkerThread);
+        assertSame(computePool, ((ForkJoinWorkerThread) renderThreads.get(0)).getPool());
+        verify(resultCache).store(eq("hash"), anyMap(), anyList(), eq(1L));
+    }
+    
+    @Test
+    void startVRProcessing_ShouldPublishPreview_BeforeFullResolutionRender() throws Exception {
+        // Given
+        when(vrProjectRepository.findById(1L)).thenReturn(Optional.of(testProject));
+        
+        // When
+        VRProcessingResponse response = vrProcessingService.startVRProcessing(testRequest);
+        
+        // Then - 预览图按输出宽高比缩小到1024宽，先于完整分辨率拼接生成
+        String taskId = response.getTaskId();
+        VRProcessingResponse finalResponse = vrProcessingService.getProcessingProgress(taskId);
+        assertEquals("COMPLETED", finalResponse.getStatus());
+        assertEquals("/files/vr/project_1/vr_1_" + taskId + "_preview.jpg", finalResponse.getPreviewUrl());
+        assertEquals(finalResponse.getPreviewUrl(), testProject.getSceneData().get("previewUrl"));
+        
+        InOrder inOrder = inOrder(imageProcessingService);
+        inOrder.verify(imageProcessingService).saveSphericalJpegStreaming(anyList(), eq(1024), eq(512),
+            endsWith("vr_1_" + taskId + "_preview.jpg"), eq(80), eq(false), anyInt(), anyInt());
+        inOrder.verify(imageProcessingService).createPanorama(anyList(), eq(4096), eq(2048));
+    }
+    
+    @Test
+    void startVRProcessing_ShouldCompleteWithoutPreview_WhenPreviewFails() throws Exception {
+        // Given
+        when(vrProjectRepository.findById(1L)).thenReturn(Optional.of(testProject));
+        doThrow(new IOException("磁盘已满")).when(imageProcessingService).saveSphericalJpegStreaming(
+            anyList(), eq(1024), eq(512), anyString(), anyInt(), anyBoolean(), anyInt(), anyInt());
+        
+        // When
+        VRProcessingResponse response = vrProcessingService.startVRProcessing(testRequest);
+        
+        // Then
+        VRProcessingResponse finalResponse = vrProcessingService.getProcessingProgress(response.getTaskId());
+        assertEquals("COMPLETED", finalResponse.getStatus());
+        assertNull(finalResponse.getPreviewUrl());
+        assertFalse(testProject.getSceneData().containsKey("previewUrl"));
+    }
+    
+    @Test
+    void startVRProcessing_ShouldReleaseIntermediateImages_WhenStagesFinish() throws Exception {
+        // Given
+        VRProcessingRequest.VRProcessingOptions options = new VRProcessingRequest.VRProcessingOptions();
+        options.setEnableOptimization(true);
+        options.setQuality(85);
+        testRequest.setOptions(options);
+        when(vrProjectRepository.findById(1L)).thenReturn(Optional.of(testProject));
+        BufferedImage panorama = new BufferedImage(8, 4, BufferedImage.TYPE_INT_RGB);
+        BufferedImage mapped = new BufferedImage(8, 4, BufferedImage.TYPE_INT_RGB);
+        BufferedImage optimized = new BufferedImage(8, 4, BufferedImage.TYPE_INT_RGB);
+        when(imageProcessingService.createPanorama(anyList(), eq(4096), eq(2048))).thenReturn(panorama);
+        when(imageProcessingService.createSphericalMapping(panorama)).thenReturn(mapped);
+        when(imageProcessingService.optimizeImage(mapped, 85)).thenReturn(optimized);
+        
+        // When
+        VRProcessingResponse response = vrProcessingService.startVRProcessing(testRequest);
+        
+        // Then - 每个阶段的输入在下一阶段完成后归还，最终结果在编码后归还
+        assertEquals("COMPLETED", vrProcessingService.getProcessingProgress(response.getTaskId()).getStatus());
+        InOrder inOrder = inOrder(imageProcessingService);
+        inOrder.verify(imageProcessingService).createSphericalMapping(panorama);
+        inOrder.verify(imageProcessingService).releaseImage(panorama);
+        inOrder.verify(imageProcessingService).optimizeImage(mapped, 85);
+        inOrder.verify(imageProcessingService).releaseImage(mapped);
+        inOrder.verify(imageProcessingService).saveJpeg(eq(optimized), anyString(), eq(85), eq(false));
+        inOrder.verify(imageProcessingService).releaseImage(optimized);
+    }
+    
+    @Test
+    void cancelProcessingTask_ShouldStopRunningJobAndReleaseResources() throws Exception {
+        // Given - 拼接阶段执行时取消任务
+        when(vrProjectRepository.findById(1L)).thenReturn(Optional.of(testProject));
+        when(imageProcessingService.createPanorama(anyList(), eq(4096), eq(2048))).thenAnswer(invocation -> {
+            String taskId = vrProcessingService.getAllProcessingTasks().get(0).getTaskId();
+            assertTrue(vrProcessingService.cancelProcessingTask(taskId));
+            // 像素内核在下一个行分块前检查工作线程绑定的令牌
+            CancellationToken.checkCurrent();
+            return new BufferedImage(8, 4, BufferedImage.TYPE_INT_RGB);
+        });
+        
+        // When
+        VRProcessingResponse response = vrProcessingService.startVRProcessing(testRequest);
+        
+        // Then - 保持取消状态，不保存结果，内存预算和已写出的文件被释放
+        String taskId = response.getTaskId();
+        assertEquals("CANCELLED", vrProcessingService.getProcessingProgress(taskId).getStatus());
+        verify(imageProcessingService, never()).createSphericalMapping(any(BufferedImage.class));
+        verify(resultCache, never()).store(anyString(), anyMap(), anyList(), any());
+        verify(vrProjectRepository, never()).save(any());
+        verify(jobService).cancel(taskId);
+        verify(jobService).finish(eq(taskId), any(), eq("CANCELLED"), isNull(), isNull());
+        verify(resultCache).deleteOutputs(argThat(paths -> paths.stream().anyMatch(path -> path.contains(taskId))));
+        assertEquals(0, memoryAccountant.getReservedBytes());
+    }
+    
+    @Test
+    void cancelProcessingTask_ShouldNotReuseResult_WhenCancelledBeforeReuse() throws Exception {
+        // Given - 计算结果标识期间任务被取消
+        when(vrProjectRepository.findById(1L)).thenReturn(Optional.of(testProject));
+        when(resultCache.computeKey(anyList(), anyString(), any())).thenAnswer(invocation -> {
+            String taskId = vrProcessingService.getAllProcessingTasks().get(0).getTaskId();
+            assertTrue(vrProcessingService.cancelProcessingTask(taskId));
+            return "hash";
+        });
+        
+        // When
+        VRProcessingResponse response = vrProcessingService.startVRProcessing(testRequest);
+        
+        // Then - 不改动项目引用的结果
+        assertEquals("CANCELLED", vrProcessingService.getProcessingProgress(response.getTaskId()).getStatus());
+        verify(resultCache, never()).reuse(anyString(), any());
+        verify(resultCache, never()).store(anyString(), anyMap(), anyList(), any());
+    }
+    
+    @Test
+    void cancelProcessingTask_ShouldBeRejected_WhileResultCommitting() throws Exception {
+        // Given - 登记结果期间收到取消请求，登记在状态锁外执行
+        when(vrProjectRepository.findById(1L)).thenReturn(Optional.of(testProject));
+        when(resultCache.store(anyString(), anyMap(), anyList(), any())).thenAnswer(invocation -> {
+            String taskId = vrProcessingService.getAllProcessingTasks().get(0).getTaskId();
+            // 在另一线程取消，登记期间持有状态锁时会超时
+            CompletableFuture<Boolean> cancel = CompletableFuture.supplyAsync(
+                () -> vrProcessingService.cancelProcessingTask(taskId));
+            assertFalse(cancel.get(5, TimeUnit.SECONDS));
+            return invocation.getArgument(1);
+        });
+        
+        // When
+        VRProcessingResponse response = vrProcessingService.startVRProcessing(testRequest);
+        
+        // Then - 结果已写入项目，任务保持完成状态
+        assertEquals("COMPLETED", vrProcessingService.getProcessingProgress(response.getTaskId()).getStatus());
+        assertFalse(vrProcessingService.cancelProcessingTask(response.getTaskId()));
+    }
+    
+    @Test
+    void cancelProcessingTask_ShouldSkipExecution_WhenCancelledBeforeClaim() throws Exception {
+        // Given - 任务只持久化，尚未被认领
+        when(vrProjectRepository.findById(1L)).thenReturn(Optional.of(testProject));
+        doReturn(new VrJob()).when(jobService).submit(anyString(), any(), any());
+        VRProcessingResponse response = vrProcessingService.startVRProcessing(testRequest);
+        
+        // When
+        assertTrue(vrProcessingService.cancelProcessingTask(response.getTaskId()));
+        vrProcessingService.runJob(new VrJob(response.getTaskId(), 1L, null, testRequest));
+        
+        // Then
+        assertEquals("CANCELLED", vrProcessingService.getProcessingProgress(response.getTaskId()).getStatus());
+        verifyNoInteractions(imageProcessingService);
+        verify(memoryAccountant, never()).reserve(anyString(), anyLong(), any(), any());
+    }
+    
+    @Test
+    void startVRProcessing_ShouldUseOffHeapBuffers_WhenOutputAboveThreshold(@TempDir Path tempDir) throws Exception {
+        // Given
+        ReflectionTestUtils.setField(vrProcessingService, "offHeapMinPixels", 1L);
+        when(vrProjectRepository.findById(1L)).thenReturn(Optional.of(testProject));
+        PixelBuffer panorama = PixelBuffer.allocate(8, 4, tempDir, Long.MAX_VALUE);
+        PixelBuffer spherical = PixelBuffer.allocate(8, 4, tempDir, 0L);
+        when(imageProcessingService.createPanoramaOffHeap(anyList(), eq(4096), eq(2048))).thenReturn(panorama);
+        when(imageProcessingService.createSphericalMapping(panorama)).thenReturn(spherical);
+        
+        // When
+        VRProcessingResponse response = vrProcessingService.startVRProcessing(testRequest);
+        
+        // Then - 堆上的拼接、映射和优化都不执行，临时文件在任务结束后删除
+        assertEquals("COMPLETED", vrProcessingService.getProcessingProgress(response.getTaskId()).getStatus());
+        verify(imageProcessingService, never()).createPanorama(any(), anyInt(), anyInt());
+        verify(imageProcessingService, never()).optimizeImage(any(), anyInt());
+        verify(imageProcessingService).saveJpeg(argThat(image -> image.getWidth() == 8), anyString(), eq(90), eq(false));
+        try (var files = Files.list(tempDir)) {
+            assertEquals(0, files.count());
+        }
+    }
+    
+    @Test
+    void startVRProcessing_ShouldPassThroughInput_WhenSingleEquirectangularMatchesOutput(@TempDir Path tempDir)
+            throws Exception {
+        // Given - 402x200的输入在2%容差内与400x200的输出一致
+        ReflectionTestUtils.setField(vrProcessingService, "uploadBasePath", tempDir.toString());
+        Path input = tempDir.resolve("user_1").resolve("pano.jpg");
+        Files.createDirectories(input.getParent());
+        ImageIO.write(new BufferedImage(402, 200, BufferedImage.TYPE_INT_RGB), "jpg", input.toFile());
+        testRequest.setImageUrls(List.of("/files/user_1/pano.jpg"));
+        testRequest.setOptions(equirectOptions(400, 200));
+        when(vrProjectRepository.findById(1L)).thenReturn(Optional.of(testProject));
+        
+        // When
+        VRProcessingResponse response = vrProcessingService.startVRProcessing(testRequest);
+        
+        // Then - 不解码、不申请内存预算，输出与输入字节相同
+        VRProcessingResponse finalResponse = vrProcessingService.getProcessingProgress(response.getTaskId());
+        assertEquals("COMPLETED", finalResponse.getStatus());
+        assertEquals("/files/vr/project_1/vr_1_" + response.getTaskId() + ".jpg", finalResponse.getResultUrl());
+        Path output = tempDir.resolve("vr").resolve("project_1").resolve("vr_1_" + response.getTaskId() + ".jpg");
+        assertArrayEquals(Files.readAllBytes(input), Files.readAllBytes(output));
+        verifyNoInteractions(imageProcessingService);
+        verify(decodedImageCache, never()).getOrDecode(any(), anyInt(), any());
+        verify(memoryAccountant, never()).reserve(anyString(), anyLong(), any(), any());
+        verify(resultCache).store(eq("hash"), anyMap(), eq(List.of(output.toString())), any());
+    }
+    
+    @Test
+    void startVRProcessing_ShouldUseStoredMetadata_WhenDecidingPassThrough(@TempDir Path tempDir)
+            throws Exception {
+        // Given - 上传时记录的EXIF方向为6，需要旋转，不能直接使用输入
+        ReflectionTestUtils.setField(vrProcessingService, "uploadBasePath", tempDir.toString());
+        Path input = tempDir.resolve("user_1").resolve("pano.jpg");
+        Files.createDirectories(input.getParent());
+        ImageIO.write(new BufferedImage(400, 200, BufferedImage.TYPE_INT_RGB), "jpg", input.toFile());
+        ProjectImage stored = new ProjectImage("/files/user_1/pano.jpg", null);
+        stored.setFormat("jpeg");
+        stored.setWidth(400);
+        stored.setHeight(200);
+        stored.setColorModel("YCbCr");
+        stored.setOrientation(6);
+        when(projectImageRepository.findFirstByOriginalUrl("/files/user_1/pano.jpg")).thenReturn(Optional.of(stored));
+        testRequest.setImageUrls(List.of("/files/user_1/pano.jpg"));
+        testRequest.setOptions(equirectOptions(400, 200));
+        when(vrProjectRepository.findById(1L)).thenReturn(Optional.of(testProject));
+        
+        // When
+        VRProcessingResponse response = vrProcessingService.startVRProcessing(testRequest);
+        
+        // Then
+        assertEquals("COMPLETED", vrProcessingService.getProcessingProgress(response.getTaskId()).getStatus());
+        verify(imageProcessingService).createPanorama(anyList(), eq(400), eq(200));
+    }
+    
+    @Test
+    @SuppressWarnings("unchecked")
+    void startVRProcessing_ShouldEstimateMemoryFromStoredDimensions(@TempDir Path tempDir) throws Exception {
+        // Given - 上传时记录的尺寸为800x400，估算按记录的尺寸进行，不读取文件头
+        ReflectionTestUtils.setField(vrProcessingService, "uploadBasePath", tempDir.toString());
+        Path input = tempDir.resolve("user_1").resolve("photo.jpg");
+        Files.createDirectories(input.getParent());
+        ImageIO.write(new BufferedImage(400, 300, BufferedImage.TYPE_INT_RGB), "jpg", input.toFile());
+        ProjectImage stored = new ProjectImage("/files/user_1/photo.jpg", null);
+        stored.setFormat("jpeg");
+        stored.setWidth(800);
+        stored.setHeight(400);
+        when(projectImageRepository.findFirstByOriginalUrl("/files/user_1/photo.jpg")).thenReturn(Optional.of(stored));
+        testRequest.setImageUrls(List.of("/files/user_1/photo.jpg"));
+        testRequest.setOptions(equirectOptions(400, 200));
+        when(vrProjectRepository.findById(1L)).thenReturn(Optional.of(testProject));
+        
+        // When
+        VRProcessingResponse response = vrProcessingService.startVRProcessing(testRequest);
+        
+        // Then
+        assertEquals("COMPLETED", vrProcessingService.getProcessingProgress(response.getTaskId()).getStatus());
+        ArgumentCaptor<List<ImageDecodePlanner.DecodePlan>> plans = ArgumentCaptor.forClass(List.class);
+        verify(memoryAccountant).estimateJobBytes(plans.capture(), any(), anyString());
+        ImageDecodePlanner.DecodePlan plan = plans.getValue().get(0);
+        assertEquals(800, plan.getWidth());
+        assertEquals(400, plan.getHeight());
+        assertEquals(2, plan.getSubsampling());
+    }
+    
+    @Test
+    void startVRProcessing_ShouldProcessNormally_WhenSingleInputNotEquirectangular(@TempDir Path tempDir)
+            throws Exception {
+        // Given - 宽高比4:3
+        ReflectionTestUtils.setField(vrProcessingService, "uploadBasePath", tempDir.toString());
+        Path input = tempDir.resolve("user_1").resolve("photo.jpg");
+        Files.createDirectories(input.getParent());
+        ImageIO.write(new BufferedImage(400, 300, BufferedImage.TYPE_INT_RGB), "jpg", input.toFile());
+        testRequest.setImageUrls(List.of("/files/user_1/photo.jpg"));
+        testRequest.setOptions(equirectOptions(400, 200));
+        when(vrProjectRepository.findById(1L)).thenReturn(Optional.of(testProject));
+        
+        // When
+        VRProcessingResponse response = vrProcessingService.startVRProcessing(testRequest);
+        
+        // Then
+        assertEquals("COMPLETED", vrProcessingService.getProcessingProgress(response.getTaskId()).getStatus());
+        verify(imageProcessingService).createPanorama(anyList(), eq(400), eq(200));
+        verify(imageProcessingService).saveJpeg(any(), anyString(), eq(90), eq(false));
+    }
+    
+    @Test
+    void startVRProcessing_ShouldStreamStrips_WhenPanoramaAboveStreamingThreshold() throws Exception {
+        // Given
+        ReflectionTestUtils.setField(vrProcessingService, "streamingMinPixels", 1L);
+        when(vrProjectRepository.findById(1L)).thenReturn(Optional.of(testProject));
+        
+        // When
+        VRProcessingResponse response = vrProcessingService.startVRProcessing(testRequest);
+        
+        // Then - 不生成整帧的全景图和映射结果，内存预算只计入输入图片和条带缓冲区
+        assertEquals("COMPLETED", vrProcessingService.getProcessingProgress(response.getTaskId()).getStatus());
+        verify(imageProcessingService).saveSphericalJpegStreaming(anyList(), eq(4096), eq(2048),
+            endsWith("vr_1_" + response.getTaskId() + ".jpg"), eq(90), eq(false), eq(128), eq(4));
+        verify(imageProcessingService, never()).createPanorama(any(), anyInt(), anyInt());
+        verify(imageProcessingService, never()).saveJpeg(any(), anyString(), anyInt(), anyBoolean());
+        verify(memoryAccountant).reserve(anyString(),
+            longThat(bytes -> bytes < 4096L * 2048 * 4), any(), any());
+    }
+    
+    @Test
+    void startVRProcessing_ShouldReuseResult_WhenSameContentProcessedBefore() {
+        // Given
+        when(vrProjectRepository.findById(1L)).thenReturn(Optional.of(testProject));
+        Map<String, Object> cached = new LinkedHashMap<>();
+        cached.put("type", "panorama");
+        cached.put("url", "/files/vr/project_2/vr_2_old.jpg");
+        cached.put(VRResultCache.SCENE_CONTENT_HASH, "hash");
+        when(resultCache.reuse("hash", 1L)).thenReturn(Optional.of(cached));
+        
+        // When
+        VRProcessingResponse response = vrProcessingService.startVRProcessing(testRequest);
+        
+        // Then
+        VRProcessingResponse finalResponse = vrProcessingService.getProcessingProgress(response.getTaskId());
+        assertEquals("COMPLETED", finalResponse.getStatus());
+        assertEquals("/files/vr/project_2/vr_2_old.jpg", finalResponse.getResultUrl());
+        verify(imageProcessingService, never()).createPanorama(any(), anyInt(), anyInt());
+        verify(resultCache, never()).store(anyString(), anyMap(), anyList(), any());
+        assertEquals(0, memoryAccountant.getReservedBytes());
+    }
+    
+    @Test
+    void startVRProcessing_ShouldReleaseMemoryBudget_WhenProcessingFinishes() throws Exception {
+        // Given
+        when(vrProjectRepository.findById(1L)).thenReturn(Optional.of(testProject));
+        
+        // When
+        VRProcessingResponse response = vrProcessingService.startVRProcessing(testRequest);
+        
+        // Then
+        verify(memoryAccountant).reserve(eq(response.getTaskId()), longThat(bytes -> bytes > 0), any(), any());
+        assertEquals(0, memoryAccountant.getReservedBytes());
+        assertEquals(0, memoryAccountant.getQueuedCount());
+    }
+    
+    @Test
+    void startVRProcessing_ShouldFail_WhenImageMissing() {
+        // Given
+        testRequest.setImageUrls(Arrays.asList(
+            "/files/user_1/2024/01/image1.jpg",
+            "/files/user_1/2024/01/missing.jpg",
+            "/files/user_1/2024/01/image2.jpg"
+        ));
+        when(vrProjectRepository.findById(1L)).thenReturn(Optional.of(testProject));
+        
+        // When
+        VRProcessingResponse response = vrProcessingService.startVRProcessing(testRequest);
+        
+        // Then
+        VRProcessingResponse finalResponse = vrProcessingService.getProcessingProgress(response.getTaskId());
+        assertEquals("FAILED", finalResponse.getStatus());
+        assertTrue(finalResponse.getErrorMessage().contains("/files/user_1/2024/01/missing.jpg"));
+        verify(imageProcessingService, never()).createPanorama(any(), anyInt(), anyInt());
+    }
+    
+    @Test
+    void startVRProcessing_ShouldPersistJobAndReturnPending_WhenSubmitted() {
+        // Given - 任务只持久化，不在提交线程中执行
+        when(vrProjectRepository.findById(1L)).thenReturn(Optional.of(testProject));
+        doReturn(new VrJob()).when(jobService).submit(anyString(), any(), any());
+        when(jobService.queuePosition(anyString())).thenReturn(Optional.of(new VRJobService.QueuePosition(3, false)));
+        
+        // When
+        VRProcessingResponse response = vrProcessingService.startVRProcessing(testRequest);
+        
+        // Then
+        assertEquals("PENDING", response.getStatus());
+        assertEquals(3, response.getQueuePosition());
+        assertFalse(response.getQueuePositionExceeded());
+        verify(jobService).submit(response.getTaskId(), testRequest, testProject);
+        verify(imageProcessingService, never()).createPanorama(any(), anyInt(), anyInt());
+        verify(jobService, never()).finish(anyString(), any(), anyString(), any(), any());
+    }
+    
+    @Test
+    void startVRProcessing_ShouldThrowException_WhenPriorityUnsupported() {
+        // Given
+        when(vrProjectRepository.findById(1L)).thenReturn(Optional.of(testProject));
+        testRequest.setPriority("URGENT");
+        
+        // When & Then
+        assertThrows(ValidationException.class, () -> vrProcessingService.startVRProcessing(testRequest));
+        verify(jobService, never()).submit(anyString(), any(), any());
+    }
+    
+    @Test
+    @SuppressWarnings("unchecked")
+    void startBatchProcessing_ShouldDedupeItemsAndGroupSharedInputs() {
+        // Given - 第0项和第2项共用b.jpg，第3项与第0项相同，第4项的项目不存在
+        when(vrProjectRepository.findById(1L)).thenReturn(Optional.of(ownedProject(1L, 7L)));
+        when(vrProjectRepository.findById(2L)).thenReturn(Optional.of(ownedProject(2L, 7L)));
+        when(vrProjectRepository.findById(3L)).thenReturn(Optional.of(ownedProject(3L, 7L)));
+        when(vrProjectRepository.findById(99L)).thenReturn(Optional.empty());
+        when(jobService.newJob(anyString(), any(), any(), eq(7L))).thenAnswer(invocation ->
+            new VrJob(invocation.getArgument(0), 1L, 7L, invocation.getArgument(1)));
+        List<VRProcessingRequest> items = Arrays.asList(
+            new VRProcessingRequest(1L, Arrays.asList("/files/a.jpg", "/files/b.jpg")),
+            new VRProcessingRequest(2L, Arrays.asList("/files/c.jpg")),
+            new VRProcessingRequest(3L, Arrays.asList("/files/b.jpg", "/files/d.jpg")),
+            new VRProcessingRequest(1L, Arrays.asList("/files/a.jpg", "/files/b.jpg")),
+            new VRProcessingRequest(99L, Arrays.asList("/files/e.jpg")));
+        
+        // When
+        VRBatchProcessingResponse response = vrProcessingService.startBatchProcessing(
+            new VRBatchProcessingRequest(items), 7L, false);
+        
+        // Then - 3个任务在一个批次中提交，共用输入的项相邻
+        ArgumentCaptor<List<VrJob>> jobs = ArgumentCaptor.forClass(List.class);
+        verify(jobService).submitBatch(eq(response.getBatchId()), jobs.capture());
+        assertEquals(Arrays.asList(items.get(0), items.get(2), items.get(1)),
+            jobs.getValue().stream().map(VrJob::getRequest).toList());
+        assertTrue(items.subList(0, 3).stream().allMatch(item -> VrJob.PRIORITY_BULK.equals(item.getPriority())));
+        verify(jobService, never()).submit(anyString(), any(), any());
+        
+        List<VRProcessingResponse> results = response.getItems();
+        assertEquals(5, results.size());
+        assertEquals(results.get(0).getTaskId(), results.get(3).getTaskId());
+        assertEquals("REJECTED", results.get(4).getStatus());
+        assertEquals("PENDING", response.getStatus());
+        assertEquals(3, response.getTotalTasks());
+        assertEquals(3, response.getPendingTasks());
+        assertEquals(1, response.getRejectedItems());
+        assertEquals("PENDING", vrProcessingService.getProcessingProgress(results.get(1).getTaskId()).getStatus());
+    }
+    
+    @Test
+    @SuppressWarnings("unchecked")
+    void startBatchProcessing_ShouldRejectOthersProjectsAndConflictingItems() {
+        // Given - 项目2属于其他用户，第2项与第0项同一项目但输出尺寸不同
+        when(vrProjectRepository.findById(1L)).thenReturn(Optional.of(ownedProject(1L, 7L)));
+        when(vrProjectRepository.findById(2L)).thenReturn(Optional.of(ownedProject(2L, 8L)));
+        when(jobService.newJob(anyString(), any(), any(), eq(7L))).thenAnswer(invocation ->
+            new VrJob(invocation.getArgument(0), 1L, 7L, invocation.getArgument(1)));
+        VRProcessingRequest conflicting = new VRProcessingRequest(1L, Arrays.asList("/files/a.jpg"));
+        conflicting.setOptions(equirectOptions(400, 200));
+        List<VRProcessingRequest> items = Arrays.asList(
+            new VRProcessingRequest(1L, Arrays.asList("/files/a.jpg")),
+            new VRProcessingRequest(2L, Arrays.asList("/files/b.jpg")),
+            conflicting);
+        
+        // When
+        VRBatchProcessingResponse response = vrProcessingService.startBatchProcessing(
+            new VRBatchProcessingRequest(items), 7L, false);
+        
+        // Then - 只为第0项创建任务，任务计入提交用户
+        ArgumentCaptor<List<VrJob>> jobs = ArgumentCaptor.forClass(List.class);
+        verify(jobService).submitBatch(eq(response.getBatchId()), jobs.capture());
+        assertEquals(1, jobs.getValue().size());
+        assertEquals(7L, jobs.getValue().get(0).getUserId());
+        List<VRProcessingResponse> results = response.getItems();
+        assertEquals("PENDING", results.get(0).getStatus());
+        assertEquals("REJECTED", results.get(1).getStatus());
+        assertEquals("无权限处理此项目", results.get(1).getErrorMessage());
+        assertEquals("REJECTED", results.get(2).getStatus());
+        assertEquals(2, response.getRejectedItems());
+    }
+    
+    @Test
+    void startBatchProcessing_ShouldThrowException_WhenNoProjectExists() {
+        // Given
+        when(vrProjectRepository.findById(99L)).thenReturn(Optional.empty());
+        VRBatchProcessingRequest batch = new VRBatchProcessingRequest(
+            Arrays.asList(new VRProcessingRequest(99L, Arrays.asList("/files/e.jpg"))));
+        
+        // When & Then
+        assertThrows(ValidationException.class, () -> vrProcessingService.startBatchProcessing(batch, 7L, false));
+        verify(jobService, never()).submitBatch(anyString(), anyList());
+    }
+    
+    @Test
+    @SuppressWarnings("unchecked")
+    void startBatchProcessing_ShouldUseBulkPriority_UnlessSubmittedByAdmin() {
+        // Given
+        when(vrProjectRepository.findById(1L)).thenReturn(Optional.of(ownedProject(1L, 7L)));
+        when(jobService.newJob(anyString(), any(), any(), eq(7L))).thenAnswer(invocation ->
+            new VrJob(invocation.getArgument(0), 1L, 7L, invocation.getArgument(1)));
+        VRProcessingRequest item = new VRProcessingRequest(1L, Arrays.asList("/files/a.jpg"));
+        VRBatchProcessingRequest batch = new VRBatchProcessingRequest(Arrays.asList(item));
+        batch.setPriority(VrJob.PRIORITY_INTERACTIVE);
+        
+        // When & Then - 普通用户指定的优先级被忽略
+        vrProcessingService.startBatchProcessing(batch, 7L, false);
+        assertEquals(VrJob.PRIORITY_BULK, item.getPriority());
+        
+        // 管理员可以提高批次优先级
+        vrProcessingService.startBatchProcessing(batch, 7L, true);
+        assertEquals(VrJob.PRIORITY_INTERACTIVE, item.getPriority());
+    }
+    
+    @Test
+    void getBatchProgress_ShouldAggregateTaskStates() {
+        // Given
+        VrJob completed = new VrJob("task-1", 1L, 7L, testRequest);
+        completed.setStatus(VrJob.STATUS_COMPLETED);
+        VrJob pending = new VrJob("task-2", 2L, 7L, testRequest);
+        when(jobService.findByBatchId("batch-1")).thenReturn(Arrays.asList(completed, pending));
+        
+        // When
+        VRBatchProcessingResponse response = vrProcessingService.getBatchProgress("batch-1", 7L);
+        
+        // Then
+        assertEquals("PROCESSING", response.getStatus());
+        assertEquals(50, response.getProgress());
+        assertEquals(1, response.getCompletedTasks());
+        assertEquals(1, response.getPendingTasks());
+        assertEquals(2, response.getItems().size());
+        assertThrows(ResourceNotFoundException.class, () -> vrProcessingService.getBatchProgress("batch-2", 7L));
+    }
+    
+    @Test
+    void getBatchProgress_ShouldThrowException_WhenBatchBelongsToAnotherUser() {
+        // Given
+        VrJob own = new VrJob("task-1", 1L, 7L, testRequest);
+        VrJob foreign = new VrJob("task-2", 2L, 8L, testRequest);
+        when(jobService.findByBatchId("batch-1")).thenReturn(Arrays.asList(own, foreign));
+        
+        // When & Then
+        assertThrows(ResourceNotFoundException.class, () -> vrProcessingService.getBatchProgress("batch-1", 8L));
+        assertThrows(ResourceNotFoundException.class, () -> vrProcessingService.getBatchProgress("batch-1", 7L));
+    }
+    
+    @Test
+    void runJob_ShouldRecordFinalStatus_WhenProcessingEnds() {
+        // Given
+        when(vrProjectRepository.findById(1L)).thenReturn(Optional.of(testProject));
+        VrJob job = new VrJob("task-1", 1L, null, testRequest);
+        job.setAttempts(2);
+        
+        // When
+        vrProcessingService.runJob(job);
+        
+        // Then - 图片处理被模拟为空，任务失败并按本次认领写回任务表
+        VRProcessingResponse response = vrProcessingService.getProcessingProgress("task-1");
+        verify(jobService).finish("task-1", 2, response.getStatus(), response.getResultUrl(),
+            response.getErrorMessage());
+        assertTrue(Arrays.asList("COMPLETED", "FAILED").contains(response.getStatus()));
+    }
+    
+    @Test
+    void getProcessingProgress_ShouldReadJobTable_WhenTaskNotInMemory() {
+        // Given
+        VrJob job = new VrJob("task-2", 1L, null, testRequest);
+        job.setStatus(VrJob.STATUS_COMPLETED);
+        job.setResultUrl("/files/vr/project_1/vr_1_task-2.jpg");
+        when(jobService.findByTaskId("task-2")).thenReturn(Optional.of(job));
+        
+        // When
+        VRProcessingResponse response = vrProcessingService.getProcessingProgress("task-2");
+        
+        // Then
+        assertEquals("COMPLETED", response.getStatus());
+        assertEquals(100, response.getProgress());
+        assertEquals("/files/vr/project_1/vr_1_task-2.jpg", response.getResultUrl());
+    }
+    
     @Test
     void startVRProcessing_ShouldThrowException_WhenProjectNotExists() {
         // Given
@@ -258,4 +1022,20 @@ class VRProcessingServiceTest {
         List<VRProcessingResponse> tasks = vrProcessingService.getAllProcessingTasks();
         assertEquals(0, tasks.size());
     }
-}
\ No newline at end of file
+    
+    private static VRProcessingRequest.VRProcessingOptions equirectOptions(int width, int height) {
+        VRProcessingRequest.VRProcessingOptions options = new VRProcessingRequest.VRProcessingOptions();
+        options.setOutputWidth(width);
+        options.setOutputHeight(height);
+        return options;
+    }
+    
+    private static VrProject ownedProject(Long projectId, Long userId) {
+        User user = new User();
+        user.setId(userId);
+        VrProject project = new VrProject();
+        project.setId(projectId);
+        project.setUser(user);
+        return project;
+    }
+}
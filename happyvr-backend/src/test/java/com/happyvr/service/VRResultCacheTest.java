@@ -0,0 +1,250 @@
+package com.happyvr.service;
+
+import com.happyvr.dto.vr.VRProcessingRequest;
+import com.happyvr.entity.VrProject;
+import com.happyvr.entity.VrResult;
+import com.happyvr.repository.VrProjectRepository;
+import com.happyvr.repository.VrResultRepository;
+import com.happyvr.util.ImageResampler;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class VRResultCacheTest {
+    
+    @Mock
+    private VrResultRepository vrResultRepository;
+    
+    @Mock
+    private VrProjectRepository vrProjectRepository;
+    
+    @InjectMocks
+    private VRResultCache resultCache;
+    
+    @TempDir
+    Path tempDir;
+    
+    @Test
+    void computeKey_ShouldDependOnContentNotPath() throws Exception {
+        File first = write("a.jpg", "same-content");
+        File copy = write("b.jpg", "same-content");
+        File other = write("c.jpg", "other-content");
+        VRProcessingRequest.VRProcessingOptions options = new VRProcessingRequest.VRProcessingOptions();
+        
+        String key = resultCache.computeKey(List.of(first), "PANORAMA", options);
+        
+        assertEquals(64, key.length());
+        assertEquals(key, resultCache.computeKey(List.of(copy), "panorama", options));
+        assertNotEquals(key, resultCache.computeKey(List.of(other), "PANORAMA", options));
+        assertNotEquals(resultCache.computeKey(List.of(first, other), "PANORAMA", options),
+            resultCache.computeKey(List.of(other, first), "PANORAMA", options));
+    }
+    
+    @Test
+    void computeKey_ShouldChange_WhenOutputOptionsChange() throws Exception {
+        File input = write("a.jpg", "content");
+        VRProcessingRequest.VRProcessingOptions options = new VRProcessingRequest.VRProcessingOptions();
+        String key = resultCache.computeKey(List.of(input), "PANORAMA", options);
+        
+        options.setQuality(80);
+        assertNotEquals(key, resultCache.computeKey(List.of(input), "PANORAMA", options));
+        assertNotEquals(key, resultCache.computeKey(List.of(input), "CUBE_MAP",
+            new VRProcessingRequest.VRProcessingOptions()));
+        
+        // 未启用瓦片时瓦片尺寸不影响输出
+        VRProcessingRequest.VRProcessingOptions tileSizeOnly = new VRProcessingRequest.VRProcessingOptions();
+        tileSizeOnly.setTileSize(1024);
+        assertEquals(key, resultCache.computeKey(List.of(input), "PANORAMA", tileSizeOnly));
+    }
+    
+    @Test
+    void computeKey_ShouldChange_WhenServerSettingsChange() throws Exception {
+        File input = write("a.jpg", "content");
+        VRProcessingRequest.VRProcessingOptions options = new VRProcessingRequest.VRProcessingOptions();
+        List<String> keys = new ArrayList<>();
+        keys.add(resultCache.computeKey(List.of(input), "PANORAMA", options));
+        
+        ReflectionTestUtils.setField(resultCache, "stitchOverlapRatio", 0.2);
+        keys.add(resultCache.computeKey(List.of(input), "PANORAMA", options));
+        ReflectionTestUtils.setField(resultCache, "resampleKernel", ImageResampler.Kernel.LANCZOS3);
+        keys.add(resultCache.computeKey(List.of(input), "PANORAMA", options));
+        ReflectionTestUtils.setField(resultCache, "defaultJpegQuality", 85);
+        keys.add(resultCache.computeKey(List.of(input), "PANORAMA", options));
+        ReflectionTestUtils.setField(resultCache, "defaultJpegProgressive", true);
+        keys.add(resultCache.computeKey(List.of(input), "PANORAMA", options));
+        ReflectionTestUtils.setField(resultCache, "previewWidth", 512);
+        keys.add(resultCache.computeKey(List.of(input), "PANORAMA", options));
+        
+        assertEquals(keys.size(), keys.stream().distinct().count());
+    }
+    
+    @Test
+    void computeKey_ShouldRehash_WhenFileModified() throws Exception {
+        File input = write("a.jpg", "before");
+        VRProcessingRequest.VRProcessingOptions options = new VRProcessingRequest.VRProcessingOptions();
+        String key = resultCache.computeKey(List.of(input), "PANORAMA", options);
+        
+        Files.writeString(input.toPath(), "after!");
+        input.setLastModified(input.lastModified() + 2000);
+        
+        assertNotEquals(key, resultCache.computeKey(List.of(input), "PANORAMA", options));
+    }
+    
+    @Test
+    void store_ShouldRegisterResultAndReleasePrevious() {
+        VrProject project = project(1L, "old");
+        when(vrResultRepository.findByContentHashForUpdate("new")).thenReturn(Optional.empty());
+        VrResult previous = new VrResult("old", new HashMap<>(), List.of());
+        previous.setReferenceCount(2);
+        when(vrResultRepository.findByContentHashForUpdate("old")).thenReturn(Optional.of(previous));
+        Map<String, Object> sceneData = new HashMap<>();
+        sceneData.put("url", "/files/vr/project_1/vr_1_a.jpg");
+        
+        Map<String, Object> stored = resultCache.store("new", sceneData, List.of("vr_1_a.jpg"), 1L);
+        
+        assertEquals("new", VRResultCache.contentHashOf(stored));
+        assertEquals("new", VRResultCache.contentHashOf(project.getSceneData()));
+        assertEquals(1, project.getStatus());
+        verify(vrProjectRepository).save(project);
+        assertEquals("/files/vr/project_1/vr_1_a.jpg", stored.get("url"));
+        verify(vrResultRepository).save(argThat(result ->
+            "new".equals(result.getContentHash()) && result.getReferenceCount() == 1));
+        assertEquals(1, previous.getReferenceCount());
+        verify(vrResultRepository, never()).delete(any());
+    }
+    
+    @Test
+    void store_ShouldReleaseCurrentReference_WhenSameProjectCommittedTwice() {
+        // 同一项目的两个任务先后写回：第二次释放的是第一次写入的结果，而不是任务开始时项目引用的结果
+        Map<String, VrResult> results = new HashMap<>();
+        VrResult shared = new VrResult("old", new HashMap<>(), List.of());
+        shared.setReferenceCount(2);
+        results.put("old", shared);
+        when(vrResultRepository.findByContentHashForUpdate(anyString()))
+            .thenAnswer(invocation -> Optional.ofNullable(results.get(invocation.<String>getArgument(0))));
+        when(vrResultRepository.save(any())).thenAnswer(invocation -> {
+            VrResult result = invocation.getArgument(0);
+            results.put(result.getContentHash(), result);
+            return result;
+        });
+        doAnswer(invocation -> results.remove(invocation.<VrResult>getArgument(0).getContentHash()))
+            .when(vrResultRepository).delete(any());
+        VrProject project = project(1L, "old");
+        
+        resultCache.store("first", new HashMap<>(), List.of(), 1L);
+        resultCache.store("second", new HashMap<>(), List.of(), 1L);
+        
+        assertEquals(1, shared.getReferenceCount());
+        assertFalse(results.containsKey("first"));
+        assertEquals(1, results.get("second").getReferenceCount());
+        assertEquals("second", VRResultCache.contentHashOf(project.getSceneData()));
+    }
+    
+    @Test
+    void store_ShouldKeepExistingResultAndDeleteOwnOutputs_WhenAlreadyRegistered() throws Exception {
+        project(2L, null);
+        File duplicate = write("vr_2_b.jpg", "duplicate");
+        Map<String, Object> existingScene = new HashMap<>();
+        existingScene.put("url", "/files/vr/project_1/vr_1_a.jpg");
+        existingScene.put(VRResultCache.SCENE_CONTENT_HASH, "hash");
+        VrResult existing = new VrResult("hash", existingScene, List.of("vr_1_a.jpg"));
+        existing.setReferenceCount(1);
+        when(vrResultRepository.findByContentHashForUpdate("hash")).thenReturn(Optional.of(existing));
+        
+        Map<String, Object> sceneData = new HashMap<>();
+        sceneData.put("url", "/files/vr/project_2/vr_2_b.jpg");
+        Map<String, Object> stored = resultCache.store("hash", sceneData,
+            List.of(duplicate.getPath()), 2L);
+        
+        assertEquals("/files/vr/project_1/vr_1_a.jpg", stored.get("url"));
+        assertEquals(2, existing.getReferenceCount());
+        assertFalse(duplicate.exists());
+    }
+    
+    @Test
+    void reuse_ShouldNotCountTwice_WhenProjectAlreadyReferencesResult() {
+        Map<String, Object> sceneData = new HashMap<>();
+        sceneData.put("url", "/files/vr/project_1/vr_1_a.jpg");
+        VrResult existing = new VrResult("hash", sceneData, List.of());
+        existing.setReferenceCount(1);
+        when(vrResultRepository.findByContentHashForUpdate("hash")).thenReturn(Optional.of(existing));
+        project(1L, "hash");
+        project(2L, null);
+        
+        assertEquals(sceneData, resultCache.reuse("hash", 1L).orElseThrow());
+        assertEquals(1, existing.getReferenceCount());
+        
+        assertTrue(resultCache.reuse("hash", 2L).isPresent());
+        assertEquals(2, existing.getReferenceCount());
+    }
+    
+    @Test
+    void reuse_ShouldLeaveProjectUnchanged_WhenResultMissing() {
+        VrProject project = project(1L, "old");
+        when(vrResultRepository.findByContentHashForUpdate("hash")).thenReturn(Optional.empty());
+        
+        assertTrue(resultCache.reuse("hash", 1L).isEmpty());
+        assertEquals("old", VRResultCache.contentHashOf(project.getSceneData()));
+        verify(vrProjectRepository, never()).save(any());
+        verify(vrResultRepository, never()).findByContentHashForUpdate("old");
+    }
+    
+    @Test
+    void release_ShouldDeleteOutputs_WhenLastReferenceReleased() throws Exception {
+        File image = write("vr_1_a.jpg", "image");
+        Path tiles = Files.createDirectories(tempDir.resolve("tiles_a").resolve("0"));
+        Files.writeString(tiles.resolve("0_0.jpg"), "tile");
+        List<String> outputs = new ArrayList<>(List.of(image.getPath(), tempDir.resolve("tiles_a").toString()));
+        VrResult result = new VrResult("hash", new HashMap<>(), outputs);
+        result.setReferenceCount(2);
+        when(vrResultRepository.findByContentHashForUpdate("hash")).thenReturn(Optional.of(result));
+        
+        resultCache.release("hash");
+        assertEquals(1, result.getReferenceCount());
+        assertTrue(image.exists());
+        
+        resultCache.release("hash");
+        verify(vrResultRepository).delete(result);
+        assertFalse(image.exists());
+        assertFalse(Files.exists(tempDir.resolve("tiles_a")));
+    }
+    
+    /**
+     * 创建引用指定结果的项目，并作为加锁查询的结果
+     */
+    private VrProject project(Long id, String contentHash) {
+        VrProject project = new VrProject();
+        project.setId(id);
+        if (contentHash != null) {
+            Map<String, Object> sceneData = new HashMap<>();
+            sceneData.put(VRResultCache.SCENE_CONTENT_HASH, contentHash);
+            project.setSceneData(sceneData);
+        }
+        when(vrProjectRepository.findByIdForUpdate(id)).thenReturn(Optional.of(project));
+        return project;
+    }
+    
+    private File write(String name, String content) throws Exception {
+        Path path = tempDir.resolve(name);
+        Files.writeString(path, content);
+        return path.toFile();
+    }
+}
@@ -40,6 +40,9 @@ class VrProjectServiceTest {
     @Mock
     private UserRepository userRepository;
     
+    @Mock
+    private VRResultCache resultCache;
+    
     @InjectMocks
     private VrProjectService vrProjectService;
     
@@ -241,26 +244,27 @@ class VrProjectServiceTest {
     @Test
     void deleteProject_ShouldDeleteProject_WhenValidRequest() {
         // Given
-        when(vrProjectRepository.findById(1L)).thenReturn(Optional.of(testProject));
+        when(vrProjectRepository.findByIdForUpdate(1L)).thenReturn(Optional.of(testProject));
         
         // When
         vrProjectService.deleteProject(1L, 1L);
         
         // Then
-        verify(vrProjectRepository).findById(1L);
+        verify(vrProjectRepository).findByIdForUpdate(1L);
         verify(vrProjectRepository).delete(testProject);
+        verify(resultCache).release(VRResultCache.contentHashOf(testProject.getSceneData()));
     }
     
     @Test
     void deleteProject_ShouldThrowException_WhenUnauthorized() {
         // Given
-        when(vrProjectRepository.findById(1L)).thenReturn(Optional.of(testProject));
+        when(vrProjectRepository.findByIdForUpdate(1L)).thenReturn(Optional.of(testProject));
         
         // When & Then
         assertThrows(UnauthorizedException.class, 
             () -> vrProjectService.deleteProject(1L, 2L));
         
-        verify(vrProjectRepository).findById(1L);
+        verify(vrProjectRepository).findByIdForUpdate(1L);
         verify(vrProjectRepository, never()).delete(any(VrProject.class));
     }
     
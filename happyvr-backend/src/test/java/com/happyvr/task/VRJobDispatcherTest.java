@@ -0,0 +1,123 @@
+package com.happyvr.task;
+
+import com.happyvr.entity.VrJob;
+import com.happyvr.service.VRJobService;
+import com.happyvr.service.VRProcessingService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class VRJobDispatcherTest {
+    
+    @Mock
+    private VRJobService jobService;
+    
+    @Mock
+    private VRProcessingService vrProcessingService;
+    
+    @InjectMocks
+    private VRJobDispatcher dispatcher;
+    
+    // 提交的任务先暂存，由测试决定何时执行
+    private final List<Runnable> submitted = new ArrayList<>();
+    
+    @BeforeEach
+    void setUp() {
+        Executor deferred = submitted::add;
+        ReflectionTestUtils.setField(dispatcher, "vrProcessingExecutor", deferred);
+        ReflectionTestUtils.setField(dispatcher, "taskExecutor", (Executor) Runnable::run);
+        ReflectionTestUtils.setField(dispatcher, "concurrency", 2);
+    }
+    
+    @Test
+    void dispatch_ShouldClaimOnlyFreeSlots() {
+        // Given
+        when(jobService.claim(2)).thenReturn(Collections.singletonList(new VrJob("task-1", 1L, null, null)));
+        when(jobService.claim(1)).thenReturn(Collections.emptyList());
+        
+        // When
+        dispatcher.dispatch();
+        dispatcher.dispatch();
+        
+        // Then - 第二次只剩一个空闲并发
+        assertEquals(1, dispatcher.getRunningCount());
+        assertEquals(1, submitted.size());
+        verify(jobService).claim(2);
+        verify(jobService).claim(1);
+    }
+    
+    @Test
+    void dispatch_ShouldNotClaim_WhenAllSlotsBusy() {
+        // Given
+        when(jobService.claim(2)).thenReturn(Arrays.asList(
+            new VrJob("task-1", 1L, null, null), new VrJob("task-2", 1L, null, null)));
+        
+        // When
+        dispatcher.dispatch();
+        dispatcher.dispatch();
+        
+        // Then
+        assertEquals(2, dispatcher.getRunningCount());
+        verify(jobService, times(1)).claim(anyInt());
+    }
+    
+    @Test
+    void run_ShouldFinishFailedAndFreeSlot_WhenJobThrows() {
+        // Given
+        VrJob job = new VrJob("task-1", 1L, null, null);
+        when(jobService.claim(2)).thenReturn(Collections.singletonList(job), Collections.emptyList());
+        doThrow(new IllegalStateException("boom")).when(vrProcessingService).runJob(job);
+        dispatcher.dispatch();
+        
+        // When
+        submitted.get(0).run();
+        
+        // Then - 结束后释放并发并重新认领
+        verify(jobService).finish("task-1", 0, VrJob.STATUS_FAILED, null, "boom");
+        assertEquals(0, dispatcher.getRunningCount());
+        verify(jobService, times(2)).claim(2);
+    }
+    
+    @Test
+    void poll_ShouldHeartbeatAndRequeueBeforeClaiming() {
+        // Given
+        when(jobService.claim(2)).thenReturn(Collections.emptyList());
+        
+        // When
+        dispatcher.poll();
+        
+        // Then
+        verify(jobService).heartbeat(anyMap());
+        verify(jobService).requeueStale();
+        verify(jobService).claim(2);
+    }
+    
+    @Test
+    void poll_ShouldStopRunningJobs_WhenCancelledElsewhere() {
+        // Given - 执行中的任务在任务表中被其他实例取消
+        when(jobService.claim(2)).thenReturn(Collections.singletonList(new VrJob("task-1", 1L, null, null)),
+            Collections.emptyList());
+        dispatcher.dispatch();
+        when(jobService.findCancelled(anyCollection())).thenReturn(Collections.singletonList("task-1"));
+        
+        // When
+        dispatcher.poll();
+        
+        // Then
+        verify(vrProcessingService).cancelProcessingTask("task-1");
+    }
+}
@@ -0,0 +1,116 @@
+package com.happyvr.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.nio.file.Path;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CancellationTokenTest {
+    
+    @Test
+    void bind_ShouldExposeTokenToCurrentThreadAndRestorePrevious() {
+        CancellationToken outer = new CancellationToken();
+        CancellationToken inner = new CancellationToken();
+        assertSame(CancellationToken.NONE, CancellationToken.current());
+        
+        try (CancellationToken.Scope outerScope = outer.bind()) {
+            try (CancellationToken.Scope innerScope = inner.bind()) {
+                assertSame(inner, CancellationToken.current());
+            }
+            assertSame(outer, CancellationToken.current());
+        }
+        assertSame(CancellationToken.NONE, CancellationToken.current());
+    }
+    
+    @Test
+    void cancel_ShouldRunCallbacksOnce() {
+        CancellationToken token = new CancellationToken();
+        AtomicInteger calls = new AtomicInteger();
+        token.onCancel(calls::incrementAndGet);
+        Runnable unregister = token.onCancel(() -> fail("已注销的回调不应执行"));
+        unregister.run();
+        
+        token.cancel();
+        token.cancel();
+        
+        assertEquals(1, calls.get());
+        assertThrows(CancellationException.class, token::throwIfCancelled);
+        // 取消后登记的回调立即执行
+        token.onCancel(calls::incrementAndGet);
+        assertEquals(2, calls.get());
+    }
+    
+    @Test
+    void forEachRowBand_ShouldStopRemainingBands_WhenCancelled() {
+        // Given - 宽1024时每个分块至少64行，第一个分块执行时取消
+        CancellationToken token = new CancellationToken();
+        AtomicInteger rows = new AtomicInteger();
+        
+        // When
+        try (CancellationToken.Scope scope = token.bind()) {
+            assertThrows(CancellationException.class, () ->
+                RasterKernels.forEachRowBand(1024, 64 * 1024, (rowStart, rowEnd) -> {
+                    token.cancel();
+                    rows.addAndGet(rowEnd - rowStart);
+                }));
+        }
+        
+        // Then
+        assertTrue(rows.get() < 64 * 1024, "取消后不应执行全部分块: " + rows.get());
+    }
+    
+    @Test
+    void write_ShouldAbortJpegEncoding_WhenCancelled(@TempDir Path tempDir) {
+        // Given - 编码器读到第100行时取消
+        CancellationToken token = new CancellationToken();
+        AtomicInteger maxRow = new AtomicInteger();
+        BufferedImage image = cancellingImage(1024, 2048, 100, token, maxRow);
+        
+        // When
+        try (CancellationToken.Scope scope = token.bind()) {
+            assertThrows(CancellationException.class,
+                () -> JpegEncoder.write(image, tempDir.resolve("out.jpg"), 90, false));
+        }
+        
+        // Then
+        assertTrue(maxRow.get() < 2047, "取消后不应编码全部扫描行: " + maxRow.get());
+    }
+    
+    /**
+     * 像素全为黑色的图片，读取到cancelRow行时取消令牌，并记录读取过的最大行号
+     */
+    private static BufferedImage cancellingImage(int width, int height, int cancelRow, CancellationToken token,
+                                                 AtomicInteger maxRow) {
+        DirectColorModel colorModel = new DirectColorModel(24, 0xFF0000, 0x00FF00, 0x0000FF);
+        SinglePixelPackedSampleModel sampleModel = new SinglePixelPackedSampleModel(DataBuffer.TYPE_INT,
+            width, height, colorModel.getMasks());
+        DataBuffer buffer = new DataBuffer(DataBuffer.TYPE_INT, width * height) {
+            @Override
+            public int getElem(int bank, int i) {
+                int row = i / width;
+                maxRow.accumulateAndGet(row, Math::max);
+                if (row >= cancelRow) {
+                    token.cancel();
+                }
+                return 0;
+            }
+            
+            @Override
+            public void setElem(int bank, int i, int val) {
+                throw new UnsupportedOperationException();
+            }
+        };
+        WritableRaster raster = Raster.createWritableRaster(sampleModel, buffer, null);
+        return new BufferedImage(colorModel, raster, false, null);
+    }
+}
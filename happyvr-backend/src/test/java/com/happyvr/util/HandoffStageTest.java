@@ -0,0 +1,126 @@
+package com.happyvr.util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HandoffStageTest {
+    
+    private ExecutorService callers;
+    private ForkJoinPool pool;
+    
+    @BeforeEach
+    void setUp() {
+        callers = Executors.newCachedThreadPool();
+        pool = new ForkJoinPool(2);
+    }
+    
+    @AfterEach
+    void tearDown() {
+        callers.shutdownNow();
+        pool.shutdownNow();
+    }
+    
+    @Test
+    void enter_ShouldWait_WhenHandoffFull() throws Exception {
+        // Given - 执行1个加等待1个
+        HandoffStage stage = new HandoffStage("compute", pool, 1, 1);
+        HandoffStage.Ticket first = stage.enter(CancellationToken.NONE);
+        stage.enter(CancellationToken.NONE);
+        
+        // When
+        Future<HandoffStage.Ticket> third = callers.submit(() -> stage.enter(CancellationToken.NONE));
+        
+        // Then - 释放一个位置后才能进入
+        assertThrows(TimeoutException.class, () -> third.get(200, TimeUnit.MILLISECONDS));
+        first.close();
+        assertNotNull(third.get(5, TimeUnit.SECONDS));
+        assertEquals(2, stage.getQueuedCount());
+    }
+    
+    @Test
+    void run_ShouldLimitConcurrentWork_AndReleaseHandoff() throws Exception {
+        // Given
+        HandoffStage stage = new HandoffStage("compute", pool, 1, 3);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        HandoffStage.Ticket first = stage.enter(CancellationToken.NONE);
+        HandoffStage.Ticket second = stage.enter(CancellationToken.NONE);
+        
+        // When
+        Future<Integer> firstResult = callers.submit(() -> first.run(() -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            release.await();
+            running.decrementAndGet();
+            return 1;
+        }));
+        Future<Integer> secondResult = callers.submit(() -> second.run(() -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            running.decrementAndGet();
+            return 2;
+        }));
+        
+        // Then - 第二个任务等第一个结束后才执行
+        assertThrows(TimeoutException.class, () -> secondResult.get(200, TimeUnit.MILLISECONDS));
+        assertEquals(1, stage.getActiveCount());
+        release.countDown();
+        assertEquals(1, firstResult.get(5, TimeUnit.SECONDS));
+        assertEquals(2, secondResult.get(5, TimeUnit.SECONDS));
+        assertEquals(1, maxRunning.get());
+        assertEquals(0, stage.getActiveCount());
+        assertEquals(0, stage.getQueuedCount());
+    }
+    
+    @Test
+    void run_ShouldBindTokenOnExecutorThread_AndRethrowFailure() throws Exception {
+        // Given
+        HandoffStage stage = new HandoffStage("compute", pool, 1, 0);
+        CancellationToken token = new CancellationToken();
+        
+        // When & Then
+        try (CancellationToken.Scope scope = token.bind()) {
+            HandoffStage.Ticket ticket = stage.enter(token);
+            IOException error = assertThrows(IOException.class, () -> ticket.run(() -> {
+                assertSame(token, CancellationToken.current());
+                assertTrue(Thread.currentThread().getName().contains("ForkJoinPool"));
+                throw new IOException("写出失败");
+            }));
+            assertEquals("写出失败", error.getMessage());
+        }
+        assertEquals(0, stage.getQueuedCount());
+    }
+    
+    @Test
+    void enter_ShouldThrow_WhenCancelledWhileWaiting() throws Exception {
+        // Given
+        HandoffStage stage = new HandoffStage("compute", pool, 1, 0);
+        HandoffStage.Ticket holder = stage.enter(CancellationToken.NONE);
+        CancellationToken token = new CancellationToken();
+        Future<HandoffStage.Ticket> waiting = callers.submit(() -> stage.enter(token));
+        assertThrows(TimeoutException.class, () -> waiting.get(200, TimeUnit.MILLISECONDS));
+        
+        // When
+        token.cancel();
+        
+        // Then - 退出队列，不占用位置
+        ExecutionException error = assertThrows(ExecutionException.class, () -> waiting.get(5, TimeUnit.SECONDS));
+        assertTrue(error.getCause() instanceof CancellationException);
+        holder.close();
+        assertNotNull(stage.enter(CancellationToken.NONE));
+    }
+}
@@ -0,0 +1,117 @@
+package com.happyvr.util;
+
+import com.happyvr.exception.ValidationException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ImageDecodePlannerTest {
+    
+    @TempDir
+    Path tempDir;
+    
+    @Test
+    void plan_ShouldComputeSubsamplingFromHeader() throws Exception {
+        // Given
+        File file = writeNoisePng(1200, 600);
+        
+        // When
+        ImageDecodePlanner.DecodePlan plan = ImageDecodePlanner.plan(file, 300, 200);
+        
+        // Then - 宽度方向可缩小4倍，高度方向只能缩小3倍
+        assertEquals(1200, plan.getWidth());
+        assertEquals(600, plan.getHeight());
+        assertEquals(3, plan.getSubsampling());
+        assertEquals(400, plan.getDecodedWidth());
+        assertEquals(200, plan.getDecodedHeight());
+    }
+    
+    @Test
+    void decode_ShouldReturnSubsampledPixels() throws Exception {
+        // Given
+        File file = writeNoisePng(301, 151);
+        BufferedImage original = ImageIO.read(file);
+        ImageDecodePlanner.DecodePlan plan = ImageDecodePlanner.plan(file, 100, 50);
+        
+        // When
+        BufferedImage decoded = ImageDecodePlanner.decode(plan);
+        
+        // Then
+        assertEquals(3, plan.getSubsampling());
+        assertEquals(101, decoded.getWidth());
+        assertEquals(51, decoded.getHeight());
+        assertEquals(original.getRGB(150, 75), decoded.getRGB(50, 25));
+        assertEquals(original.getRGB(300, 150), decoded.getRGB(100, 50));
+    }
+    
+    @Test
+    void decode_ShouldDecodeRegionsInParallel_WhenImageTiled() throws Exception {
+        // Given - 分块存储的TIFF图片
+        BufferedImage original = noiseImage(640, 1100);
+        File file = tempDir.resolve("tiled.tif").toFile();
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("tiff").next();
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(file)) {
+            writer.setOutput(output);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setTilingMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setTiling(128, 128, 0, 0);
+            writer.write(null, new IIOImage(original, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        ImageDecodePlanner.DecodePlan plan = ImageDecodePlanner.plan(file, 320, 400);
+        assertTrue(plan.isTiled());
+        
+        // When
+        BufferedImage decoded = ImageDecodePlanner.decode(plan, 0);
+        
+        // Then
+        assertEquals(2, plan.getSubsampling());
+        assertEquals(320, decoded.getWidth());
+        assertEquals(550, decoded.getHeight());
+        for (int y = 0; y < decoded.getHeight(); y += 7) {
+            for (int x = 0; x < decoded.getWidth(); x += 5) {
+                assertEquals(original.getRGB(x * 2, y * 2), decoded.getRGB(x, y));
+            }
+        }
+    }
+    
+    @Test
+    void plan_ShouldThrowException_WhenNotAnImage() throws Exception {
+        // Given
+        File file = tempDir.resolve("not_image.jpg").toFile();
+        Files.writeString(file.toPath(), "not an image");
+        
+        // When & Then
+        assertThrows(ValidationException.class, () -> ImageDecodePlanner.plan(file, 100, 100));
+    }
+    
+    private File writeNoisePng(int width, int height) throws Exception {
+        File file = tempDir.resolve("noise_" + width + "x" + height + ".png").toFile();
+        ImageIO.write(noiseImage(width, height), "png", file);
+        return file;
+    }
+    
+    private static BufferedImage noiseImage(int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(width * 31L + height);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, random.nextInt());
+            }
+        }
+        return image;
+    }
+}
@@ -0,0 +1,97 @@
+package com.happyvr.util;
+
+import com.happyvr.exception.ValidationException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ImageHeaderProbeTest {
+    
+    @TempDir
+    Path tempDir;
+    
+    @Test
+    void probe_ShouldReadDimensionsAndColorModel_WhenJpeg() throws Exception {
+        // Given
+        File file = writeImage(new BufferedImage(640, 320, BufferedImage.TYPE_INT_RGB), "jpg");
+        
+        // When
+        ImageHeaderProbe.ImageHeader header = ImageHeaderProbe.probe(file);
+        
+        // Then - 没有EXIF信息时方向为正常
+        assertEquals("jpeg", header.getFormat());
+        assertEquals(640, header.getWidth());
+        assertEquals(320, header.getHeight());
+        assertEquals("RGB", header.getColorModel());
+        assertFalse(header.hasAlpha());
+        assertEquals(ImageHeaderProbe.ORIENTATION_NORMAL, header.getOrientation());
+    }
+    
+    @Test
+    void probe_ShouldReportAlpha_WhenPngWithAlpha() throws Exception {
+        // Given
+        File file = writeImage(new BufferedImage(30, 20, BufferedImage.TYPE_INT_ARGB), "png");
+        
+        // When
+        ImageHeaderProbe.ImageHeader header = ImageHeaderProbe.probe(file);
+        
+        // Then
+        assertEquals("png", header.getFormat());
+        assertEquals("RGBA", header.getColorModel());
+        assertTrue(header.hasAlpha());
+    }
+    
+    @Test
+    void probe_ShouldReadExifOrientation_WhenJpegHasApp1Segment() throws Exception {
+        // Given - 在SOI之后插入方向为6（顺时针旋转90度）的EXIF段
+        File plain = writeImage(new BufferedImage(64, 32, BufferedImage.TYPE_INT_RGB), "jpg");
+        byte[] jpeg = Files.readAllBytes(plain.toPath());
+        byte[] exif = {
+            'E', 'x', 'i', 'f', 0, 0,
+            'M', 'M', 0, 42, 0, 0, 0, 8,
+            0, 1,
+            0x01, 0x12, 0, 3, 0, 0, 0, 1, 0, 6, 0, 0,
+            0, 0, 0, 0
+        };
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        output.write(jpeg, 0, 2);
+        output.write(new byte[] {(byte) 0xFF, (byte) 0xE1, 0, (byte) (exif.length + 2)});
+        output.write(exif);
+        output.write(jpeg, 2, jpeg.length - 2);
+        File file = tempDir.resolve("rotated.jpg").toFile();
+        Files.write(file.toPath(), output.toByteArray());
+        
+        // When
+        ImageHeaderProbe.ImageHeader header = ImageHeaderProbe.probe(file);
+        
+        // Then - 存储尺寸不变，显示尺寸宽高互换
+        assertEquals(6, header.getOrientation());
+        assertEquals(64, header.getWidth());
+        assertEquals(32, header.getDisplayWidth());
+        assertEquals(64, header.getDisplayHeight());
+    }
+    
+    @Test
+    void probe_ShouldThrowException_WhenNotAnImage() throws Exception {
+        // Given
+        Path file = tempDir.resolve("fake.jpg");
+        Files.write(file, "not an image".getBytes());
+        
+        // When & Then
+        assertThrows(ValidationException.class, () -> ImageHeaderProbe.probe(file.toFile()));
+    }
+    
+    private File writeImage(BufferedImage image, String format) throws Exception {
+        File file = tempDir.resolve("image." + format).toFile();
+        assertTrue(ImageIO.write(image, format, file));
+        return file;
+    }
+}
@@ -0,0 +1,101 @@
+package com.happyvr.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ImageResamplerTest {
+    
+    @Test
+    void resample_ShouldPreserveSolidColor_ForAllKernels() {
+        // Given
+        BufferedImage source = new BufferedImage(157, 93, BufferedImage.TYPE_3BYTE_BGR);
+        for (int y = 0; y < source.getHeight(); y++) {
+            for (int x = 0; x < source.getWidth(); x++) {
+                source.setRGB(x, y, 0x3C7AB4);
+            }
+        }
+        
+        for (ImageResampler.Kernel kernel : ImageResampler.Kernel.values()) {
+            // When - 缩小、放大和单方向缩放
+            BufferedImage[] results = {
+                ImageResampler.resample(source, 40, 30, kernel),
+                ImageResampler.resample(source, 400, 211, kernel),
+                ImageResampler.resample(source, 60, 93, kernel),
+                ImageResampler.resample(source, 157, 20, kernel)
+            };
+            
+            // Then - 权重和严格为1，纯色图片结果不变
+            for (BufferedImage result : results) {
+                assertEquals(BufferedImage.TYPE_INT_RGB, result.getType());
+                for (int y = 0; y < result.getHeight(); y++) {
+                    for (int x = 0; x < result.getWidth(); x++) {
+                        assertEquals(0x3C7AB4, result.getRGB(x, y) & 0xFFFFFF, kernel + " at " + x + "," + y);
+                    }
+                }
+            }
+        }
+    }
+    
+    @Test
+    void resample_ShouldAverageBlocks_WhenBoxDownscaleByIntegerFactor() {
+        // Given - 2x2棋盘格，按2倍缩小后每个像素为黑白平均
+        BufferedImage source = new BufferedImage(64, 32, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < 32; y++) {
+            for (int x = 0; x < 64; x++) {
+                source.setRGB(x, y, ((x + y) & 1) == 0 ? 0xFFFFFF : 0x000000);
+            }
+        }
+        
+        // When
+        BufferedImage result = ImageResampler.resample(source, 32, 16, ImageResampler.Kernel.BOX);
+        
+        // Then
+        for (int y = 0; y < 16; y++) {
+            for (int x = 0; x < 32; x++) {
+                assertEquals(128, result.getRGB(x, y) & 0xFF, 1);
+            }
+        }
+    }
+    
+    @Test
+    void resample_ShouldSuppressAliasing_WhenDownscalingFineDetail() {
+        // Given - 1像素宽的竖条纹，缩小8倍后应接近灰色而不是随机保留黑或白
+        BufferedImage source = new BufferedImage(800, 8, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < 8; y++) {
+            for (int x = 0; x < 800; x++) {
+                source.setRGB(x, y, (x & 1) == 0 ? 0xFFFFFF : 0x000000);
+            }
+        }
+        
+        for (ImageResampler.Kernel kernel : ImageResampler.Kernel.values()) {
+            // When
+            BufferedImage result = ImageResampler.resample(source, 100, 8, kernel);
+            
+            // Then
+            for (int x = 1; x < 99; x++) {
+                assertEquals(128, result.getRGB(x, 4) & 0xFF, 16, kernel + " at " + x);
+            }
+        }
+    }
+    
+    @Test
+    void resample_ShouldCopyPixels_WhenSizeUnchanged() {
+        // Given
+        BufferedImage source = new BufferedImage(31, 17, BufferedImage.TYPE_INT_RGB);
+        for (int i = 0; i < 31 * 17; i++) {
+            source.setRGB(i % 31, i / 31, i * 7919);
+        }
+        
+        // When
+        BufferedImage result = ImageResampler.resample(source, 31, 17, ImageResampler.Kernel.LANCZOS3);
+        
+        // Then
+        assertNotSame(source, result);
+        for (int i = 0; i < 31 * 17; i++) {
+            assertEquals(source.getRGB(i % 31, i / 31), result.getRGB(i % 31, i / 31));
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.happyvr.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PanoramaStitcherTest {
+    
+    @Test
+    void stitch_ShouldPlaceImagesSideBySide_WhenNoOverlap() {
+        // Given
+        List<BufferedImage> images = Arrays.asList(
+            createSolidImage(100, 100, Color.BLUE, BufferedImage.TYPE_INT_RGB),
+            createSolidImage(120, 80, Color.RED, BufferedImage.TYPE_3BYTE_BGR));
+        
+        // When
+        BufferedImage panorama = PanoramaStitcher.stitch(images, 400, 200, 0);
+        
+        // Then
+        assertEquals(BufferedImage.TYPE_INT_RGB, panorama.getType());
+        for (int y = 0; y < 200; y += 7) {
+            assertEquals(0x0000FF, panorama.getRGB(0, y) & 0xFFFFFF);
+            assertEquals(0x0000FF, panorama.getRGB(199, y) & 0xFFFFFF);
+            assertEquals(0xFF0000, panorama.getRGB(200, y) & 0xFFFFFF);
+            assertEquals(0xFF0000, panorama.getRGB(399, y) & 0xFFFFFF);
+        }
+    }
+    
+    @Test
+    void stitch_ShouldFeatherSeams_WhenOverlapping() {
+        // Given - 每张图片槽位200像素，重叠40像素，接缝两侧各20像素
+        List<BufferedImage> images = Arrays.asList(
+            createSolidImage(100, 100, Color.BLUE, BufferedImage.TYPE_INT_RGB),
+            createSolidImage(100, 100, Color.RED, BufferedImage.TYPE_INT_RGB));
+        
+        // When
+        BufferedImage panorama = PanoramaStitcher.stitch(images, 400, 200, 0.2);
+        
+        // Then - 重叠区之外保持原色
+        assertEquals(0x0000FF, panorama.getRGB(100, 50) & 0xFFFFFF);
+        assertEquals(0x0000FF, panorama.getRGB(179, 50) & 0xFFFFFF);
+        assertEquals(0xFF0000, panorama.getRGB(300, 50) & 0xFFFFFF);
+        assertEquals(0xFF0000, panorama.getRGB(220, 50) & 0xFFFFFF);
+        
+        // 中间接缝处红色分量单调递增，接缝中心约为一半
+        int previousRed = -1;
+        for (int x = 180; x < 220; x++) {
+            int red = (panorama.getRGB(x, 50) >> 16) & 0xFF;
+            assertTrue(red > previousRed, "红色分量应单调递增: x=" + x);
+            previousRed = red;
+        }
+        assertEquals(128, (panorama.getRGB(200, 50) >> 16) & 0xFF, 8);
+        
+        // 首尾360°接缝同样混合
+        int left = panorama.getRGB(0, 50);
+        int right = panorama.getRGB(399, 50);
+        assertTrue(((left >> 16) & 0xFF) > 100 && (left & 0xFF) > 100);
+        assertTrue(((right >> 16) & 0xFF) > 100 && (right & 0xFF) > 100);
+    }
+    
+    @Test
+    void lerp_ShouldInterpolateEachChannel() {
+        assertEquals(0x000000, PanoramaStitcher.lerp(0x000000, 0xFFFFFF, 0));
+        assertEquals(0xFFFFFF, PanoramaStitcher.lerp(0x000000, 0xFFFFFF, 256));
+        assertEquals(0x7F7F7F, PanoramaStitcher.lerp(0x000000, 0xFFFFFF, 128));
+        assertEquals(0x7F4020, PanoramaStitcher.lerp(0xFF0000, 0x008040, 128));
+    }
+    
+    private static BufferedImage createSolidImage(int width, int height, Color color, int type) {
+        BufferedImage image = new BufferedImage(width, height, type);
+        Graphics2D g2d = image.createGraphics();
+        g2d.setColor(color);
+        g2d.fillRect(0, 0, width, height);
+        g2d.dispose();
+        return image;
+    }
+}
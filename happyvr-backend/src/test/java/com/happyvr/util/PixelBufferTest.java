@@ -0,0 +1,116 @@
+package com.happyvr.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PixelBufferTest {
+    
+    @TempDir
+    Path tempDir;
+    
+    @Test
+    void rows_ShouldRoundTripAcrossSegments() throws Exception {
+        // Given - 每段只能容纳3行，映射和直接内存两种存储
+        for (long mappedMinBytes : new long[] {0L, Long.MAX_VALUE}) {
+            try (PixelBuffer buffer = PixelBuffer.allocate(37, 10, tempDir, mappedMinBytes, 37L * 4 * 3)) {
+                assertEquals(mappedMinBytes == 0L, buffer.isMapped());
+                assertEquals(4, buffer.getSegmentCount());
+                
+                // When
+                int[] row = new int[37];
+                for (int y = 0; y < 10; y++) {
+                    for (int x = 0; x < 37; x++) {
+                        row[x] = y * 1000 + x;
+                    }
+                    buffer.setRow(y, row, 0);
+                }
+                
+                // Then
+                int[] read = new int[40];
+                buffer.getRow(7, read, 3);
+                assertEquals(7000, read[3]);
+                assertEquals(7036, read[39]);
+                assertEquals(9036, buffer.get(9 * 37 + 36));
+                buffer.set(3 * 37, 42);
+                assertEquals(42, buffer.toHeapImage().getRGB(0, 3) & 0xFFFFFF);
+            }
+        }
+    }
+    
+    @Test
+    void asImage_ShouldShareStorageAndEncode() throws Exception {
+        // Given
+        int[] pixels = new int[64 * 32];
+        Random random = new Random(5L);
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = random.nextInt() & 0xFFFFFF;
+        }
+        try (PixelBuffer buffer = PixelBuffer.allocate(64, 32, tempDir, 0L)) {
+            for (int y = 0; y < 32; y++) {
+                buffer.setRow(y, pixels, y * 64);
+            }
+            
+            // When
+            BufferedImage view = buffer.asImage();
+            Path output = tempDir.resolve("view.png");
+            ImageIO.write(view, "png", output.toFile());
+            view.setRGB(1, 1, 0xFF123456);
+            
+            // Then
+            BufferedImage decoded = ImageIO.read(output.toFile());
+            for (int i = 0; i < pixels.length; i++) {
+                assertEquals(pixels[i], decoded.getRGB(i % 64, i / 64) & 0xFFFFFF);
+            }
+            assertEquals(0x123456, buffer.get(64 + 1));
+        }
+    }
+    
+    @Test
+    void close_ShouldDeleteScratchFile() throws Exception {
+        PixelBuffer buffer = PixelBuffer.allocate(16, 16, tempDir, 0L);
+        Path scratchFile = buffer.getScratchFile();
+        assertTrue(Files.exists(scratchFile));
+        
+        buffer.close();
+        buffer.close();
+        
+        assertFalse(Files.exists(scratchFile));
+    }
+    
+    @Test
+    void stitch_ShouldMatchHeapResult_WhenWritingToPixelBuffer() throws Exception {
+        // Given
+        List<BufferedImage> images = Arrays.asList(noise(90, 60, 1L), noise(110, 70, 2L), noise(80, 50, 3L));
+        BufferedImage expected = PanoramaStitcher.stitch(images, 301, 150, 0.15);
+        
+        // When
+        try (PixelBuffer buffer = PixelBuffer.allocate(301, 150, tempDir, Long.MAX_VALUE)) {
+            PanoramaStitcher.stitch(images, buffer, 0.15);
+            
+            // Then
+            int[] expectedPixels = RasterKernels.rgbData(expected);
+            int[] actualPixels = RasterKernels.rgbData(buffer.toHeapImage());
+            assertArrayEquals(expectedPixels, actualPixels);
+        }
+    }
+    
+    private static BufferedImage noise(int width, int height, long seed) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        int[] data = RasterKernels.rgbData(image);
+        Random random = new Random(seed);
+        for (int i = 0; i < data.length; i++) {
+            data[i] = random.nextInt() & 0xFFFFFF;
+        }
+        return image;
+    }
+}
@@ -0,0 +1,79 @@
+package com.happyvr.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class PixelKernelsTest {
+    
+    @Test
+    void div255_ShouldMatchRoundedDivision() {
+        for (int value = 0; value <= 255 * 255; value++) {
+            assertEquals(Math.round(value / 255.0), PixelKernels.div255(value), "value=" + value);
+        }
+    }
+    
+    @Test
+    void flattenAlpha_ShouldCompositeOverBackground() {
+        int[] source = {0xFF123456, 0x00123456, 0x80FF0000};
+        int[] target = new int[3];
+        
+        PixelKernels.flattenAlphaScalar(source, 0, target, 0, 3, 0xFFFFFF);
+        
+        assertEquals(0x123456, target[0]);
+        assertEquals(0xFFFFFF, target[1]);
+        assertEquals(0xFF7F7F, target[2]);
+    }
+    
+    @Test
+    void vectorKernels_ShouldMatchScalarKernels() {
+        PixelKernels.Implementation vector = PixelKernels.vectorKernels();
+        assumeTrue(vector != null, "未使用vector配置构建或未加载jdk.incubator.vector模块");
+        
+        Random random = new Random(17L);
+        // 长度不是向量宽度的整数倍，覆盖尾部标量循环
+        int length = 1037;
+        int[] source = new int[length + 5];
+        for (int i = 0; i < source.length; i++) {
+            source[i] = random.nextInt();
+        }
+        
+        // 去alpha复制
+        int[] expected = new int[length];
+        int[] actual = new int[length];
+        PixelKernels.copyRgbScalar(source, 3, expected, 0, length);
+        vector.copyRgb(source, 3, actual, 0, length);
+        assertArrayEquals(expected, actual);
+        
+        // alpha合成
+        PixelKernels.flattenAlphaScalar(source, 5, expected, 0, length, 0x3366CC);
+        vector.flattenAlpha(source, 5, actual, 0, length, 0x3366CC);
+        assertArrayEquals(expected, actual);
+        
+        // 按索引收集
+        int[] indices = new int[length + 2];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = random.nextInt(source.length);
+        }
+        PixelKernels.gatherScalar(source, indices, 2, expected, 7, length);
+        vector.gather(source, indices, 2, actual, 7, length);
+        assertArrayEquals(expected, actual);
+        
+        // 重采样垂直累加，包含Lanczos的负权重
+        int width = 211;
+        int[] rows = new int[width * 6];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = random.nextInt(0x1000000);
+        }
+        int[] rowBases = {0, width, width * 2, width * 3, width * 4, width * 5};
+        int[] weights = {-600, 2400, 6592, 6592, 2400, -1000};
+        int[] expectedRow = new int[width + 4];
+        int[] actualRow = new int[width + 4];
+        PixelKernels.resampleRowScalar(rows, rowBases, weights, 0, 6, expectedRow, 4, 0, width);
+        vector.resampleRow(rows, rowBases, weights, 0, 6, actualRow, 4, width);
+        assertArrayEquals(expectedRow, actualRow);
+    }
+}
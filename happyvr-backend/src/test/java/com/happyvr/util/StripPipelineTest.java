@@ -0,0 +1,129 @@
+package com.happyvr.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StripPipelineTest {
+    
+    @Test
+    void asImage_ShouldReadRowsInOrderAcrossStrips() {
+        // Given - 10行，每条3行，最后一条只有1行
+        try (StripPipeline pipeline = StripPipeline.start(7, 10, 3, 1, coordinates(7))) {
+            BufferedImage image = pipeline.asImage();
+            
+            // When & Then
+            for (int y = 0; y < 10; y++) {
+                int[] row = image.getRGB(0, y, 7, 1, null, 0, 7);
+                for (int x = 0; x < 7; x++) {
+                    assertEquals(y * 100 + x, row[x] & 0xFFFFFF);
+                }
+            }
+        }
+    }
+    
+    @Test
+    void asImage_ShouldRejectReadingReleasedStrip() {
+        try (StripPipeline pipeline = StripPipeline.start(4, 8, 2, 1, coordinates(4))) {
+            BufferedImage image = pipeline.asImage();
+            assertEquals(500, image.getRGB(0, 5) & 0xFFFFFF);
+            
+            assertThrows(IllegalStateException.class, () -> image.getRGB(0, 1));
+        }
+    }
+    
+    @Test
+    void start_ShouldBoundStripsRenderedAhead() throws Exception {
+        // Given
+        AtomicInteger rendered = new AtomicInteger();
+        try (StripPipeline pipeline = StripPipeline.start(4, 100, 1, 2, (rowStart, rowEnd, target) -> {
+            rendered.incrementAndGet();
+            coordinates(4).render(rowStart, rowEnd, target);
+        })) {
+            // When - 消费方尚未读取
+            Thread.sleep(200);
+            
+            // Then - 缓冲区总数为队列容量 + 2
+            assertEquals(4, rendered.get());
+            assertEquals(0, pipeline.asImage().getRGB(0, 0) & 0xFFFFFF);
+        }
+    }
+    
+    @Test
+    void asImage_ShouldRethrowRendererFailure() {
+        try (StripPipeline pipeline = StripPipeline.start(4, 8, 2, 1, (rowStart, rowEnd, target) -> {
+            if (rowStart >= 4) {
+                throw new IllegalArgumentException("渲染失败");
+            }
+            coordinates(4).render(rowStart, rowEnd, target);
+        })) {
+            BufferedImage image = pipeline.asImage();
+            assertEquals(300, image.getRGB(0, 3) & 0xFFFFFF);
+            
+            IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> image.getRGB(0, 4));
+            assertEquals("渲染失败", e.getMessage());
+        }
+    }
+    
+    @Test
+    void asImage_ShouldStopProducing_WhenTokenCancelled() {
+        // Given - 启动线程绑定的令牌传给生产线程，第二条渲染后取消
+        CancellationToken token = new CancellationToken();
+        AtomicInteger rendered = new AtomicInteger();
+        try (CancellationToken.Scope scope = token.bind();
+             StripPipeline pipeline = StripPipeline.start(4, 100, 2, 1, (rowStart, rowEnd, target) -> {
+                 assertSame(token, CancellationToken.current());
+                 if (rendered.incrementAndGet() == 2) {
+                     token.cancel();
+                 }
+                 coordinates(4).render(rowStart, rowEnd, target);
+             })) {
+            BufferedImage image = pipeline.asImage();
+            assertEquals(300, image.getRGB(0, 3) & 0xFFFFFF);
+            
+            // When & Then
+            assertThrows(CancellationException.class, () -> image.getRGB(0, 4));
+            assertEquals(2, rendered.get());
+        }
+    }
+    
+    @Test
+    void start_ShouldRenderStripsOnGivenPool() {
+        // Given
+        ForkJoinPool pool = new ForkJoinPool(2);
+        Set<ForkJoinPool> pools = ConcurrentHashMap.newKeySet();
+        try (StripPipeline pipeline = StripPipeline.start(4, 8, 2, 1, pool, (rowStart, rowEnd, target) -> {
+            pools.add(RasterKernels.currentPool());
+            coordinates(4).render(rowStart, rowEnd, target);
+        })) {
+            // When
+            BufferedImage image = pipeline.asImage();
+            assertEquals(700, image.getRGB(0, 7) & 0xFFFFFF);
+            
+            // Then - 条带内嵌套的并行调用也使用该线程池，而不是公共池
+            assertEquals(Set.of(pool), pools);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+    
+    /**
+     * 每个像素的值为 行号 * 100 + 列号
+     */
+    private static StripPipeline.StripRenderer coordinates(int width) {
+        return (rowStart, rowEnd, target) -> {
+            for (int y = rowStart; y < rowEnd; y++) {
+                for (int x = 0; x < width; x++) {
+                    target[(y - rowStart) * width + x] = y * 100 + x;
+                }
+            }
+        };
+    }
+}